@@ -5,6 +5,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
@@ -19,9 +21,12 @@ import org.glassfish.jersey.jackson.JacksonFeature;
 
 import scheduler.engine.ScriptSnapshot;
 import scheduler.engine.Task;
+import scheduler.engine.TaskPriority;
 import scheduler.rest.SchedulerObjectMapperProvider;
+import scheduler.rest.TaskResource;
 
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -37,11 +42,31 @@ public class SchedulerClient {
 	 */
 	protected WebTarget mainTarget;
 	
+	/**
+	 * underlying client from Jersey for the registered scripts.
+	 */
+	protected WebTarget scriptsTarget;
+	
+	/**
+	 * The target of the schedules of the scheduler rest api.
+	 */
+	protected WebTarget schedulesTarget;
+	
+	/**
+	 * The target of the graphs of the scheduler rest api.
+	 */
+	protected WebTarget graphsTarget;
+	
 	/**
 	 * underlying JSON mapper from Jackson.
 	 */
 	protected ObjectMapper mapper;
 	
+	/**
+	 * The tenant on behalf of which the scripts are submitted, null for the default tenant.
+	 */
+	protected String clientId = null;
+	
 	
 	/**
 	 * Creates a new client that target the scheduler rest api on a host and port.
@@ -56,11 +81,31 @@ public class SchedulerClient {
 		
 		WebTarget webTarget = client.target("http://" + host + ":" + port + "/scheduler/rest/api");
 		this.mainTarget = webTarget.path("scheduler/task");
+		this.scriptsTarget = webTarget.path("scheduler/scripts");
+		this.schedulesTarget = webTarget.path("scheduler/schedule");
+		this.graphsTarget = webTarget.path("scheduler/graph");
 		
 		this.mapper = SchedulerObjectMapperProvider.getNewObjectMapper();
 	}
 	
 	
+	/**
+	 * Gets the tenant on behalf of which the scripts are submitted.
+	 * @return the name of the tenant, null for the default tenant.
+	 */
+	public String getClientId() {
+		return clientId;
+	}
+	
+	/**
+	 * Sets the tenant on behalf of which the scripts are submitted.
+	 * The scheduler shares its workers fairly between the tenants.
+	 * @param clientId the name of the tenant, null for the default tenant.
+	 */
+	public void setClientId(String clientId) {
+		this.clientId = clientId;
+	}
+	
 	/**
 	 * Submit a script the to scheduler rest api with the request POST /scheduler/task
 	 * @param scriptContent the content script to be executed of the scheduler.
@@ -68,8 +113,35 @@ public class SchedulerClient {
 	 * @throws IOException if an error occurs during reading the scheduler response.
 	 */
 	public Long submitScript(String scriptContent) throws IOException{
+		return this.submitScript(scriptContent, TaskPriority.NORMAL);
+	}
+	
+	/**
+	 * Submit a script the to scheduler rest api with the request POST /scheduler/task, with a given priority.
+	 * @param scriptContent the content script to be executed of the scheduler.
+	 * @param priority the priority of the task.
+	 * @return the id of the new created task.
+	 * @throws IOException if an error occurs during reading the scheduler response.
+	 */
+	public Long submitScript(String scriptContent, TaskPriority priority) throws IOException{
+		return this.submitScript(scriptContent, priority, 0, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Submit a script the to scheduler rest api with the request POST /scheduler/task, with a given priority and a timeout.
+	 * The script is stopped if it runs longer than the timeout, and its task then ends with the status TIMED_OUT.
+	 * @param scriptContent the content script to be executed of the scheduler.
+	 * @param priority the priority of the task.
+	 * @param timeout the time the script may run, 0 for the default timeout of the scheduler.
+	 * @param unit the unit of the timeout.
+	 * @return the id of the new created task.
+	 * @throws IOException if an error occurs during reading the scheduler response.
+	 */
+	public Long submitScript(String scriptContent, TaskPriority priority, long timeout, TimeUnit unit) throws IOException{
 		Entity<String> scriptEntity = Entity.entity(scriptContent, MediaType.TEXT_PLAIN);
-		Response response = this.mainTarget.request(MediaType.TEXT_PLAIN).post(scriptEntity);
+		Response response = this.mainTarget.queryParam("priority", priority.name()).request(MediaType.TEXT_PLAIN)
+									.header(TaskResource.TENANT_HEADER, this.clientId)
+									.header(TaskResource.TIMEOUT_HEADER, timeout > 0 ? unit.toMillis(timeout) + "ms" : null).post(scriptEntity);
 		if(response.getStatus() == 201){
 			try(BufferedReader buf = new BufferedReader(new InputStreamReader(response.readEntity(InputStream.class)))) {
 				String result = buf.readLine();
@@ -81,6 +153,57 @@ public class SchedulerClient {
 		}
 	}
 	
+	/**
+	 * Submit several scripts in one request to the scheduler rest api with the request POST /scheduler/task/batch
+	 * @param scriptContents the content of the scripts to be executed by the scheduler.
+	 * @return the ids of the new created tasks, in the order of the scripts, or null if the scripts are not submitted.
+	 */
+	public List<Long> submitScripts(List<String> scriptContents){
+		Entity<List<String>> scriptsEntity = Entity.entity(scriptContents, MediaType.APPLICATION_JSON);
+		Response response = this.mainTarget.path("batch").request(MediaType.APPLICATION_JSON)
+									.header(TaskResource.TENANT_HEADER, this.clientId).post(scriptsEntity);
+		if(response.getStatus() == 201){
+			return response.readEntity(new GenericType<List<Long>>(){});
+		}
+		else{
+			return null;
+		}
+	}
+	
+	/**
+	 * Register a script to the scheduler rest api with the request POST /scheduler/scripts, to run it later many times.
+	 * @param scriptContent the content of the script.
+	 * @return the handle of the script, or null if the script is not registered, for instance if it can not be compiled.
+	 */
+	public String registerScript(String scriptContent){
+		Entity<String> scriptEntity = Entity.entity(scriptContent, MediaType.TEXT_PLAIN);
+		Response response = this.scriptsTarget.request(MediaType.TEXT_PLAIN).post(scriptEntity);
+		if(response.getStatus() == 201){
+			return response.readEntity(String.class).trim();
+		}
+		else{
+			return null;
+		}
+	}
+	
+	/**
+	 * Run a registered script with the request POST /scheduler/scripts/{handle}/run.
+	 * @param handle the handle of the script.
+	 * @param bindings the values of the variables of the script by name, that must be serializable as JSON.
+	 * @return the id of the new created task, or null if the script is not registered.
+	 */
+	public Long runScript(String handle, Map<String, Object> bindings){
+		Entity<Map<String, Object>> bindingsEntity = Entity.entity(bindings, MediaType.APPLICATION_JSON);
+		Response response = this.scriptsTarget.path(handle).path("run").request(MediaType.TEXT_PLAIN)
+									.header(TaskResource.TENANT_HEADER, this.clientId).post(bindingsEntity);
+		if(response.getStatus() == 201){
+			return Long.valueOf(response.readEntity(String.class).trim());
+		}
+		else{
+			return null;
+		}
+	}
+	
 	/**
 	 * Gets the list of running tasks on the scheduler.
 	 * @return the list of running tasks on the scheduler.
@@ -115,6 +238,114 @@ public class SchedulerClient {
 		return snapshot;
 	}
 	
+	/**
+	 * Waits for the end of a given task with the request GET /scheduler/task/{id}/result, 
+	 * that returns as soon as the task is finished, then gets its status and its result.
+	 * @param idTask the related task id.
+	 * @param timeout the time max to wait.
+	 * @param unit the unit of the time max to wait.
+	 * @return a snapshot of the task, the running snapshot if the task is not finished before the timeout.
+	 * @throws IOException if I/O error occurs.
+	 */
+	public ScriptSnapshot awaitResult(Long idTask, long timeout, TimeUnit unit) throws IOException{
+		Response response = this.mainTarget.path(idTask + "/result").queryParam("wait", unit.toMillis(timeout) + "ms")
+									.request(MediaType.APPLICATION_JSON).get();
+		return this.mapper.readValue(response.readEntity(InputStream.class), ScriptSnapshot.class);
+	}
+	
+	/**
+	 * Schedule a script at the minutes matched by a cron expression with the request POST /scheduler/schedule?cron=...
+	 * Each firing submits a new task.
+	 * @param scriptContent the content of the script.
+	 * @param cron the cron expression, with five fields: minute, hour, day of month, month and day of week.
+	 * @return the id of the new created schedule, or null if the cron expression is not valid.
+	 */
+	public Long scheduleCron(String scriptContent, String cron){
+		return this.schedule(scriptContent, this.schedulesTarget.queryParam("cron", cron));
+	}
+	
+	/**
+	 * Schedule a script at a fixed rate with the request POST /scheduler/schedule?every=...
+	 * The first firing happens at once.
+	 * @param scriptContent the content of the script.
+	 * @param period the period of the firings.
+	 * @param unit the unit of the period.
+	 * @return the id of the new created schedule, or null if the period is not valid.
+	 */
+	public Long scheduleAtFixedRate(String scriptContent, long period, TimeUnit unit){
+		return this.schedule(scriptContent, this.schedulesTarget.queryParam("every", unit.toMillis(period) + "ms"));
+	}
+	
+	/**
+	 * Schedule a script once after a delay with the request POST /scheduler/schedule?delay=...
+	 * @param scriptContent the content of the script.
+	 * @param delay the delay of the firing.
+	 * @param unit the unit of the delay.
+	 * @return the id of the new created schedule, or null if the delay is not valid.
+	 */
+	public Long scheduleOnce(String scriptContent, long delay, TimeUnit unit){
+		return this.schedule(scriptContent, this.schedulesTarget.queryParam("delay", unit.toMillis(delay) + "ms"));
+	}
+	
+	/**
+	 * Posts a script to a target of the schedules.
+	 * @param scriptContent the content of the script.
+	 * @param target the target of the schedules, with the query parameters of the schedule.
+	 * @return the id of the new created schedule, or null if the schedule is not created.
+	 */
+	protected Long schedule(String scriptContent, WebTarget target){
+		Entity<String> scriptEntity = Entity.entity(scriptContent, MediaType.TEXT_PLAIN);
+		Response response = target.request(MediaType.TEXT_PLAIN).header(TaskResource.TENANT_HEADER, this.clientId).post(scriptEntity);
+		if(response.getStatus() == 201){
+			return Long.valueOf(response.readEntity(String.class).trim());
+		}
+		else{
+			return null;
+		}
+	}
+	
+	/**
+	 * Cancel a schedule with the request DELETE /scheduler/schedule/{id}.
+	 * @param idSchedule the id of the schedule.
+	 * @return true if the schedule was cancelled, false if it was unknown or already ended.
+	 */
+	public boolean cancelSchedule(Long idSchedule){
+		Response response = this.schedulesTarget.path(idSchedule.toString()).request().delete();
+		return response.getStatus() == 204;
+	}
+	
+	/**
+	 * Submit a graph of scripts with the request POST /scheduler/graph.
+	 * Each node is run as soon as its parents are finished, with the results of its parents as variables named after them.
+	 * @param definitions the definitions of the nodes by name: the script content as "script", 
+	 * the names of its parents as "dependsOn" and its variables as "bindings".
+	 * @return the id of the submitted graph, or null if the graph is invalid.
+	 */
+	public Long submitGraph(Map<String, Map<String, Object>> definitions){
+		Entity<Map<String, Map<String, Object>>> graphEntity = Entity.entity(definitions, MediaType.APPLICATION_JSON);
+		Response response = this.graphsTarget.request(MediaType.TEXT_PLAIN).header(TaskResource.TENANT_HEADER, this.clientId).post(graphEntity);
+		if(response.getStatus() == 201){
+			return Long.valueOf(response.readEntity(String.class).trim());
+		}
+		else{
+			return null;
+		}
+	}
+	
+	/**
+	 * Wait for the end of a graph with the request GET /scheduler/graph/{id}/result?wait=...
+	 * @param idGraph the id of the graph.
+	 * @param timeout the time max to wait.
+	 * @param unit the unit of the time.
+	 * @return the status of the graph and the status, the task id and the snapshot of each node.
+	 * @throws IOException if an error occurs during reading the scheduler response.
+	 */
+	public Map<String, Object> awaitGraph(Long idGraph, long timeout, TimeUnit unit) throws IOException{
+		Response response = this.graphsTarget.path(idGraph + "/result").queryParam("wait", unit.toMillis(timeout) + "ms")
+									.request(MediaType.APPLICATION_JSON).get();
+		return this.mapper.readValue(response.readEntity(InputStream.class), new TypeReference<Map<String, Object>>(){});
+	}
+	
 	/**
 	 * Delete a given task
 	 * @param idTask the related task id.
@@ -129,7 +360,7 @@ public class SchedulerClient {
 		Long id = client.submitScript("return 1+2");
 		System.out.println("Submitted a script with id " + id);
 		
-		Thread.sleep(500);
+		ScriptSnapshot snapshot = client.awaitResult(id, 30, TimeUnit.SECONDS);
 		
 		List<Task> finished = client.getFinishedTasks();
 		System.out.println("Finished tasks:");
@@ -139,7 +370,6 @@ public class SchedulerClient {
 		System.out.println("\n");
 		
 		System.out.println("Get the result of the task");
-		ScriptSnapshot snapshot = client.getResultTask(id);
 		System.out.println(snapshot.getResult().toString());
 		
 		System.out.println("Delete the task");
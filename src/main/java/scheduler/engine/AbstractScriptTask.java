@@ -1,12 +1,14 @@
 package scheduler.engine;
 
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
 import org.slf4j.Logger;
@@ -22,14 +24,76 @@ public abstract class AbstractScriptTask extends Task implements Callable<Object
 	
 	/**
 	 * A Future representing the task and allows to cancel it, get the current status of get the result.
+	 * It is created with the task, so that it is set before the task is published to the other threads, 
+	 * and a task cancelled before it is started is never run.
 	 */
-	protected Future future = null;
+	protected final ScriptFutureTask future;
 	
+	/**
+	 * The listener notified when the task is finished, may be null.
+	 */
+	protected TaskListener listener = null;
+	
+	/**
+	 * Released when the task is done and its listener has been notified.
+	 */
+	protected final CountDownLatch completion = new CountDownLatch(1);
+	
+	/**
+	 * The priority of the task, that orders the tasks waiting for a worker.
+	 */
+	protected TaskPriority priority = TaskPriority.NORMAL;
+	
+	/**
+	 * The tenant that submitted the task, null for the default tenant.
+	 */
+	protected String tenant = null;
+	
+	/**
+	 * The variables given to the script, null if the script has no variables.
+	 */
+	protected Map<String, Object> bindings = null;
+	
+	/**
+	 * The time in milliseconds the script may run before it is stopped, 0 for the default timeout of the scheduler.
+	 */
+	protected long timeout = 0;
+	
+	/**
+	 * The deadline of the running task, null if the task has no deadline or is not started.
+	 */
+	protected volatile HashedWheelTimer.Timeout deadline = null;
+	
+	/**
+	 * Whether the task has been stopped because its deadline expired.
+	 */
+	protected volatile boolean timedOut = false;
+	
+	/**
+	 * The time when the task was submitted, in milliseconds.
+	 */
+	protected final long submittedAt;
+	
+	/**
+	 * The time when the task was finished, in milliseconds, or 0 if the task is not finished.
+	 */
+	protected volatile long finishedAt;
 	
 	/**
-	 * A manager that allows to get a ScriptEngine.
+	 * The script of the task, shared with the other tasks of the same script.
 	 */
-	protected static ScriptEngineManager manager = new ScriptEngineManager();
+	protected final StoredScript script;
+	
+	/**
+	 * The digest of the script content.
+	 */
+	protected final String scriptDigest;
+	
+	
+	/**
+	 * The store of the scripts, shared by all the tasks.
+	 */
+	protected static final ScriptStore scriptStore = new ScriptStore(ScriptStore.DEFAULT_MAX_RETIRED);
 	
 	/**
 	 * Logger for a task.
@@ -43,8 +107,107 @@ public abstract class AbstractScriptTask extends Task implements Callable<Object
 	 * @param id the task id.
 	 */
 	public AbstractScriptTask(String bodyScript, Long id){
-		this.scriptContent = bodyScript;
+		this.script = scriptStore.acquire(bodyScript);
+		this.scriptContent = this.script.getContent();
+		this.scriptDigest = this.script.getDigest();
 		this.id = id;
+		this.submittedAt = System.currentTimeMillis();
+		this.future = new ScriptFutureTask();
+	}
+
+	/**
+	 * Sets the listener notified when the task is finished. Must be called before the task is started.
+	 * @param listener the listener.
+	 */
+	public void setListener(TaskListener listener){
+		this.listener = listener;
+	}
+	
+	/**
+	 * Gets the priority of the task.
+	 * @return the priority of the task.
+	 */
+	public TaskPriority getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * Sets the priority of the task. Must be called before the task is started.
+	 * @param priority the priority of the task.
+	 */
+	public void setPriority(TaskPriority priority) {
+		this.priority = priority;
+	}
+	
+	/**
+	 * Gets the tenant that submitted the task.
+	 * @return the name of the tenant, null for the default tenant.
+	 */
+	public String getTenant() {
+		return tenant;
+	}
+	
+	/**
+	 * Sets the tenant that submitted the task. Must be called before the task is started.
+	 * @param tenant the name of the tenant, null for the default tenant.
+	 */
+	public void setTenant(String tenant) {
+		this.tenant = tenant;
+	}
+	
+	/**
+	 * Gets the variables given to the script.
+	 * @return the values of the variables by name, null if the script has no variables.
+	 */
+	public Map<String, Object> getBindings() {
+		return bindings;
+	}
+	
+	/**
+	 * Sets the variables given to the script. Must be called before the task is started.
+	 * @param bindings the values of the variables by name, null if the script has no variables.
+	 */
+	public void setBindings(Map<String, Object> bindings) {
+		this.bindings = bindings;
+	}
+	
+	/**
+	 * Gets the time the script may run before it is stopped.
+	 * @return the time in milliseconds, 0 for the default timeout of the scheduler.
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+	
+	/**
+	 * Sets the time the script may run before it is stopped. Must be called before the task is started.
+	 * @param timeout the time in milliseconds, 0 for the default timeout of the scheduler.
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+	
+	/**
+	 * Sets the deadline of the running task, that is cancelled when the task is done.
+	 * @param deadline the timeout that expires the task.
+	 */
+	public void setDeadline(HashedWheelTimer.Timeout deadline) {
+		this.deadline = deadline;
+		if(this.future.isDone()){
+			deadline.cancel();
+		}
+	}
+	
+	/**
+	 * Stops the task because its deadline expired: the task is cancelled and ends with the status {@link TaskStatus#TIMED_OUT}.
+	 * @return true if the task was stopped, false if it was already done.
+	 */
+	public boolean expire() {
+		if(this.future.isDone()){
+			return false;
+		}
+		this.timedOut = true;
+		return this.future.cancel(true);
 	}
 	
 	/**
@@ -52,7 +215,7 @@ public abstract class AbstractScriptTask extends Task implements Callable<Object
 	 * @param executor the executor that starts the task.
 	 */
 	public void start(ExecutorService executor){
-		this.future = executor.submit(this);
+		executor.execute(this.future);
 	}
 	
 	
@@ -65,6 +228,47 @@ public abstract class AbstractScriptTask extends Task implements Callable<Object
 	}
 	
 	
+	/**
+	 * Gets the time when the task was submitted.
+	 * @return the submission time in milliseconds.
+	 */
+	public long getSubmittedAt() {
+		return submittedAt;
+	}
+	
+	/**
+	 * Gets the time when the task was finished.
+	 * @return the end time in milliseconds, or 0 if the task is not finished.
+	 */
+	public long getFinishedAt() {
+		return finishedAt;
+	}
+	
+	/**
+	 * Gets the digest of the script content, that identifies the script in the store of the scripts.
+	 * @return the digest of the script content.
+	 * @see ScriptDigest#digest(String)
+	 */
+	public String getScriptDigest(){
+		return this.scriptDigest;
+	}
+	
+	/**
+	 * Gets the script of the task in the store of the scripts.
+	 * @return the stored script.
+	 */
+	public StoredScript getStoredScript(){
+		return this.script;
+	}
+	
+	/**
+	 * Gets the store of the scripts, shared by all the tasks.
+	 * @return the store of the scripts.
+	 */
+	public static ScriptStore getScriptStore(){
+		return scriptStore;
+	}
+	
 	/**
 	 * Performs the script execution with a ScriptEngine.
 	 * @return the result of the execution.
@@ -74,15 +278,36 @@ public abstract class AbstractScriptTask extends Task implements Callable<Object
 	
 	
 	/**
-	 * Encapsulates the script execution in order to set the status of the task and capture exceptions.
+	 * Releases what the execution of the script still holds once the task is done, 
+	 * whether it finished or was cancelled. Does nothing by default.
+	 */
+	protected void finish(){
+	}
+	
+	
+	/**
+	 * Encapsulates the script execution in order to set the status of the task and capture exceptions,
+	 * and records the execution in the statistics of the script.
 	 * @see Callable#call Object
 	 */
 	@Override
 	public Object call() throws ScriptException {
 		LOG.info("starts the script with id " + this.id);
-		Object result = doCallExecution();	
-		LOG.info("finished the script with id " + this.id);
-		return result;
+		TaskListener taskListener = this.listener;
+		if(taskListener != null){
+			taskListener.taskStarted(this);
+		}
+		long start = System.nanoTime();
+		boolean error = true;
+		try{
+			Object result = doCallExecution();
+			error = false;
+			LOG.info("finished the script with id " + this.id);
+			return result;
+		}
+		finally{
+			this.script.recordRun(System.nanoTime() - start, error);
+		}
 	}
 	
 	
@@ -97,7 +322,7 @@ public abstract class AbstractScriptTask extends Task implements Callable<Object
 				return new ScriptSnapshot(TaskStatus.SUCCESSFULLY_DONE, result);
 			}
 			catch(CancellationException ex){
-				return new ScriptSnapshot(TaskStatus.CANCELLED, null);
+				return new ScriptSnapshot(this.timedOut ? TaskStatus.TIMED_OUT : TaskStatus.CANCELLED, null);
 			}
 			catch(ExecutionException ex){
 				Throwable cause = ex.getCause();
@@ -116,14 +341,68 @@ public abstract class AbstractScriptTask extends Task implements Callable<Object
 	}
 	
 	/**
-	 * Waits for the end of th task.
+	 * The Future of a task, that gives the priority and the tenant of the task to the executor, 
+	 * releases the script of the task and notifies the listener of the task when it is done.
 	 */
-	public void join(){
-		if(!this.future.isDone()){
-			try {
-				this.future.get();
-			} catch (InterruptedException | ExecutionException e) {
+	protected class ScriptFutureTask extends FutureTask<Object> implements PrioritizedTask {
+		
+		/**
+		 * Creates a Future that will execute the enclosing task.
+		 */
+		public ScriptFutureTask(){
+			super(AbstractScriptTask.this);
+		}
+		
+		/**
+		 * Gets the priority of the enclosing task.
+		 * @see PrioritizedTask#getPriority()
+		 */
+		@Override
+		public TaskPriority getPriority() {
+			return AbstractScriptTask.this.priority;
+		}
+		
+		/**
+		 * Gets the tenant of the enclosing task.
+		 * @see PrioritizedTask#getTenant()
+		 */
+		@Override
+		public String getTenant() {
+			return AbstractScriptTask.this.tenant;
+		}
+		
+		/**
+		 * Cancels the deadline of the task, releases its execution, and notifies the listener of the task.
+		 * @see FutureTask#done()
+		 */
+		@Override
+		protected void done() {
+			AbstractScriptTask.this.finishedAt = System.currentTimeMillis();
+			HashedWheelTimer.Timeout taskDeadline = AbstractScriptTask.this.deadline;
+			if(taskDeadline != null){
+				taskDeadline.cancel();
+			}
+			AbstractScriptTask.this.finish();
+			scriptStore.release(AbstractScriptTask.this.script);
+			try{
+				TaskListener taskListener = AbstractScriptTask.this.listener;
+				if(taskListener != null){
+					taskListener.taskFinished(AbstractScriptTask.this);
+				}
 			}
+			finally{
+				AbstractScriptTask.this.completion.countDown();
+			}
+		}
+	}
+	
+	/**
+	 * Waits for the end of th task, and for the notification of its listener.
+	 */
+	public void join(){
+		try {
+			this.completion.await();
+		} catch (InterruptedException e) {
 		}
 	}
 }
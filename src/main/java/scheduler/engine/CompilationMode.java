@@ -0,0 +1,77 @@
+package scheduler.engine;
+
+import groovy.transform.CompileStatic;
+import groovy.transform.ThreadInterrupt;
+import groovy.transform.TimedInterrupt;
+import groovy.transform.TypeChecked;
+
+import java.lang.annotation.Annotation;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.expr.ClassExpression;
+import org.codehaus.groovy.ast.expr.PropertyExpression;
+
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+
+/**
+ * The way the Groovy scripts are compiled.
+ * A script that can not be compiled in a checked mode is compiled dynamically, and its snapshot tells why.
+ * In every mode, the scripts check whether their thread is interrupted at each loop, closure and method,
+ * so that a cancelled script stops at once instead of holding its worker.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public enum CompilationMode {
+	/**
+	 * The scripts are compiled dynamically, every call goes through the meta-object protocol.
+	 */
+	DYNAMIC(null),
+	/**
+	 * The scripts are type checked at compilation, but still called dynamically.
+	 */
+	TYPE_CHECKED(TypeChecked.class),
+	/**
+	 * The scripts are type checked and compiled statically, with direct calls. 
+	 * The variables of a script must be read from its binding, for instance with binding.getVariable('name').
+	 */
+	STATIC(CompileStatic.class);
+	
+	/**
+	 * The annotation applied to the scripts, null for the dynamic mode.
+	 */
+	protected final Class<? extends Annotation> annotation;
+	
+	/**
+	 * Creates a compilation mode.
+	 * @param annotation the annotation applied to the scripts, null for the dynamic mode.
+	 */
+	private CompilationMode(Class<? extends Annotation> annotation){
+		this.annotation = annotation;
+	}
+	
+	/**
+	 * Creates the configuration of the compiler for this mode.
+	 * @param maxDuration the time in milliseconds after which a script throws a TimeoutException, 0 for no limit.
+	 * @return the configuration, that applies the interrupt checks and the annotation of the mode to the whole script.
+	 * @see ThreadInterrupt
+	 * @see TimedInterrupt
+	 */
+	public CompilerConfiguration createConfiguration(long maxDuration){
+		CompilerConfiguration result = new CompilerConfiguration();
+		result.addCompilationCustomizers(new ASTTransformationCustomizer(ThreadInterrupt.class));
+		if(maxDuration > 0){
+			Map<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put("value", maxDuration);
+			parameters.put("unit", new PropertyExpression(new ClassExpression(ClassHelper.make(TimeUnit.class)), TimeUnit.MILLISECONDS.name()));
+			result.addCompilationCustomizers(new ASTTransformationCustomizer(parameters, TimedInterrupt.class));
+		}
+		if(this.annotation != null){
+			result.addCompilationCustomizers(new ASTTransformationCustomizer(this.annotation));
+		}
+		return result;
+	}
+}
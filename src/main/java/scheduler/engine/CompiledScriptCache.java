@@ -0,0 +1,189 @@
+package scheduler.engine;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.CompiledScript;
+
+/**
+ * A bounded cache of compiled scripts, keyed by the digest of the script content.
+ * When the cache is full, the least recently used script is evicted.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class CompiledScriptCache {
+
+	/**
+	 * The default number max of compiled scripts kept by a cache.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 500;
+
+	/**
+	 * The compiled scripts, in access order.
+	 */
+	protected final LinkedHashMap<String, CompiledScript> entries;
+
+	/**
+	 * The number max of compiled scripts kept by the cache.
+	 */
+	protected volatile int maxSize;
+
+	/**
+	 * The number of lookups that found a compiled script.
+	 */
+	protected final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * The number of lookups that did not find a compiled script.
+	 */
+	protected final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * The number of compiled scripts evicted from the cache.
+	 */
+	protected final AtomicLong evictions = new AtomicLong();
+
+
+	/**
+	 * Creates a new cache of compiled scripts.
+	 * @param maxSize the number max of compiled scripts kept by the cache.
+	 */
+	@SuppressWarnings("serial")
+	public CompiledScriptCache(int maxSize){
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<String, CompiledScript>(16, 0.75f, true){
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CompiledScript> eldest) {
+				if(size() > CompiledScriptCache.this.maxSize){
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+
+	/**
+	 * Gets the compiled script corresponding to a digest.
+	 * @param digest the digest of the script content.
+	 * @return the compiled script, or null if the script is not in the cache.
+	 */
+	public CompiledScript get(String digest){
+		CompiledScript result;
+		synchronized(this.entries){
+			result = this.entries.get(digest);
+		}
+		if(result == null){
+			this.misses.incrementAndGet();
+		}
+		else{
+			this.hits.incrementAndGet();
+		}
+		return result;
+	}
+
+
+	/**
+	 * Adds a compiled script to the cache.
+	 * @param digest the digest of the script content.
+	 * @param compiled the compiled script.
+	 */
+	public void put(String digest, CompiledScript compiled){
+		synchronized(this.entries){
+			this.entries.put(digest, compiled);
+		}
+	}
+
+
+	/**
+	 * Removes from the cache the scripts compiled by a generation, counted as evictions.
+	 * @param generation the generation of the scripts.
+	 * @return the number of scripts removed.
+	 */
+	public int evict(EngineGeneration generation){
+		int result = 0;
+		synchronized(this.entries){
+			Iterator<CompiledScript> it = this.entries.values().iterator();
+			while(it.hasNext()){
+				if(EngineGeneration.of(it.next()) == generation){
+					it.remove();
+					result++;
+				}
+			}
+		}
+		this.evictions.addAndGet(result);
+		return result;
+	}
+
+
+	/**
+	 * Removes all the compiled scripts from the cache. Counters are not reset.
+	 */
+	public void clear(){
+		synchronized(this.entries){
+			this.entries.clear();
+		}
+	}
+
+	/**
+	 * Gets the number of compiled scripts in the cache.
+	 * @return the number of compiled scripts in the cache.
+	 */
+	public int size(){
+		synchronized(this.entries){
+			return this.entries.size();
+		}
+	}
+
+	/**
+	 * Gets the number max of compiled scripts kept by the cache.
+	 * @return the number max of compiled scripts.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Sets the number max of compiled scripts kept by the cache.
+	 * If the cache holds more scripts than the new size, the least recently used ones are evicted.
+	 * @param maxSize the number max of compiled scripts.
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		synchronized(this.entries){
+			Iterator<String> it = this.entries.keySet().iterator();
+			while(this.entries.size() > maxSize && it.hasNext()){
+				it.next();
+				it.remove();
+				this.evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of lookups that found a compiled script.
+	 * @return the number of hits.
+	 */
+	public long getHits(){
+		return this.hits.get();
+	}
+
+	/**
+	 * Gets the number of lookups that did not find a compiled script.
+	 * @return the number of misses.
+	 */
+	public long getMisses(){
+		return this.misses.get();
+	}
+
+	/**
+	 * Gets the number of compiled scripts evicted from the cache.
+	 * @return the number of evictions.
+	 */
+	public long getEvictions(){
+		return this.evictions.get();
+	}
+}
@@ -0,0 +1,224 @@
+package scheduler.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The compact record of a finished task, that replaces the script task in the scheduler once it is finished.
+ * It keeps the final snapshot of the task, but neither the script content nor the Future of the task.
+ * The id and the final values of the task never change, but the snapshot may be spilled out of the heap, 
+ * and is then read back each time it is requested, and its rendered form may be kept once it is rendered.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class CompletedTask extends Task {
+
+	/**
+	 * The estimated heap size of a completed task, without its result.
+	 */
+	protected static final long COMPLETED_TASK_SIZE = 200;
+
+	/**
+	 * The final snapshot of the task, null once it is spilled.
+	 */
+	protected volatile ScriptSnapshot snapshot;
+	
+	/**
+	 * The location of the spilled snapshot, null if the snapshot is in the heap.
+	 */
+	protected volatile SpilledSnapshot spilled = null;
+
+	/**
+	 * The final status of the task, kept in the heap when the snapshot is spilled.
+	 */
+	protected final TaskStatus status;
+
+	/**
+	 * The digest of the script content.
+	 */
+	protected final String scriptDigest;
+
+	/**
+	 * The time when the task was submitted, in milliseconds.
+	 */
+	protected final long submittedAt;
+
+	/**
+	 * The time when the task was finished, in milliseconds.
+	 */
+	protected final long finishedAt;
+
+	/**
+	 * The key of the task in the retention order of the scheduler.
+	 */
+	protected final long retentionKey;
+
+	/**
+	 * The estimated heap size of the record, without its rendered snapshot.
+	 */
+	protected final long estimatedSize;
+
+	/**
+	 * The serialized form of the snapshot, rendered on demand by the layer that publishes the snapshot.
+	 */
+	protected volatile ByteBuffer renderedSnapshot = null;
+
+
+	/**
+	 * Creates the record of a finished script task.
+	 * @param task the finished task.
+	 * @param retentionKey the key of the task in the retention order of the scheduler.
+	 */
+	public CompletedTask(AbstractScriptTask task, long retentionKey){
+		this(task.getId(), task.getSnapshot(), task.getScriptDigest(), task.getSubmittedAt(), task.getFinishedAt(), retentionKey);
+	}
+
+	/**
+	 * Creates the record of a finished task from its recorded values.
+	 * @param id the task id.
+	 * @param snapshot the final snapshot of the task.
+	 * @param scriptDigest the digest of the script content.
+	 * @param submittedAt the time when the task was submitted, in milliseconds.
+	 * @param finishedAt the time when the task was finished, in milliseconds.
+	 * @param retentionKey the key of the task in the retention order of the scheduler.
+	 */
+	public CompletedTask(Long id, ScriptSnapshot snapshot, String scriptDigest, long submittedAt, long finishedAt, long retentionKey){
+		this.id = id;
+		this.snapshot = snapshot;
+		this.status = snapshot.getStatus();
+		this.scriptDigest = scriptDigest;
+		this.submittedAt = submittedAt;
+		this.finishedAt = finishedAt;
+		this.retentionKey = retentionKey;
+		this.estimatedSize = COMPLETED_TASK_SIZE + SizeEstimator.estimate(snapshot.getResult());
+	}
+
+
+	/**
+	 * Gets the final snapshot of the task. A spilled snapshot is read back from its segment.
+	 * @return the final snapshot of the task.
+	 * @throws IllegalStateException if the spilled snapshot can not be read back.
+	 */
+	public ScriptSnapshot getSnapshot() {
+		ScriptSnapshot result = this.snapshot;
+		if(result != null){
+			return result;
+		}
+		try{
+			return this.spilled.load();
+		}
+		catch(IOException ex){
+			throw new IllegalStateException("unable to read the spilled result of the task " + this.id, ex);
+		}
+	}
+	
+	/**
+	 * Replaces the snapshot in the heap by its spilled copy.
+	 * @param spilled the location of the spilled snapshot.
+	 */
+	public void spill(SpilledSnapshot spilled){
+		this.spilled = spilled;
+		this.snapshot = null;
+		this.renderedSnapshot = null;
+	}
+	
+	/**
+	 * Gets the location of the spilled snapshot.
+	 * @return the location of the spilled snapshot, null if the snapshot is in the heap.
+	 */
+	public SpilledSnapshot getSpilled() {
+		return spilled;
+	}
+	
+	/**
+	 * Indicates if the snapshot is spilled out of the heap.
+	 * @return true if the snapshot is spilled.
+	 */
+	public boolean isSpilled() {
+		return this.spilled != null;
+	}
+
+	/**
+	 * Gets the final status of the task, without reading back a spilled snapshot.
+	 * @return the final status of the task.
+	 */
+	public TaskStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * Gets the digest of the script content.
+	 * @return the digest of the script content.
+	 */
+	public String getScriptDigest() {
+		return scriptDigest;
+	}
+
+	/**
+	 * Gets the time when the task was submitted.
+	 * @return the submission time in milliseconds.
+	 */
+	public long getSubmittedAt() {
+		return submittedAt;
+	}
+
+	/**
+	 * Gets the time when the task was finished.
+	 * @return the end time in milliseconds.
+	 */
+	public long getFinishedAt() {
+		return finishedAt;
+	}
+
+	/**
+	 * Gets the key of the task in the retention order of the scheduler.
+	 * @return the retention key.
+	 */
+	public long getRetentionKey() {
+		return retentionKey;
+	}
+
+	/**
+	 * Gets the estimated size of the record, with its rendered snapshot if it is kept.
+	 * @return the estimated size in bytes.
+	 */
+	public long getEstimatedSize() {
+		ByteBuffer rendered = this.renderedSnapshot;
+		return rendered == null ? estimatedSize : estimatedSize + rendered.remaining();
+	}
+
+	/**
+	 * Gets the serialized form of the snapshot.
+	 * @return a read-only view of the serialized snapshot, or null if the snapshot is not rendered yet.
+	 */
+	public ByteBuffer getRenderedSnapshot() {
+		ByteBuffer result = this.renderedSnapshot;
+		return result == null ? null : result.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Sets the serialized form of the snapshot. As the snapshot never changes, it only needs to be rendered once.
+	 * The size of the task changes, so the scheduler keeps the rendered snapshot of its finished tasks.
+	 * @param renderedSnapshot the serialized snapshot, positioned at its first byte.
+	 * @see ScriptScheduler#keepRenderedSnapshot(CompletedTask, ByteBuffer)
+	 */
+	public void setRenderedSnapshot(ByteBuffer renderedSnapshot) {
+		this.renderedSnapshot = renderedSnapshot;
+	}
+
+	/**
+	 * Ignored, as the id of a completed task never changes.
+	 * @see Task#setId(Long)
+	 */
+	@Override
+	public void setId(Long id) {
+	}
+
+	/**
+	 * Ignored, as a completed task does not keep the script content.
+	 * @see Task#setScriptContent(String)
+	 */
+	@Override
+	public void setScriptContent(String scriptContent) {
+	}
+}
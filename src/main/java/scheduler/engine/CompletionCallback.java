@@ -0,0 +1,16 @@
+package scheduler.engine;
+
+/**
+ * A callback waiting for the end of a given task of the scheduler.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public interface CompletionCallback {
+
+	/**
+	 * Called once when the task is finished, with the record of the finished task.
+	 * The call may be made by the thread that finished the task, so it must return quickly.
+	 * @param task the record of the finished task.
+	 */
+	void completed(CompletedTask task);
+}
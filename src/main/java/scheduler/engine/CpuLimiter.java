@@ -0,0 +1,159 @@
+package scheduler.engine;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of scripts doing CPU-bound work at the same time, when the scripts are not limited by a pool of threads.
+ * <p>
+ * The compilation of the scripts is done with a permit. The scripts run without a permit, so that the scripts waiting on I/O
+ * are not limited; the limiter is given to the scripts as the binding "cpu", so that a script takes a permit 
+ * for its CPU-bound sections:
+ * </p>
+ * <pre>
+ * def lines = new File(path).readLines()
+ * return cpu.run { lines.collect { it.reverse() } }
+ * </pre>
+ * The permits are reentrant: work run with a permit by a thread that already holds one does not take another one,
+ * and blocking work inside a CPU-bound section can give the permit back with {@link #blocking(Callable)}.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class CpuLimiter {
+
+	/**
+	 * The name of the binding.
+	 */
+	public static final String BINDING = "cpu";
+
+	/**
+	 * The limiter of the current thread, set by the executor that runs the scripts.
+	 */
+	protected static final ThreadLocal<CpuLimiter> CURRENT = new ThreadLocal<CpuLimiter>();
+
+	/**
+	 * The permits of CPU-bound work.
+	 */
+	protected final Semaphore permits;
+
+	/**
+	 * The number of permits.
+	 */
+	protected final int nbPermits;
+
+	/**
+	 * Whether the current thread holds a permit.
+	 */
+	protected final ThreadLocal<Boolean> holding = new ThreadLocal<Boolean>();
+
+
+	/**
+	 * Creates a limiter.
+	 * @param nbPermits the number max of scripts doing CPU-bound work at the same time.
+	 */
+	public CpuLimiter(int nbPermits) {
+		this.nbPermits = nbPermits;
+		this.permits = new Semaphore(nbPermits, true);
+	}
+
+
+	/**
+	 * Gets the limiter of the current thread.
+	 * @return the limiter, or null if the scripts of the current thread are not limited.
+	 */
+	public static CpuLimiter current(){
+		return CURRENT.get();
+	}
+
+	/**
+	 * Runs a command with a limiter set for the current thread.
+	 * @param limiter the limiter.
+	 * @param command the command to be run.
+	 */
+	public static void runWith(CpuLimiter limiter, Runnable command){
+		CURRENT.set(limiter);
+		try{
+			command.run();
+		}
+		finally{
+			CURRENT.remove();
+		}
+	}
+
+
+	/**
+	 * Runs CPU-bound work once a permit is acquired, or at once if the current thread already holds a permit.
+	 * @param work the work to be run.
+	 * @return the result of the work.
+	 * @throws Exception if the work throws an exception.
+	 * @throws InterruptedException if the current thread is interrupted while waiting for a permit.
+	 */
+	public <T> T run(Callable<T> work) throws Exception{
+		if(this.isHolding()){
+			return work.call();
+		}
+		this.permits.acquire();
+		this.holding.set(Boolean.TRUE);
+		try{
+			return work.call();
+		}
+		finally{
+			this.holding.remove();
+			this.permits.release();
+		}
+	}
+
+	/**
+	 * Runs blocking work, such as I/O, after giving back the permit of the current thread, then acquires a permit again.
+	 * The work is run at once if the current thread holds no permit.
+	 * @param work the work to be run.
+	 * @return the result of the work.
+	 * @throws Exception if the work throws an exception.
+	 */
+	public <T> T blocking(Callable<T> work) throws Exception{
+		if(!this.isHolding()){
+			return work.call();
+		}
+		this.holding.remove();
+		this.permits.release();
+		try{
+			return work.call();
+		}
+		finally{
+			this.permits.acquireUninterruptibly();
+			this.holding.set(Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Indicates whether the current thread holds a permit.
+	 * @return true if the current thread holds a permit.
+	 */
+	public boolean isHolding(){
+		return this.holding.get() != null;
+	}
+
+	/**
+	 * Gets the number of permits.
+	 * @return the number max of scripts doing CPU-bound work at the same time.
+	 */
+	public int getNbPermits() {
+		return nbPermits;
+	}
+
+	/**
+	 * Gets the number of permits available.
+	 * @return the number of permits available.
+	 */
+	public int getAvailablePermits(){
+		return this.permits.availablePermits();
+	}
+
+	/**
+	 * Gets an estimation of the number of threads waiting for a permit.
+	 * @return the number of waiting threads.
+	 */
+	public int getNbWaiting(){
+		return this.permits.getQueueLength();
+	}
+}
@@ -0,0 +1,291 @@
+package scheduler.engine;
+
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * A cron expression with five fields: minute, hour, day of month, month and day of week.
+ * Each field is a list of values, ranges and steps, such as "*", "5", "1-5", "0,30", "*&#47;15" or "10-50/10",
+ * the months and the days of week may be given by their three letters name, and Sunday is 0 or 7.
+ * As in the classic cron, if both the day of month and the day of week are restricted, a day matches if either field matches.
+ * The macros "@yearly", "@annually", "@monthly", "@weekly", "@daily", "@midnight" and "@hourly" are also accepted.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class CronExpression {
+
+	/**
+	 * The number max of years searched for the next matching minute, enough to find a 29th of February.
+	 */
+	protected static final int MAX_YEARS = 10;
+
+	/**
+	 * The expressions of the macros, by name.
+	 */
+	protected static final Map<String, String> MACROS = new HashMap<String, String>();
+
+	/**
+	 * The names of the months, the index is the month number minus 1.
+	 */
+	protected static final String[] MONTH_NAMES = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"};
+
+	/**
+	 * The names of the days of week, the index is the day number.
+	 */
+	protected static final String[] DAY_NAMES = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+
+	static{
+		MACROS.put("@yearly", "0 0 1 1 *");
+		MACROS.put("@annually", "0 0 1 1 *");
+		MACROS.put("@monthly", "0 0 1 * *");
+		MACROS.put("@weekly", "0 0 * * 0");
+		MACROS.put("@daily", "0 0 * * *");
+		MACROS.put("@midnight", "0 0 * * *");
+		MACROS.put("@hourly", "0 * * * *");
+	}
+
+	/**
+	 * The expression as given.
+	 */
+	protected final String expression;
+
+	/**
+	 * The time zone in which the expression is evaluated.
+	 */
+	protected final TimeZone timeZone;
+
+	/**
+	 * The matching minutes, from 0 to 59.
+	 */
+	protected final BitSet minutes;
+
+	/**
+	 * The matching hours, from 0 to 23.
+	 */
+	protected final BitSet hours;
+
+	/**
+	 * The matching days of month, from 1 to 31.
+	 */
+	protected final BitSet daysOfMonth;
+
+	/**
+	 * The matching months, from 1 to 12.
+	 */
+	protected final BitSet months;
+
+	/**
+	 * The matching days of week, from 0 (Sunday) to 6.
+	 */
+	protected final BitSet daysOfWeek;
+
+	/**
+	 * Whether the day of month field is "*".
+	 */
+	protected final boolean anyDayOfMonth;
+
+	/**
+	 * Whether the day of week field is "*".
+	 */
+	protected final boolean anyDayOfWeek;
+
+
+	/**
+	 * Parses a cron expression evaluated in the default time zone.
+	 * @param expression the cron expression.
+	 * @throws IllegalArgumentException if the expression is not valid.
+	 */
+	public CronExpression(String expression) throws IllegalArgumentException{
+		this(expression, TimeZone.getDefault());
+	}
+
+	/**
+	 * Parses a cron expression.
+	 * @param expression the cron expression.
+	 * @param timeZone the time zone in which the expression is evaluated.
+	 * @throws IllegalArgumentException if the expression is not valid.
+	 */
+	public CronExpression(String expression, TimeZone timeZone) throws IllegalArgumentException{
+		if(expression == null){
+			throw new IllegalArgumentException("The cron expression is required");
+		}
+		this.expression = expression.trim();
+		this.timeZone = timeZone;
+		String macro = MACROS.get(this.expression.toLowerCase(Locale.ROOT));
+		String[] fields = (macro != null ? macro : this.expression).split("\\s+");
+		if(fields.length != 5){
+			throw new IllegalArgumentException("The cron expression " + expression + " must have 5 fields");
+		}
+		this.minutes = parseField(fields[0], 0, 59, null);
+		this.hours = parseField(fields[1], 0, 23, null);
+		this.daysOfMonth = parseField(fields[2], 1, 31, null);
+		this.months = parseField(fields[3], 1, 12, MONTH_NAMES);
+		BitSet days = parseField(fields[4], 0, 7, DAY_NAMES);
+		if(days.get(7)){
+			days.set(0);
+			days.clear(7);
+		}
+		this.daysOfWeek = days;
+		this.anyDayOfMonth = "*".equals(fields[2]);
+		this.anyDayOfWeek = "*".equals(fields[4]);
+	}
+
+
+	/**
+	 * Gets the expression as given.
+	 * @return the cron expression.
+	 */
+	public String getExpression() {
+		return expression;
+	}
+
+	/**
+	 * Gets the time zone in which the expression is evaluated.
+	 * @return the time zone.
+	 */
+	public TimeZone getTimeZone() {
+		return timeZone;
+	}
+
+	/**
+	 * Gets the first minute matched by the expression strictly after a time.
+	 * @param after the time in milliseconds.
+	 * @return the time of the matching minute in milliseconds, or -1 if no minute matches in the next years.
+	 */
+	public long next(long after){
+		Calendar calendar = Calendar.getInstance(this.timeZone, Locale.ROOT);
+		calendar.setTimeInMillis(after);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		calendar.add(Calendar.MINUTE, 1);
+		int maxYear = calendar.get(Calendar.YEAR) + MAX_YEARS;
+		while(calendar.get(Calendar.YEAR) <= maxYear){
+			if(!this.months.get(calendar.get(Calendar.MONTH) + 1)){
+				calendar.set(Calendar.DAY_OF_MONTH, 1);
+				calendar.set(Calendar.HOUR_OF_DAY, 0);
+				calendar.set(Calendar.MINUTE, 0);
+				calendar.add(Calendar.MONTH, 1);
+			}
+			else if(!this.matchesDay(calendar)){
+				calendar.set(Calendar.HOUR_OF_DAY, 0);
+				calendar.set(Calendar.MINUTE, 0);
+				calendar.add(Calendar.DAY_OF_MONTH, 1);
+			}
+			else if(!this.hours.get(calendar.get(Calendar.HOUR_OF_DAY))){
+				calendar.set(Calendar.MINUTE, 0);
+				calendar.add(Calendar.HOUR_OF_DAY, 1);
+			}
+			else if(!this.minutes.get(calendar.get(Calendar.MINUTE))){
+				calendar.add(Calendar.MINUTE, 1);
+			}
+			else{
+				return calendar.getTimeInMillis();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Indicates whether the day of a calendar matches the day of month and the day of week fields.
+	 * @param calendar the calendar.
+	 * @return true if the day matches.
+	 */
+	protected boolean matchesDay(Calendar calendar){
+		boolean dayOfMonth = this.daysOfMonth.get(calendar.get(Calendar.DAY_OF_MONTH));
+		boolean dayOfWeek = this.daysOfWeek.get(calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY);
+		if(this.anyDayOfMonth || this.anyDayOfWeek){
+			return dayOfMonth && dayOfWeek;
+		}
+		return dayOfMonth || dayOfWeek;
+	}
+
+	/**
+	 * Parses a field of the expression.
+	 * @param field the field, a list of values, ranges and steps.
+	 * @param min the min value of the field.
+	 * @param max the max value of the field.
+	 * @param names the names of the values from min, null if the values have no name.
+	 * @return the matching values.
+	 * @throws IllegalArgumentException if the field is not valid.
+	 */
+	protected static BitSet parseField(String field, int min, int max, String[] names) throws IllegalArgumentException{
+		BitSet result = new BitSet(max + 1);
+		for(String part: field.split(",")){
+			int step = 1;
+			String range = part;
+			int slash = part.indexOf('/');
+			if(slash >= 0){
+				step = parseValue(part.substring(slash + 1), 1, max, null, field);
+				range = part.substring(0, slash);
+			}
+			int start;
+			int end;
+			if("*".equals(range)){
+				start = min;
+				end = max;
+			}
+			else{
+				int dash = range.indexOf('-');
+				if(dash >= 0){
+					start = parseValue(range.substring(0, dash), min, max, names, field);
+					end = parseValue(range.substring(dash + 1), min, max, names, field);
+				}
+				else{
+					start = parseValue(range, min, max, names, field);
+					end = slash >= 0 ? max : start;
+				}
+				if(start > end){
+					throw new IllegalArgumentException("Invalid range " + range + " in the cron field " + field);
+				}
+			}
+			for(int value = start; value <= end; value += step){
+				result.set(value);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Parses a value of a field.
+	 * @param value the value, a number or a name.
+	 * @param min the min value.
+	 * @param max the max value.
+	 * @param names the names of the values from 0 or 1, null if the values have no name.
+	 * @param field the field, for the error message.
+	 * @return the value.
+	 * @throws IllegalArgumentException if the value is not valid.
+	 */
+	protected static int parseValue(String value, int min, int max, String[] names, String field) throws IllegalArgumentException{
+		if(names != null){
+			for(int i = 0; i < names.length; i++){
+				if(names[i].equalsIgnoreCase(value)){
+					return i + (names == MONTH_NAMES ? 1 : 0);
+				}
+			}
+		}
+		int result;
+		try{
+			result = Integer.parseInt(value);
+		}
+		catch(NumberFormatException ex){
+			throw new IllegalArgumentException("Invalid value " + value + " in the cron field " + field);
+		}
+		if(result < min || result > max){
+			throw new IllegalArgumentException("The value " + value + " of the cron field " + field + " is not between " + min + " and " + max);
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the expression as given.
+	 * @see Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return this.expression;
+	}
+}
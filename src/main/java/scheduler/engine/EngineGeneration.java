@@ -0,0 +1,290 @@
+package scheduler.engine;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
+import groovy.lang.Script;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+/**
+ * A generation of compiled scripts: a class loader that defines the classes of the scripts it compiles.
+ * Once retired, a generation compiles no more scripts, and it is closed when its last evaluation is finished,
+ * so that its class loader and its classes can be unloaded as soon as the compiled scripts are no longer referenced.
+ * <p>
+ * The scripts are not compiled nor evaluated by a JSR-223 engine: such an engine registers the methods of every script it evaluates 
+ * as global closures bound to the script, that any later script could call, and that would keep every script and its variables alive.
+ * Each evaluation instead runs a new instance of the script class with its own binding.
+ * </p>
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class EngineGeneration {
+
+	/**
+	 * The way the generation compiles the scripts.
+	 */
+	protected final CompilationMode mode;
+	
+	/**
+	 * The number of the generation, starting at 1 for each compilation mode.
+	 */
+	protected final long number;
+	
+	/**
+	 * The class loader that defines the classes of the scripts.
+	 */
+	protected final GroovyClassLoader loader;
+	
+	/**
+	 * The number of scripts compiled by the generation, that names their classes.
+	 */
+	protected final AtomicLong nbCompiled = new AtomicLong();
+	
+	/**
+	 * The number of evaluations in progress of the scripts compiled by the generation.
+	 */
+	protected final AtomicInteger nbRunning = new AtomicInteger();
+	
+	/**
+	 * Whether the generation is retired and compiles no more scripts.
+	 */
+	protected volatile boolean retired = false;
+	
+	/**
+	 * Whether the generation is closed.
+	 */
+	protected final AtomicBoolean closed = new AtomicBoolean();
+	
+	
+	/**
+	 * Creates a new generation, with a new class loader.
+	 * @param mode the way the generation compiles the scripts.
+	 * @param number the number of the generation.
+	 * @param maxDuration the time in milliseconds after which the scripts of the generation throw a TimeoutException, 0 for no limit.
+	 * @see CompilationMode#createConfiguration(long)
+	 */
+	public EngineGeneration(CompilationMode mode, long number, long maxDuration) {
+		this.mode = mode;
+		this.number = number;
+		this.loader = new GroovyClassLoader(EngineGeneration.class.getClassLoader(), mode.createConfiguration(maxDuration));
+	}
+	
+	
+	/**
+	 * Gets the way the generation compiles the scripts.
+	 * @return the compilation mode.
+	 */
+	public CompilationMode getMode() {
+		return mode;
+	}
+	
+	/**
+	 * Gets the number of the generation.
+	 * @return the number of the generation, starting at 1 for each compilation mode.
+	 */
+	public long getNumber() {
+		return number;
+	}
+	
+	/**
+	 * Gets the number of classes defined by the class loader of the generation, including the classes of the closures.
+	 * @return the number of classes.
+	 */
+	public int getNbClasses() {
+		return this.loader.getLoadedClasses().length;
+	}
+	
+	/**
+	 * Gets the number of evaluations in progress of the scripts compiled by the generation.
+	 * @return the number of running evaluations.
+	 */
+	public int getNbRunning() {
+		return this.nbRunning.get();
+	}
+	
+	/**
+	 * Indicates whether the generation is retired.
+	 * @return true if the generation compiles no more scripts.
+	 */
+	public boolean isRetired() {
+		return retired;
+	}
+	
+	/**
+	 * Indicates whether the generation is closed.
+	 * @return true if the generation is retired and has no more running evaluations.
+	 */
+	public boolean isClosed() {
+		return this.closed.get();
+	}
+	
+	/**
+	 * Compiles a script to a new class defined by the class loader of the generation.
+	 * @param script the content of the script.
+	 * @return the script of the generation, whose evaluations are tracked.
+	 * @throws ScriptException if the script can not be compiled.
+	 */
+	@SuppressWarnings("unchecked")
+	public CompiledScript compile(String script) throws ScriptException {
+		try{
+			Class<?> clazz = this.loader.parseClass(script, "Script" + this.nbCompiled.incrementAndGet() + ".groovy");
+			return new GeneratedScript((Class<? extends Script>) clazz);
+		}
+		catch(CompilationFailedException ex){
+			// keeps the same exception chain as ScriptEngine#compile(String)
+			throw new ScriptException(ex);
+		}
+	}
+	
+	/**
+	 * Retires the generation, then closes it if it has no running evaluation.
+	 */
+	protected void retire() {
+		this.retired = true;
+		if(this.nbRunning.get() == 0){
+			this.close();
+		}
+	}
+	
+	/**
+	 * Counts a new evaluation of a script of the generation.
+	 */
+	protected void acquire() {
+		this.nbRunning.incrementAndGet();
+	}
+	
+	/**
+	 * Counts the end of an evaluation, then closes the generation if it is retired and has no more running evaluation.
+	 */
+	protected void release() {
+		if(this.nbRunning.decrementAndGet() == 0 && this.retired){
+			this.close();
+		}
+	}
+	
+	/**
+	 * Closes the generation: the meta-classes of its classes are removed from the registry and the cache of its class loader is cleared,
+	 * so that nothing but the compiled scripts still referenced keeps the classes loaded.
+	 * A script compiled by a closed generation can still be evaluated, its meta-class is then created again.
+	 */
+	protected void close() {
+		if(this.closed.compareAndSet(false, true)){
+			for(Class<?> clazz: this.loader.getLoadedClasses()){
+				GroovySystem.getMetaClassRegistry().removeMetaClass(clazz);
+			}
+			this.loader.clearCache();
+		}
+	}
+	
+	/**
+	 * Gets the generation that compiled a script.
+	 * @param compiled a compiled script, possibly compiled dynamically after a fallback.
+	 * @return the generation of the script, null if the script was not compiled by a generation.
+	 */
+	public static EngineGeneration of(CompiledScript compiled) {
+		if(compiled instanceof FallbackCompiledScript){
+			compiled = ((FallbackCompiledScript) compiled).delegate;
+		}
+		return compiled instanceof GeneratedScript ? ((GeneratedScript) compiled).getGeneration() : null;
+	}
+	
+	
+	/**
+	 * A script compiled by the generation, that counts its evaluations in progress.
+	 * Each evaluation runs a new instance of the class of the script, with a binding backed by the bindings of the evaluation.
+	 */
+	protected class GeneratedScript extends CompiledScript {
+		
+		/**
+		 * The class of the script, defined by the class loader of the generation.
+		 */
+		protected final Class<? extends Script> scriptClass;
+		
+		/**
+		 * Creates a script of the generation.
+		 * @param scriptClass the class of the script, defined by the class loader of the generation.
+		 */
+		protected GeneratedScript(Class<? extends Script> scriptClass) {
+			this.scriptClass = scriptClass;
+		}
+		
+		/**
+		 * Gets the generation that compiled the script.
+		 * @return the generation.
+		 */
+		public EngineGeneration getGeneration() {
+			return EngineGeneration.this;
+		}
+		
+		/**
+		 * Evaluates the script with the bindings of the engine scope of a context.
+		 * @see CompiledScript#eval(ScriptContext)
+		 */
+		@Override
+		public Object eval(ScriptContext context) throws ScriptException {
+			return this.run(context.getBindings(ScriptContext.ENGINE_SCOPE));
+		}
+		
+		/**
+		 * Evaluates the script with some bindings.
+		 * @see CompiledScript#eval(Bindings)
+		 */
+		@Override
+		public Object eval(Bindings bindings) throws ScriptException {
+			return this.run(bindings);
+		}
+		
+		/**
+		 * Evaluates the script with empty bindings.
+		 * @see CompiledScript#eval()
+		 */
+		@Override
+		public Object eval() throws ScriptException {
+			return this.run(new SimpleBindings());
+		}
+		
+		/**
+		 * Runs a new instance of the script, counted as running in the generation.
+		 * @param variables the variables of the script, where the script also stores the variables it assigns.
+		 * @return the result of the script.
+		 * @throws ScriptException if the script throws an exception.
+		 */
+		protected Object run(Map<String, Object> variables) throws ScriptException {
+			acquire();
+			try{
+				return InvokerHelper.createScript(this.scriptClass, new Binding(variables)).run();
+			}
+			catch(Exception ex){
+				// keeps the same exception chain as ScriptEngine#eval(String)
+				throw new ScriptException(ex);
+			}
+			finally{
+				release();
+			}
+		}
+		
+		/**
+		 * Gets the engine that compiled the script.
+		 * @return null, the script is compiled by the class loader of the generation, not by an engine.
+		 * @see CompiledScript#getEngine()
+		 */
+		@Override
+		public ScriptEngine getEngine() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package scheduler.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The generations of compiled scripts of a compilation mode.
+ * The scripts are compiled by the current generation. When it defines too many classes, it is retired: 
+ * its scripts are evicted from the cache of compiled scripts, so that they are compiled again by a new generation,
+ * and it is closed once its running evaluations are finished. The classes defined by the scripts are thus bounded
+ * by the number of live generations, instead of growing with every script ever compiled.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class EngineGenerations {
+
+	/**
+	 * The default number max of classes defined by a generation before it is retired.
+	 */
+	public static final int DEFAULT_MAX_CLASSES = 2000;
+	
+	/**
+	 * Logger for the generations.
+	 */
+	static final Logger LOG = LoggerFactory.getLogger(EngineGenerations.class);
+	
+	/**
+	 * The way the generations compile the scripts.
+	 */
+	protected final CompilationMode mode;
+	
+	/**
+	 * The cache of compiled scripts, where the scripts of a retired generation are evicted.
+	 */
+	protected final CompiledScriptCache cache;
+	
+	/**
+	 * The number max of classes defined by a generation before it is retired.
+	 */
+	protected volatile int maxClasses;
+	
+	/**
+	 * The time in milliseconds after which the scripts of the new generations throw a TimeoutException, 0 for no limit.
+	 */
+	protected volatile long maxDuration = 0;
+	
+	/**
+	 * The generation that compiles the new scripts.
+	 */
+	protected volatile EngineGeneration current;
+	
+	/**
+	 * The retired generations that are not closed yet.
+	 */
+	protected final List<EngineGeneration> retired = new CopyOnWriteArrayList<EngineGeneration>();
+	
+	/**
+	 * The number of closed generations.
+	 */
+	protected final AtomicLong nbClosed = new AtomicLong();
+	
+	
+	/**
+	 * Creates the generations of a compilation mode, starting with a first generation.
+	 * @param mode the way the generations compile the scripts.
+	 * @param cache the cache of compiled scripts.
+	 * @param maxClasses the number max of classes defined by a generation before it is retired.
+	 */
+	public EngineGenerations(CompilationMode mode, CompiledScriptCache cache, int maxClasses) {
+		this.mode = mode;
+		this.cache = cache;
+		this.maxClasses = maxClasses;
+		this.current = new EngineGeneration(mode, 1, this.maxDuration);
+	}
+	
+	
+	/**
+	 * Gets the generation that compiles the new scripts.
+	 * @return the current generation.
+	 */
+	public EngineGeneration current() {
+		return current;
+	}
+	
+	/**
+	 * Retires a generation if it defines too many classes, and replaces it by a new generation.
+	 * Does nothing if the generation is not the current generation any more.
+	 * @param generation the generation that has just compiled a script.
+	 */
+	public void checkSize(EngineGeneration generation) {
+		if(generation.getNbClasses() >= this.maxClasses){
+			this.renew(generation);
+		}
+	}
+	
+	/**
+	 * Retires a generation and replaces it by a new generation.
+	 * Does nothing if the generation is not the current generation any more.
+	 * @param generation the generation to be retired.
+	 */
+	protected void renew(EngineGeneration generation) {
+		synchronized(this){
+			if(this.current != generation){
+				return;
+			}
+			this.current = new EngineGeneration(this.mode, generation.getNumber() + 1, this.maxDuration);
+		}
+		LOG.info("retires the generation " + generation.getNumber() + " of the " + this.mode + " scripts, that defines " 
+					+ generation.getNbClasses() + " classes");
+		this.retired.add(generation);
+		this.cache.evict(generation);
+		generation.retire();
+		this.purge();
+	}
+	
+	/**
+	 * Forgets the retired generations that are closed.
+	 */
+	protected void purge() {
+		List<EngineGeneration> closed = new ArrayList<EngineGeneration>();
+		for(EngineGeneration generation: this.retired){
+			if(generation.isClosed()){
+				closed.add(generation);
+			}
+		}
+		if(this.retired.removeAll(closed)){
+			this.nbClosed.addAndGet(closed.size());
+		}
+	}
+	
+	/**
+	 * Gets the number max of classes defined by a generation before it is retired.
+	 * @return the number max of classes.
+	 */
+	public int getMaxClasses() {
+		return maxClasses;
+	}
+	
+	/**
+	 * Sets the number max of classes defined by a generation before it is retired. 
+	 * Takes effect at the next compilation of a script.
+	 * @param maxClasses the number max of classes.
+	 */
+	public void setMaxClasses(int maxClasses) {
+		this.maxClasses = maxClasses;
+	}
+	
+	/**
+	 * Gets the time after which the scripts of the new generations throw a TimeoutException.
+	 * @return the time in milliseconds, 0 for no limit.
+	 */
+	public long getMaxDuration() {
+		return maxDuration;
+	}
+	
+	/**
+	 * Sets the time after which the scripts throw a TimeoutException. 
+	 * The current generation is retired, so that the scripts are compiled again with the new limit.
+	 * @param maxDuration the time in milliseconds, 0 for no limit.
+	 */
+	public void setMaxDuration(long maxDuration) {
+		if(this.maxDuration != maxDuration){
+			this.maxDuration = maxDuration;
+			this.renew(this.current);
+		}
+	}
+	
+	/**
+	 * Gets the number of the retired generations that still have running evaluations.
+	 * @return the number of retired generations not closed yet.
+	 */
+	public int getNbRetired() {
+		this.purge();
+		return this.retired.size();
+	}
+	
+	/**
+	 * Gets the number of closed generations.
+	 * @return the number of closed generations.
+	 */
+	public long getNbClosed() {
+		this.purge();
+		return this.nbClosed.get();
+	}
+	
+	/**
+	 * Gets the number of classes defined by the generations that are not closed.
+	 * @return the number of classes of the live generations.
+	 */
+	public int getNbClasses() {
+		int result = this.current.getNbClasses();
+		for(EngineGeneration generation: this.retired){
+			if(!generation.isClosed()){
+				result += generation.getNbClasses();
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,26 @@
+package scheduler.engine;
+
+/**
+ * The way the scheduler executes the scripts.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public enum ExecutionMode {
+	/**
+	 * The scripts are executed by a fixed pool of workers, by priority and shared fairly between the tenants.
+	 */
+	THREAD_POOL,
+	/**
+	 * The scripts are executed by a work-stealing fork/join pool, and can fork subtasks and join them.
+	 * The priorities and the tenants are not taken into account.
+	 */
+	FORK_JOIN,
+	/**
+	 * Each script is executed on its own thread, out of a large bounded pool of platform threads, 
+	 * so that the scripts waiting on I/O do not hold a worker of a small pool.
+	 * The compilations and the sections of the scripts marked as CPU-bound are limited by a semaphore.
+	 * The threads are not virtual threads yet: the Groovy 2.4 runtime does not run on the Java runtimes that have them.
+	 * The priorities and the tenants are not taken into account.
+	 */
+	VIRTUAL_THREADS
+}
@@ -0,0 +1,585 @@
+package scheduler.engine;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The work queue of the scheduler, that shares the workers fairly between the tenants submitting tasks.
+ * <p>
+ * Each tenant has its own queue, ordered by priority. The tenants that have waiting tasks are served by deficit round-robin:
+ * a tenant takes as many tasks in a row as its weight, then gives the turn to the next tenant.
+ * A tenant that runs as many tasks as its cap is skipped until one of its tasks is finished.
+ * The tenants that have neither waiting nor running tasks are forgotten, unless they have a specific weight or cap,
+ * so that the tenants do not grow without bound with the names given by the clients.
+ * </p>
+ * The commands must be given by the priority executor, that notifies the queue when a command is finished.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class FairShareQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+	/**
+	 * The tenant of the commands that do not give one.
+	 */
+	public static final String DEFAULT_TENANT = "default";
+
+
+	/**
+	 * Guards all the state of the queue.
+	 */
+	protected final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Signaled when a command may be taken.
+	 */
+	protected final Condition available = this.lock.newCondition();
+
+	/**
+	 * The tenants, by name.
+	 */
+	protected final LinkedHashMap<String, Tenant> tenants = new LinkedHashMap<String, Tenant>();
+
+	/**
+	 * The tenants that have waiting commands, in round-robin order.
+	 */
+	protected final ArrayDeque<Tenant> active = new ArrayDeque<Tenant>();
+
+	/**
+	 * The number of waiting commands.
+	 */
+	protected int count = 0;
+
+	/**
+	 * The weight of the tenants that have no specific weight.
+	 */
+	protected int defaultWeight = 1;
+
+	/**
+	 * The number max of running tasks of the tenants that have no specific cap, 0 for no limit.
+	 */
+	protected int defaultCap = 0;
+
+
+	/**
+	 * Gets the tenant of a command.
+	 * @param command the command.
+	 * @return the tenant of the command.
+	 */
+	protected static String tenantOf(Runnable command){
+		String result = null;
+		if(command instanceof PriorityExecutor.QueuedCommand){
+			result = ((PriorityExecutor.QueuedCommand) command).tenant;
+		}
+		return result == null ? DEFAULT_TENANT : result;
+	}
+
+	/**
+	 * Gets a tenant, and creates it if it is unknown. Must be called with the lock.
+	 * @param name the name of the tenant.
+	 * @return the tenant.
+	 */
+	protected Tenant tenant(String name){
+		Tenant result = this.tenants.get(name);
+		if(result == null){
+			result = new Tenant(name);
+			this.tenants.put(name, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Forgets a tenant if it has neither waiting nor running commands, nor a specific weight or cap. Must be called with the lock.
+	 * The default tenant is never forgotten.
+	 * @param tenant the tenant.
+	 */
+	protected void evictIfIdle(Tenant tenant){
+		if(tenant.isIdle() && !DEFAULT_TENANT.equals(tenant.name)){
+			this.tenants.remove(tenant.name);
+		}
+	}
+
+
+	/**
+	 * Adds a command to the queue of its tenant.
+	 * @see java.util.Queue#offer(Object)
+	 */
+	@Override
+	public boolean offer(Runnable command) {
+		if(command == null){
+			throw new NullPointerException();
+		}
+		this.lock.lock();
+		try{
+			Tenant tenant = this.tenant(tenantOf(command));
+			if(tenant.queue.isEmpty()){
+				this.active.addLast(tenant);
+			}
+			tenant.queue.add(command);
+			this.count++;
+			this.available.signal();
+			return true;
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @see BlockingQueue#put(Object)
+	 */
+	@Override
+	public void put(Runnable command) {
+		this.offer(command);
+	}
+
+	/**
+	 * @see BlockingQueue#offer(Object, long, TimeUnit)
+	 */
+	@Override
+	public boolean offer(Runnable command, long timeout, TimeUnit unit) {
+		return this.offer(command);
+	}
+
+	/**
+	 * Takes the next command by deficit round-robin, skipping the tenants at their cap. Must be called with the lock.
+	 * @return the next command, or null if no tenant can run a command.
+	 */
+	protected Runnable dequeue(){
+		for(int i = 0; i < this.active.size(); i++){
+			Tenant tenant = this.active.peekFirst();
+			if(tenant.isCapped()){
+				this.active.addLast(this.active.pollFirst());
+				continue;
+			}
+			if(tenant.deficit <= 0){
+				tenant.deficit += tenant.getWeight();
+			}
+			tenant.deficit--;
+			Runnable result = tenant.queue.poll();
+			tenant.running++;
+			tenant.started++;
+			if(result instanceof PriorityExecutor.QueuedCommand){
+				((PriorityExecutor.QueuedCommand) result).counted = true;
+			}
+			if(tenant.queue.isEmpty()){
+				this.active.pollFirst();
+				tenant.deficit = 0;
+			}
+			else if(tenant.deficit <= 0){
+				this.active.addLast(this.active.pollFirst());
+			}
+			this.count--;
+			return result;
+		}
+		return null;
+	}
+
+	/**
+	 * Notifies the queue that a command taken from it is finished, so that its tenant may run another one.
+	 * @param command the finished command.
+	 */
+	public void release(PriorityExecutor.QueuedCommand command){
+		if(!command.counted){
+			return;
+		}
+		this.lock.lock();
+		try{
+			command.counted = false;
+			Tenant tenant = this.tenant(tenantOf(command));
+			tenant.running--;
+			if(!tenant.queue.isEmpty()){
+				this.available.signal();
+			}
+			else{
+				this.evictIfIdle(tenant);
+			}
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @see java.util.Queue#poll()
+	 */
+	@Override
+	public Runnable poll() {
+		this.lock.lock();
+		try{
+			return this.dequeue();
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @see BlockingQueue#take()
+	 */
+	@Override
+	public Runnable take() throws InterruptedException {
+		this.lock.lockInterruptibly();
+		try{
+			Runnable result;
+			while((result = this.dequeue()) == null){
+				this.available.await();
+			}
+			return result;
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @see BlockingQueue#poll(long, TimeUnit)
+	 */
+	@Override
+	public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		this.lock.lockInterruptibly();
+		try{
+			Runnable result;
+			while((result = this.dequeue()) == null){
+				if(nanos <= 0){
+					return null;
+				}
+				nanos = this.available.awaitNanos(nanos);
+			}
+			return result;
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the first command of the tenant whose turn it is, regardless of the caps.
+	 * @see java.util.Queue#peek()
+	 */
+	@Override
+	public Runnable peek() {
+		this.lock.lock();
+		try{
+			Tenant tenant = this.active.peekFirst();
+			return tenant == null ? null : tenant.queue.peek();
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @see java.util.Collection#remove(Object)
+	 */
+	@Override
+	public boolean remove(Object o) {
+		if(!(o instanceof Runnable)){
+			return false;
+		}
+		this.lock.lock();
+		try{
+			Tenant tenant = this.tenants.get(tenantOf((Runnable) o));
+			if(tenant == null || !tenant.queue.remove(o)){
+				return false;
+			}
+			if(tenant.queue.isEmpty()){
+				this.active.remove(tenant);
+				tenant.deficit = 0;
+				this.evictIfIdle(tenant);
+			}
+			this.count--;
+			return true;
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @see java.util.Collection#size()
+	 */
+	@Override
+	public int size() {
+		this.lock.lock();
+		try{
+			return this.count;
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @see BlockingQueue#remainingCapacity()
+	 */
+	@Override
+	public int remainingCapacity() {
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Gets an iterator over a copy of the waiting commands.
+	 * @see java.util.Collection#iterator()
+	 */
+	@Override
+	public Iterator<Runnable> iterator() {
+		this.lock.lock();
+		try{
+			ArrayList<Runnable> result = new ArrayList<Runnable>(this.count);
+			for(Tenant tenant: this.active){
+				result.addAll(tenant.queue);
+			}
+			return result.iterator();
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes all the waiting commands, regardless of the caps.
+	 * @see BlockingQueue#drainTo(Collection)
+	 */
+	@Override
+	public int drainTo(Collection<? super Runnable> c) {
+		return this.drainTo(c, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Removes waiting commands, regardless of the caps.
+	 * @see BlockingQueue#drainTo(Collection, int)
+	 */
+	@Override
+	public int drainTo(Collection<? super Runnable> c, int maxElements) {
+		this.lock.lock();
+		try{
+			int result = 0;
+			Tenant tenant;
+			while(result < maxElements && (tenant = this.active.peekFirst()) != null){
+				c.add(tenant.queue.poll());
+				result++;
+				this.count--;
+				if(tenant.queue.isEmpty()){
+					this.active.pollFirst();
+					tenant.deficit = 0;
+					this.evictIfIdle(tenant);
+				}
+			}
+			return result;
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Sets the weight of the tenants that have no specific weight.
+	 * @param defaultWeight the weight, at least 1.
+	 */
+	public void setDefaultWeight(int defaultWeight) {
+		this.lock.lock();
+		try{
+			this.defaultWeight = Math.max(1, defaultWeight);
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the number max of running tasks of the tenants that have no specific cap.
+	 * @param defaultCap the number max of running tasks, 0 for no limit.
+	 */
+	public void setDefaultCap(int defaultCap) {
+		this.lock.lock();
+		try{
+			this.defaultCap = defaultCap;
+			this.available.signalAll();
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the weight of a tenant, that is the number of tasks it takes in a row when it is its turn.
+	 * @param name the name of the tenant.
+	 * @param weight the weight, at least 1.
+	 */
+	public void setWeight(String name, int weight){
+		this.lock.lock();
+		try{
+			this.tenant(name).weight = Math.max(1, weight);
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the number max of running tasks of a tenant.
+	 * @param name the name of the tenant.
+	 * @param cap the number max of running tasks, 0 for no limit.
+	 */
+	public void setCap(String name, int cap){
+		this.lock.lock();
+		try{
+			this.tenant(name).cap = cap;
+			this.available.signalAll();
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the names of the tenants known by the queue: the tenants that have waiting or running commands, 
+	 * the tenants that have a specific weight or cap, and the default tenant once it has been used.
+	 * @return the names of the tenants, sorted.
+	 */
+	public Set<String> getTenants(){
+		this.lock.lock();
+		try{
+			return new TreeSet<String>(this.tenants.keySet());
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of waiting commands of a tenant.
+	 * @param name the name of the tenant.
+	 * @return the number of waiting commands.
+	 */
+	public int getNbQueued(String name){
+		this.lock.lock();
+		try{
+			Tenant tenant = this.tenants.get(name);
+			return tenant == null ? 0 : tenant.queue.size();
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of running commands of a tenant.
+	 * @param name the name of the tenant.
+	 * @return the number of running commands.
+	 */
+	public int getNbRunning(String name){
+		this.lock.lock();
+		try{
+			Tenant tenant = this.tenants.get(name);
+			return tenant == null ? 0 : tenant.running;
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of commands of a tenant taken from the queue, since the tenant is known by the queue.
+	 * @param name the name of the tenant.
+	 * @return the number of started commands.
+	 */
+	public long getNbStarted(String name){
+		this.lock.lock();
+		try{
+			Tenant tenant = this.tenants.get(name);
+			return tenant == null ? 0 : tenant.started;
+		}
+		finally{
+			this.lock.unlock();
+		}
+	}
+
+
+	/**
+	 * The state of a tenant, guarded by the lock of the queue.
+	 */
+	protected class Tenant {
+
+		/**
+		 * The name of the tenant.
+		 */
+		protected final String name;
+
+		/**
+		 * The waiting commands of the tenant, by priority.
+		 */
+		protected final PriorityQueue<Runnable> queue = new PriorityQueue<Runnable>();
+
+		/**
+		 * The specific weight of the tenant, 0 to use the default weight.
+		 */
+		protected int weight = 0;
+
+		/**
+		 * The specific number max of running tasks, -1 to use the default cap.
+		 */
+		protected int cap = -1;
+
+		/**
+		 * The number of commands the tenant may still take in its turn.
+		 */
+		protected int deficit = 0;
+
+		/**
+		 * The number of running commands.
+		 */
+		protected int running = 0;
+
+		/**
+		 * The number of commands taken from the queue.
+		 */
+		protected long started = 0;
+
+		/**
+		 * Creates a tenant.
+		 * @param name the name of the tenant.
+		 */
+		protected Tenant(String name){
+			this.name = name;
+		}
+
+		/**
+		 * Gets the weight of the tenant.
+		 * @return the specific weight, or the default weight.
+		 */
+		protected int getWeight(){
+			return this.weight > 0 ? this.weight : defaultWeight;
+		}
+
+		/**
+		 * Indicates if the tenant runs as many commands as its cap.
+		 * @return true if the tenant can not run another command.
+		 */
+		protected boolean isCapped(){
+			int limit = this.cap >= 0 ? this.cap : defaultCap;
+			return limit > 0 && this.running >= limit;
+		}
+
+		/**
+		 * Indicates if the tenant may be forgotten.
+		 * @return true if the tenant has neither waiting nor running commands, nor a specific weight or cap.
+		 */
+		protected boolean isIdle(){
+			return this.queue.isEmpty() && this.running == 0 && this.weight == 0 && this.cap < 0;
+		}
+	}
+}
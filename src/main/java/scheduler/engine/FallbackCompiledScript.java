@@ -0,0 +1,96 @@
+package scheduler.engine;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * A script compiled dynamically because it could not be compiled in the requested mode.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class FallbackCompiledScript extends CompiledScript {
+
+	/**
+	 * The script compiled dynamically.
+	 */
+	protected final CompiledScript delegate;
+	
+	/**
+	 * The mode the script could not be compiled in.
+	 */
+	protected final CompilationMode mode;
+	
+	/**
+	 * Why the script could not be compiled in the requested mode.
+	 */
+	protected final String reason;
+	
+	
+	/**
+	 * Creates a script compiled dynamically after a failed compilation.
+	 * @param delegate the script compiled dynamically.
+	 * @param mode the mode the script could not be compiled in.
+	 * @param reason why the script could not be compiled in this mode.
+	 */
+	public FallbackCompiledScript(CompiledScript delegate, CompilationMode mode, String reason) {
+		this.delegate = delegate;
+		this.mode = mode;
+		this.reason = reason;
+	}
+
+	/**
+	 * Evaluates the script compiled dynamically.
+	 * @see CompiledScript#eval(ScriptContext)
+	 */
+	@Override
+	public Object eval(ScriptContext context) throws ScriptException {
+		return this.delegate.eval(context);
+	}
+	
+	/**
+	 * Evaluates the script compiled dynamically with some bindings.
+	 * @see CompiledScript#eval(Bindings)
+	 */
+	@Override
+	public Object eval(Bindings bindings) throws ScriptException {
+		return this.delegate.eval(bindings);
+	}
+	
+	/**
+	 * Evaluates the script compiled dynamically with empty bindings.
+	 * @see CompiledScript#eval()
+	 */
+	@Override
+	public Object eval() throws ScriptException {
+		return this.delegate.eval();
+	}
+
+	/**
+	 * Gets the engine that compiled the script dynamically.
+	 * @return null if the script was compiled by a generation.
+	 * @see CompiledScript#getEngine()
+	 */
+	@Override
+	public ScriptEngine getEngine() {
+		return this.delegate.getEngine();
+	}
+	
+	/**
+	 * Gets the mode the script could not be compiled in.
+	 * @return the requested mode.
+	 */
+	public CompilationMode getMode() {
+		return mode;
+	}
+	
+	/**
+	 * Gets why the script could not be compiled in the requested mode.
+	 * @return the message of the compilation error.
+	 */
+	public String getReason() {
+		return reason;
+	}
+}
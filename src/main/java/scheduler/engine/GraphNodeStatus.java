@@ -0,0 +1,29 @@
+package scheduler.engine;
+
+/**
+ * Status of a node of a task graph.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public enum GraphNodeStatus {
+	/**
+	 * The node waits for its parents, its task is not submitted.
+	 */
+	WAITING,
+	/**
+	 * The task of the node is submitted and not finished.
+	 */
+	RUNNING,
+	/**
+	 * The task of the node is finished successfully.
+	 */
+	DONE,
+	/**
+	 * The task of the node is finished with an exception, cancelled or timed out, or could not be submitted.
+	 */
+	FAILED,
+	/**
+	 * The node is never run, because a parent failed or was skipped, or because the graph is cancelled.
+	 */
+	SKIPPED
+}
@@ -1,7 +1,15 @@
 package scheduler.engine;
 
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
 import javax.script.ScriptException;
-import javax.script.ScriptEngine;
+import javax.script.SimpleBindings;
 import javax.xml.bind.annotation.XmlRootElement;
 
 /**
@@ -11,6 +19,52 @@ import javax.xml.bind.annotation.XmlRootElement;
  */
 public class GroovyScriptTask extends AbstractScriptTask {
 
+	/**
+	 * The compiled Groovy scripts, shared by all the Groovy tasks.
+	 */
+	protected static CompiledScriptCache compiledScripts = new CompiledScriptCache(CompiledScriptCache.DEFAULT_MAX_SIZE);
+	
+	/**
+	 * The generations that compile the scripts, by compilation mode.
+	 */
+	protected static final Map<CompilationMode, EngineGenerations> generations = new EnumMap<CompilationMode, EngineGenerations>(CompilationMode.class);
+	
+	static{
+		for(CompilationMode mode: CompilationMode.values()){
+			generations.put(mode, new EngineGenerations(mode, compiledScripts, EngineGenerations.DEFAULT_MAX_CLASSES));
+		}
+	}
+	
+	/**
+	 * The way the new tasks compile their scripts.
+	 */
+	protected static volatile CompilationMode defaultCompilationMode = CompilationMode.DYNAMIC;
+	
+	/**
+	 * The number of scripts compiled dynamically because they could not be compiled in the requested mode.
+	 */
+	protected static final AtomicLong nbFallbacks = new AtomicLong();
+	
+	/**
+	 * The script used to warm up a generation.
+	 */
+	protected static final String WARM_UP_SCRIPT = "null";
+	
+	/**
+	 * The way the task compiles its script.
+	 */
+	protected final CompilationMode compilationMode;
+	
+	/**
+	 * Why the script of the task could not be compiled in the requested mode, null if it could or if the task has not been run.
+	 */
+	protected volatile String compilationFallback = null;
+	
+	/**
+	 * The binding that forks the subtasks of the script, null if the task is not run by a fork/join pool or is not started.
+	 */
+	protected volatile ScriptForkJoin forkJoin = null;
+
 	/**
 	 * Creates a new task to launch a given Groovy script
 	 * @param bodyScript the body of the script to be launched.
@@ -18,17 +72,316 @@ public class GroovyScriptTask extends AbstractScriptTask {
 	 */
 	public GroovyScriptTask(String bodyScript, Long id) {
 		super(bodyScript, id);
+		this.compilationMode = defaultCompilationMode;
+	}
+
+
+	/**
+	 * Gets the cache of compiled Groovy scripts.
+	 * @return the cache of compiled Groovy scripts.
+	 */
+	public static CompiledScriptCache getCompiledScriptCache(){
+		return compiledScripts;
+	}
+
+
+	/**
+	 * Gets the generations that compile the scripts in a mode.
+	 * @param mode the compilation mode.
+	 * @return the generations of the mode.
+	 */
+	public static EngineGenerations getGenerations(CompilationMode mode){
+		return generations.get(mode);
+	}
+	
+	/**
+	 * Sets the number max of classes defined by a generation before it is retired, for all the compilation modes.
+	 * @param maxClasses the number max of classes.
+	 * @see EngineGenerations
+	 */
+	public static void setMaxClassesPerGeneration(int maxClasses){
+		for(EngineGenerations modeGenerations: generations.values()){
+			modeGenerations.setMaxClasses(maxClasses);
+		}
+	}
+	
+	/**
+	 * Sets the time after which the scripts throw a TimeoutException, for all the compilation modes.
+	 * The scripts already compiled are compiled again with the new limit.
+	 * @param maxDuration the time in milliseconds, 0 for no limit.
+	 * @see EngineGenerations#setMaxDuration(long)
+	 */
+	public static void setMaxScriptDuration(long maxDuration){
+		for(EngineGenerations modeGenerations: generations.values()){
+			modeGenerations.setMaxDuration(maxDuration);
+		}
+	}
+	
+	/**
+	 * Gets the way the new tasks compile their scripts.
+	 * @return the compilation mode of the new tasks.
+	 */
+	public static CompilationMode getDefaultCompilationMode(){
+		return defaultCompilationMode;
+	}
+	
+	/**
+	 * Sets the way the new tasks compile their scripts. The tasks already created are not affected.
+	 * @param mode the compilation mode of the new tasks.
+	 */
+	public static void setDefaultCompilationMode(CompilationMode mode){
+		defaultCompilationMode = mode;
+	}
+	
+	/**
+	 * Gets the number of scripts compiled dynamically because they could not be compiled in the requested mode.
+	 * @return the number of fallbacks.
+	 */
+	public static long getNbFallbacks(){
+		return nbFallbacks.get();
 	}
 	
+	/**
+	 * Gets the way the task compiles its script.
+	 * @return the compilation mode of the task.
+	 */
+	public CompilationMode getCompilationMode() {
+		return compilationMode;
+	}
 	
 	/**
+	 * Gets why the script of the task could not be compiled in the requested mode.
+	 * @return the message of the compilation error, null if the script was compiled in the requested mode or if the task has not been run.
+	 */
+	public String getCompilationFallback() {
+		return compilationFallback;
+	}
+
+
+	/**
+	 * Evaluates the script, compiled in the mode of the task, with the variables of the task.
+	 * If the task is run by a fork/join pool, the subtasks forked by the script are recorded with the task, 
+	 * so that they are cancelled when the task is done.
 	 * @see AbstractScriptTask#doCallExecution() Object
+	 * @see #evaluate(CompiledScript, Map, ScriptForkJoin)
 	 */
 	@Override
 	public Object doCallExecution() throws ScriptException{
-		ScriptEngine engine  = manager.getEngineByName("groovy");
-	    Object result = engine.eval(this.scriptContent);
-	    return result;
+		CompiledScript compiled = compile(this.scriptContent, this.getScriptDigest(), this.compilationMode);
+		if(compiled instanceof FallbackCompiledScript){
+			this.compilationFallback = ((FallbackCompiledScript) compiled).getReason();
+		}
+		ScriptForkJoin taskForkJoin = null;
+		if(ForkJoinTask.inForkJoinPool()){
+			taskForkJoin = new ScriptForkJoin(ForkJoinTask.getPool());
+			this.forkJoin = taskForkJoin;
+			if(this.future.isDone()){
+				// cancelled before the binding was set
+				taskForkJoin.cancel();
+			}
+		}
+		return evaluate(compiled, this.bindings, taskForkJoin);
+	}
+	
+	/**
+	 * Cancels the subtasks forked by the script and not yet finished.
+	 * @see AbstractScriptTask#finish()
+	 */
+	@Override
+	protected void finish() {
+		ScriptForkJoin taskForkJoin = this.forkJoin;
+		if(taskForkJoin != null){
+			taskForkJoin.cancel();
+		}
+	}
+	
+	/**
+	 * Gets a snapshot of the task, that also tells why its script could not be compiled in the requested mode.
+	 * @see AbstractScriptTask#getSnapshot()
+	 */
+	@Override
+	public ScriptSnapshot getSnapshot() {
+		ScriptSnapshot result = super.getSnapshot();
+		result.setCompilationFallback(this.compilationFallback);
+		return result;
+	}
+	
+	/**
+	 * Evaluates a script without variables.
+	 * @param script the content of the script.
+	 * @param digest the digest of the script content.
+	 * @return the result of the script.
+	 * @throws ScriptException if the script can not be compiled or throws an exception.
+	 * @see #evaluate(String, String, Map)
+	 */
+	public static Object evaluate(String script, String digest) throws ScriptException{
+		return evaluate(script, digest, null);
+	}
+	
+	/**
+	 * Warms up the current generation of a compilation mode by compiling and running a trivial script, 
+	 * so that the first task does not pay for the initialization of the Groovy runtime.
+	 * @param mode the compilation mode.
+	 */
+	public static void warmUp(CompilationMode mode){
+		try{
+			generations.get(mode).current().compile(WARM_UP_SCRIPT).eval();
+		}
+		catch(ScriptException ex){
+			LOG.warn("unable to warm up the script generation", ex);
+		}
 	}
 	
+	/**
+	 * Gets the script compiled dynamically from the cache, or compiles it and adds it to the cache.
+	 * @param script the content of the script.
+	 * @param digest the digest of the script content.
+	 * @return the compiled script.
+	 * @throws ScriptException if the script can not be compiled.
+	 */
+	public static CompiledScript compile(String script, String digest) throws ScriptException{
+		return compile(script, digest, CompilationMode.DYNAMIC);
+	}
+	
+	/**
+	 * Gets the compiled script from the cache, or compiles it and adds it to the cache.
+	 * The script is compiled by the current generation of its mode, that may then be retired if it defines too many classes.
+	 * If the script can not be compiled in a checked mode, it is compiled dynamically and the reason is kept with the compiled script.
+	 * @param script the content of the script.
+	 * @param digest the digest of the script content.
+	 * @param mode the way the script is compiled.
+	 * @return the compiled script, a {@link FallbackCompiledScript} if the script could only be compiled dynamically.
+	 * @throws ScriptException if the script can not be compiled, even dynamically.
+	 */
+	public static CompiledScript compile(String script, String digest, CompilationMode mode) throws ScriptException{
+		String key = mode == CompilationMode.DYNAMIC ? digest : digest + "/" + mode.name();
+		CompiledScript compiled = compiledScripts.get(key);
+		if(compiled == null){
+			EngineGenerations modeGenerations = generations.get(mode);
+			EngineGeneration generation = modeGenerations.current();
+			try{
+				compiled = compileWith(generation, script);
+			}
+			catch(ScriptException ex){
+				if(mode == CompilationMode.DYNAMIC){
+					throw ex;
+				}
+				compiled = new FallbackCompiledScript(compile(script, digest), mode, ex.getMessage());
+				nbFallbacks.incrementAndGet();
+				LOG.info("the script " + digest + " can not be compiled in " + mode + " mode: " + ex.getMessage());
+			}
+			compiledScripts.put(key, compiled);
+			modeGenerations.checkSize(generation);
+		}
+		return compiled;
+	}
+	
+	/**
+	 * Compiles a script with a generation, with a permit of CPU-bound work if the CPU-bound work of the current thread is limited.
+	 * @param generation the generation that compiles the script.
+	 * @param script the content of the script.
+	 * @return the compiled script.
+	 * @throws ScriptException if the script can not be compiled.
+	 */
+	protected static CompiledScript compileWith(EngineGeneration generation, String script) throws ScriptException{
+		CpuLimiter limiter = CpuLimiter.current();
+		if(limiter == null){
+			return generation.compile(script);
+		}
+		else{
+			return compileWith(limiter, generation, script);
+		}
+	}
+	
+	/**
+	 * Gets the script compiled dynamically from the cache, or compiles it, 
+	 * then evaluates it with new bindings.
+	 * If the current worker belongs to a fork/join pool, the bindings give the script a way to fork subtasks.
+	 * If the CPU-bound work of the current thread is limited, the script is compiled with a permit, then evaluated without one,
+	 * and the bindings give the script the limiter, so that it takes a permit for its CPU-bound sections.
+	 * The variables of the script are added to the bindings first, so they can not replace these objects.
+	 * @param script the content of the script.
+	 * @param digest the digest of the script content.
+	 * @param variables the values of the variables of the script by name, may be null.
+	 * @return the result of the script.
+	 * @throws ScriptException if the script can not be compiled or throws an exception.
+	 * @see ScriptForkJoin
+	 * @see CpuLimiter
+	 */
+	public static Object evaluate(String script, String digest, Map<String, Object> variables) throws ScriptException{
+		return evaluate(compile(script, digest), variables);
+	}
+	
+	/**
+	 * Evaluates a compiled script with new bindings, so that nothing is shared with the other evaluations of the script.
+	 * @param compiled the compiled script.
+	 * @param variables the values of the variables of the script by name, may be null.
+	 * @return the result of the script.
+	 * @throws ScriptException if the script throws an exception.
+	 * @see #evaluate(String, String, Map)
+	 */
+	public static Object evaluate(CompiledScript compiled, Map<String, Object> variables) throws ScriptException{
+		ScriptForkJoin forkJoin = null;
+		if(ForkJoinTask.inForkJoinPool()){
+			forkJoin = new ScriptForkJoin(ForkJoinTask.getPool());
+		}
+		return evaluate(compiled, variables, forkJoin);
+	}
+	
+	/**
+	 * Evaluates a compiled script with new bindings, that give the script a binding to fork subtasks.
+	 * @param compiled the compiled script.
+	 * @param variables the values of the variables of the script by name, may be null.
+	 * @param forkJoin the binding that forks the subtasks of the script, null if the script can not fork.
+	 * @return the result of the script.
+	 * @throws ScriptException if the script throws an exception.
+	 * @see #evaluate(CompiledScript, Map)
+	 */
+	public static Object evaluate(CompiledScript compiled, Map<String, Object> variables, ScriptForkJoin forkJoin) throws ScriptException{
+		CpuLimiter limiter = CpuLimiter.current();
+		Bindings bindings = new SimpleBindings();
+		if(variables != null){
+			bindings.putAll(variables);
+		}
+		if(forkJoin != null){
+			bindings.put(ScriptForkJoin.BINDING, forkJoin);
+		}
+		if(limiter != null){
+			bindings.put(CpuLimiter.BINDING, limiter);
+		}
+		try{
+			return compiled.eval(bindings);
+		}
+		catch(ScriptException ex){
+			// keeps the same exception chain as ScriptEngine#eval(String)
+			throw new ScriptException(ex);
+		}
+	}
+	
+	/**
+	 * Compiles a script once a permit of CPU-bound work is acquired.
+	 * @param limiter the limiter of the CPU-bound work.
+	 * @param generation the generation that compiles the script.
+	 * @param script the content of the script.
+	 * @return the compiled script.
+	 * @throws ScriptException if the script can not be compiled, or if the thread is interrupted while waiting for a permit.
+	 */
+	protected static CompiledScript compileWith(CpuLimiter limiter, final EngineGeneration generation, final String script) throws ScriptException{
+		try{
+			return limiter.run(new Callable<CompiledScript>() {
+				@Override
+				public CompiledScript call() throws ScriptException {
+					return generation.compile(script);
+				}
+			});
+		}
+		catch(ScriptException ex){
+			throw ex;
+		}
+		catch(Exception ex){
+			ScriptException result = new ScriptException(ex.toString());
+			result.initCause(ex);
+			throw result;
+		}
+	}
 }
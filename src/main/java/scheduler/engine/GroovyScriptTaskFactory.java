@@ -10,12 +10,11 @@ public class GroovyScriptTaskFactory extends ScriptTaskFactory{
 
 	/**
 	 * Creates a Groovy script task.
-	 * @see ScriptTaskFactory#create(String) create
+	 * @see ScriptTaskFactory#create(String, Long) create
 	 */
 	@Override
-	public AbstractScriptTask create(String bodyString) {
-		currentId++;
-		return new GroovyScriptTask(bodyString, currentId);
+	public AbstractScriptTask create(String bodyString, Long id) {
+		return new GroovyScriptTask(bodyString, id);
 	}
 
 }
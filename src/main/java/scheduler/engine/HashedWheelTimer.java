@@ -0,0 +1,441 @@
+package scheduler.engine;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A timer that runs short actions once their delay has expired, with a single thread and a hashed wheel of buckets.
+ * The wheel turns one bucket per tick, and a timeout is put in the bucket of its deadline, with the number of turns left before it expires.
+ * Adding and cancelling a timeout only append it to a lock-free queue, and the timer thread moves it to its bucket or out of it,
+ * so that hundreds of thousands of pending timeouts cost a few objects each and no scheduled future.
+ * The timeouts expire with the precision of a tick, and their actions are run by the timer thread, so they must be short.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class HashedWheelTimer {
+
+	/**
+	 * The default duration of a tick, in milliseconds.
+	 */
+	public static final long DEFAULT_TICK_DURATION = 10;
+
+	/**
+	 * The default number of buckets of the wheel.
+	 */
+	public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+	/**
+	 * The number max of new timeouts moved to their bucket at each tick, so that a burst of timeouts does not delay the expirations.
+	 */
+	protected static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+	/**
+	 * Logger for the timers.
+	 */
+	static final Logger LOG = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+	/**
+	 * The duration of a tick, in nanoseconds.
+	 */
+	protected final long tickNanos;
+
+	/**
+	 * The buckets of the wheel, a power of two.
+	 */
+	protected final Bucket[] wheel;
+
+	/**
+	 * The mask that gives the bucket of a tick.
+	 */
+	protected final int mask;
+
+	/**
+	 * The new timeouts, not yet in their bucket.
+	 */
+	protected final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+	/**
+	 * The cancelled timeouts, not yet removed from their bucket.
+	 */
+	protected final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+	/**
+	 * The number of timeouts neither expired nor cancelled.
+	 */
+	protected final AtomicLong nbPending = new AtomicLong();
+
+	/**
+	 * The number of expired timeouts.
+	 */
+	protected final AtomicLong nbExpired = new AtomicLong();
+
+	/**
+	 * The time when the timer was started, in nanoseconds. The deadlines are relative to this time.
+	 */
+	protected final long startTime;
+
+	/**
+	 * The thread that turns the wheel.
+	 */
+	protected final Thread worker;
+
+	/**
+	 * Whether the timer is stopped.
+	 */
+	protected volatile boolean stopped = false;
+
+	/**
+	 * The number of ticks elapsed, only used by the timer thread.
+	 */
+	protected long tick = 0;
+
+
+	/**
+	 * Creates and starts a timer.
+	 * @param name the name of the timer thread.
+	 * @param tickDuration the duration of a tick, that is the precision of the timer.
+	 * @param unit the unit of the tick duration.
+	 * @param ticksPerWheel the number of buckets of the wheel, rounded up to a power of two.
+	 */
+	public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+		if(tickDuration <= 0 || ticksPerWheel <= 0){
+			throw new IllegalArgumentException("The tick duration and the number of ticks per wheel must be positive");
+		}
+		this.tickNanos = unit.toNanos(tickDuration);
+		this.wheel = new Bucket[Integer.highestOneBit(Math.max(1, ticksPerWheel - 1)) << 1];
+		for(int i = 0; i < this.wheel.length; i++){
+			this.wheel[i] = new Bucket();
+		}
+		this.mask = this.wheel.length - 1;
+		this.startTime = System.nanoTime();
+		this.worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				turn();
+			}
+		}, name);
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+
+	/**
+	 * Schedules an action after a delay.
+	 * @param action the action, run by the timer thread.
+	 * @param delay the delay after which the action is run.
+	 * @param unit the unit of the delay.
+	 * @return the timeout, that allows to cancel the action.
+	 * @throws IllegalStateException if the timer is stopped.
+	 */
+	public Timeout newTimeout(Runnable action, long delay, TimeUnit unit) throws IllegalStateException{
+		if(this.stopped){
+			throw new IllegalStateException("The timer is stopped");
+		}
+		Timeout result = new Timeout(action, System.nanoTime() + unit.toNanos(Math.max(0, delay)) - this.startTime);
+		this.nbPending.incrementAndGet();
+		this.newTimeouts.add(result);
+		return result;
+	}
+
+	/**
+	 * Stops the timer. The pending timeouts never expire.
+	 */
+	public void stop() {
+		this.stopped = true;
+		this.worker.interrupt();
+	}
+
+	/**
+	 * Gets the number of timeouts neither expired nor cancelled.
+	 * @return the number of pending timeouts.
+	 */
+	public long getNbPending() {
+		return this.nbPending.get();
+	}
+
+	/**
+	 * Gets the number of expired timeouts.
+	 * @return the number of expired timeouts.
+	 */
+	public long getNbExpired() {
+		return this.nbExpired.get();
+	}
+
+	/**
+	 * Gets the number of buckets of the wheel.
+	 * @return the number of buckets, a power of two.
+	 */
+	public int getTicksPerWheel() {
+		return this.wheel.length;
+	}
+
+
+	/**
+	 * Turns the wheel until the timer is stopped: at each tick, moves the new and the cancelled timeouts, then expires the timeouts of the current bucket.
+	 */
+	protected void turn() {
+		while(!this.stopped){
+			long now = this.waitForNextTick();
+			if(this.stopped){
+				break;
+			}
+			this.removeCancelled();
+			this.transferNew();
+			this.wheel[(int) (this.tick & this.mask)].expire(now);
+			this.tick++;
+		}
+	}
+
+	/**
+	 * Waits for the end of the current tick.
+	 * @return the time relative to the start of the timer, in nanoseconds.
+	 */
+	protected long waitForNextTick() {
+		long deadline = this.tickNanos * (this.tick + 1);
+		while(true){
+			long now = System.nanoTime() - this.startTime;
+			long sleepMillis = TimeUnit.NANOSECONDS.toMillis(deadline - now + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+			if(sleepMillis <= 0){
+				return now;
+			}
+			try{
+				Thread.sleep(sleepMillis);
+			}
+			catch(InterruptedException ex){
+				if(this.stopped){
+					return now;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Moves the new timeouts to the bucket of their deadline.
+	 */
+	protected void transferNew() {
+		for(int i = 0; i < MAX_TRANSFERS_PER_TICK; i++){
+			Timeout timeout = this.newTimeouts.poll();
+			if(timeout == null){
+				break;
+			}
+			if(timeout.isCancelled()){
+				continue;
+			}
+			long deadlineTick = timeout.deadline / this.tickNanos;
+			timeout.remainingRounds = (deadlineTick - this.tick) / this.wheel.length;
+			this.wheel[(int) (Math.max(deadlineTick, this.tick) & this.mask)].add(timeout);
+		}
+	}
+
+	/**
+	 * Removes the cancelled timeouts from their bucket.
+	 */
+	protected void removeCancelled() {
+		Timeout timeout;
+		while((timeout = this.cancelledTimeouts.poll()) != null){
+			if(timeout.bucket != null){
+				timeout.bucket.remove(timeout);
+			}
+		}
+	}
+
+
+	/**
+	 * An action scheduled by the timer.
+	 */
+	public class Timeout {
+
+		/**
+		 * The timeout is neither expired nor cancelled.
+		 */
+		protected static final int PENDING = 0;
+
+		/**
+		 * The timeout is cancelled.
+		 */
+		protected static final int CANCELLED = 1;
+
+		/**
+		 * The timeout is expired.
+		 */
+		protected static final int EXPIRED = 2;
+
+		/**
+		 * The action run when the timeout expires.
+		 */
+		protected final Runnable action;
+
+		/**
+		 * The deadline, relative to the start of the timer, in nanoseconds.
+		 */
+		protected final long deadline;
+
+		/**
+		 * The state of the timeout.
+		 */
+		protected final AtomicInteger state = new AtomicInteger(PENDING);
+
+		/**
+		 * The number of turns of the wheel before the timeout expires, only used by the timer thread.
+		 */
+		protected long remainingRounds;
+
+		/**
+		 * The bucket of the timeout, only used by the timer thread.
+		 */
+		protected Bucket bucket;
+
+		/**
+		 * The next timeout of the bucket, only used by the timer thread.
+		 */
+		protected Timeout next;
+
+		/**
+		 * The previous timeout of the bucket, only used by the timer thread.
+		 */
+		protected Timeout previous;
+
+		/**
+		 * Creates a timeout.
+		 * @param action the action run when the timeout expires.
+		 * @param deadline the deadline, relative to the start of the timer, in nanoseconds.
+		 */
+		protected Timeout(Runnable action, long deadline) {
+			this.action = action;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancels the timeout, so that its action is not run.
+		 * @return true if the timeout was pending, false if it was already expired or cancelled.
+		 */
+		public boolean cancel() {
+			if(!this.state.compareAndSet(PENDING, CANCELLED)){
+				return false;
+			}
+			nbPending.decrementAndGet();
+			cancelledTimeouts.add(this);
+			return true;
+		}
+
+		/**
+		 * Indicates whether the timeout is cancelled.
+		 * @return true if the timeout is cancelled.
+		 */
+		public boolean isCancelled() {
+			return this.state.get() == CANCELLED;
+		}
+
+		/**
+		 * Indicates whether the timeout is expired.
+		 * @return true if the action of the timeout has been run.
+		 */
+		public boolean isExpired() {
+			return this.state.get() == EXPIRED;
+		}
+
+		/**
+		 * Expires the timeout and runs its action, unless it is cancelled.
+		 */
+		protected void expire() {
+			if(!this.state.compareAndSet(PENDING, EXPIRED)){
+				return;
+			}
+			nbPending.decrementAndGet();
+			nbExpired.incrementAndGet();
+			try{
+				this.action.run();
+			}
+			catch(RuntimeException ex){
+				LOG.warn("the action of an expired timeout failed", ex);
+			}
+		}
+	}
+
+
+	/**
+	 * A bucket of the wheel, a doubly linked list of timeouts only used by the timer thread.
+	 */
+	protected class Bucket {
+
+		/**
+		 * The first timeout of the bucket.
+		 */
+		protected Timeout head;
+
+		/**
+		 * The last timeout of the bucket.
+		 */
+		protected Timeout tail;
+
+		/**
+		 * Appends a timeout to the bucket.
+		 * @param timeout the timeout.
+		 */
+		protected void add(Timeout timeout) {
+			timeout.bucket = this;
+			if(this.head == null){
+				this.head = timeout;
+				this.tail = timeout;
+			}
+			else{
+				this.tail.next = timeout;
+				timeout.previous = this.tail;
+				this.tail = timeout;
+			}
+		}
+
+		/**
+		 * Removes a timeout from the bucket.
+		 * @param timeout the timeout.
+		 * @return the next timeout of the bucket.
+		 */
+		protected Timeout remove(Timeout timeout) {
+			Timeout next = timeout.next;
+			if(timeout.previous != null){
+				timeout.previous.next = next;
+			}
+			if(next != null){
+				next.previous = timeout.previous;
+			}
+			if(timeout == this.head){
+				this.head = next;
+			}
+			if(timeout == this.tail){
+				this.tail = timeout.previous;
+			}
+			timeout.previous = null;
+			timeout.next = null;
+			timeout.bucket = null;
+			return next;
+		}
+
+		/**
+		 * Expires the timeouts of the bucket in their last turn, and counts a turn for the others.
+		 * @param now the time relative to the start of the timer, in nanoseconds.
+		 */
+		protected void expire(long now) {
+			Timeout timeout = this.head;
+			while(timeout != null){
+				if(timeout.remainingRounds <= 0 && timeout.deadline <= now){
+					Timeout next = this.remove(timeout);
+					timeout.expire();
+					timeout = next;
+				}
+				else if(timeout.isCancelled()){
+					timeout = this.remove(timeout);
+				}
+				else{
+					timeout.remainingRounds--;
+					timeout = timeout.next;
+				}
+			}
+		}
+	}
+}
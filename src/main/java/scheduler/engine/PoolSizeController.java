@@ -0,0 +1,283 @@
+package scheduler.engine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resizes a pool of workers within bounds, from the depth of its queue, its throughput and the CPU utilization.
+ * <p>
+ * The number of workers follows an AIMD rule, run at each adjustment period:
+ * </p>
+ * <ul>
+ * <li>when the CPU is saturated, or when the last increase made the throughput drop while tasks are waiting,
+ * the number of workers is decreased by a factor;</li>
+ * <li>otherwise when tasks are waiting, a worker is added;</li>
+ * <li>otherwise when some workers are idle, a worker is removed.</li>
+ * </ul>
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class PoolSizeController implements Runnable {
+
+	/**
+	 * Logger for the controller.
+	 */
+	static final Logger LOG = LoggerFactory.getLogger(PoolSizeController.class);
+
+	/**
+	 * The default CPU utilization above which the pool is shrunk.
+	 */
+	public static final double DEFAULT_TARGET_CPU = 0.9;
+
+	/**
+	 * The factor applied to the number of workers when the pool is shrunk.
+	 */
+	protected static final double DECREASE_FACTOR = 0.75;
+
+	/**
+	 * The relative drop of throughput that cancels the last increase.
+	 */
+	protected static final double THROUGHPUT_TOLERANCE = 0.1;
+
+
+	/**
+	 * The pool to be resized.
+	 */
+	protected final PriorityExecutor pool;
+
+	/**
+	 * The number min of workers.
+	 */
+	protected volatile int minSize;
+
+	/**
+	 * The number max of workers.
+	 */
+	protected volatile int maxSize;
+
+	/**
+	 * The CPU utilization above which the pool is shrunk, between 0 and 1.
+	 */
+	protected volatile double targetCpu = DEFAULT_TARGET_CPU;
+
+	/**
+	 * The number of tasks completed by the pool at the last adjustment.
+	 */
+	protected long lastCompleted;
+
+	/**
+	 * The time of the last adjustment, in nanoseconds.
+	 */
+	protected long lastTime;
+
+	/**
+	 * The throughput measured at the last adjustment, in tasks per second.
+	 */
+	protected volatile double throughput = 0;
+
+	/**
+	 * The CPU utilization measured at the last adjustment.
+	 */
+	protected volatile double cpuLoad = 0;
+
+	/**
+	 * The change of the number of workers made at the last adjustment.
+	 */
+	protected int lastChange = 0;
+
+	/**
+	 * The number of increases of the number of workers.
+	 */
+	protected volatile long nbIncreases = 0;
+
+	/**
+	 * The number of decreases of the number of workers.
+	 */
+	protected volatile long nbDecreases = 0;
+
+
+	/**
+	 * Creates a controller.
+	 * @param pool the pool to be resized.
+	 * @param minSize the number min of workers.
+	 * @param maxSize the number max of workers.
+	 * @throws IllegalArgumentException if the bounds are not valid.
+	 */
+	public PoolSizeController(PriorityExecutor pool, int minSize, int maxSize) {
+		this.pool = pool;
+		checkBounds(minSize, maxSize);
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.lastCompleted = pool.getCompletedTaskCount();
+		this.lastTime = System.nanoTime();
+	}
+
+
+	/**
+	 * Checks bounds of the number of workers.
+	 * @param minSize the number min of workers.
+	 * @param maxSize the number max of workers.
+	 * @throws IllegalArgumentException if the number min is lower than 1 or greater than the number max.
+	 */
+	public static void checkBounds(int minSize, int maxSize){
+		if(minSize < 1 || maxSize < minSize){
+			throw new IllegalArgumentException("invalid pool bounds [" + minSize + ", " + maxSize + "]");
+		}
+	}
+
+	/**
+	 * Changes the bounds of the number of workers, and resizes the pool at once if it is out of the new bounds.
+	 * @param minSize the number min of workers.
+	 * @param maxSize the number max of workers.
+	 * @throws IllegalArgumentException if the bounds are not valid.
+	 */
+	public synchronized void setBounds(int minSize, int maxSize){
+		checkBounds(minSize, maxSize);
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		int size = this.pool.getMaximumPoolSize();
+		int bounded = Math.max(minSize, Math.min(maxSize, size));
+		if(bounded != size){
+			this.resize(bounded);
+		}
+		this.lastChange = 0;
+	}
+
+	/**
+	 * Measures the pool and adjusts its number of workers.
+	 * @see Runnable#run()
+	 */
+	@Override
+	public synchronized void run() {
+		long now = System.nanoTime();
+		long completed = this.pool.getCompletedTaskCount();
+		double currentThroughput = now > this.lastTime ? (completed - this.lastCompleted) * 1e9 / (now - this.lastTime) : 0;
+		double previousThroughput = this.throughput;
+		this.lastCompleted = completed;
+		this.lastTime = now;
+		this.throughput = currentThroughput;
+		this.cpuLoad = this.measureCpuLoad();
+
+		int size = this.pool.getMaximumPoolSize();
+		int queued = this.pool.getQueue().size();
+		int active = this.pool.getActiveCount();
+		int next = size;
+		if(this.cpuLoad > this.targetCpu 
+				|| (queued > 0 && this.lastChange > 0 && currentThroughput < previousThroughput * (1 - THROUGHPUT_TOLERANCE))){
+			next = (int) (size * DECREASE_FACTOR);
+		}
+		else if(queued > 0){
+			next = size + 1;
+		}
+		else if(active < size){
+			next = Math.max(active, size - 1);
+		}
+		next = Math.max(this.minSize, Math.min(this.maxSize, next));
+		this.lastChange = next - size;
+		if(next > size){
+			this.nbIncreases++;
+			this.resize(next);
+		}
+		else if(next < size){
+			this.nbDecreases++;
+			this.resize(next);
+		}
+	}
+
+	/**
+	 * Changes the number of workers of the pool.
+	 * @param size the new number of workers.
+	 */
+	protected void resize(int size){
+		LOG.info("resize the pool from " + this.pool.getMaximumPoolSize() + " to " + size + " workers");
+		this.pool.resize(size);
+	}
+
+	/**
+	 * Measures the CPU utilization: the recent CPU usage of the whole system, or of the process if the system usage is not available.
+	 * If the platform does not give the CPU usage, the system load average over the number of processors is used instead.
+	 * @return the CPU utilization, 1 when all the processors are busy, or 0 if it is not available.
+	 */
+	protected double measureCpuLoad(){
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if(os instanceof com.sun.management.OperatingSystemMXBean){
+			com.sun.management.OperatingSystemMXBean platform = (com.sun.management.OperatingSystemMXBean) os;
+			double load = platform.getSystemCpuLoad();
+			if(load < 0){
+				load = platform.getProcessCpuLoad();
+			}
+			if(load >= 0){
+				return load;
+			}
+		}
+		double load = os.getSystemLoadAverage();
+		return load < 0 ? 0 : load / os.getAvailableProcessors();
+	}
+
+	/**
+	 * Gets the number min of workers.
+	 * @return the number min of workers.
+	 */
+	public int getMinSize() {
+		return minSize;
+	}
+
+	/**
+	 * Gets the number max of workers.
+	 * @return the number max of workers.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Gets the CPU utilization above which the pool is shrunk.
+	 * @return the CPU utilization, between 0 and 1.
+	 */
+	public double getTargetCpu() {
+		return targetCpu;
+	}
+
+	/**
+	 * Sets the CPU utilization above which the pool is shrunk.
+	 * @param targetCpu the CPU utilization, between 0 and 1.
+	 */
+	public void setTargetCpu(double targetCpu) {
+		this.targetCpu = targetCpu;
+	}
+
+	/**
+	 * Gets the throughput measured at the last adjustment.
+	 * @return the throughput in tasks per second.
+	 */
+	public double getThroughput() {
+		return throughput;
+	}
+
+	/**
+	 * Gets the CPU utilization measured at the last adjustment.
+	 * @return the CPU utilization.
+	 */
+	public double getCpuLoad() {
+		return cpuLoad;
+	}
+
+	/**
+	 * Gets the number of increases of the number of workers.
+	 * @return the number of increases.
+	 */
+	public long getNbIncreases() {
+		return nbIncreases;
+	}
+
+	/**
+	 * Gets the number of decreases of the number of workers.
+	 * @return the number of decreases.
+	 */
+	public long getNbDecreases() {
+		return nbDecreases;
+	}
+}
@@ -0,0 +1,21 @@
+package scheduler.engine;
+
+/**
+ * A runnable that gives its priority and its tenant to the executor of the scheduler.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public interface PrioritizedTask extends Runnable {
+
+	/**
+	 * Gets the priority of the runnable.
+	 * @return the priority.
+	 */
+	TaskPriority getPriority();
+
+	/**
+	 * Gets the tenant that submitted the runnable.
+	 * @return the name of the tenant, null for the default tenant.
+	 */
+	String getTenant();
+}
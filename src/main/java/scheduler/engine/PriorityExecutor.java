@@ -0,0 +1,290 @@
+package scheduler.engine;
+
+import java.util.EnumMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread pool that runs the waiting tasks by priority rather than in submission order,
+ * and shares its threads fairly between the tenants.
+ * <p>
+ * A waiting task gains the equivalent of one priority level each aging period,
+ * so that the low priority tasks are run eventually even under a continuous flow of high priority tasks.
+ * Tasks of the same priority are run in submission order.
+ * </p>
+ * <p>
+ * Each tenant has its own queue, and the tenants take turns as described by the {@link FairShareQueue}.
+ * </p>
+ * The time spent by the tasks in the queue is measured for each priority.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class PriorityExecutor extends ThreadPoolExecutor {
+
+	/**
+	 * The default time a waiting task takes to gain one priority level, in milliseconds.
+	 */
+	public static final long DEFAULT_AGING = 5000;
+
+
+	/**
+	 * The time a waiting task takes to gain one priority level, in nanoseconds.
+	 */
+	protected final long agingNanos;
+
+	/**
+	 * The sequence of the submissions, that orders the tasks of the same priority.
+	 */
+	protected final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * The statistics of the time spent in the queue, by priority.
+	 */
+	protected final EnumMap<TaskPriority, QueueWait> waits = new EnumMap<TaskPriority, QueueWait>(TaskPriority.class);
+
+
+	/**
+	 * Creates a pool with a number of threads that only changes when the pool is resized.
+	 * @param nbThreads the number of threads.
+	 * @param aging the time a waiting task takes to gain one priority level, in milliseconds.
+	 * @param threadFactory the factory of the threads.
+	 */
+	public PriorityExecutor(int nbThreads, long aging, ThreadFactory threadFactory) {
+		super(nbThreads, nbThreads, 0L, TimeUnit.MILLISECONDS, new FairShareQueue(), threadFactory);
+		this.agingNanos = TimeUnit.MILLISECONDS.toNanos(aging);
+		for(TaskPriority priority: TaskPriority.values()){
+			this.waits.put(priority, new QueueWait());
+		}
+	}
+
+
+	/**
+	 * Queues a command with its priority and its tenant, or with the normal priority and the default tenant if it does not give them.
+	 * @see ThreadPoolExecutor#execute(Runnable)
+	 */
+	@Override
+	public void execute(Runnable command) {
+		if(command instanceof PrioritizedTask){
+			PrioritizedTask task = (PrioritizedTask) command;
+			super.execute(new QueuedCommand(command, task.getPriority(), task.getTenant()));
+		}
+		else{
+			super.execute(new QueuedCommand(command, TaskPriority.NORMAL, null));
+		}
+	}
+
+	/**
+	 * Measures the time the command spent in the queue.
+	 * @see ThreadPoolExecutor#beforeExecute(Thread, Runnable)
+	 */
+	@Override
+	protected void beforeExecute(Thread t, Runnable r) {
+		super.beforeExecute(t, r);
+		if(r instanceof QueuedCommand){
+			QueuedCommand command = (QueuedCommand) r;
+			this.waits.get(command.priority).add(System.nanoTime() - command.enqueuedAt);
+		}
+	}
+
+	/**
+	 * Notifies the queue that the command is finished, so that its tenant may run another one.
+	 * @see ThreadPoolExecutor#afterExecute(Runnable, Throwable)
+	 */
+	@Override
+	protected void afterExecute(Runnable r, Throwable t) {
+		super.afterExecute(r, t);
+		if(r instanceof QueuedCommand){
+			this.getFairShareQueue().release((QueuedCommand) r);
+		}
+	}
+
+	/**
+	 * Changes the number of threads of the pool. 
+	 * The new threads are started at once, the threads in excess stop once their current command is finished.
+	 * @param nbThreads the new number of threads.
+	 */
+	public synchronized void resize(int nbThreads){
+		if(nbThreads > this.getMaximumPoolSize()){
+			this.setMaximumPoolSize(nbThreads);
+			this.setCorePoolSize(nbThreads);
+			this.prestartAllCoreThreads();
+		}
+		else{
+			this.setCorePoolSize(nbThreads);
+			this.setMaximumPoolSize(nbThreads);
+		}
+	}
+
+	/**
+	 * Gets the queue of the waiting commands, that allows to configure and observe the tenants.
+	 * @return the queue of the waiting commands.
+	 */
+	public FairShareQueue getFairShareQueue(){
+		return (FairShareQueue) this.getQueue();
+	}
+
+	/**
+	 * Gets the number of commands waiting in the queue with a given priority.
+	 * @param priority the priority.
+	 * @return the number of waiting commands.
+	 */
+	public int getNbQueued(TaskPriority priority){
+		int result = 0;
+		for(Runnable current: this.getQueue()){
+			if(current instanceof QueuedCommand && ((QueuedCommand) current).priority == priority){
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the statistics of the time spent in the queue by the commands of a given priority.
+	 * @param priority the priority.
+	 * @return the statistics of the time spent in the queue.
+	 */
+	public QueueWait getQueueWait(TaskPriority priority){
+		return this.waits.get(priority);
+	}
+
+
+	/**
+	 * A command waiting in the queue, ordered by its priority aged by the time it was queued.
+	 */
+	protected class QueuedCommand implements Runnable, Comparable<QueuedCommand> {
+
+		/**
+		 * The command to be run.
+		 */
+		protected final Runnable command;
+
+		/**
+		 * The priority of the command.
+		 */
+		protected final TaskPriority priority;
+
+		/**
+		 * The tenant of the command, null for the default tenant.
+		 */
+		protected final String tenant;
+
+		/**
+		 * Indicates if the command is counted as running by its tenant, guarded by the queue.
+		 */
+		protected boolean counted = false;
+
+		/**
+		 * The time when the command was queued, in nanoseconds.
+		 */
+		protected final long enqueuedAt;
+
+		/**
+		 * The position of the command in the submissions.
+		 */
+		protected final long position;
+
+		/**
+		 * The key that orders the queue, the lower the sooner:
+		 * the queuing time moved back by one aging period for each priority level.
+		 */
+		protected final long key;
+
+		/**
+		 * Creates a queued command.
+		 * @param command the command to be run.
+		 * @param priority the priority of the command.
+		 * @param tenant the tenant of the command, null for the default tenant.
+		 */
+		protected QueuedCommand(Runnable command, TaskPriority priority, String tenant){
+			this.command = command;
+			this.priority = priority;
+			this.tenant = tenant;
+			this.enqueuedAt = System.nanoTime();
+			this.position = sequence.incrementAndGet();
+			this.key = this.enqueuedAt - priority.getLevel() * agingNanos;
+		}
+
+		/**
+		 * Runs the command.
+		 * @see Runnable#run()
+		 */
+		@Override
+		public void run() {
+			this.command.run();
+		}
+
+		/**
+		 * Compares the keys of the commands, then their positions.
+		 * @see Comparable#compareTo(Object)
+		 */
+		@Override
+		public int compareTo(QueuedCommand other) {
+			// the keys are compared by difference, as nano times may overflow
+			long difference = this.key - other.key;
+			if(difference != 0){
+				return difference < 0 ? -1 : 1;
+			}
+			return Long.compare(this.position, other.position);
+		}
+	}
+
+
+	/**
+	 * The statistics of the time spent in the queue by the commands of a priority.
+	 */
+	public static class QueueWait {
+
+		/**
+		 * The number of commands taken from the queue.
+		 */
+		protected final AtomicLong count = new AtomicLong();
+
+		/**
+		 * The total time spent in the queue, in nanoseconds.
+		 */
+		protected final AtomicLong totalNanos = new AtomicLong();
+
+		/**
+		 * The longest time spent in the queue, in nanoseconds.
+		 */
+		protected final AtomicLong maxNanos = new AtomicLong();
+
+		/**
+		 * Adds the time spent in the queue by a command.
+		 * @param nanos the time spent in the queue, in nanoseconds.
+		 */
+		protected void add(long nanos){
+			this.count.incrementAndGet();
+			this.totalNanos.addAndGet(nanos);
+			long max;
+			while((max = this.maxNanos.get()) < nanos && !this.maxNanos.compareAndSet(max, nanos));
+		}
+
+		/**
+		 * Gets the number of commands taken from the queue.
+		 * @return the number of commands.
+		 */
+		public long getCount(){
+			return this.count.get();
+		}
+
+		/**
+		 * Gets the mean time spent in the queue.
+		 * @return the mean time in milliseconds.
+		 */
+		public double getMeanMillis(){
+			long nb = this.count.get();
+			return nb == 0 ? 0 : this.totalNanos.get() / (nb * 1e6);
+		}
+
+		/**
+		 * Gets the longest time spent in the queue.
+		 * @return the longest time in milliseconds.
+		 */
+		public double getMaxMillis(){
+			return this.maxNanos.get() / 1e6;
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package scheduler.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A segment file mapped in memory, where the encoded snapshots of finished tasks are appended.
+ * The segment is deleted once it is sealed and all its snapshots are released.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class ResultSegment {
+
+	/**
+	 * The store that owns the segment.
+	 */
+	protected final ResultSpillStore store;
+
+	/**
+	 * The segment file.
+	 */
+	protected final File file;
+
+	/**
+	 * The mapping of the segment file.
+	 */
+	protected final MappedByteBuffer buffer;
+
+	/**
+	 * The codec used to decode the snapshots.
+	 */
+	protected final SnapshotCodec codec;
+
+	/**
+	 * The position where the next snapshot is appended, guarded by the store.
+	 */
+	protected int writePosition = 0;
+
+	/**
+	 * The number of bytes of the snapshots that are not released.
+	 */
+	protected final AtomicLong liveBytes = new AtomicLong();
+
+	/**
+	 * Indicates if no more snapshot is appended to the segment.
+	 */
+	protected volatile boolean sealed = false;
+
+	/**
+	 * Indicates if the segment file is deleted.
+	 */
+	protected final AtomicBoolean deleted = new AtomicBoolean();
+
+
+	/**
+	 * Creates and maps a segment file.
+	 * @param store the store that owns the segment.
+	 * @param file the segment file.
+	 * @param size the size of the segment in bytes.
+	 * @param codec the codec used to decode the snapshots.
+	 * @throws IOException if the file can not be created or mapped.
+	 */
+	public ResultSegment(ResultSpillStore store, File file, int size, SnapshotCodec codec) throws IOException {
+		this.store = store;
+		this.file = file;
+		this.codec = codec;
+		// the mapping remains valid once the channel is closed
+		try(RandomAccessFile output = new RandomAccessFile(file, "rw");
+			FileChannel channel = output.getChannel()){
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+	}
+
+
+	/**
+	 * Indicates if the segment has room for a snapshot.
+	 * @param length the length of the encoded snapshot.
+	 * @return true if the snapshot can be appended.
+	 */
+	protected boolean hasRoom(int length){
+		return this.buffer.capacity() - this.writePosition >= length;
+	}
+
+	/**
+	 * Appends an encoded snapshot. Must be called by the store only, that guards the write position.
+	 * @param bytes the encoded snapshot.
+	 * @return the offset of the snapshot in the segment.
+	 */
+	protected int append(byte[] bytes){
+		ByteBuffer target = this.buffer.duplicate();
+		target.position(this.writePosition);
+		target.put(bytes);
+		int offset = this.writePosition;
+		this.writePosition += bytes.length;
+		this.liveBytes.addAndGet(bytes.length);
+		return offset;
+	}
+
+	/**
+	 * Reads and decodes a snapshot.
+	 * @param offset the offset of the snapshot in the segment.
+	 * @param length the length of the encoded snapshot.
+	 * @return the decoded snapshot.
+	 * @throws IOException if the snapshot can not be decoded.
+	 */
+	public ScriptSnapshot read(int offset, int length) throws IOException{
+		byte[] bytes = new byte[length];
+		ByteBuffer source = this.buffer.duplicate();
+		source.position(offset);
+		source.get(bytes);
+		return this.codec.decode(bytes);
+	}
+
+	/**
+	 * Releases a snapshot, and deletes the segment if it is sealed and all its snapshots are released.
+	 * @param length the length of the released snapshot.
+	 */
+	protected void release(int length){
+		if(this.liveBytes.addAndGet(-length) == 0 && this.sealed){
+			this.delete();
+		}
+	}
+
+	/**
+	 * Seals the segment, and deletes it if all its snapshots are already released.
+	 */
+	protected void seal(){
+		this.sealed = true;
+		if(this.liveBytes.get() == 0){
+			this.delete();
+		}
+	}
+
+	/**
+	 * Deletes the segment file, once.
+	 * The mapping is released by the garbage collector, so the snapshots still referenced remain readable.
+	 */
+	protected void delete(){
+		if(this.deleted.compareAndSet(false, true)){
+			this.store.segments.remove(this);
+			if(!this.file.delete()){
+				ResultSpillStore.LOG.warn("unable to delete the segment " + this.file);
+			}
+		}
+	}
+
+	/**
+	 * Indicates if the segment file is deleted.
+	 * @return true if the segment file is deleted.
+	 */
+	public boolean isDeleted(){
+		return this.deleted.get();
+	}
+
+	/**
+	 * Gets the segment file.
+	 * @return the segment file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the number of bytes of the snapshots that are not released.
+	 * @return the number of bytes.
+	 */
+	public long getLiveBytes(){
+		return this.liveBytes.get();
+	}
+}
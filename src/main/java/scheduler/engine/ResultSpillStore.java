@@ -0,0 +1,184 @@
+package scheduler.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The cold tier of the results of the finished tasks: the snapshots are encoded and appended to segment files mapped in memory,
+ * so that they are kept out of the heap and read back only when they are requested.
+ * <p>
+ * The snapshots are appended to the current segment until it is full, then a new segment is created.
+ * A full segment is deleted once all its snapshots are released.
+ * The segments are not durable: they are deleted when the store is closed.
+ * </p>
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class ResultSpillStore {
+
+	/**
+	 * Logger for the store.
+	 */
+	static final Logger LOG = LoggerFactory.getLogger(ResultSpillStore.class);
+
+	/**
+	 * The default size of a segment, in bytes.
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+
+	/**
+	 * The directory of the segment files.
+	 */
+	protected final File directory;
+
+	/**
+	 * The size of a segment, in bytes. A snapshot greater than this size gets its own segment.
+	 */
+	protected final int segmentSize;
+
+	/**
+	 * The codec used to encode the snapshots.
+	 */
+	protected final SnapshotCodec codec;
+
+	/**
+	 * The segment where the snapshots are appended, guarded by the store.
+	 */
+	protected ResultSegment current = null;
+
+	/**
+	 * The number of segments created, used to name the segment files.
+	 */
+	protected long nbSegmentsCreated = 0;
+
+	/**
+	 * The segments that are not deleted.
+	 */
+	protected final Set<ResultSegment> segments = Collections.newSetFromMap(new ConcurrentHashMap<ResultSegment, Boolean>());
+
+	/**
+	 * The number of snapshots spilled.
+	 */
+	protected final AtomicLong nbSpilled = new AtomicLong();
+
+	/**
+	 * The number of bytes of the snapshots spilled.
+	 */
+	protected final AtomicLong spilledBytes = new AtomicLong();
+
+
+	/**
+	 * Creates a store in a directory.
+	 * @param directory the directory of the segment files, created if it does not exist.
+	 * @param segmentSize the size of a segment, in bytes.
+	 * @param codec the codec used to encode the snapshots.
+	 * @throws IOException if the directory can not be created.
+	 */
+	public ResultSpillStore(File directory, int segmentSize, SnapshotCodec codec) throws IOException {
+		Files.createDirectories(directory.toPath());
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.codec = codec;
+	}
+
+
+	/**
+	 * Encodes a snapshot and appends it to the current segment.
+	 * @param snapshot the snapshot to be spilled.
+	 * @return the location of the spilled snapshot.
+	 * @throws IOException if the snapshot can not be encoded or if a segment can not be created.
+	 */
+	public SpilledSnapshot spill(ScriptSnapshot snapshot) throws IOException{
+		byte[] bytes = this.codec.encode(snapshot);
+		SpilledSnapshot result;
+		synchronized(this){
+			if(this.current == null || !this.current.hasRoom(bytes.length)){
+				this.roll(bytes.length);
+			}
+			result = new SpilledSnapshot(this.current, this.current.append(bytes), bytes.length);
+		}
+		this.nbSpilled.incrementAndGet();
+		this.spilledBytes.addAndGet(bytes.length);
+		return result;
+	}
+
+	/**
+	 * Seals the current segment and creates a new one. Must be called with the lock of the store.
+	 * @param length the length of the snapshot that will be appended.
+	 * @throws IOException if the segment can not be created.
+	 */
+	protected void roll(int length) throws IOException{
+		ResultSegment previous = this.current;
+		File file = new File(this.directory, String.format("results-%08d.seg", ++this.nbSegmentsCreated));
+		ResultSegment segment = new ResultSegment(this, file, Math.max(this.segmentSize, length), this.codec);
+		this.segments.add(segment);
+		this.current = segment;
+		if(previous != null){
+			previous.seal();
+		}
+	}
+
+	/**
+	 * Releases a spilled snapshot, so that its segment can be deleted.
+	 * @param snapshot the location of the spilled snapshot.
+	 */
+	public void release(SpilledSnapshot snapshot){
+		snapshot.release();
+	}
+
+	/**
+	 * Closes the store, and deletes all the segment files.
+	 */
+	public synchronized void close(){
+		for(ResultSegment segment: this.segments){
+			segment.delete();
+		}
+		this.segments.clear();
+		this.current = null;
+	}
+
+	/**
+	 * Gets the number of segments that are not deleted.
+	 * @return the number of segments.
+	 */
+	public int getNbSegments(){
+		return this.segments.size();
+	}
+
+	/**
+	 * Gets the number of snapshots spilled.
+	 * @return the number of snapshots.
+	 */
+	public long getNbSpilled(){
+		return this.nbSpilled.get();
+	}
+
+	/**
+	 * Gets the number of bytes of the snapshots spilled.
+	 * @return the number of bytes.
+	 */
+	public long getSpilledBytes(){
+		return this.spilledBytes.get();
+	}
+
+	/**
+	 * Gets the number of bytes of the spilled snapshots that are not released.
+	 * @return the number of bytes.
+	 */
+	public long getLiveBytes(){
+		long result = 0;
+		for(ResultSegment segment: this.segments){
+			result += segment.getLiveBytes();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,21 @@
+package scheduler.engine;
+
+/**
+ * The way a schedule fires its script.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public enum ScheduleKind {
+	/**
+	 * The script is run once, at a given time.
+	 */
+	AT,
+	/**
+	 * The script is run periodically from a start time, at a fixed rate that does not drift with the duration of the firings.
+	 */
+	FIXED_RATE,
+	/**
+	 * The script is run at the minutes matched by a cron expression.
+	 */
+	CRON
+}
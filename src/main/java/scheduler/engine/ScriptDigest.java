@@ -0,0 +1,48 @@
+package scheduler.engine;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the digest of a script content, used as a key to identify identical scripts.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public final class ScriptDigest {
+
+	/**
+	 * The algorithm used to compute the digests.
+	 */
+	public static final String ALGORITHM = "SHA-256";
+
+	/**
+	 * Characters used to render the digest in hexadecimal.
+	 */
+	private static final char[] HEXA = "0123456789abcdef".toCharArray();
+
+
+	private ScriptDigest(){}
+
+	/**
+	 * Computes the digest of a script content.
+	 * @param scriptContent the content of the script.
+	 * @return the digest of the script, in hexadecimal.
+	 */
+	public static String digest(String scriptContent){
+		MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(ALGORITHM + " is not supported by this JVM", e);
+		}
+		byte[] hash = messageDigest.digest(scriptContent.getBytes(StandardCharsets.UTF_8));
+
+		char[] result = new char[hash.length * 2];
+		for(int i = 0; i < hash.length; i++){
+			result[2 * i] = HEXA[(hash[i] >> 4) & 0x0f];
+			result[2 * i + 1] = HEXA[hash[i] & 0x0f];
+		}
+		return new String(result);
+	}
+}
@@ -0,0 +1,210 @@
+package scheduler.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptException;
+
+/**
+ * The binding given to the scripts executed in fork/join mode, that allows a script to fork subtasks and to join them.
+ * A subtask is either a closure, or the content of a child script evaluated with its own bindings.
+ * <p>
+ * The subtasks are pushed to the queue of the current worker, where idle workers steal them.
+ * A worker that joins a subtask not yet done executes other subtasks meanwhile, rather than blocking.
+ * </p>
+ * <p>
+ * The subtasks not yet finished are recorded, including the ones forked by the child scripts, 
+ * so that they are cancelled when the task that forked them is done or cancelled: 
+ * the subtasks not yet started are never executed, and the running ones can not fork anymore.
+ * </p>
+ * For instance:
+ * <pre>
+ * def left = forkJoin.fork { (1..1000).sum() }
+ * def right = forkJoin.fork("return (1001..2000).sum()")
+ * return left.join() + right.join()
+ * </pre>
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class ScriptForkJoin {
+
+	/**
+	 * The name of the binding.
+	 */
+	public static final String BINDING = "forkJoin";
+
+	/**
+	 * The pool where the subtasks are executed.
+	 */
+	protected final ForkJoinPool pool;
+	
+	/**
+	 * The subtasks forked and not yet finished.
+	 */
+	protected final Set<Subtask> forked = Collections.newSetFromMap(new ConcurrentHashMap<Subtask, Boolean>());
+	
+	/**
+	 * Whether the subtasks have been cancelled because the task that forked them is done.
+	 */
+	protected volatile boolean cancelled = false;
+
+
+	/**
+	 * Creates the binding of a script executed in a fork/join pool.
+	 * @param pool the pool where the subtasks are executed.
+	 */
+	public ScriptForkJoin(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+
+	/**
+	 * Forks a closure.
+	 * @param closure the closure to be executed.
+	 * @return the subtask, that gives the result of the closure when it is joined.
+	 */
+	public ForkJoinTask<Object> fork(Callable<?> closure){
+		return this.fork(new Subtask(closure, null));
+	}
+
+	/**
+	 * Forks a child script, evaluated with its own bindings.
+	 * @param script the content of the child script.
+	 * @return the subtask, that gives the result of the child script when it is joined.
+	 */
+	public ForkJoinTask<Object> fork(String script){
+		return this.fork(new Subtask(null, script));
+	}
+
+	/**
+	 * Forks several subtasks and joins them.
+	 * @param subtasks the closures or the contents of child scripts.
+	 * @return the results of the subtasks, in the same order.
+	 */
+	public List<Object> invokeAll(Collection<?> subtasks){
+		ArrayList<ForkJoinTask<Object>> forked = new ArrayList<ForkJoinTask<Object>>(subtasks.size());
+		for(Object current: subtasks){
+			if(current instanceof Callable){
+				forked.add(this.fork((Callable<?>) current));
+			}
+			else{
+				forked.add(this.fork(String.valueOf(current)));
+			}
+		}
+		ArrayList<Object> result = new ArrayList<Object>(forked.size());
+		for(ForkJoinTask<Object> current: forked){
+			result.add(current.join());
+		}
+		return result;
+	}
+
+	/**
+	 * Cancels the subtasks not yet finished, and prevents new subtasks from being forked.
+	 * The subtasks already running are not interrupted, but finish without being joined.
+	 */
+	public void cancel(){
+		this.cancelled = true;
+		Iterator<Subtask> subtasks = this.forked.iterator();
+		while(subtasks.hasNext()){
+			subtasks.next().cancel(false);
+			subtasks.remove();
+		}
+	}
+	
+	/**
+	 * Gets the number of subtasks forked and not yet finished nor cancelled.
+	 * @return the number of subtasks.
+	 */
+	public int getNbForked(){
+		return this.forked.size();
+	}
+
+	/**
+	 * Forks a subtask in the queue of the current worker, or submits it to the pool if the current thread is not one of its workers.
+	 * The subtask is recorded first, so that it can not escape a concurrent cancellation.
+	 * @param subtask the subtask.
+	 * @return the subtask.
+	 * @throws CancellationException if the task that forks the subtask is done.
+	 */
+	protected ForkJoinTask<Object> fork(Subtask subtask){
+		this.forked.add(subtask);
+		if(this.cancelled){
+			this.forked.remove(subtask);
+			throw new CancellationException("the task that forks the subtask is done");
+		}
+		if(ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == this.pool){
+			subtask.fork();
+		}
+		else{
+			this.pool.execute(subtask);
+		}
+		return subtask;
+	}
+
+
+	/**
+	 * A subtask forked by a script.
+	 */
+	protected class Subtask extends RecursiveTask<Object> {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The closure to be executed, or null for a child script.
+		 */
+		protected final Callable<?> closure;
+
+		/**
+		 * The content of the child script, or null for a closure.
+		 */
+		protected final String script;
+
+		/**
+		 * Creates a subtask.
+		 * @param closure the closure to be executed, or null for a child script.
+		 * @param script the content of the child script, or null for a closure.
+		 */
+		protected Subtask(Callable<?> closure, String script){
+			this.closure = closure;
+			this.script = script;
+		}
+
+		/**
+		 * Executes the closure or evaluates the child script, whose own subtasks are recorded with the ones of the enclosing binding.
+		 * @see RecursiveTask#compute()
+		 */
+		@Override
+		protected Object compute() {
+			try{
+				if(this.closure != null){
+					return this.closure.call();
+				}
+				CompiledScript compiled = GroovyScriptTask.compile(this.script, ScriptDigest.digest(this.script));
+				return GroovyScriptTask.evaluate(compiled, null, ScriptForkJoin.this);
+			}
+			catch(RuntimeException ex){
+				throw ex;
+			}
+			catch(ScriptException ex){
+				throw new IllegalStateException("the child script failed: " + ex.getMessage(), ex);
+			}
+			catch(Exception ex){
+				throw new IllegalStateException("the subtask failed: " + ex.getMessage(), ex);
+			}
+			finally{
+				ScriptForkJoin.this.forked.remove(this);
+			}
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package scheduler.engine;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * A worker thread of the scheduler fork/join pool, named after its index in the pool.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class ScriptForkJoinWorkerThread extends ForkJoinWorkerThread {
+
+	/**
+	 * Creates a new worker of a fork/join pool.
+	 * @param pool the pool of the worker.
+	 */
+	protected ScriptForkJoinWorkerThread(ForkJoinPool pool) {
+		super(pool);
+	}
+
+
+	/**
+	 * A factory that creates the workers of the scheduler fork/join pool.
+	 */
+	public static class Factory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+		/**
+		 * Creates a new worker.
+		 * @see ForkJoinPool.ForkJoinWorkerThreadFactory#newThread(ForkJoinPool)
+		 */
+		@Override
+		public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+			ForkJoinWorkerThread result = new ScriptForkJoinWorkerThread(pool);
+			result.setName("script-forkjoin-" + result.getPoolIndex());
+			return result;
+		}
+	}
+}
@@ -0,0 +1,412 @@
+package scheduler.engine;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A script run by the scheduler at a given time, at a fixed rate or at the minutes matched by a cron expression.
+ * Each firing submits a new task, with the priority, the tenant, the variables and the timeout of the schedule.
+ * The firings of a schedule may be delayed by a random offset chosen once, lower than its spread, 
+ * so that the schedules of the same minute do not submit their tasks all at once.
+ * The schedules are kept in memory only, they are not journaled.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class ScriptSchedule {
+
+	/**
+	 * The random generator of the offsets.
+	 */
+	protected static final Random RANDOM = new Random();
+
+	/**
+	 * The way the schedule fires its script.
+	 */
+	protected final ScheduleKind kind;
+
+	/**
+	 * The time of the firing of a one-shot schedule, or of the first firing of a fixed rate schedule, in milliseconds.
+	 */
+	protected final long start;
+
+	/**
+	 * The period of a fixed rate schedule, in milliseconds.
+	 */
+	protected final long period;
+
+	/**
+	 * The cron expression of a cron schedule.
+	 */
+	protected final CronExpression cron;
+
+	/**
+	 * The id of the schedule, given by the scheduler.
+	 */
+	protected Long id = null;
+
+	/**
+	 * The script of the schedule, shared with the tasks of the same script.
+	 */
+	protected StoredScript script = null;
+
+	/**
+	 * The priority of the tasks.
+	 */
+	protected TaskPriority priority = TaskPriority.NORMAL;
+
+	/**
+	 * The tenant of the tasks, null for the default tenant.
+	 */
+	protected String tenant = null;
+
+	/**
+	 * The variables given to the scripts, null if the script has no variables.
+	 */
+	protected Map<String, Object> bindings = null;
+
+	/**
+	 * The time in milliseconds each task may run before it is stopped, 0 for the default timeout of the scheduler.
+	 */
+	protected long timeout = 0;
+
+	/**
+	 * The bound of the random offset of the firings, in milliseconds.
+	 */
+	protected long spread = 0;
+
+	/**
+	 * The random offset of the firings, in milliseconds.
+	 */
+	protected long offset = 0;
+
+	/**
+	 * The last time matched by the schedule, without the offset, or -1 before the first firing is planned.
+	 */
+	protected long lastSlot = -1;
+
+	/**
+	 * The time of the next firing in milliseconds, or -1 if the schedule is ended.
+	 */
+	protected volatile long nextFiringAt = -1;
+
+	/**
+	 * The number of firings.
+	 */
+	protected volatile long nbFirings = 0;
+
+	/**
+	 * The id of the task submitted by the last firing, null if the schedule has not fired.
+	 */
+	protected volatile Long lastTaskId = null;
+
+	/**
+	 * The timeout of the timer that fires the schedule next.
+	 */
+	protected volatile HashedWheelTimer.Timeout pending = null;
+
+	/**
+	 * Whether the schedule is cancelled or has fired for the last time.
+	 */
+	protected final AtomicBoolean ended = new AtomicBoolean();
+
+
+	/**
+	 * Creates a schedule.
+	 * @param kind the way the schedule fires its script.
+	 * @param start the time of the first firing in milliseconds.
+	 * @param period the period of a fixed rate schedule in milliseconds.
+	 * @param cron the cron expression of a cron schedule.
+	 */
+	protected ScriptSchedule(ScheduleKind kind, long start, long period, CronExpression cron) {
+		this.kind = kind;
+		this.start = start;
+		this.period = period;
+		this.cron = cron;
+	}
+
+	/**
+	 * Creates a schedule that fires once.
+	 * @param time the time of the firing in milliseconds, the schedule fires at once if the time is past.
+	 * @return the new schedule.
+	 */
+	public static ScriptSchedule at(long time){
+		return new ScriptSchedule(ScheduleKind.AT, time, 0, null);
+	}
+
+	/**
+	 * Creates a schedule that fires at a fixed rate. The firings missed because the scheduler was late are skipped.
+	 * @param start the time of the first firing in milliseconds, the schedule fires at once if the time is past.
+	 * @param period the period in milliseconds.
+	 * @return the new schedule.
+	 * @throws IllegalArgumentException if the period is not positive.
+	 */
+	public static ScriptSchedule atFixedRate(long start, long period) throws IllegalArgumentException{
+		if(period <= 0){
+			throw new IllegalArgumentException("The period must be positive");
+		}
+		return new ScriptSchedule(ScheduleKind.FIXED_RATE, start, period, null);
+	}
+
+	/**
+	 * Creates a schedule that fires at the minutes matched by a cron expression.
+	 * @param cron the cron expression.
+	 * @return the new schedule.
+	 */
+	public static ScriptSchedule cron(CronExpression cron){
+		return new ScriptSchedule(ScheduleKind.CRON, 0, 0, cron);
+	}
+
+
+	/**
+	 * Gets the way the schedule fires its script.
+	 * @return the kind of the schedule.
+	 */
+	public ScheduleKind getKind() {
+		return kind;
+	}
+
+	/**
+	 * Gets the time of the firing of a one-shot schedule, or of the first firing of a fixed rate schedule.
+	 * @return the time in milliseconds, 0 for a cron schedule.
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * Gets the period of a fixed rate schedule.
+	 * @return the period in milliseconds, 0 for the other schedules.
+	 */
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * Gets the cron expression of a cron schedule.
+	 * @return the cron expression, null for the other schedules.
+	 */
+	public CronExpression getCron() {
+		return cron;
+	}
+
+	/**
+	 * Gets the id of the schedule.
+	 * @return the id, null if the schedule is not added to the scheduler.
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the script of the schedule.
+	 * @return the stored script, null if the schedule is not added to the scheduler.
+	 */
+	public StoredScript getScript() {
+		return script;
+	}
+
+	/**
+	 * Gets the priority of the tasks.
+	 * @return the priority of the tasks.
+	 */
+	public TaskPriority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Sets the priority of the tasks. Must be called before the schedule is added to the scheduler.
+	 * @param priority the priority of the tasks.
+	 */
+	public void setPriority(TaskPriority priority) {
+		this.priority = priority;
+	}
+
+	/**
+	 * Gets the tenant of the tasks.
+	 * @return the name of the tenant, null for the default tenant.
+	 */
+	public String getTenant() {
+		return tenant;
+	}
+
+	/**
+	 * Sets the tenant of the tasks. Must be called before the schedule is added to the scheduler.
+	 * @param tenant the name of the tenant, null for the default tenant.
+	 */
+	public void setTenant(String tenant) {
+		this.tenant = tenant;
+	}
+
+	/**
+	 * Gets the variables given to the scripts.
+	 * @return the values of the variables by name, null if the script has no variables.
+	 */
+	public Map<String, Object> getBindings() {
+		return bindings;
+	}
+
+	/**
+	 * Sets the variables given to the scripts. Must be called before the schedule is added to the scheduler.
+	 * @param bindings the values of the variables by name, null if the script has no variables.
+	 */
+	public void setBindings(Map<String, Object> bindings) {
+		this.bindings = bindings;
+	}
+
+	/**
+	 * Gets the time each task may run before it is stopped.
+	 * @return the time in milliseconds, 0 for the default timeout of the scheduler.
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets the time each task may run before it is stopped. Must be called before the schedule is added to the scheduler.
+	 * @param timeout the time in milliseconds, 0 for the default timeout of the scheduler.
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Gets the bound of the random offset of the firings.
+	 * @return the bound in milliseconds, 0 if the firings are not delayed.
+	 */
+	public long getSpread() {
+		return spread;
+	}
+
+	/**
+	 * Sets the bound of the random offset of the firings. Must be called before the schedule is added to the scheduler.
+	 * The offset is chosen once, so the firings of a fixed rate schedule stay one period apart.
+	 * @param spread the bound in milliseconds, 0 if the firings are not delayed.
+	 */
+	public void setSpread(long spread) {
+		this.spread = spread;
+		this.offset = spread > 0 ? (long) (RANDOM.nextDouble() * spread) : 0;
+	}
+
+	/**
+	 * Gets the random offset of the firings.
+	 * @return the offset in milliseconds.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Gets the time of the next firing.
+	 * @return the time in milliseconds, or -1 if the schedule is ended.
+	 */
+	public long getNextFiringAt() {
+		return nextFiringAt;
+	}
+
+	/**
+	 * Gets the number of firings.
+	 * @return the number of tasks submitted by the schedule.
+	 */
+	public long getNbFirings() {
+		return nbFirings;
+	}
+
+	/**
+	 * Gets the id of the task submitted by the last firing.
+	 * @return the id of the task, null if the schedule has not fired.
+	 */
+	public Long getLastTaskId() {
+		return lastTaskId;
+	}
+
+	/**
+	 * Indicates whether the schedule is cancelled or has fired for the last time.
+	 * @return true if the schedule will not fire anymore.
+	 */
+	public boolean isEnded() {
+		return this.ended.get();
+	}
+
+
+	/**
+	 * Gives the schedule its id and its script, when it is added to the scheduler.
+	 * @param id the id of the schedule.
+	 * @param script the script of the schedule.
+	 */
+	protected void bind(Long id, StoredScript script) {
+		this.id = id;
+		this.script = script;
+	}
+
+	/**
+	 * Plans the next firing: the first time matched by the schedule after the last one, 
+	 * skipping the times already past except for the first firing.
+	 * Only called by one thread at a time: the thread that adds the schedule, then the thread that fires it.
+	 * @param now the current time in milliseconds.
+	 * @return the time of the next firing with the offset in milliseconds, or -1 if the schedule will not fire anymore.
+	 */
+	protected long planNext(long now) {
+		long slot;
+		if(this.kind == ScheduleKind.AT){
+			slot = this.lastSlot < 0 ? this.start : -1;
+		}
+		else if(this.kind == ScheduleKind.FIXED_RATE){
+			if(this.lastSlot < 0){
+				slot = this.start;
+			}
+			else{
+				slot = this.lastSlot + this.period;
+				if(slot < now){
+					slot += ((now - slot) / this.period + 1) * this.period;
+				}
+			}
+		}
+		else{
+			slot = this.cron.next(Math.max(this.lastSlot, now));
+		}
+		if(slot < 0){
+			this.nextFiringAt = -1;
+			return -1;
+		}
+		this.lastSlot = slot;
+		this.nextFiringAt = slot + this.offset;
+		return this.nextFiringAt;
+	}
+
+	/**
+	 * Sets the timeout of the timer that fires the schedule next, that is cancelled if the schedule is already ended.
+	 * @param pending the timeout.
+	 */
+	protected void setPending(HashedWheelTimer.Timeout pending) {
+		this.pending = pending;
+		if(this.ended.get()){
+			pending.cancel();
+		}
+	}
+
+	/**
+	 * Records a firing.
+	 * @param taskId the id of the submitted task.
+	 */
+	protected void fired(Long taskId) {
+		this.lastTaskId = taskId;
+		this.nbFirings++;
+	}
+
+	/**
+	 * Ends the schedule, so that it does not fire anymore.
+	 * @return true if the schedule was not already ended.
+	 */
+	protected boolean end() {
+		if(!this.ended.compareAndSet(false, true)){
+			return false;
+		}
+		this.nextFiringAt = -1;
+		HashedWheelTimer.Timeout current = this.pending;
+		if(current != null){
+			current.cancel();
+		}
+		return true;
+	}
+}
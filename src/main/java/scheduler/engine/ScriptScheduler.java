@@ -1,10 +1,33 @@
 package scheduler.engine;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.ScriptException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,7 +38,7 @@ import org.slf4j.LoggerFactory;
  * @author Sandrine Ben Mabrouk
  *
  */
-public class ScriptScheduler {
+public class ScriptScheduler implements TaskListener {
 	
 	
 	/**
@@ -24,15 +47,298 @@ public class ScriptScheduler {
 	static final Logger LOG = LoggerFactory.getLogger(ScriptScheduler.class);
 	
 	/**
-	 * The scripts managed by the scheduler.
+	 * The default period between two evictions of the finished tasks, in milliseconds.
+	 */
+	public static final long DEFAULT_EVICTION_PERIOD = 1000;
+	
+	/**
+	 * The default period between two adjustments of the size of the pool, in milliseconds.
+	 */
+	public static final long DEFAULT_POOL_ADJUSTMENT_PERIOD = 1000;
+	
+	/**
+	 * The tasks managed by the scheduler: the script tasks that are running, and the records of the finished tasks.
+	 */
+	protected ConcurrentHashMap<Long, Task> scripts;
+	
+	/**
+	 * The last events of the lifecycle of the tasks.
+	 */
+	protected volatile TaskEventBuffer events = new TaskEventBuffer(TaskEventBuffer.DEFAULT_CAPACITY);
+	
+	/**
+	 * The scripts registered to be run many times, by handle.
+	 */
+	protected final ConcurrentHashMap<String, StoredScript> registeredScripts = new ConcurrentHashMap<String, StoredScript>();
+	
+	/**
+	 * The callbacks waiting for the end of the running tasks, by task id.
+	 */
+	protected final ConcurrentHashMap<Long, Queue<CompletionCallback>> waiters = new ConcurrentHashMap<Long, Queue<CompletionCallback>>();
+	
+	/**
+	 * The running tasks, sorted by id.
+	 */
+	protected ConcurrentSkipListMap<Long, AbstractScriptTask> running;
+	
+	/**
+	 * The finished tasks, sorted by id.
+	 */
+	protected ConcurrentSkipListMap<Long, CompletedTask> finished;
+	
+	/**
+	 * The number of running tasks.
+	 */
+	protected final AtomicInteger nbRunning = new AtomicInteger();
+	
+	/**
+	 * The number of finished tasks.
+	 */
+	protected final AtomicInteger nbFinished = new AtomicInteger();
+	
+	/**
+	 * The finished tasks, sorted by their retention key, that is in the order they were finished.
+	 */
+	protected ConcurrentSkipListMap<Long, CompletedTask> retention;
+	
+	/**
+	 * The last retention key given to a finished task.
+	 */
+	protected final AtomicLong retentionSequence = new AtomicLong();
+	
+	/**
+	 * The estimated heap size of the finished tasks, in bytes.
+	 */
+	protected final AtomicLong finishedBytes = new AtomicLong();
+	
+	/**
+	 * The number of finished tasks evicted by the scheduler.
+	 */
+	protected final AtomicLong nbEvictions = new AtomicLong();
+	
+	/**
+	 * The finished tasks whose result is in the heap and can be spilled, sorted by their retention key.
+	 */
+	protected ConcurrentSkipListMap<Long, CompletedTask> hot;
+	
+	/**
+	 * The estimated heap size of the results that can be spilled, in bytes.
+	 */
+	protected final AtomicLong hotBytes = new AtomicLong();
+	
+	/**
+	 * The directory where the results are spilled, null if the results are kept in the heap.
+	 */
+	protected File resultSpillDirectory = null;
+	
+	/**
+	 * The estimated heap size max of the results kept in the heap when the results are spilled, in bytes. 
+	 * The oldest results are spilled first.
+	 */
+	protected long maxHotResultBytes = 0;
+	
+	/**
+	 * The estimated size from which a result is spilled as soon as its task is finished, in bytes, 0 to disable.
+	 */
+	protected long resultSpillThreshold = 0;
+	
+	/**
+	 * The size of the segment files where the results are spilled, in bytes.
+	 */
+	protected int resultSegmentSize = ResultSpillStore.DEFAULT_SEGMENT_SIZE;
+	
+	/**
+	 * The store of the spilled results, null if the results are kept in the heap.
+	 */
+	protected ResultSpillStore resultStore = null;
+	
+	/**
+	 * The number max of finished tasks kept by the scheduler, 0 for no limit.
+	 */
+	protected int maxFinishedTasks = 0;
+	
+	/**
+	 * The estimated size max of the finished tasks kept by the scheduler in bytes, 0 for no limit.
+	 */
+	protected long maxFinishedBytes = 0;
+	
+	/**
+	 * The time a finished task is kept by the scheduler in milliseconds, 0 for no limit.
+	 */
+	protected long finishedTaskTtl = 0;
+	
+	/**
+	 * The period between two evictions of the finished tasks, in milliseconds.
+	 */
+	protected long evictionPeriod = DEFAULT_EVICTION_PERIOD;
+	
+	/**
+	 * The timer that stops the tasks whose deadline expired, created when the scheduler starts.
+	 */
+	protected volatile HashedWheelTimer deadlines = null;
+	
+	/**
+	 * The time in milliseconds a script may run before it is stopped, for the tasks without a specific timeout, 0 for no limit.
+	 */
+	protected long defaultTimeout = 0;
+	
+	/**
+	 * The schedules of scripts by id.
+	 */
+	protected final ConcurrentHashMap<Long, ScriptSchedule> schedules = new ConcurrentHashMap<Long, ScriptSchedule>();
+	
+	/**
+	 * The last id given to a schedule.
+	 */
+	protected final AtomicLong scheduleIds = new AtomicLong();
+	
+	/**
+	 * The timer that fires the schedules, created when the scheduler starts.
+	 */
+	protected volatile HashedWheelTimer scheduleTimer = null;
+	
+	/**
+	 * The thread that submits the tasks of the due schedules and of the released nodes of the graphs in background, 
+	 * so that neither the timer thread nor the workers are blocked.
+	 */
+	protected ExecutorService firer = null;
+	
+	/**
+	 * The schedules whose firing time has come, not yet fired.
+	 */
+	protected final Queue<ScriptSchedule> dueSchedules = new ConcurrentLinkedQueue<ScriptSchedule>();
+	
+	/**
+	 * The nodes of the graphs whose parents are all finished successfully, not yet submitted.
+	 */
+	protected final Queue<TaskGraph.Node> releasedNodes = new ConcurrentLinkedQueue<TaskGraph.Node>();
+	
+	/**
+	 * Indicates if a firing is already requested to the firer.
+	 */
+	protected final AtomicBoolean firingRequested = new AtomicBoolean();
+	
+	/**
+	 * The number of tasks submitted by the schedules.
+	 */
+	protected final AtomicLong nbFirings = new AtomicLong();
+	
+	/**
+	 * The firing of the due schedules and of the released nodes, executed by the firer.
+	 */
+	protected final Runnable firing = new Runnable() {
+		@Override
+		public void run() {
+			try{
+				fireDueSchedules();
+			}
+			catch(RuntimeException ex){
+				LOG.error("unable to fire the due schedules", ex);
+			}
+		}
+	};
+	
+	/**
+	 * The graphs of tasks by id, kept until the tasks of all their nodes are evicted.
+	 */
+	protected final ConcurrentHashMap<Long, TaskGraph> graphs = new ConcurrentHashMap<Long, TaskGraph>();
+	
+	/**
+	 * The last id given to a graph.
+	 */
+	protected final AtomicLong graphIds = new AtomicLong();
+	
+	/**
+	 * The thread that evicts the finished tasks in background.
+	 */
+	protected ScheduledExecutorService evictor = null;
+	
+	/**
+	 * Indicates if an eviction is already requested to the evictor.
+	 */
+	protected final AtomicBoolean evictionRequested = new AtomicBoolean();
+	
+	/**
+	 * The eviction of the finished tasks, executed by the evictor.
+	 */
+	protected final Runnable eviction = new Runnable() {
+		@Override
+		public void run() {
+			try{
+				evictFinishedTasks();
+			}
+			catch(RuntimeException ex){
+				LOG.error("unable to evict the finished tasks", ex);
+			}
+		}
+	};
+	
+	/**
+	 * The directory of the journal of the tasks, null if the tasks are not journaled.
+	 */
+	protected File journalDirectory = null;
+	
+	/**
+	 * The size of the journal that triggers a compaction, in bytes.
+	 */
+	protected long journalCompactionThreshold = TaskJournal.DEFAULT_COMPACTION_THRESHOLD;
+	
+	/**
+	 * The codec used to journal the snapshots of the finished tasks.
 	 */
-	protected ConcurrentHashMap<Long, AbstractScriptTask> scripts;
+	protected SnapshotCodec snapshotCodec = new SerializingSnapshotCodec();
+	
+	/**
+	 * The journal of the tasks, null if the tasks are not journaled.
+	 */
+	protected TaskJournal journal = null;
 	
 	/**
 	 * A thread pool to execute the scripts.
 	 */
 	protected ExecutorService threadPool = null;
 	
+	/**
+	 * The way the scheduler executes the scripts.
+	 */
+	protected ExecutionMode executionMode = ExecutionMode.THREAD_POOL;
+	
+	/**
+	 * The number max of scripts compiling or running an explicit CPU-bound section at the same time in virtual threads mode, 
+	 * 0 for the number max of threads.
+	 */
+	protected int cpuPermits = 0;
+	
+	/**
+	 * The number max of platform threads in virtual threads mode.
+	 */
+	protected int maxPlatformThreads = ThreadPerTaskExecutor.DEFAULT_MAX_PLATFORM_THREADS;
+	
+	/**
+	 * The time a task waiting for a worker takes to gain one priority level, in milliseconds.
+	 */
+	protected long queueAging = PriorityExecutor.DEFAULT_AGING;
+	
+	/**
+	 * The weight of the tenants that have no specific weight.
+	 */
+	protected int defaultTenantWeight = 1;
+	
+	/**
+	 * The number max of running tasks of the tenants that have no specific cap, 0 for no limit.
+	 */
+	protected int defaultTenantCap = 0;
+	
+	/**
+	 * The specific weights of the tenants, by tenant name.
+	 */
+	protected final Map<String, Integer> tenantWeights = new ConcurrentHashMap<String, Integer>();
+	
+	/**
+	 * The specific numbers max of running tasks of the tenants, by tenant name.
+	 */
+	protected final Map<String, Integer> tenantCaps = new ConcurrentHashMap<String, Integer>();
+	
 	/**
 	 * A factory that creates new script tasks.
 	 */
@@ -44,6 +350,26 @@ public class ScriptScheduler {
 	 */
 	protected int maxNbThread;
 	
+	/**
+	 * The number min of threads the pool may be shrunk to in thread pool mode, 0 for the number max of threads.
+	 */
+	protected int minPoolSize = 0;
+	
+	/**
+	 * The number max of threads the pool may be grown to in thread pool mode, 0 for the number max of threads.
+	 */
+	protected int maxPoolSize = 0;
+	
+	/**
+	 * The period of the adjustments of the size of the pool, in milliseconds.
+	 */
+	protected long poolAdjustmentPeriod = DEFAULT_POOL_ADJUSTMENT_PERIOD;
+	
+	/**
+	 * The controller that resizes the pool in thread pool mode, null if the scheduler is not started in this mode.
+	 */
+	protected volatile PoolSizeController poolController = null;
+	
 	/**
 	 * Singleton instance.
 	 */
@@ -64,7 +390,11 @@ public class ScriptScheduler {
 	 * Creates a new script scheduler.
 	 */
 	public ScriptScheduler(){
-		this.scripts = new ConcurrentHashMap<Long, AbstractScriptTask>();
+		this.scripts = new ConcurrentHashMap<Long, Task>();
+		this.running = new ConcurrentSkipListMap<Long, AbstractScriptTask>();
+		this.finished = new ConcurrentSkipListMap<Long, CompletedTask>();
+		this.retention = new ConcurrentSkipListMap<Long, CompletedTask>();
+		this.hot = new ConcurrentSkipListMap<Long, CompletedTask>();
 		this.taskFactory = new GroovyScriptTaskFactory();
 	}
 	
@@ -85,92 +415,1850 @@ public class ScriptScheduler {
 	public void setMaxNbThread(int maxNbThread) {
 		this.maxNbThread = maxNbThread;
 	}
+	
+	/**
+	 * Gets the number min of threads the pool may be shrunk to in thread pool mode.
+	 * @return the number min of threads, 0 for the number max of threads.
+	 */
+	public int getMinPoolSize() {
+		return minPoolSize;
+	}
 
 	/**
-	 * Submit a new script to the scheduler in order to execute it.
-	 * @param bodyScript the content of the script to be executed.
-	 * @return the new created script task.
+	 * Sets the number min of threads the pool may be shrunk to in thread pool mode. Takes effect at the next start of the scheduler.
+	 * @param minPoolSize the number min of threads, 0 for the number max of threads.
+	 * @see #setPoolSizeBounds(int, int)
 	 */
-	public AbstractScriptTask submitScript(String bodyScript){
-		AbstractScriptTask task = this.taskFactory.create(bodyScript);
-		task.start(this.threadPool);
-		this.scripts.put(task.getId(), task);
-		return task;
+	public void setMinPoolSize(int minPoolSize) {
+		this.minPoolSize = minPoolSize;
+	}
+
+	/**
+	 * Gets the number max of threads the pool may be grown to in thread pool mode.
+	 * @return the number max of threads, 0 for the number max of threads.
+	 */
+	public int getMaxPoolSize() {
+		return maxPoolSize;
+	}
+
+	/**
+	 * Sets the number max of threads the pool may be grown to in thread pool mode. Takes effect at the next start of the scheduler.
+	 * @param maxPoolSize the number max of threads, 0 for the number max of threads.
+	 * @see #setPoolSizeBounds(int, int)
+	 */
+	public void setMaxPoolSize(int maxPoolSize) {
+		this.maxPoolSize = maxPoolSize;
 	}
 	
 	/**
-	 * Gets the tasks that are running.
-	 * @return a list of running tasks.
+	 * Changes the bounds of the size of the pool, and applies them at once if the scheduler is started in thread pool mode.
+	 * @param minSize the number min of threads.
+	 * @param maxSize the number max of threads.
+	 * @throws IllegalArgumentException if the number min is lower than 1 or greater than the number max.
 	 */
-	public ArrayList<Task> getRunningTasks(){
-		ArrayList<Task> result = new ArrayList<Task>(this.scripts.size());
-		for(Map.Entry<Long, AbstractScriptTask> current: this.scripts.entrySet()){
-			AbstractScriptTask currentTask = current.getValue();
-			if(!currentTask.getFuture().isDone()){
-				result.add(current.getValue());
-			}
+	public void setPoolSizeBounds(int minSize, int maxSize){
+		PoolSizeController.checkBounds(minSize, maxSize);
+		this.minPoolSize = minSize;
+		this.maxPoolSize = maxSize;
+		PoolSizeController controller = this.poolController;
+		if(controller != null){
+			controller.setBounds(minSize, maxSize);
 		}
-		return result;
+	}
+
+	/**
+	 * Gets the period of the adjustments of the size of the pool.
+	 * @return the period in milliseconds.
+	 */
+	public long getPoolAdjustmentPeriod() {
+		return poolAdjustmentPeriod;
+	}
+
+	/**
+	 * Sets the period of the adjustments of the size of the pool. Takes effect at the next start of the scheduler.
+	 * @param poolAdjustmentPeriod the period in milliseconds.
+	 */
+	public void setPoolAdjustmentPeriod(long poolAdjustmentPeriod) {
+		this.poolAdjustmentPeriod = poolAdjustmentPeriod;
+	}
+	
+	/**
+	 * Gets the controller that resizes the pool.
+	 * @return the controller, null if the scheduler is not started in thread pool mode.
+	 */
+	public PoolSizeController getPoolSizeController() {
+		return poolController;
 	}
 	
+	/**
+	 * Gets the way the scheduler executes the scripts.
+	 * @return the execution mode.
+	 */
+	public ExecutionMode getExecutionMode() {
+		return executionMode;
+	}
+
+	/**
+	 * Sets the way the scheduler executes the scripts. Takes effect at the next start of the scheduler.
+	 * @param executionMode the execution mode.
+	 */
+	public void setExecutionMode(ExecutionMode executionMode) {
+		this.executionMode = executionMode;
+	}
 	
 	/**
-	 * Gets the tasks that are finished.
-	 * @return a list of id corresponding to the finished tasks.
+	 * Gets the memory pool where the classes are loaded: the Metaspace, or the permanent generation before Java 8.
+	 * @return the memory pool of the classes, null if the virtual machine has no such pool.
 	 */
-	public ArrayList<Task> getFinishedTasks(){
-		ArrayList<Task> result = new ArrayList<Task>(this.scripts.size());
-		for(Map.Entry<Long, AbstractScriptTask> current: this.scripts.entrySet()){
-			AbstractScriptTask currentTask = current.getValue();
-			if(currentTask.getFuture().isDone()){
-				result.add(current.getValue());
+	protected static MemoryPoolMXBean getMetaspacePool() {
+		for(MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()){
+			if(pool.getName().contains("Metaspace") || pool.getName().contains("Perm Gen")){
+				return pool;
 			}
 		}
-		return result;
+		return null;
 	}
 	
 	/**
-	 * Removes a task from the scheduler
-	 * @param id the id of the task to be removed.
-	 * @throws UnknownTaskException occurs if the id does not exists in the scheduler.
+	 * Gets the way the new tasks compile their scripts.
+	 * @return the compilation mode.
 	 */
-	public void removeTask(Long id) throws UnknownTaskException{
-		AbstractScriptTask task = this.getTask(id);
-		if(!task.getFuture().isDone()){
-			task.getFuture().cancel(true);
-		}
-		this.scripts.remove(id);
+	public CompilationMode getCompilationMode() {
+		return GroovyScriptTask.getDefaultCompilationMode();
+	}
+
+	/**
+	 * Sets the way the new tasks compile their scripts. 
+	 * A script that can not be compiled in a checked mode is compiled dynamically, and the snapshots of its tasks tell why.
+	 * @param compilationMode the compilation mode.
+	 */
+	public void setCompilationMode(CompilationMode compilationMode) {
+		GroovyScriptTask.setDefaultCompilationMode(compilationMode);
 	}
 	
 	/**
-	 * Get the task corresponding to the given id.
-	 * @param id the id of the task to be retrieved.
-	 * @return the corresponding task.
-	 * @throws UnknownTaskException occurs if the id does not exists in the scheduler.
+	 * Gets the time a script may run before it is stopped, for the tasks without a specific timeout.
+	 * @return the time in milliseconds, 0 for no limit.
 	 */
-	public AbstractScriptTask getTask(Long id) throws UnknownTaskException{
-		AbstractScriptTask result = this.scripts.get(id);
-		if(result == null){
-			throw new UnknownTaskException(id);
-		}
-		return result;
+	public long getDefaultTimeout() {
+		return defaultTimeout;
 	}
 	
 	/**
-	 * Starts the scheduler engine. 
+	 * Sets the time a script may run before it is stopped, for the tasks without a specific timeout.
+	 * The deadline of a task starts when a worker starts the task, and the task then ends with the status {@link TaskStatus#TIMED_OUT}.
+	 * @param defaultTimeout the time in milliseconds, 0 for no limit.
 	 */
-	public void start(){
-		LOG.info("Start the scheduler engine");
-		this.threadPool = Executors.newFixedThreadPool(this.maxNbThread);
+	public void setDefaultTimeout(long defaultTimeout) {
+		this.defaultTimeout = defaultTimeout;
 	}
 	
 	/**
-	 * Shutdown the scheduler engine.
+	 * Gets the timer that stops the tasks whose deadline expired.
+	 * @return the timer, null if the scheduler is not started.
 	 */
-	public void shutdown(){
-		LOG.info("Shutdown the scheduler engine");
-		this.threadPool.shutdown();
-		this.scripts.clear();
+	public HashedWheelTimer getDeadlineTimer() {
+		return deadlines;
+	}
+	
+	/**
+	 * Gets the time after which a script is stopped.
+	 * @return the time in milliseconds, 0 for no limit.
+	 */
+	public long getMaxScriptDuration() {
+		return GroovyScriptTask.getGenerations(CompilationMode.DYNAMIC).getMaxDuration();
+	}
+	
+	/**
+	 * Sets the time after which a script is stopped: the script throws a TimeoutException at its next loop, closure or method,
+	 * and its task ends in error.
+	 * @param maxDuration the time in milliseconds, 0 for no limit.
+	 */
+	public void setMaxScriptDuration(long maxDuration) {
+		GroovyScriptTask.setMaxScriptDuration(maxDuration);
+	}
+	
+	/**
+	 * Sets the number max of classes defined by a generation of engines before it is retired, 
+	 * which bounds the classes, and the Metaspace, used by the compiled scripts.
+	 * @param maxClasses the number max of classes of a generation.
+	 * @see EngineGenerations
+	 */
+	public void setMaxClassesPerGeneration(int maxClasses) {
+		GroovyScriptTask.setMaxClassesPerGeneration(maxClasses);
+	}
+
+	/**
+	 * Gets the number max of scripts compiling or running an explicit CPU-bound section at the same time in virtual threads mode.
+	 * @return the number of permits, 0 for the number max of threads.
+	 */
+	public int getCpuPermits() {
+		return cpuPermits;
+	}
+
+	/**
+	 * Sets the number max of scripts compiling or running an explicit CPU-bound section at the same time in virtual threads mode. Takes effect at the next start of the scheduler.
+	 * @param cpuPermits the number of permits, 0 for the number max of threads.
+	 */
+	public void setCpuPermits(int cpuPermits) {
+		this.cpuPermits = cpuPermits;
+	}
+
+	/**
+	 * Gets the number max of platform threads running the scripts in virtual threads mode.
+	 * @return the number max of platform threads.
+	 */
+	public int getMaxPlatformThreads() {
+		return maxPlatformThreads;
+	}
+
+	/**
+	 * Sets the number max of platform threads running the scripts in virtual threads mode. 
+	 * Takes effect at the next start of the scheduler.
+	 * @param maxPlatformThreads the number max of platform threads.
+	 */
+	public void setMaxPlatformThreads(int maxPlatformThreads) {
+		this.maxPlatformThreads = maxPlatformThreads;
+	}
+
+	/**
+	 * Gets the time a task waiting for a worker takes to gain one priority level.
+	 * @return the time in milliseconds.
+	 */
+	public long getQueueAging() {
+		return queueAging;
+	}
+
+	/**
+	 * Sets the time a task waiting for a worker takes to gain one priority level, 
+	 * so that the low priority tasks are run eventually. Takes effect at the next start of the scheduler.
+	 * @param queueAging the time in milliseconds.
+	 */
+	public void setQueueAging(long queueAging) {
+		this.queueAging = queueAging;
+	}
+
+	/**
+	 * Gets the weight of the tenants that have no specific weight.
+	 * @return the weight.
+	 */
+	public int getDefaultTenantWeight() {
+		return defaultTenantWeight;
+	}
+
+	/**
+	 * Sets the weight of the tenants that have no specific weight. Takes effect at the next start of the scheduler.
+	 * @param defaultTenantWeight the weight, at least 1.
+	 */
+	public void setDefaultTenantWeight(int defaultTenantWeight) {
+		this.defaultTenantWeight = defaultTenantWeight;
+	}
+
+	/**
+	 * Gets the number max of running tasks of the tenants that have no specific cap.
+	 * @return the number max of running tasks, 0 for no limit.
+	 */
+	public int getDefaultTenantCap() {
+		return defaultTenantCap;
+	}
+
+	/**
+	 * Sets the number max of running tasks of the tenants that have no specific cap.
+	 * @param defaultTenantCap the number max of running tasks, 0 for no limit.
+	 */
+	public void setDefaultTenantCap(int defaultTenantCap) {
+		this.defaultTenantCap = defaultTenantCap;
+		PriorityExecutor pool = this.getPriorityExecutor();
+		if(pool != null){
+			pool.getFairShareQueue().setDefaultCap(defaultTenantCap);
+		}
+	}
+
+	/**
+	 * Sets the weight of a tenant, that is the number of tasks it starts in a row when it is its turn.
+	 * @param tenant the name of the tenant.
+	 * @param weight the weight, at least 1.
+	 */
+	public void setTenantWeight(String tenant, int weight) {
+		this.tenantWeights.put(tenant, weight);
+		PriorityExecutor pool = this.getPriorityExecutor();
+		if(pool != null){
+			pool.getFairShareQueue().setWeight(tenant, weight);
+		}
+	}
+
+	/**
+	 * Sets the number max of running tasks of a tenant.
+	 * @param tenant the name of the tenant.
+	 * @param cap the number max of running tasks, 0 for no limit.
+	 */
+	public void setTenantCap(String tenant, int cap) {
+		this.tenantCaps.put(tenant, cap);
+		PriorityExecutor pool = this.getPriorityExecutor();
+		if(pool != null){
+			pool.getFairShareQueue().setCap(tenant, cap);
+		}
+	}
+
+	/**
+	 * Gets the number max of finished tasks kept by the scheduler.
+	 * @return the number max of finished tasks, 0 for no limit.
+	 */
+	public int getMaxFinishedTasks() {
+		return maxFinishedTasks;
+	}
+
+	/**
+	 * Sets the number max of finished tasks kept by the scheduler. The oldest finished tasks are evicted first.
+	 * @param maxFinishedTasks the number max of finished tasks, 0 for no limit.
+	 */
+	public void setMaxFinishedTasks(int maxFinishedTasks) {
+		this.maxFinishedTasks = maxFinishedTasks;
+	}
+
+	/**
+	 * Gets the estimated size max of the finished tasks kept by the scheduler.
+	 * @return the size max in bytes, 0 for no limit.
+	 */
+	public long getMaxFinishedBytes() {
+		return maxFinishedBytes;
+	}
+
+	/**
+	 * Sets the estimated size max of the finished tasks kept by the scheduler. The oldest finished tasks are evicted first.
+	 * @param maxFinishedBytes the size max in bytes, 0 for no limit.
+	 */
+	public void setMaxFinishedBytes(long maxFinishedBytes) {
+		this.maxFinishedBytes = maxFinishedBytes;
+	}
+
+	/**
+	 * Gets the time a finished task is kept by the scheduler.
+	 * @return the time in milliseconds, 0 for no limit.
+	 */
+	public long getFinishedTaskTtl() {
+		return finishedTaskTtl;
+	}
+
+	/**
+	 * Sets the time a finished task is kept by the scheduler.
+	 * @param finishedTaskTtl the time in milliseconds, 0 for no limit.
+	 */
+	public void setFinishedTaskTtl(long finishedTaskTtl) {
+		this.finishedTaskTtl = finishedTaskTtl;
+	}
+
+	/**
+	 * Gets the period between two evictions of the finished tasks.
+	 * @return the period in milliseconds.
+	 */
+	public long getEvictionPeriod() {
+		return evictionPeriod;
+	}
+
+	/**
+	 * Sets the period between two evictions of the finished tasks. Takes effect at the next start of the scheduler.
+	 * @param evictionPeriod the period in milliseconds.
+	 */
+	public void setEvictionPeriod(long evictionPeriod) {
+		this.evictionPeriod = evictionPeriod;
+	}
+
+	/**
+	 * Gets the directory where the results are spilled.
+	 * @return the directory, null if the results are kept in the heap.
+	 */
+	public File getResultSpillDirectory() {
+		return resultSpillDirectory;
+	}
+
+	/**
+	 * Sets the directory where the results are spilled. Takes effect at the next start of the scheduler.
+	 * @param resultSpillDirectory the directory, null to keep the results in the heap.
+	 */
+	public void setResultSpillDirectory(File resultSpillDirectory) {
+		this.resultSpillDirectory = resultSpillDirectory;
+	}
+
+	/**
+	 * Gets the estimated heap size max of the results kept in the heap when the results are spilled.
+	 * @return the size max in bytes.
+	 */
+	public long getMaxHotResultBytes() {
+		return maxHotResultBytes;
+	}
+
+	/**
+	 * Sets the estimated heap size max of the results kept in the heap when the results are spilled. 
+	 * The oldest results are spilled first.
+	 * @param maxHotResultBytes the size max in bytes.
+	 */
+	public void setMaxHotResultBytes(long maxHotResultBytes) {
+		this.maxHotResultBytes = maxHotResultBytes;
+	}
+
+	/**
+	 * Gets the estimated size from which a result is spilled as soon as its task is finished.
+	 * @return the size in bytes, 0 if disabled.
+	 */
+	public long getResultSpillThreshold() {
+		return resultSpillThreshold;
+	}
+
+	/**
+	 * Sets the estimated size from which a result is spilled as soon as its task is finished.
+	 * @param resultSpillThreshold the size in bytes, 0 to disable.
+	 */
+	public void setResultSpillThreshold(long resultSpillThreshold) {
+		this.resultSpillThreshold = resultSpillThreshold;
+	}
+
+	/**
+	 * Gets the size of the segment files where the results are spilled.
+	 * @return the size in bytes.
+	 */
+	public int getResultSegmentSize() {
+		return resultSegmentSize;
+	}
+
+	/**
+	 * Sets the size of the segment files where the results are spilled. Takes effect at the next start of the scheduler.
+	 * @param resultSegmentSize the size in bytes.
+	 */
+	public void setResultSegmentSize(int resultSegmentSize) {
+		this.resultSegmentSize = resultSegmentSize;
+	}
+
+	/**
+	 * Gets the directory of the journal of the tasks.
+	 * @return the directory of the journal, null if the tasks are not journaled.
+	 */
+	public File getJournalDirectory() {
+		return journalDirectory;
+	}
+
+	/**
+	 * Sets the directory of the journal of the tasks. Takes effect at the next start of the scheduler,
+	 * that rebuilds the tasks found in the journal.
+	 * @param journalDirectory the directory of the journal, null to disable the journal.
+	 */
+	public void setJournalDirectory(File journalDirectory) {
+		this.journalDirectory = journalDirectory;
+	}
+
+	/**
+	 * Gets the size of the journal that triggers a compaction.
+	 * @return the size in bytes.
+	 */
+	public long getJournalCompactionThreshold() {
+		return journalCompactionThreshold;
+	}
+
+	/**
+	 * Sets the size of the journal that triggers a compaction. Takes effect at the next start of the scheduler.
+	 * @param journalCompactionThreshold the size in bytes.
+	 */
+	public void setJournalCompactionThreshold(long journalCompactionThreshold) {
+		this.journalCompactionThreshold = journalCompactionThreshold;
+	}
+
+	/**
+	 * Gets the codec used to journal the snapshots of the finished tasks.
+	 * @return the codec.
+	 */
+	public SnapshotCodec getSnapshotCodec() {
+		return snapshotCodec;
+	}
+
+	/**
+	 * Sets the codec used to journal the snapshots of the finished tasks. Takes effect at the next start of the scheduler.
+	 * @param snapshotCodec the codec.
+	 */
+	public void setSnapshotCodec(SnapshotCodec snapshotCodec) {
+		this.snapshotCodec = snapshotCodec;
+	}
+
+	/**
+	 * Gets the journal of the tasks.
+	 * @return the journal, null if the tasks are not journaled.
+	 */
+	public TaskJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Submit a new script to the scheduler in order to execute it, with the normal priority.
+	 * @param bodyScript the content of the script to be executed.
+	 * @return the new created script task.
+	 */
+	public AbstractScriptTask submitScript(String bodyScript){
+		return this.submitScript(bodyScript, TaskPriority.NORMAL);
+	}
+	
+	/**
+	 * Submit a new script to the scheduler in order to execute it, on behalf of the default tenant.
+	 * @param bodyScript the content of the script to be executed.
+	 * @param priority the priority of the task, that orders the tasks waiting for a worker.
+	 * @return the new created script task.
+	 */
+	public AbstractScriptTask submitScript(String bodyScript, TaskPriority priority){
+		return this.submitScript(bodyScript, priority, null);
+	}
+	
+	/**
+	 * Submit a new script to the scheduler in order to execute it on behalf of a tenant.
+	 * The workers are shared fairly between the tenants, and the tasks of a tenant are ordered by priority.
+	 * If the tasks are journaled, returns once the submission is written in the journal.
+	 * @param bodyScript the content of the script to be executed.
+	 * @param priority the priority of the task, that orders the tasks of the tenant waiting for a worker.
+	 * @param tenant the name of the tenant, null for the default tenant.
+	 * @return the new created script task.
+	 */
+	public AbstractScriptTask submitScript(String bodyScript, TaskPriority priority, String tenant){
+		return this.submitScript(bodyScript, priority, tenant, 0);
+	}
+	
+	/**
+	 * Submit a new script to the scheduler in order to execute it on behalf of a tenant, with a timeout.
+	 * @param bodyScript the content of the script to be executed.
+	 * @param priority the priority of the task, that orders the tasks of the tenant waiting for a worker.
+	 * @param tenant the name of the tenant, null for the default tenant.
+	 * @param timeout the time in milliseconds the script may run before it is stopped, 0 for the default timeout.
+	 * @return the new created script task.
+	 * @see #submitScript(String, TaskPriority, String)
+	 */
+	public AbstractScriptTask submitScript(String bodyScript, TaskPriority priority, String tenant, long timeout){
+		return this.submitTask(this.taskFactory.create(bodyScript), priority, tenant, null, timeout);
+	}
+	
+	/**
+	 * Registers a script once so that it can be run many times with different variables.
+	 * The script is compiled at once in the compilation mode of the scheduler, 
+	 * so that its runs do not pay for the compilation and a script that does not compile is rejected.
+	 * Registering the same script again returns the same handle.
+	 * @param bodyScript the content of the script.
+	 * @return the handle of the script, that is the digest of its content.
+	 * @throws ScriptException if the script can not be compiled.
+	 * @see #runScript(String, Map, TaskPriority, String)
+	 */
+	public String registerScript(String bodyScript) throws ScriptException{
+		ScriptStore store = AbstractScriptTask.getScriptStore();
+		StoredScript script = store.acquire(bodyScript);
+		boolean registered = false;
+		try{
+			GroovyScriptTask.compile(script.getContent(), script.getDigest(), GroovyScriptTask.getDefaultCompilationMode());
+			registered = this.registeredScripts.putIfAbsent(script.getDigest(), script) == null;
+		}
+		finally{
+			if(!registered){
+				store.release(script);
+			}
+		}
+		return script.getDigest();
+	}
+	
+	/**
+	 * Unregisters a script. The tasks of the script that are running are not affected.
+	 * @param handle the handle of the script.
+	 * @return true if the script was registered.
+	 */
+	public boolean unregisterScript(String handle){
+		StoredScript script = this.registeredScripts.remove(handle);
+		if(script != null){
+			AbstractScriptTask.getScriptStore().release(script);
+		}
+		return script != null;
+	}
+	
+	/**
+	 * Gets a registered script.
+	 * @param handle the handle of the script.
+	 * @return the script, null if no script is registered with this handle.
+	 */
+	public StoredScript getRegisteredScript(String handle){
+		return this.registeredScripts.get(handle);
+	}
+	
+	/**
+	 * Runs a registered script with the given variables on behalf of a tenant.
+	 * If the tasks are journaled, returns once the submission, with its variables, is written in the journal.
+	 * @param handle the handle of the script.
+	 * @param bindings the values of the variables of the script by name, may be null. 
+	 * The values must be serializable if the tasks are journaled.
+	 * @param priority the priority of the task, that orders the tasks of the tenant waiting for a worker.
+	 * @param tenant the name of the tenant, null for the default tenant.
+	 * @return the new created script task.
+	 * @throws UnknownScriptException if no script is registered with this handle.
+	 */
+	public AbstractScriptTask runScript(String handle, Map<String, Object> bindings, TaskPriority priority, String tenant) throws UnknownScriptException{
+		return this.runScript(handle, bindings, priority, tenant, 0);
+	}
+	
+	/**
+	 * Runs a registered script with the given variables on behalf of a tenant, with a timeout.
+	 * @param handle the handle of the script.
+	 * @param bindings the values of the variables of the script by name, may be null. 
+	 * @param priority the priority of the task, that orders the tasks of the tenant waiting for a worker.
+	 * @param tenant the name of the tenant, null for the default tenant.
+	 * @param timeout the time in milliseconds the script may run before it is stopped, 0 for the default timeout.
+	 * @return the new created script task.
+	 * @throws UnknownScriptException if no script is registered with this handle.
+	 * @see #runScript(String, Map, TaskPriority, String)
+	 */
+	public AbstractScriptTask runScript(String handle, Map<String, Object> bindings, TaskPriority priority, String tenant, long timeout) throws UnknownScriptException{
+		StoredScript script = this.registeredScripts.get(handle);
+		if(script == null){
+			throw new UnknownScriptException(handle);
+		}
+		return this.submitTask(this.taskFactory.create(script.getContent()), priority, tenant, bindings, timeout);
+	}
+	
+	/**
+	 * Journals a new task, then starts it.
+	 * @param task the new task.
+	 * @param priority the priority of the task.
+	 * @param tenant the name of the tenant, null for the default tenant.
+	 * @param bindings the variables of the script, may be null.
+	 * @param timeout the time in milliseconds the script may run, 0 for the default timeout.
+	 * @return the task.
+	 */
+	protected AbstractScriptTask submitTask(AbstractScriptTask task, TaskPriority priority, String tenant, Map<String, Object> bindings, long timeout){
+		TaskJournal.Record record = this.journalAndStart(task, priority, tenant, bindings, timeout);
+		if(record != null && !record.await()){
+			LOG.warn("the submission of the task " + task.getId() + " is not journaled");
+		}
+		return task;
+	}
+	
+	/**
+	 * Registers a new task, appends its submission to the journal, then starts the task without waiting for the journal, 
+	 * so that the submissions of several tasks can be written before waiting for them.
+	 * The task is registered before its submission is appended, so that a compaction of the journal in between 
+	 * rewrites the submission instead of dropping it.
+	 * @param task the new task.
+	 * @param priority the priority of the task.
+	 * @param tenant the name of the tenant, null for the default tenant.
+	 * @param bindings the variables of the script, may be null.
+	 * @param timeout the time in milliseconds the script may run, 0 for the default timeout.
+	 * @return the record of the submission, to be awaited, null if the tasks are not journaled.
+	 * @throws IllegalStateException if the variables of the script can not be journaled, the task is then not started.
+	 */
+	protected TaskJournal.Record journalAndStart(AbstractScriptTask task, TaskPriority priority, String tenant, Map<String, Object> bindings, long timeout) 
+			throws IllegalStateException{
+		TaskJournal.Record record = this.prepareSubmission(task, priority, tenant, bindings, timeout);
+		this.registerAll(Collections.singletonList(task));
+		this.appendSubmission(record);
+		this.startRegistered(task);
+		return record;
+	}
+	
+	/**
+	 * Sets the submission parameters of a new task, then creates the record of its submission, to be appended once the task is registered.
+	 * @param task the new task.
+	 * @param priority the priority of the task.
+	 * @param tenant the name of the tenant, null for the default tenant.
+	 * @param bindings the variables of the script, may be null.
+	 * @param timeout the time in milliseconds the script may run, 0 for the default timeout.
+	 * @return the record of the submission, null if the tasks are not journaled.
+	 * @throws IllegalStateException if the variables of the script can not be journaled.
+	 * @see #appendSubmission(TaskJournal.Record)
+	 */
+	protected TaskJournal.Record prepareSubmission(AbstractScriptTask task, TaskPriority priority, String tenant, Map<String, Object> bindings, long timeout) 
+			throws IllegalStateException{
+		task.setPriority(priority);
+		task.setTenant(tenant);
+		task.setBindings(bindings);
+		task.setTimeout(timeout);
+		TaskJournal currentJournal = this.journal;
+		return currentJournal == null ? null : currentJournal.submittedRecord(task);
+	}
+	
+	/**
+	 * Appends the submission of a registered task to the journal, without waiting for it.
+	 * @param record the record of the submission, may be null if the tasks are not journaled.
+	 */
+	protected void appendSubmission(TaskJournal.Record record){
+		TaskJournal currentJournal = this.journal;
+		if(record != null){
+			if(currentJournal == null){
+				record.complete(false);
+			}
+			else{
+				currentJournal.append(record);
+			}
+		}
+	}
+	
+	/**
+	 * Waits until the submissions of tasks are written in the journal.
+	 * @param records the records of the submissions.
+	 */
+	protected void awaitJournal(List<TaskJournal.Record> records){
+		for(TaskJournal.Record record: records){
+			if(!record.await()){
+				LOG.warn("the submission of the task " + record.getId() + " is not journaled");
+			}
+		}
+	}
+	
+	/**
+	 * Adds a schedule that submits a script at a given time, at a fixed rate or at the minutes matched by a cron expression.
+	 * The schedule is given an id, and its first firing is planned at once.
+	 * @param bodyScript the content of the script to be executed at each firing.
+	 * @param schedule the new schedule, with the priority, the tenant, the variables and the timeout of its tasks.
+	 * @return the schedule.
+	 * @throws IllegalStateException if the scheduler is not started.
+	 * @see ScriptSchedule
+	 */
+	public ScriptSchedule schedule(String bodyScript, ScriptSchedule schedule) throws IllegalStateException{
+		if(this.scheduleTimer == null){
+			throw new IllegalStateException("The scheduler is not started");
+		}
+		schedule.bind(this.scheduleIds.incrementAndGet(), AbstractScriptTask.getScriptStore().acquire(bodyScript));
+		this.schedules.put(schedule.getId(), schedule);
+		LOG.info("added the " + schedule.getKind() + " schedule " + schedule.getId());
+		this.planSchedule(schedule);
+		return schedule;
+	}
+	
+	/**
+	 * Cancels a schedule. The tasks already submitted by the schedule are not affected.
+	 * @param id the id of the schedule.
+	 * @return true if the schedule was not ended.
+	 */
+	public boolean cancelSchedule(Long id){
+		ScriptSchedule schedule = this.schedules.get(id);
+		return schedule != null && this.endSchedule(schedule);
+	}
+	
+	/**
+	 * Gets a schedule that is not ended.
+	 * @param id the id of the schedule.
+	 * @return the schedule, null if no schedule has this id or if it is ended.
+	 */
+	public ScriptSchedule getSchedule(Long id){
+		return this.schedules.get(id);
+	}
+	
+	/**
+	 * Gets the schedules that are not ended.
+	 * @return the schedules.
+	 */
+	public Collection<ScriptSchedule> getSchedules(){
+		return this.schedules.values();
+	}
+	
+	/**
+	 * Plans the next firing of a schedule on the timer, or ends the schedule if it will not fire anymore.
+	 * When the firing time comes, the timer thread only queues the schedule and asks the firer to fire the due schedules.
+	 * @param schedule the schedule.
+	 */
+	protected void planSchedule(final ScriptSchedule schedule){
+		long now = System.currentTimeMillis();
+		long firingAt = schedule.planNext(now);
+		HashedWheelTimer timer = this.scheduleTimer;
+		if(firingAt < 0 || timer == null){
+			this.endSchedule(schedule);
+			return;
+		}
+		schedule.setPending(timer.newTimeout(new Runnable() {
+			@Override
+			public void run() {
+				dueSchedules.add(schedule);
+				requestFiring();
+			}
+		}, firingAt - now, TimeUnit.MILLISECONDS));
+	}
+	
+	/**
+	 * Ends a schedule, removes it and releases its script.
+	 * @param schedule the schedule.
+	 * @return true if the schedule was not already ended.
+	 */
+	protected boolean endSchedule(ScriptSchedule schedule){
+		if(!schedule.end()){
+			return false;
+		}
+		this.schedules.remove(schedule.getId());
+		AbstractScriptTask.getScriptStore().release(schedule.getScript());
+		LOG.info("ended the schedule " + schedule.getId() + " after " + schedule.getNbFirings() + " firings");
+		return true;
+	}
+	
+	/**
+	 * Asks the firer to fire the due schedules as soon as possible.
+	 */
+	protected void requestFiring(){
+		ExecutorService currentFirer = this.firer;
+		if(currentFirer != null && this.firingRequested.compareAndSet(false, true)){
+			currentFirer.execute(this.firing);
+		}
+	}
+	
+	/**
+	 * Submits a task for each due schedule and for each released node of the graphs, then plans the next firings of the schedules.
+	 * The schedules and the nodes released since the last firing are fired as a batch: if the tasks are journaled, 
+	 * all their submissions are written before waiting for the journal.
+	 */
+	protected void fireDueSchedules(){
+		this.firingRequested.set(false);
+		List<ScriptSchedule> fired = new ArrayList<ScriptSchedule>();
+		List<TaskJournal.Record> records = new ArrayList<TaskJournal.Record>();
+		ScriptSchedule schedule;
+		while((schedule = this.dueSchedules.poll()) != null){
+			if(schedule.isEnded()){
+				continue;
+			}
+			AbstractScriptTask task = this.taskFactory.create(schedule.getScript().getContent());
+			TaskJournal.Record record = this.journalAndStart(task, schedule.getPriority(), schedule.getTenant(), 
+																schedule.getBindings(), schedule.getTimeout());
+			if(record != null){
+				records.add(record);
+			}
+			schedule.fired(task.getId());
+			this.nbFirings.incrementAndGet();
+			fired.add(schedule);
+		}
+		TaskGraph.Node node;
+		while((node = this.releasedNodes.poll()) != null){
+			TaskJournal.Record record = this.releaseNode(node.graph, node);
+			if(record != null){
+				records.add(record);
+			}
+		}
+		this.awaitJournal(records);
+		for(ScriptSchedule firedSchedule: fired){
+			if(!firedSchedule.isEnded()){
+				this.planSchedule(firedSchedule);
+			}
+		}
+	}
+	
+	/**
+	 * Submits a graph of scripts. The tasks of the nodes without parents are submitted at once, 
+	 * and the task of each other node as soon as all its parents are finished successfully, 
+	 * with the results of the parents as variables named after them. The results are given in memory, 
+	 * but they must be serializable if the tasks are journaled, or the child fails.
+	 * If a node fails, its descendants are skipped.
+	 * @param graph the graph, with the priority, the tenant and the timeout of its tasks.
+	 * @return the graph, that gives the status and the task of each node.
+	 * @throws IllegalArgumentException if the graph is empty, if a node depends on an unknown node, or if the graph has a cycle.
+	 * @throws IllegalStateException if the graph is already submitted.
+	 * @see TaskGraph
+	 */
+	public TaskGraph submitGraph(TaskGraph graph) throws IllegalArgumentException, IllegalStateException{
+		List<TaskGraph.Node> roots = graph.bind(this.graphIds.incrementAndGet());
+		this.graphs.put(graph.getId(), graph);
+		LOG.info("submit the graph " + graph.getId() + " of " + graph.getNodes().size() + " nodes");
+		List<TaskJournal.Record> records = new ArrayList<TaskJournal.Record>();
+		for(TaskGraph.Node root: roots){
+			TaskJournal.Record record = this.releaseNode(graph, root);
+			if(record != null){
+				records.add(record);
+			}
+		}
+		this.awaitJournal(records);
+		return graph;
+	}
+	
+	/**
+	 * Gets a graph.
+	 * @param id the id of the graph.
+	 * @return the graph, null if no graph has this id or if the tasks of its nodes are evicted.
+	 */
+	public TaskGraph getGraph(Long id){
+		return this.graphs.get(id);
+	}
+	
+	/**
+	 * Cancels a graph: the nodes that wait for their parents are skipped, and the tasks of the running nodes are cancelled.
+	 * @param id the id of the graph.
+	 * @return true if the graph was neither done nor cancelled.
+	 */
+	public boolean cancelGraph(Long id){
+		TaskGraph graph = this.graphs.get(id);
+		if(graph == null || graph.isDone() || !graph.cancel()){
+			return false;
+		}
+		for(TaskGraph.Node node: graph.getNodes()){
+			Long taskId = node.getTaskId();
+			Task task = taskId == null ? null : this.scripts.get(taskId);
+			if(task instanceof AbstractScriptTask){
+				((AbstractScriptTask) task).getFuture().cancel(true);
+			}
+			else if(node.getStatus() == GraphNodeStatus.WAITING){
+				this.skipNode(graph, node);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Submits the task of a node whose parents are all finished successfully, and waits for its end, 
+	 * without waiting for the submission to be journaled.
+	 * The node is skipped if the graph is cancelled.
+	 * @param graph the graph of the node.
+	 * @param node the node.
+	 * @return the record of the submission, to be awaited, null if the tasks are not journaled or if the task is not submitted.
+	 */
+	protected TaskJournal.Record releaseNode(final TaskGraph graph, final TaskGraph.Node node){
+		if(graph.isCancelled()){
+			this.skipNode(graph, node);
+			return null;
+		}
+		if(!node.start()){
+			return null;
+		}
+		AbstractScriptTask task = this.taskFactory.create(node.getScript());
+		TaskJournal.Record record;
+		try{
+			record = this.journalAndStart(task, graph.getPriority(), graph.getTenant(), node.takeBindings(), graph.getTimeout());
+		}
+		catch(IllegalStateException ex){
+			// the results of the parents can not be journaled
+			LOG.warn("unable to submit the node " + node.getName() + " of the graph " + graph.getId(), ex);
+			AbstractScriptTask.getScriptStore().release(task.getStoredScript());
+			this.nodeFinished(graph, node, new ScriptSnapshot(TaskStatus.ERROR, ex));
+			return null;
+		}
+		node.started(task.getId());
+		try{
+			this.awaitCompletion(task.getId(), new CompletionCallback() {
+				@Override
+				public void completed(CompletedTask completed) {
+					nodeFinished(graph, node, completed.getSnapshot());
+				}
+			});
+		}
+		catch(UnknownTaskException ex){
+			// the task was removed before the callback was added
+			this.nodeFinished(graph, node, new ScriptSnapshot(TaskStatus.CANCELLED, null));
+		}
+		return record;
+	}
+	
+	/**
+	 * Records the end of the task of a node, then asks the firer to submit the children that have no more parent to wait for,
+	 * or skips the descendants if the task is not finished successfully.
+	 * Once its result is handed to its children, the snapshot of the node is only kept by its task.
+	 * @param graph the graph of the node.
+	 * @param node the node.
+	 * @param snapshot the final snapshot of the task of the node.
+	 */
+	protected void nodeFinished(TaskGraph graph, TaskGraph.Node node, ScriptSnapshot snapshot){
+		node.finished(snapshot);
+		if(snapshot.getStatus() == TaskStatus.SUCCESSFULLY_DONE){
+			boolean released = false;
+			for(TaskGraph.Node child: node.children){
+				if(child.parentDone(node.getName(), snapshot.getResult())){
+					this.releasedNodes.add(child);
+					released = true;
+				}
+			}
+			node.childrenReleased();
+			if(released){
+				this.requestFiring();
+			}
+		}
+		else{
+			for(TaskGraph.Node child: node.children){
+				this.skipNode(graph, child);
+			}
+		}
+		graph.nodeDone();
+	}
+	
+	/**
+	 * Skips a waiting node and its descendants.
+	 * @param graph the graph of the node.
+	 * @param node the node.
+	 */
+	protected void skipNode(TaskGraph graph, TaskGraph.Node node){
+		if(node.skip()){
+			for(TaskGraph.Node child: node.children){
+				this.skipNode(graph, child);
+			}
+			graph.nodeDone();
+		}
+	}
+	
+	/**
+	 * Removes the graphs that are done and whose tasks are all evicted or removed.
+	 */
+	protected void evictGraphs(){
+		for(TaskGraph graph: this.graphs.values()){
+			if(!graph.isDone()){
+				continue;
+			}
+			boolean evicted = true;
+			for(TaskGraph.Node node: graph.getNodes()){
+				Long taskId = node.getTaskId();
+				if(taskId != null && this.scripts.containsKey(taskId)){
+					evicted = false;
+					break;
+				}
+			}
+			if(evicted){
+				this.graphs.remove(graph.getId(), graph);
+			}
+		}
+	}
+	
+	/**
+	 * Submit several scripts at once on behalf of a tenant, with the same priority.
+	 * The tasks get consecutive ids in the order of the scripts, and are all registered as running before the first one is started.
+	 * If the tasks are journaled, returns once all the submissions are written in the journal.
+	 * @param bodyScripts the contents of the scripts to be executed.
+	 * @param priority the priority of the tasks, that orders the tasks of the tenant waiting for a worker.
+	 * @param tenant the name of the tenant, null for the default tenant.
+	 * @return the new created script tasks, in the order of the scripts.
+	 */
+	public List<AbstractScriptTask> submitScripts(List<String> bodyScripts, TaskPriority priority, String tenant){
+		return this.submitScripts(bodyScripts, priority, tenant, 0);
+	}
+	
+	/**
+	 * Submit several scripts at once on behalf of a tenant, with the same priority and the same timeout.
+	 * @param bodyScripts the contents of the scripts to be executed.
+	 * @param priority the priority of the tasks, that orders the tasks of the tenant waiting for a worker.
+	 * @param tenant the name of the tenant, null for the default tenant.
+	 * @param timeout the time in milliseconds each script may run before it is stopped, 0 for the default timeout.
+	 * @return the new created script tasks, in the order of the scripts.
+	 * @see #submitScripts(List, TaskPriority, String)
+	 */
+	public List<AbstractScriptTask> submitScripts(List<String> bodyScripts, TaskPriority priority, String tenant, long timeout){
+		List<AbstractScriptTask> tasks = this.taskFactory.createAll(bodyScripts);
+		List<TaskJournal.Record> records = new ArrayList<TaskJournal.Record>();
+		for(AbstractScriptTask task: tasks){
+			TaskJournal.Record record = this.prepareSubmission(task, priority, tenant, null, timeout);
+			if(record != null){
+				records.add(record);
+			}
+		}
+		this.registerAll(tasks);
+		for(TaskJournal.Record record: records){
+			this.appendSubmission(record);
+		}
+		for(AbstractScriptTask task: tasks){
+			this.startRegistered(task);
+		}
+		this.awaitJournal(records);
+		return tasks;
+	}
+	
+	/**
+	 * Registers a script task as running, then starts it.
+	 * @param task the task to be started.
+	 */
+	protected void startTask(AbstractScriptTask task){
+		this.registerAll(Collections.singletonList(task));
+		this.startRegistered(task);
+	}
+	
+	/**
+	 * Registers script tasks as running, so that they are all known by the scheduler before the first one is started.
+	 * @param tasks the tasks to be registered.
+	 */
+	protected void registerAll(List<AbstractScriptTask> tasks){
+		Map<Long, AbstractScriptTask> batch = new HashMap<Long, AbstractScriptTask>();
+		for(AbstractScriptTask task: tasks){
+			task.setListener(this);
+			batch.put(task.getId(), task);
+		}
+		this.scripts.putAll(batch);
+		this.running.putAll(batch);
+		this.nbRunning.addAndGet(batch.size());
+	}
+	
+	/**
+	 * Publishes the submission of a registered task, then starts it.
+	 * @param task the registered task.
+	 */
+	protected void startRegistered(AbstractScriptTask task){
+		this.events.publish(TaskEventType.SUBMITTED, task.getId(), task.getTenant());
+		task.start(this.threadPool);
+	}
+	
+	/**
+	 * Publishes the start of a task, and sets its deadline if it has a timeout.
+	 * @see TaskListener#taskStarted(AbstractScriptTask)
+	 */
+	@Override
+	public void taskStarted(final AbstractScriptTask task) {
+		this.events.publish(TaskEventType.STARTED, task.getId(), task.getTenant());
+		long timeout = task.getTimeout() > 0 ? task.getTimeout() : this.defaultTimeout;
+		HashedWheelTimer timer = this.deadlines;
+		if(timeout > 0 && timer != null){
+			task.setDeadline(timer.newTimeout(new Runnable() {
+				@Override
+				public void run() {
+					if(task.expire()){
+						LOG.info("the task " + task.getId() + " is stopped as its deadline expired");
+					}
+				}
+			}, timeout, TimeUnit.MILLISECONDS));
+		}
+	}
+	
+	/**
+	 * Replaces a finished script task by its compact record, moves it from the running tasks to the finished tasks, 
+	 * and requests an eviction if the finished tasks exceed the retention limits.
+	 * @see TaskListener#taskFinished(AbstractScriptTask)
+	 */
+	@Override
+	public void taskFinished(AbstractScriptTask task) {
+		Long id = task.getId();
+		if(this.running.remove(id) != null){
+			this.nbRunning.decrementAndGet();
+			
+			CompletedTask completed = new CompletedTask(task, this.retentionSequence.incrementAndGet());
+			boolean registered = this.scripts.replace(id, task, completed);
+			this.events.publish(TaskEventType.finished(completed.getSnapshot().getStatus()), id, task.getTenant());
+			this.notifyWaiters(completed);
+			if(registered){
+				this.retention.put(completed.getRetentionKey(), completed);
+				this.registerFinished(completed);
+				TaskJournal currentJournal = this.journal;
+				if(currentJournal != null){
+					currentJournal.appendFinished(completed);
+				}
+				this.tierResult(completed);
+				
+				// the task may have been removed while it was moved
+				if(this.scripts.get(id) != completed){
+					this.unregisterFinished(completed);
+					if(currentJournal != null){
+						currentJournal.appendRemoved(id);
+					}
+				}
+				else if(this.isRetentionExceeded() || this.isHotTierExceeded()){
+					this.requestEviction();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Adds a task to the finished tasks, and counts its size.
+	 * The size of a task is counted with the lock of the task, as its rendered snapshot may be kept meanwhile.
+	 * @param task the finished task.
+	 */
+	protected void registerFinished(CompletedTask task){
+		synchronized(task){
+			this.finished.put(task.getId(), task);
+			this.nbFinished.incrementAndGet();
+			this.finishedBytes.addAndGet(task.getEstimatedSize());
+		}
+	}
+	
+	/**
+	 * Removes a task from the finished tasks.
+	 * @param task the task to be removed.
+	 * @return true if the task was a finished task.
+	 */
+	protected boolean unregisterFinished(CompletedTask task){
+		boolean removed;
+		synchronized(task){
+			removed = this.finished.remove(task.getId(), task);
+			if(removed){
+				this.nbFinished.decrementAndGet();
+				this.finishedBytes.addAndGet(-task.getEstimatedSize());
+				if(this.hot.remove(task.getRetentionKey(), task)){
+					this.hotBytes.addAndGet(-task.getEstimatedSize());
+				}
+			}
+		}
+		if(removed){
+			this.retention.remove(task.getRetentionKey());
+			SpilledSnapshot spilled = task.getSpilled();
+			if(spilled != null){
+				spilled.release();
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Keeps the rendered snapshot of a finished task, so that it is written as is to the next responses, 
+	 * and counts its size with the size of the finished task. 
+	 * The rendered snapshot is not kept if the snapshot of the task is spilled, or if another rendered snapshot is already kept.
+	 * @param task the finished task.
+	 * @param rendered the rendered snapshot, positioned at its first byte.
+	 * @return a read-only view of the rendered snapshot kept by the task, or the given one if it is not kept.
+	 */
+	public ByteBuffer keepRenderedSnapshot(CompletedTask task, ByteBuffer rendered){
+		ByteBuffer result;
+		synchronized(task){
+			if(task.isSpilled()){
+				return rendered;
+			}
+			result = task.getRenderedSnapshot();
+			if(result != null){
+				return result;
+			}
+			task.setRenderedSnapshot(rendered);
+			result = task.getRenderedSnapshot();
+			if(this.finished.get(task.getId()) == task){
+				this.finishedBytes.addAndGet(result.remaining());
+			}
+			if(this.hot.get(task.getRetentionKey()) == task){
+				this.hotBytes.addAndGet(result.remaining());
+			}
+		}
+		if(this.isRetentionExceeded() || this.isHotTierExceeded()){
+			this.requestEviction();
+		}
+		return result;
+	}
+	
+	/**
+	 * Indicates if the finished tasks exceed the number max or the size max of finished tasks.
+	 * @return true if a limit is exceeded.
+	 */
+	protected boolean isRetentionExceeded(){
+		return (this.maxFinishedTasks > 0 && this.nbFinished.get() > this.maxFinishedTasks)
+				|| (this.maxFinishedBytes > 0 && this.finishedBytes.get() > this.maxFinishedBytes);
+	}
+	
+	/**
+	 * Puts the result of a finished task in the heap tier, or spills it at once if it is large. 
+	 * Does nothing if the results are not spilled.
+	 * @param task the finished task.
+	 */
+	protected void tierResult(CompletedTask task){
+		if(this.resultStore == null){
+			return;
+		}
+		if(this.resultSpillThreshold > 0 && task.getEstimatedSize() >= this.resultSpillThreshold){
+			this.spillResult(task);
+		}
+		else{
+			synchronized(task){
+				this.hot.put(task.getRetentionKey(), task);
+				this.hotBytes.addAndGet(task.getEstimatedSize());
+			}
+		}
+	}
+	
+	/**
+	 * Spills the result of a finished task out of the heap. A result that can not be encoded is kept in the heap.
+	 * @param task the finished task, already removed from the heap tier.
+	 */
+	protected void spillResult(CompletedTask task){
+		ResultSpillStore store = this.resultStore;
+		if(store == null){
+			return;
+		}
+		try{
+			SpilledSnapshot spilled = store.spill(task.getSnapshot());
+			synchronized(task){
+				// the rendered snapshot is dropped with the snapshot
+				long size = task.getEstimatedSize();
+				task.spill(spilled);
+				if(this.finished.get(task.getId()) == task){
+					this.finishedBytes.addAndGet(task.getEstimatedSize() - size);
+				}
+			}
+			// the task may have been removed while it was spilled
+			if(this.finished.get(task.getId()) != task){
+				task.getSpilled().release();
+			}
+		}
+		catch(IOException ex){
+			LOG.warn("unable to spill the result of the task " + task.getId() + ", it is kept in the heap", ex);
+		}
+	}
+	
+	/**
+	 * Indicates if the results in the heap exceed their size max.
+	 * @return true if the oldest results must be spilled.
+	 */
+	protected boolean isHotTierExceeded(){
+		return this.resultStore != null && this.hotBytes.get() > this.maxHotResultBytes;
+	}
+	
+	/**
+	 * Spills the oldest results in the heap while they exceed their size max.
+	 */
+	protected void spillHotResults(){
+		Map.Entry<Long, CompletedTask> eldest;
+		while(this.isHotTierExceeded() && (eldest = this.hot.firstEntry()) != null){
+			CompletedTask task = eldest.getValue();
+			boolean removed;
+			synchronized(task){
+				removed = this.hot.remove(eldest.getKey(), task);
+				if(removed){
+					this.hotBytes.addAndGet(-task.getEstimatedSize());
+				}
+			}
+			if(removed){
+				this.spillResult(task);
+			}
+		}
+	}
+	
+	/**
+	 * Asks the evictor to evict the finished tasks as soon as possible, without waiting for the eviction.
+	 */
+	protected void requestEviction(){
+		ScheduledExecutorService currentEvictor = this.evictor;
+		if(currentEvictor != null && this.evictionRequested.compareAndSet(false, true)){
+			currentEvictor.execute(this.eviction);
+		}
+	}
+	
+	/**
+	 * Evicts the oldest finished tasks while they exceed the retention limits, and the finished tasks that are expired.
+	 * Then spills the oldest results in the heap while they exceed their size max, 
+	 * and removes the graphs whose tasks are all evicted.
+	 */
+	public void evictFinishedTasks(){
+		this.evictionRequested.set(false);
+		long now = System.currentTimeMillis();
+		
+		Map.Entry<Long, CompletedTask> eldest;
+		while((eldest = this.retention.firstEntry()) != null){
+			CompletedTask task = eldest.getValue();
+			boolean expired = this.finishedTaskTtl > 0 && now - task.getFinishedAt() >= this.finishedTaskTtl;
+			if(!expired && !this.isRetentionExceeded()){
+				break;
+			}
+			
+			this.scripts.remove(task.getId(), task);
+			if(this.unregisterFinished(task)){
+				this.nbEvictions.incrementAndGet();
+				TaskJournal currentJournal = this.journal;
+				if(currentJournal != null){
+					currentJournal.appendRemoved(task.getId());
+				}
+				LOG.debug("evicted the finished task with id " + task.getId());
+			}
+			else{
+				this.retention.remove(eldest.getKey(), task);
+			}
+		}
+		this.spillHotResults();
+		this.evictGraphs();
+	}
+	
+	/**
+	 * Gets the number of finished tasks evicted by the scheduler.
+	 * @return the number of evicted tasks.
+	 */
+	public long getNbEvictions(){
+		return this.nbEvictions.get();
+	}
+	
+	/**
+	 * Gets the tasks that are running.
+	 * @return a list of running tasks.
+	 */
+	public ArrayList<Task> getRunningTasks(){
+		return new ArrayList<Task>(this.running.values());
+	}
+	
+	
+	/**
+	 * Gets the tasks that are finished.
+	 * @return a list of id corresponding to the finished tasks.
+	 */
+	public ArrayList<Task> getFinishedTasks(){
+		return new ArrayList<Task>(this.finished.values());
+	}
+	
+	/**
+	 * Gets the running tasks whose id is greater than a given id, as a live view in id order.
+	 * Listing a page of tasks from the view does not copy the other tasks.
+	 * @param after the id after which the tasks are listed, 0 for all the tasks.
+	 * @return the running tasks, in id order.
+	 */
+	public Collection<AbstractScriptTask> getRunningTasks(long after){
+		return this.running.tailMap(after, false).values();
+	}
+	
+	/**
+	 * Gets the finished tasks whose id is greater than a given id, as a live view in id order.
+	 * Listing a page of tasks from the view does not copy the other tasks.
+	 * @param after the id after which the tasks are listed, 0 for all the tasks.
+	 * @return the records of the finished tasks, in id order.
+	 */
+	public Collection<CompletedTask> getFinishedTasks(long after){
+		return this.finished.tailMap(after, false).values();
+	}
+	
+	/**
+	 * Gets the number of running tasks.
+	 * @return the number of running tasks.
+	 */
+	public int getNbRunningTasks(){
+		return this.nbRunning.get();
+	}
+	
+	/**
+	 * Gets the number of finished tasks.
+	 * @return the number of finished tasks.
+	 */
+	public int getNbFinishedTasks(){
+		return this.nbFinished.get();
+	}
+	
+	/**
+	 * Removes a task from the scheduler, and cancels it if it is running.
+	 * The thread of a running script is interrupted, and the script stops at its next loop, closure or method.
+	 * The callbacks waiting for the end of a running task are notified at once with its cancelled snapshot.
+	 * @param id the id of the task to be removed.
+	 * @throws UnknownTaskException occurs if the id does not exists in the scheduler.
+	 */
+	public void removeTask(Long id) throws UnknownTaskException{
+		Task task = this.scripts.remove(id);
+		if(task == null){
+			throw new UnknownTaskException(id);
+		}
+		TaskJournal currentJournal = this.journal;
+		if(currentJournal != null){
+			currentJournal.appendRemoved(id);
+		}
+		if(task instanceof CompletedTask){
+			this.unregisterFinished((CompletedTask) task);
+		}
+		else{
+			AbstractScriptTask scriptTask = (AbstractScriptTask) task;
+			boolean removed = this.running.remove(id) != null;
+			if(removed){
+				this.nbRunning.decrementAndGet();
+			}
+			if(!scriptTask.getFuture().isDone()){
+				scriptTask.getFuture().cancel(true);
+			}
+			// the task is no more running, so taskFinished will not notify its waiters
+			if(removed){
+				CompletedTask cancelled = new CompletedTask(scriptTask, 0);
+				this.events.publish(TaskEventType.finished(cancelled.getSnapshot().getStatus()), id, scriptTask.getTenant());
+				this.notifyWaiters(cancelled);
+			}
+		}
+	}
+	
+	/**
+	 * Get the task corresponding to the given id.
+	 * @param id the id of the task to be retrieved.
+	 * @return the corresponding task: the script task if it is running, or its record if it is finished.
+	 * @throws UnknownTaskException occurs if the id does not exists in the scheduler.
+	 */
+	public Task getTask(Long id) throws UnknownTaskException{
+		Task result = this.scripts.get(id);
+		if(result == null){
+			throw new UnknownTaskException(id);
+		}
+		return result;
+	}
+	
+	/**
+	 * Gets the last events of the lifecycle of the tasks.
+	 * @return the buffer of the events.
+	 */
+	public TaskEventBuffer getEventBuffer() {
+		return events;
+	}
+	
+	/**
+	 * Sets the number of events of the lifecycle of the tasks kept for the readers. The events already published are dropped.
+	 * @param capacity the number of events.
+	 */
+	public void setEventBufferCapacity(int capacity) {
+		this.events = new TaskEventBuffer(capacity);
+	}
+	
+	/**
+	 * Calls a callback when a task is finished. 
+	 * The callback is called at once by the current thread if the task is already finished.
+	 * @param id the id of the task.
+	 * @param callback the callback to be called once the task is finished.
+	 * @throws UnknownTaskException occurs if the id does not exists in the scheduler.
+	 * @see #cancelAwait(Long, CompletionCallback)
+	 */
+	public void awaitCompletion(Long id, CompletionCallback callback) throws UnknownTaskException{
+		Task task = this.getTask(id);
+		if(task instanceof CompletedTask){
+			callback.completed((CompletedTask) task);
+			return;
+		}
+		Queue<CompletionCallback> callbacks = this.waiters.get(id);
+		if(callbacks == null){
+			Queue<CompletionCallback> newCallbacks = new ConcurrentLinkedQueue<CompletionCallback>();
+			callbacks = this.waiters.putIfAbsent(id, newCallbacks);
+			if(callbacks == null){
+				callbacks = newCallbacks;
+			}
+		}
+		callbacks.add(callback);
+		// the task may have been finished before the callback was added
+		task = this.scripts.get(id);
+		if(!(task instanceof AbstractScriptTask) && callbacks.remove(callback)){
+			this.waiters.remove(id, callbacks);
+			if(task instanceof CompletedTask){
+				callback.completed((CompletedTask) task);
+			}
+			else{
+				// the task was removed before the callback was added
+				throw new UnknownTaskException(id);
+			}
+		}
+	}
+	
+	/**
+	 * Cancels a callback waiting for the end of a task, for instance when the caller does not wait any more.
+	 * @param id the id of the task.
+	 * @param callback the callback given to {@link #awaitCompletion(Long, CompletionCallback)}.
+	 * @return true if the callback was cancelled, false if it was already called.
+	 */
+	public boolean cancelAwait(Long id, CompletionCallback callback){
+		Queue<CompletionCallback> callbacks = this.waiters.get(id);
+		if(callbacks == null || !callbacks.remove(callback)){
+			return false;
+		}
+		if(callbacks.isEmpty()){
+			this.waiters.remove(id, callbacks);
+		}
+		return true;
+	}
+	
+	/**
+	 * Calls the callbacks waiting for the end of a task.
+	 * @param completed the record of the finished task.
+	 */
+	protected void notifyWaiters(CompletedTask completed){
+		Queue<CompletionCallback> callbacks = this.waiters.remove(completed.getId());
+		if(callbacks != null){
+			CompletionCallback callback;
+			while((callback = callbacks.poll()) != null){
+				try{
+					callback.completed(completed);
+				}
+				catch(RuntimeException ex){
+					LOG.warn("a completion callback of the task " + completed.getId() + " failed", ex);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Get a snapshot of the task corresponding to the given id. 
+	 * The snapshot of a finished task is the one frozen when the task was finished.
+	 * @param id the id of the task.
+	 * @return the snapshot of the task.
+	 * @throws UnknownTaskException occurs if the id does not exists in the scheduler.
+	 */
+	public ScriptSnapshot getSnapshot(Long id) throws UnknownTaskException{
+		Task task = this.getTask(id);
+		if(task instanceof CompletedTask){
+			return ((CompletedTask) task).getSnapshot();
+		}
+		return ((AbstractScriptTask) task).getSnapshot();
+	}
+	
+	/**
+	 * Gets the statistics of the scheduler engine, as a map of named counters.
+	 * @return the statistics of the scheduler engine.
+	 */
+	public Map<String, Object> getStatistics(){
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("tasks.running", this.getNbRunningTasks());
+		result.put("tasks.finished", this.getNbFinishedTasks());
+		result.put("tasks.finished.estimatedBytes", this.finishedBytes.get());
+		result.put("tasks.evicted", this.getNbEvictions());
+		HashedWheelTimer timer = this.deadlines;
+		if(timer != null){
+			result.put("deadlines.pending", timer.getNbPending());
+			result.put("deadlines.expired", timer.getNbExpired());
+		}
+		result.put("schedules.active", this.schedules.size());
+		result.put("schedules.firings", this.nbFirings.get());
+		result.put("graphs", this.graphs.size());
+		
+		CompiledScriptCache cache = GroovyScriptTask.getCompiledScriptCache();
+		result.put("compiledScripts.size", cache.size());
+		result.put("compiledScripts.hits", cache.getHits());
+		result.put("compiledScripts.misses", cache.getMisses());
+		result.put("compiledScripts.evictions", cache.getEvictions());
+		result.put("compiledScripts.mode", GroovyScriptTask.getDefaultCompilationMode().name());
+		result.put("compiledScripts.fallbacks", GroovyScriptTask.getNbFallbacks());
+		for(CompilationMode mode: CompilationMode.values()){
+			EngineGenerations generations = GroovyScriptTask.getGenerations(mode);
+			String prefix = "generations." + mode.name().toLowerCase() + ".";
+			result.put(prefix + "current", generations.current().getNumber());
+			result.put(prefix + "retired", generations.getNbRetired());
+			result.put(prefix + "closed", generations.getNbClosed());
+			result.put(prefix + "classes", generations.getNbClasses());
+		}
+		ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+		result.put("classes.loaded", classLoading.getLoadedClassCount());
+		result.put("classes.unloaded", classLoading.getUnloadedClassCount());
+		MemoryPoolMXBean metaspace = getMetaspacePool();
+		if(metaspace != null){
+			result.put("metaspace.used", metaspace.getUsage().getUsed());
+			result.put("metaspace.committed", metaspace.getUsage().getCommitted());
+		}
+		ScriptStore scriptStore = AbstractScriptTask.getScriptStore();
+		result.put("scripts.stored", scriptStore.getNbScripts());
+		result.put("scripts.retired", scriptStore.getNbRetired());
+		result.put("scripts.deduplicated", scriptStore.getNbDeduplicated());
+		result.put("scripts.registered", this.registeredScripts.size());
+		
+		PriorityExecutor pool = this.getPriorityExecutor();
+		PoolSizeController controller = this.poolController;
+		if(pool != null && controller != null){
+			result.put("pool.size", pool.getMaximumPoolSize());
+			result.put("pool.active", pool.getActiveCount());
+			result.put("pool.minSize", controller.getMinSize());
+			result.put("pool.maxSize", controller.getMaxSize());
+			result.put("pool.throughput", controller.getThroughput());
+			result.put("pool.cpuLoad", controller.getCpuLoad());
+			result.put("pool.increases", controller.getNbIncreases());
+			result.put("pool.decreases", controller.getNbDecreases());
+		}
+		if(pool != null){
+			for(TaskPriority priority: TaskPriority.values()){
+				PriorityExecutor.QueueWait wait = pool.getQueueWait(priority);
+				String prefix = "queue." + priority.name().toLowerCase() + ".";
+				result.put(prefix + "waiting", pool.getNbQueued(priority));
+				result.put(prefix + "started", wait.getCount());
+				result.put(prefix + "meanWaitMs", wait.getMeanMillis());
+				result.put(prefix + "maxWaitMs", wait.getMaxMillis());
+			}
+			FairShareQueue queue = pool.getFairShareQueue();
+			for(String tenant: queue.getTenants()){
+				String prefix = "tenants." + tenant + ".";
+				result.put(prefix + "queued", queue.getNbQueued(tenant));
+				result.put(prefix + "running", queue.getNbRunning(tenant));
+				result.put(prefix + "started", queue.getNbStarted(tenant));
+			}
+		}
+		ExecutorService currentPool = this.threadPool;
+		if(currentPool instanceof ForkJoinPool){
+			ForkJoinPool forkJoinPool = (ForkJoinPool) currentPool;
+			result.put("forkJoin.parallelism", forkJoinPool.getParallelism());
+			result.put("forkJoin.active", forkJoinPool.getActiveThreadCount());
+			result.put("forkJoin.steals", forkJoinPool.getStealCount());
+			result.put("forkJoin.queuedSubtasks", forkJoinPool.getQueuedTaskCount());
+			result.put("forkJoin.queuedSubmissions", forkJoinPool.getQueuedSubmissionCount());
+		}
+		if(currentPool instanceof ThreadPerTaskExecutor){
+			ThreadPerTaskExecutor taskExecutor = (ThreadPerTaskExecutor) currentPool;
+			CpuLimiter limiter = taskExecutor.getLimiter();
+			result.put("threads.max", taskExecutor.getMaxThreads());
+			result.put("threads.active", taskExecutor.getActiveCount());
+			result.put("cpu.permits", limiter.getNbPermits());
+			result.put("cpu.available", limiter.getAvailablePermits());
+			result.put("cpu.waiting", limiter.getNbWaiting());
+		}
+		
+		ResultSpillStore store = this.resultStore;
+		if(store != null){
+			result.put("results.hot.estimatedBytes", this.hotBytes.get());
+			result.put("results.spilled", store.getNbSpilled());
+			result.put("results.spilled.liveBytes", store.getLiveBytes());
+			result.put("results.segments", store.getNbSegments());
+		}
+		
+		TaskJournal currentJournal = this.journal;
+		if(currentJournal != null){
+			result.put("journal.records", currentJournal.getNbRecords());
+			result.put("journal.batches", currentJournal.getNbBatches());
+			result.put("journal.compactions", currentJournal.getNbCompactions());
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Starts the scheduler engine. 
+	 * The current generation of the default compilation mode is warmed up first, so that the first submission does not pay 
+	 * for the initialization of the Groovy runtime. The workers hold no script engine: each task runs a new instance 
+	 * of the class of its compiled script, with its own binding.
+	 * In thread pool mode, all the workers are started at once, the tasks waiting for a worker are run by priority, 
+	 * and the workers are shared fairly between the tenants.
+	 * The pool is then resized periodically within its bounds by a {@link PoolSizeController}.
+	 * In fork/join mode, the workers are started on demand.
+	 * In virtual threads mode, each task is run on its own thread, and only the compilations and the explicit CPU-bound sections 
+	 * of the tasks are limited.
+	 * If the tasks are journaled, the tasks found in the journal are rebuilt: the finished tasks are restored, 
+	 * and the tasks that were not finished are started again.
+	 */
+	public void start(){
+		LOG.info("Start the scheduler engine in " + this.executionMode + " mode");
+		GroovyScriptTask.warmUp(GroovyScriptTask.getDefaultCompilationMode());
+		this.deadlines = new HashedWheelTimer("task-deadlines", HashedWheelTimer.DEFAULT_TICK_DURATION, TimeUnit.MILLISECONDS, 
+												HashedWheelTimer.DEFAULT_TICKS_PER_WHEEL);
+		this.scheduleTimer = new HashedWheelTimer("script-schedules", HashedWheelTimer.DEFAULT_TICK_DURATION, TimeUnit.MILLISECONDS, 
+												HashedWheelTimer.DEFAULT_TICKS_PER_WHEEL);
+		this.firer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread result = new Thread(r, "schedule-firer");
+				result.setDaemon(true);
+				return result;
+			}
+		});
+		if(this.executionMode == ExecutionMode.FORK_JOIN){
+			this.threadPool = new ForkJoinPool(this.maxNbThread, new ScriptForkJoinWorkerThread.Factory(), null, false);
+		}
+		else if(this.executionMode == ExecutionMode.VIRTUAL_THREADS){
+			this.threadPool = new ThreadPerTaskExecutor(new CpuLimiter(this.cpuPermits > 0 ? this.cpuPermits : this.maxNbThread), 
+				this.maxPlatformThreads);
+		}
+		else{
+			this.threadPool = this.createPriorityExecutor();
+		}
+		
+		if(this.resultSpillDirectory != null){
+			try{
+				this.resultStore = new ResultSpillStore(this.resultSpillDirectory, this.resultSegmentSize, this.snapshotCodec);
+			}
+			catch(IOException ex){
+				LOG.error("unable to create the result store in " + this.resultSpillDirectory + ", the results are kept in the heap", ex);
+			}
+		}
+		
+		if(this.journalDirectory != null){
+			try{
+				TaskJournal newJournal = new TaskJournal(this.journalDirectory, this.snapshotCodec, this.scripts.values());
+				newJournal.setCompactionThreshold(this.journalCompactionThreshold);
+				this.recover(newJournal.open());
+				this.journal = newJournal;
+			}
+			catch(IOException ex){
+				LOG.error("unable to open the journal in " + this.journalDirectory + ", the tasks are not journaled", ex);
+			}
+		}
+		
+		this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread result = new Thread(r, "task-evictor");
+				result.setDaemon(true);
+				return result;
+			}
+		});
+		this.evictor.scheduleWithFixedDelay(this.eviction, this.evictionPeriod, this.evictionPeriod, TimeUnit.MILLISECONDS);
+		if(this.threadPool instanceof PriorityExecutor){
+			int minSize = this.minPoolSize > 0 ? this.minPoolSize : this.maxNbThread;
+			int maxSize = this.maxPoolSize > 0 ? this.maxPoolSize : this.maxNbThread;
+			this.poolController = new PoolSizeController((PriorityExecutor) this.threadPool, minSize, Math.max(minSize, maxSize));
+			this.evictor.scheduleWithFixedDelay(this.poolController, this.poolAdjustmentPeriod, this.poolAdjustmentPeriod, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Creates the executor of the thread pool mode, configured with the weights and the caps of the tenants, and starts its workers.
+	 * @return the new executor.
+	 */
+	protected PriorityExecutor createPriorityExecutor(){
+		int nbThreads = this.maxNbThread;
+		if(this.minPoolSize > 0){
+			nbThreads = Math.max(this.minPoolSize, nbThreads);
+		}
+		if(this.maxPoolSize > 0){
+			nbThreads = Math.min(this.maxPoolSize, nbThreads);
+		}
+		PriorityExecutor pool = new PriorityExecutor(nbThreads, this.queueAging, new ScriptWorkerThreadFactory());
+		FairShareQueue queue = pool.getFairShareQueue();
+		queue.setDefaultWeight(this.defaultTenantWeight);
+		queue.setDefaultCap(this.defaultTenantCap);
+		for(Map.Entry<String, Integer> weight: this.tenantWeights.entrySet()){
+			queue.setWeight(weight.getKey(), weight.getValue());
+		}
+		for(Map.Entry<String, Integer> cap: this.tenantCaps.entrySet()){
+			queue.setCap(cap.getKey(), cap.getValue());
+		}
+		pool.prestartAllCoreThreads();
+		return pool;
+	}
+	
+	/**
+	 * Gets the executor of the thread pool mode.
+	 * @return the executor, or null if the scheduler is not started in thread pool mode.
+	 */
+	protected PriorityExecutor getPriorityExecutor(){
+		ExecutorService pool = this.threadPool;
+		return pool instanceof PriorityExecutor ? (PriorityExecutor) pool : null;
+	}
+	
+	/**
+	 * Rebuilds the tasks found in the journal. The ids given to the new tasks follow the ids found in the journal.
+	 * @param recovery the tasks rebuilt from the journal.
+	 */
+	protected void recover(TaskJournal.Recovery recovery){
+		ScriptTaskFactory.reserveIds(recovery.getLastId());
+		for(CompletedTask completed: recovery.getFinishedTasks().values()){
+			this.scripts.put(completed.getId(), completed);
+			this.registerFinished(completed);
+			this.retention.put(completed.getRetentionKey(), completed);
+			this.tierResult(completed);
+		}
+		long lastRetentionKey;
+		while((lastRetentionKey = this.retentionSequence.get()) < recovery.getLastRetentionKey()
+				&& !this.retentionSequence.compareAndSet(lastRetentionKey, recovery.getLastRetentionKey()));
+		
+		for(Map.Entry<Long, TaskJournal.Submission> pending: recovery.getPendingTasks().entrySet()){
+			TaskJournal.Submission submission = pending.getValue();
+			AbstractScriptTask task = this.taskFactory.create(submission.getScript(), pending.getKey());
+			task.setPriority(submission.getPriority());
+			task.setTenant(submission.getTenant());
+			task.setBindings(submission.getBindings());
+			task.setTimeout(submission.getTimeout());
+			this.startTask(task);
+		}
+		LOG.info("recovered " + recovery.getFinishedTasks().size() + " finished tasks and restarted " 
+					+ recovery.getPendingTasks().size() + " tasks from the journal");
+	}
+	
+	/**
+	 * Shutdown the scheduler engine. The tasks still running are not journaled as finished, 
+	 * so they are started again at the next start of the scheduler. The schedules are cancelled, 
+	 * and the callbacks waiting for the end of a running task are notified with its current snapshot.
+	 */
+	public void shutdown(){
+		LOG.info("Shutdown the scheduler engine");
+		this.scheduleTimer.stop();
+		this.scheduleTimer = null;
+		this.firer.shutdownNow();
+		this.firer = null;
+		for(ScriptSchedule schedule: this.schedules.values()){
+			this.endSchedule(schedule);
+		}
+		this.dueSchedules.clear();
+		this.releasedNodes.clear();
+		this.graphs.clear();
+		if(this.journal != null){
+			this.journal.close();
+			this.journal = null;
+		}
+		this.threadPool.shutdown();
+		this.deadlines.stop();
+		this.deadlines = null;
+		this.evictor.shutdownNow();
+		this.evictor = null;
+		this.poolController = null;
+		this.scripts.clear();
+		// the callbacks still waiting get the current snapshot of their task, as when their wait times out
+		for(AbstractScriptTask task: this.running.values()){
+			this.notifyWaiters(new CompletedTask(task, 0));
+		}
+		this.waiters.clear();
+		this.running.clear();
+		this.finished.clear();
+		this.retention.clear();
+		this.hot.clear();
+		if(this.resultStore != null){
+			this.resultStore.close();
+			this.resultStore = null;
+		}
+		this.nbRunning.set(0);
+		this.nbFinished.set(0);
+		this.finishedBytes.set(0);
+		this.hotBytes.set(0);
 	}
 	
 	
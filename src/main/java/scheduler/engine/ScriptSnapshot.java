@@ -19,6 +19,11 @@ public class ScriptSnapshot {
 	 */
 	protected Object result;
 	
+	/**
+	 * Why the script could not be compiled in the requested mode, null if it could.
+	 */
+	protected String compilationFallback;
+	
 	
 	public ScriptSnapshot(){}
 	
@@ -64,6 +69,22 @@ public class ScriptSnapshot {
 		this.result = result;
 	}
 	
+	/**
+	 * Gets why the script of the task could not be compiled in the requested mode.
+	 * @return the message of the compilation error, null if the script was compiled in the requested mode.
+	 * @see CompilationMode
+	 */
+	public String getCompilationFallback() {
+		return compilationFallback;
+	}
+
+	/**
+	 * Set why the script of the task could not be compiled in the requested mode.
+	 * @param compilationFallback the message of the compilation error, null if the script was compiled in the requested mode.
+	 */
+	public void setCompilationFallback(String compilationFallback) {
+		this.compilationFallback = compilationFallback;
+	}
 	
 
 }
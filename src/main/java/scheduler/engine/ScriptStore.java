@@ -0,0 +1,166 @@
+package scheduler.engine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A content-addressable store of the scripts of the tasks, keyed by the digest of the script content.
+ * <p>
+ * Identical scripts are stored once: the tasks of a script share its content, and release it when they are finished.
+ * Once a script is released by all its tasks, it is retired: the most recently retired scripts are kept with their statistics,
+ * so that a new submission of the same script finds them back.
+ * </p>
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class ScriptStore {
+
+	/**
+	 * The default number max of retired scripts kept by a store.
+	 */
+	public static final int DEFAULT_MAX_RETIRED = 1000;
+
+
+	/**
+	 * The scripts referred by at least one task, by digest.
+	 */
+	protected final ConcurrentHashMap<String, StoredScript> scripts = new ConcurrentHashMap<String, StoredScript>();
+
+	/**
+	 * The scripts released by all their tasks, by digest, in access order.
+	 */
+	protected final LinkedHashMap<String, StoredScript> retired;
+
+	/**
+	 * The number max of retired scripts kept by the store.
+	 */
+	protected volatile int maxRetired;
+
+	/**
+	 * The number of scripts found in the store when acquired.
+	 */
+	protected final AtomicLong nbDeduplicated = new AtomicLong();
+
+
+	/**
+	 * Creates a store.
+	 * @param maxRetired the number max of retired scripts kept by the store.
+	 */
+	@SuppressWarnings("serial")
+	public ScriptStore(int maxRetired) {
+		this.maxRetired = maxRetired;
+		this.retired = new LinkedHashMap<String, StoredScript>(16, 0.75f, true){
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, StoredScript> eldest) {
+				return size() > ScriptStore.this.maxRetired;
+			}
+		};
+	}
+
+
+	/**
+	 * Gets the stored script of a content and adds a reference to it, or stores the content if it is not stored yet.
+	 * @param content the content of the script.
+	 * @return the stored script, whose content is shared by all its tasks.
+	 */
+	public StoredScript acquire(String content){
+		String digest = ScriptDigest.digest(content);
+		while(true){
+			StoredScript current = this.scripts.get(digest);
+			if(current != null){
+				if(current.retain()){
+					this.nbDeduplicated.incrementAndGet();
+					return current;
+				}
+				// released meanwhile by its last task
+				this.scripts.remove(digest, current);
+				continue;
+			}
+			StoredScript candidate;
+			synchronized(this.retired){
+				candidate = this.retired.remove(digest);
+			}
+			if(candidate == null){
+				candidate = new StoredScript(digest, content);
+			}
+			else{
+				this.nbDeduplicated.incrementAndGet();
+			}
+			candidate.references.set(1);
+			if(this.scripts.putIfAbsent(digest, candidate) == null){
+				return candidate;
+			}
+		}
+	}
+
+	/**
+	 * Removes a reference to a stored script, and retires the script if it was the last reference.
+	 * @param script the stored script.
+	 */
+	public void release(StoredScript script){
+		if(script.release() == 0 && this.scripts.remove(script.getDigest(), script)){
+			synchronized(this.retired){
+				this.retired.put(script.getDigest(), script);
+			}
+		}
+	}
+
+	/**
+	 * Gets a stored script, referred or retired.
+	 * @param digest the digest of the script content.
+	 * @return the stored script, or null if the store does not know the script.
+	 */
+	public StoredScript get(String digest){
+		StoredScript result = this.scripts.get(digest);
+		if(result == null){
+			synchronized(this.retired){
+				result = this.retired.get(digest);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the number of scripts referred by at least one task.
+	 * @return the number of scripts.
+	 */
+	public int getNbScripts(){
+		return this.scripts.size();
+	}
+
+	/**
+	 * Gets the number of retired scripts kept by the store.
+	 * @return the number of retired scripts.
+	 */
+	public int getNbRetired(){
+		synchronized(this.retired){
+			return this.retired.size();
+		}
+	}
+
+	/**
+	 * Gets the number of acquisitions that found the script in the store, that is the number of identical submissions.
+	 * @return the number of deduplicated scripts.
+	 */
+	public long getNbDeduplicated(){
+		return this.nbDeduplicated.get();
+	}
+
+	/**
+	 * Gets the number max of retired scripts kept by the store.
+	 * @return the number max of retired scripts.
+	 */
+	public int getMaxRetired() {
+		return maxRetired;
+	}
+
+	/**
+	 * Sets the number max of retired scripts kept by the store. The extra scripts are dropped at the next retirement.
+	 * @param maxRetired the number max of retired scripts.
+	 */
+	public void setMaxRetired(int maxRetired) {
+		this.maxRetired = maxRetired;
+	}
+}
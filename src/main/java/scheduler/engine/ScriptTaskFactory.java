@@ -1,5 +1,9 @@
 package scheduler.engine;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * An abstract factory that creates script tasks.
  * @author Sandrine Ben Mabrouk.
@@ -8,14 +12,49 @@ package scheduler.engine;
 public abstract class ScriptTaskFactory {
 	
 	/**
-	 * The current id available to create a new task.
+	 * The last id given to a task.
+	 */
+	protected static final AtomicLong currentId = new AtomicLong();
+	
+	/**
+	 * Creates a new script task with a new id.
+	 * @param bodyString the content of the script to be executed.
+	 * @return the new script task.
+	 */
+	public AbstractScriptTask create(String bodyString){
+		return this.create(bodyString, currentId.incrementAndGet());
+	}
+	
+	/**
+	 * Creates new script tasks with a block of consecutive new ids, in the order of the scripts.
+	 * @param bodyStrings the contents of the scripts to be executed.
+	 * @return the new script tasks.
 	 */
-	protected static long currentId = 0;
+	public List<AbstractScriptTask> createAll(List<String> bodyStrings){
+		List<AbstractScriptTask> result = new ArrayList<AbstractScriptTask>(bodyStrings.size());
+		long id = currentId.getAndAdd(bodyStrings.size());
+		for(String bodyString: bodyStrings){
+			result.add(this.create(bodyString, ++id));
+		}
+		return result;
+	}
 	
 	/**
-	 * Creates a new script task
+	 * Creates a new script task with a given id.
 	 * @param bodyString the content of the script to be executed.
+	 * @param id the id of the task.
 	 * @return the new script task.
 	 */
-	public abstract AbstractScriptTask create(String bodyString);
+	public abstract AbstractScriptTask create(String bodyString, Long id);
+	
+	/**
+	 * Ensures that the ids given to the next tasks are greater than a given id.
+	 * @param lastId the greatest id already in use.
+	 */
+	public static void reserveIds(long lastId){
+		long current = currentId.get();
+		while(current < lastId && !currentId.compareAndSet(current, lastId)){
+			current = currentId.get();
+		}
+	}
 }
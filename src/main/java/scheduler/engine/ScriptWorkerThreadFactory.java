@@ -0,0 +1,27 @@
+package scheduler.engine;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A factory that creates the worker threads of the scheduler thread pool.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class ScriptWorkerThreadFactory implements ThreadFactory {
+
+	/**
+	 * The number of workers created by this factory.
+	 */
+	protected final AtomicInteger nbWorkers = new AtomicInteger();
+
+	/**
+	 * Creates a new worker thread.
+	 * @see ThreadFactory#newThread(Runnable)
+	 */
+	@Override
+	public Thread newThread(Runnable r) {
+		return new Thread(r, "script-worker-" + nbWorkers.incrementAndGet());
+	}
+
+}
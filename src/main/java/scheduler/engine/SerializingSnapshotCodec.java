@@ -0,0 +1,61 @@
+package scheduler.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * A snapshot codec that uses the Java serialization. 
+ * A result that is not serializable is encoded with its string representation.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class SerializingSnapshotCodec implements SnapshotCodec {
+
+	/**
+	 * @see SnapshotCodec#encode(ScriptSnapshot)
+	 */
+	@Override
+	public byte[] encode(ScriptSnapshot snapshot) throws IOException {
+		try{
+			return this.write(snapshot.getStatus(), snapshot.getResult());
+		}
+		catch(NotSerializableException ex){
+			return this.write(snapshot.getStatus(), String.valueOf(snapshot.getResult()));
+		}
+	}
+
+	/**
+	 * Writes a status and a result with the Java serialization.
+	 * @param status the status of the snapshot.
+	 * @param result the result of the snapshot.
+	 * @return the encoded snapshot.
+	 * @throws IOException if the result can not be serialized.
+	 */
+	protected byte[] write(TaskStatus status, Object result) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(ObjectOutputStream output = new ObjectOutputStream(bytes)){
+			output.writeUTF(status.name());
+			output.writeObject(result);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @see SnapshotCodec#decode(byte[])
+	 */
+	@Override
+	public ScriptSnapshot decode(byte[] bytes) throws IOException {
+		try(ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes))){
+			TaskStatus status = TaskStatus.valueOf(input.readUTF());
+			return new ScriptSnapshot(status, input.readObject());
+		} 
+		catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+package scheduler.engine;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Gives a rough estimation of the heap size of task results, in bytes.
+ * The estimation walks strings, numbers, collections, maps and arrays up to a limited depth,
+ * and counts a fixed size for any other object.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public final class SizeEstimator {
+
+	/**
+	 * The size counted for an object header and its reference.
+	 */
+	public static final long OBJECT_SIZE = 16;
+
+	/**
+	 * The size counted for an object that can not be walked.
+	 */
+	public static final long DEFAULT_SIZE = 64;
+
+	/**
+	 * The depth max walked in collections, maps and arrays.
+	 */
+	public static final int MAX_DEPTH = 4;
+
+
+	private SizeEstimator(){}
+
+	/**
+	 * Estimates the heap size of an object.
+	 * @param value the object.
+	 * @return the estimated size in bytes.
+	 */
+	public static long estimate(Object value){
+		return estimate(value, 0);
+	}
+
+	/**
+	 * Estimates the heap size of a string.
+	 * @param value the string, may be null.
+	 * @return the estimated size in bytes.
+	 */
+	public static long estimate(String value){
+		return value == null ? 0 : 2 * OBJECT_SIZE + 2L * value.length();
+	}
+
+	/**
+	 * Estimates the heap size of an object, at a given depth.
+	 * @param value the object.
+	 * @param depth the current depth.
+	 * @return the estimated size in bytes.
+	 */
+	protected static long estimate(Object value, int depth){
+		if(value == null){
+			return 0;
+		}
+		if(value instanceof CharSequence){
+			return 2 * OBJECT_SIZE + 2L * ((CharSequence) value).length();
+		}
+		if(value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum){
+			return OBJECT_SIZE;
+		}
+		if(depth >= MAX_DEPTH){
+			return DEFAULT_SIZE;
+		}
+		if(value instanceof Collection){
+			long result = 2 * OBJECT_SIZE;
+			for(Object current: (Collection<?>) value){
+				result += OBJECT_SIZE + estimate(current, depth + 1);
+			}
+			return result;
+		}
+		if(value instanceof Map){
+			long result = 2 * OBJECT_SIZE;
+			for(Map.Entry<?, ?> current: ((Map<?, ?>) value).entrySet()){
+				result += 2 * OBJECT_SIZE + estimate(current.getKey(), depth + 1) + estimate(current.getValue(), depth + 1);
+			}
+			return result;
+		}
+		if(value.getClass().isArray()){
+			int length = Array.getLength(value);
+			if(value.getClass().getComponentType().isPrimitive()){
+				return OBJECT_SIZE + 8L * length;
+			}
+			long result = OBJECT_SIZE;
+			for(int i = 0; i < length; i++){
+				result += OBJECT_SIZE + estimate(Array.get(value, i), depth + 1);
+			}
+			return result;
+		}
+		return DEFAULT_SIZE;
+	}
+}
@@ -0,0 +1,27 @@
+package scheduler.engine;
+
+import java.io.IOException;
+
+/**
+ * Encodes snapshots to bytes and decodes them back, in order to store the results of the finished tasks outside of the heap.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public interface SnapshotCodec {
+
+	/**
+	 * Encodes a snapshot.
+	 * @param snapshot the snapshot to be encoded.
+	 * @return the encoded snapshot.
+	 * @throws IOException if the snapshot can not be encoded.
+	 */
+	byte[] encode(ScriptSnapshot snapshot) throws IOException;
+
+	/**
+	 * Decodes a snapshot.
+	 * @param bytes the encoded snapshot.
+	 * @return the decoded snapshot.
+	 * @throws IOException if the bytes can not be decoded.
+	 */
+	ScriptSnapshot decode(byte[] bytes) throws IOException;
+}
@@ -0,0 +1,80 @@
+package scheduler.engine;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The location of a snapshot spilled to a segment file, that allows to read it back on demand.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class SpilledSnapshot {
+
+	/**
+	 * The segment that contains the snapshot.
+	 */
+	protected final ResultSegment segment;
+
+	/**
+	 * The offset of the snapshot in the segment.
+	 */
+	protected final int offset;
+
+	/**
+	 * The length of the encoded snapshot.
+	 */
+	protected final int length;
+
+	/**
+	 * Indicates if the snapshot is released.
+	 */
+	protected final AtomicBoolean released = new AtomicBoolean();
+
+
+	/**
+	 * Creates the location of a spilled snapshot.
+	 * @param segment the segment that contains the snapshot.
+	 * @param offset the offset of the snapshot in the segment.
+	 * @param length the length of the encoded snapshot.
+	 */
+	public SpilledSnapshot(ResultSegment segment, int offset, int length) {
+		this.segment = segment;
+		this.offset = offset;
+		this.length = length;
+	}
+
+
+	/**
+	 * Reads the snapshot back from its segment.
+	 * @return the decoded snapshot.
+	 * @throws IOException if the snapshot can not be decoded.
+	 */
+	public ScriptSnapshot load() throws IOException{
+		return this.segment.read(this.offset, this.length);
+	}
+
+	/**
+	 * Releases the snapshot in its segment, once.
+	 */
+	public void release(){
+		if(this.released.compareAndSet(false, true)){
+			this.segment.release(this.length);
+		}
+	}
+
+	/**
+	 * Gets the length of the encoded snapshot.
+	 * @return the length in bytes.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Gets the segment that contains the snapshot.
+	 * @return the segment.
+	 */
+	public ResultSegment getSegment() {
+		return segment;
+	}
+}
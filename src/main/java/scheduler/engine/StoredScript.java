@@ -0,0 +1,142 @@
+package scheduler.engine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A script content stored once in a {@link ScriptStore}, with the number of tasks that refer to it
+ * and the statistics of the executions of the script.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class StoredScript {
+
+	/**
+	 * The digest of the script content, that identifies the script.
+	 */
+	protected final String digest;
+
+	/**
+	 * The content of the script, shared by all the tasks of the script.
+	 */
+	protected final String content;
+
+	/**
+	 * The number of tasks that refer to the script, 0 once the script is released by all its tasks.
+	 */
+	protected final AtomicInteger references = new AtomicInteger();
+
+	/**
+	 * The number of executions of the script.
+	 */
+	protected final AtomicLong nbRuns = new AtomicLong();
+
+	/**
+	 * The number of executions of the script finished with an error.
+	 */
+	protected final AtomicLong nbErrors = new AtomicLong();
+
+	/**
+	 * The total duration of the executions of the script, in nanoseconds.
+	 */
+	protected final AtomicLong totalNanos = new AtomicLong();
+
+
+	/**
+	 * Creates a stored script without references.
+	 * @param digest the digest of the script content.
+	 * @param content the content of the script.
+	 */
+	public StoredScript(String digest, String content) {
+		this.digest = digest;
+		this.content = content;
+	}
+
+
+	/**
+	 * Adds a reference to the script, unless the script is already released by all its tasks.
+	 * @return true if the reference is added, false if the script has no reference any more.
+	 */
+	protected boolean retain(){
+		int current;
+		do{
+			current = this.references.get();
+			if(current == 0){
+				return false;
+			}
+		}
+		while(!this.references.compareAndSet(current, current + 1));
+		return true;
+	}
+
+	/**
+	 * Removes a reference to the script.
+	 * @return the number of references left.
+	 */
+	protected int release(){
+		return this.references.decrementAndGet();
+	}
+
+	/**
+	 * Records an execution of the script.
+	 * @param nanos the duration of the execution, in nanoseconds.
+	 * @param error true if the execution finished with an error.
+	 */
+	public void recordRun(long nanos, boolean error){
+		this.nbRuns.incrementAndGet();
+		this.totalNanos.addAndGet(nanos);
+		if(error){
+			this.nbErrors.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Gets the digest of the script content.
+	 * @return the digest of the script content.
+	 */
+	public String getDigest() {
+		return digest;
+	}
+
+	/**
+	 * Gets the content of the script.
+	 * @return the content of the script.
+	 */
+	public String getContent() {
+		return content;
+	}
+
+	/**
+	 * Gets the number of tasks that refer to the script.
+	 * @return the number of references.
+	 */
+	public int getReferences() {
+		return this.references.get();
+	}
+
+	/**
+	 * Gets the number of executions of the script.
+	 * @return the number of executions.
+	 */
+	public long getNbRuns() {
+		return this.nbRuns.get();
+	}
+
+	/**
+	 * Gets the number of executions of the script finished with an error.
+	 * @return the number of errors.
+	 */
+	public long getNbErrors() {
+		return this.nbErrors.get();
+	}
+
+	/**
+	 * Gets the mean duration of the executions of the script.
+	 * @return the mean duration in milliseconds, 0 if the script was never executed.
+	 */
+	public double getMeanMillis() {
+		long runs = this.nbRuns.get();
+		return runs == 0 ? 0 : (double) this.totalNanos.get() / runs / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
@@ -49,7 +49,29 @@ public class Task {
 	public void setScriptContent(String scriptContent) {
 		this.scriptContent = scriptContent;
 	}
-	
-	
+
+	/**
+	 * Two tasks are equal if they have the same id.
+	 * @see Object#equals(Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj){
+			return true;
+		}
+		if(!(obj instanceof Task)){
+			return false;
+		}
+		Long otherId = ((Task) obj).getId();
+		return this.getId() == null ? otherId == null : this.getId().equals(otherId);
+	}
+
+	/**
+	 * @see Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return this.getId() == null ? 0 : this.getId().hashCode();
+	}
 
 }
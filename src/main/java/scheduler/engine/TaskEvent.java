@@ -0,0 +1,92 @@
+package scheduler.engine;
+
+/**
+ * An immutable event of the lifecycle of a task, numbered by the scheduler.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class TaskEvent {
+
+	/**
+	 * The sequence number of the event, that orders all the events of the scheduler.
+	 */
+	protected final long sequence;
+
+	/**
+	 * The type of the event.
+	 */
+	protected final TaskEventType type;
+
+	/**
+	 * The id of the task.
+	 */
+	protected final Long taskId;
+
+	/**
+	 * The tenant of the task, null for the default tenant.
+	 */
+	protected final String tenant;
+
+	/**
+	 * The time of the event, in milliseconds.
+	 */
+	protected final long time;
+
+
+	/**
+	 * Creates an event.
+	 * @param sequence the sequence number of the event.
+	 * @param type the type of the event.
+	 * @param taskId the id of the task.
+	 * @param tenant the tenant of the task, null for the default tenant.
+	 * @param time the time of the event, in milliseconds.
+	 */
+	public TaskEvent(long sequence, TaskEventType type, Long taskId, String tenant, long time) {
+		this.sequence = sequence;
+		this.type = type;
+		this.taskId = taskId;
+		this.tenant = tenant;
+		this.time = time;
+	}
+
+
+	/**
+	 * Gets the sequence number of the event.
+	 * @return the sequence number, starting from 1.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Gets the type of the event.
+	 * @return the type of the event.
+	 */
+	public TaskEventType getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the id of the task.
+	 * @return the id of the task.
+	 */
+	public Long getTaskId() {
+		return taskId;
+	}
+
+	/**
+	 * Gets the tenant of the task.
+	 * @return the name of the tenant, null for the default tenant.
+	 */
+	public String getTenant() {
+		return tenant;
+	}
+
+	/**
+	 * Gets the time of the event.
+	 * @return the time in milliseconds.
+	 */
+	public long getTime() {
+		return time;
+	}
+}
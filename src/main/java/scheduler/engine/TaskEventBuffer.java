@@ -0,0 +1,160 @@
+package scheduler.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A ring buffer of the last events of the tasks, that fans the events out to any number of readers.
+ * <p>
+ * Publishing an event never blocks nor waits for the readers: the event overwrites the oldest one. 
+ * Each reader keeps its own position, the sequence number of the last event it has read, 
+ * so that a slow reader only misses the events that were overwritten before it read them.
+ * </p>
+ * <p>
+ * The waiting readers are parked, and unparked by the next publisher without taking any lock.
+ * </p>
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class TaskEventBuffer {
+
+	/**
+	 * The default number of events kept by the buffer.
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+
+	/**
+	 * The slots of the events, indexed by sequence number modulo the capacity.
+	 */
+	protected final AtomicReferenceArray<TaskEvent> slots;
+
+	/**
+	 * The mask that gives the slot of a sequence number.
+	 */
+	protected final int mask;
+
+	/**
+	 * The sequence number of the last published event.
+	 */
+	protected final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * The threads of the readers waiting for new events.
+	 */
+	protected final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+
+
+	/**
+	 * Creates a buffer.
+	 * @param capacity the number of events kept by the buffer, rounded up to a power of two.
+	 */
+	public TaskEventBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		this.slots = new AtomicReferenceArray<TaskEvent>(size);
+		this.mask = size - 1;
+	}
+
+
+	/**
+	 * Publishes an event, and wakes up the waiting readers.
+	 * @param type the type of the event.
+	 * @param taskId the id of the task.
+	 * @param tenant the tenant of the task, null for the default tenant.
+	 * @return the new event.
+	 */
+	public TaskEvent publish(TaskEventType type, Long taskId, String tenant){
+		long next = this.sequence.incrementAndGet();
+		TaskEvent event = new TaskEvent(next, type, taskId, tenant, System.currentTimeMillis());
+		this.slots.set((int) (next & this.mask), event);
+		for(Thread waiter: this.waiters){
+			LockSupport.unpark(waiter);
+		}
+		return event;
+	}
+
+	/**
+	 * Reads the events published after a given event, that are still in the buffer.
+	 * @param after the sequence number of the last event already read, 0 to read from the oldest event.
+	 * @param max the number max of events to be read.
+	 * @return the events in sequence order, that start after a gap if some events were overwritten.
+	 */
+	public List<TaskEvent> read(long after, int max){
+		List<TaskEvent> result = new ArrayList<TaskEvent>();
+		long last = this.sequence.get();
+		long next = Math.max(after + 1, last - this.mask);
+		while(next <= last && result.size() < max){
+			TaskEvent event = this.slots.get((int) (next & this.mask));
+			if(event == null || event.getSequence() < next){
+				// the event is not written yet
+				break;
+			}
+			if(event.getSequence() > next){
+				// the event was overwritten while reading
+				next = Math.max(next + 1, this.sequence.get() - this.mask);
+				continue;
+			}
+			result.add(event);
+			next++;
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the events published after a given event, and waits for new events if there are none.
+	 * @param after the sequence number of the last event already read, 0 to read from the oldest event.
+	 * @param max the number max of events to be read.
+	 * @param timeout the time max to wait.
+	 * @param unit the unit of the time max to wait.
+	 * @return the events in sequence order, empty if no event was published before the timeout.
+	 * @throws InterruptedException if the current thread is interrupted while waiting.
+	 * @see #read(long, int)
+	 */
+	public List<TaskEvent> await(long after, int max, long timeout, TimeUnit unit) throws InterruptedException{
+		List<TaskEvent> result = this.read(after, max);
+		if(!result.isEmpty()){
+			return result;
+		}
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		Thread current = Thread.currentThread();
+		// the reader is registered before reading again, so that an event published meanwhile unparks it
+		this.waiters.add(current);
+		try{
+			while(true){
+				result = this.read(after, max);
+				long remaining = deadline - System.nanoTime();
+				if(!result.isEmpty() || remaining <= 0){
+					return result;
+				}
+				LockSupport.parkNanos(this, remaining);
+				if(Thread.interrupted()){
+					throw new InterruptedException();
+				}
+			}
+		}
+		finally{
+			this.waiters.remove(current);
+		}
+	}
+
+	/**
+	 * Gets the sequence number of the last published event.
+	 * @return the sequence number, 0 if no event is published.
+	 */
+	public long getLastSequence(){
+		return this.sequence.get();
+	}
+
+	/**
+	 * Gets the number of events kept by the buffer.
+	 * @return the capacity of the buffer.
+	 */
+	public int getCapacity(){
+		return this.mask + 1;
+	}
+}
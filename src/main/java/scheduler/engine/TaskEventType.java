@@ -0,0 +1,51 @@
+package scheduler.engine;
+
+/**
+ * The types of the events of the lifecycle of a task.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public enum TaskEventType {
+	/**
+	 * The task is submitted and waits for a worker.
+	 */
+	SUBMITTED,
+	/**
+	 * A worker starts the task.
+	 */
+	STARTED,
+	/**
+	 * The task is successfully done.
+	 */
+	COMPLETED,
+	/**
+	 * The task is finished with an error.
+	 */
+	FAILED,
+	/**
+	 * The task is cancelled.
+	 */
+	CANCELLED,
+	/**
+	 * The task is stopped because its deadline expired.
+	 */
+	TIMED_OUT;
+	
+	/**
+	 * Gets the type of the event of a finished task.
+	 * @param status the final status of the task.
+	 * @return the type of the event.
+	 */
+	public static TaskEventType finished(TaskStatus status){
+		switch(status){
+		case SUCCESSFULLY_DONE:
+			return COMPLETED;
+		case CANCELLED:
+			return CANCELLED;
+		case TIMED_OUT:
+			return TIMED_OUT;
+		default:
+			return FAILED;
+		}
+	}
+}
@@ -0,0 +1,531 @@
+package scheduler.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A graph of scripts, where each node declares the nodes it depends on.
+ * The scheduler submits the task of a node as soon as all its parents are finished successfully, 
+ * so the independent branches run in parallel, and gives the results of the parents to the script 
+ * as variables named after the parents. If a node fails, its descendants are skipped.
+ * The names of the nodes must therefore be valid identifiers.
+ * A graph is built, then submitted once to the scheduler.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class TaskGraph {
+
+	/**
+	 * The nodes by name, in the order they were added.
+	 */
+	protected final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+
+	/**
+	 * The id of the graph, given by the scheduler.
+	 */
+	protected Long id = null;
+
+	/**
+	 * The priority of the tasks of the nodes.
+	 */
+	protected TaskPriority priority = TaskPriority.NORMAL;
+
+	/**
+	 * The tenant of the tasks of the nodes, null for the default tenant.
+	 */
+	protected String tenant = null;
+
+	/**
+	 * The time in milliseconds each task may run before it is stopped, 0 for the default timeout of the scheduler.
+	 */
+	protected long timeout = 0;
+
+	/**
+	 * The number of nodes that are neither finished nor skipped.
+	 */
+	protected final AtomicInteger nbRemaining = new AtomicInteger();
+
+	/**
+	 * Released when all the nodes are finished or skipped.
+	 */
+	protected final CountDownLatch completion = new CountDownLatch(1);
+
+	/**
+	 * The actions run once when all the nodes are finished or skipped.
+	 */
+	protected final Queue<Runnable> completionListeners = new ConcurrentLinkedQueue<Runnable>();
+
+	/**
+	 * Whether the graph is cancelled.
+	 */
+	protected volatile boolean cancelled = false;
+
+
+	/**
+	 * Adds a node without variables.
+	 * @param name the name of the node, a valid identifier unique in the graph.
+	 * @param script the content of the script of the node.
+	 * @param parents the names of the nodes the node depends on.
+	 * @return the new node.
+	 * @throws IllegalArgumentException if the name is not a valid identifier or is already used.
+	 * @see #addNode(String, String, Map, String...)
+	 */
+	public Node addNode(String name, String script, String... parents) throws IllegalArgumentException{
+		return this.addNode(name, script, null, parents);
+	}
+
+	/**
+	 * Adds a node.
+	 * @param name the name of the node, a valid identifier unique in the graph.
+	 * @param script the content of the script of the node.
+	 * @param bindings the values of the variables of the script by name, may be null. The results of the parents override them.
+	 * @param parents the names of the nodes the node depends on.
+	 * @return the new node.
+	 * @throws IllegalArgumentException if the name is not a valid identifier or is already used.
+	 * @throws IllegalStateException if the graph is already submitted.
+	 */
+	public Node addNode(String name, String script, Map<String, Object> bindings, String... parents) throws IllegalArgumentException, IllegalStateException{
+		if(this.id != null){
+			throw new IllegalStateException("The graph is already submitted");
+		}
+		if(!isIdentifier(name)){
+			throw new IllegalArgumentException("The node name " + name + " is not a valid identifier");
+		}
+		if(this.nodes.containsKey(name)){
+			throw new IllegalArgumentException("The node " + name + " is already defined");
+		}
+		Node result = new Node(name, script, bindings, parents);
+		this.nodes.put(name, result);
+		return result;
+	}
+
+	/**
+	 * Gets the id of the graph.
+	 * @return the id, null if the graph is not submitted.
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the priority of the tasks of the nodes.
+	 * @return the priority of the tasks.
+	 */
+	public TaskPriority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Sets the priority of the tasks of the nodes. Must be called before the graph is submitted.
+	 * @param priority the priority of the tasks.
+	 */
+	public void setPriority(TaskPriority priority) {
+		this.priority = priority;
+	}
+
+	/**
+	 * Gets the tenant of the tasks of the nodes.
+	 * @return the name of the tenant, null for the default tenant.
+	 */
+	public String getTenant() {
+		return tenant;
+	}
+
+	/**
+	 * Sets the tenant of the tasks of the nodes. Must be called before the graph is submitted.
+	 * @param tenant the name of the tenant, null for the default tenant.
+	 */
+	public void setTenant(String tenant) {
+		this.tenant = tenant;
+	}
+
+	/**
+	 * Gets the time each task may run before it is stopped.
+	 * @return the time in milliseconds, 0 for the default timeout of the scheduler.
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets the time each task may run before it is stopped. Must be called before the graph is submitted.
+	 * @param timeout the time in milliseconds, 0 for the default timeout of the scheduler.
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Gets a node.
+	 * @param name the name of the node.
+	 * @return the node, null if the graph has no node with this name.
+	 */
+	public Node getNode(String name) {
+		return this.nodes.get(name);
+	}
+
+	/**
+	 * Gets the nodes, in the order they were added.
+	 * @return the nodes.
+	 */
+	public Collection<Node> getNodes() {
+		return Collections.unmodifiableCollection(this.nodes.values());
+	}
+
+	/**
+	 * Indicates whether all the nodes are finished or skipped.
+	 * @return true if the graph is done.
+	 */
+	public boolean isDone() {
+		return this.completion.getCount() == 0;
+	}
+
+	/**
+	 * Indicates whether the graph is cancelled.
+	 * @return true if the graph is cancelled.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Waits until all the nodes are finished or skipped.
+	 * @param timeout the time max to wait.
+	 * @param unit the unit of the time.
+	 * @return true if the graph is done.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 */
+	public boolean join(long timeout, TimeUnit unit) throws InterruptedException {
+		return this.completion.await(timeout, unit);
+	}
+
+	/**
+	 * Adds an action run once when all the nodes are finished or skipped, at once if the graph is already done.
+	 * The action may be run by the thread that finished the last task, so it must return quickly.
+	 * @param listener the action.
+	 */
+	public void addCompletionListener(Runnable listener) {
+		this.completionListeners.add(listener);
+		// the graph may have been done before the listener was added
+		if(this.isDone() && this.completionListeners.remove(listener)){
+			listener.run();
+		}
+	}
+
+	/**
+	 * Removes an action that was waiting for the end of the graph.
+	 * @param listener the action.
+	 * @return true if the action was removed before it was run.
+	 */
+	public boolean removeCompletionListener(Runnable listener) {
+		return this.completionListeners.remove(listener);
+	}
+
+
+	/**
+	 * Checks the graph and links the nodes to their children, when the graph is submitted.
+	 * @param id the id of the graph.
+	 * @return the nodes without parents.
+	 * @throws IllegalArgumentException if the graph is empty, if a node depends on an unknown node, or if the graph has a cycle.
+	 * @throws IllegalStateException if the graph is already submitted.
+	 */
+	protected List<Node> bind(Long id) throws IllegalArgumentException, IllegalStateException{
+		if(this.id != null){
+			throw new IllegalStateException("The graph is already submitted");
+		}
+		if(this.nodes.isEmpty()){
+			throw new IllegalArgumentException("The graph has no node");
+		}
+		List<Node> roots = new ArrayList<Node>();
+		for(Node node: this.nodes.values()){
+			for(String parentName: node.parents){
+				Node parent = this.nodes.get(parentName);
+				if(parent == null){
+					throw new IllegalArgumentException("The node " + node.name + " depends on the unknown node " + parentName);
+				}
+				parent.children.add(node);
+			}
+			node.graph = this;
+			node.nbPendingParents.set(node.parents.size());
+			if(node.parents.isEmpty()){
+				roots.add(node);
+			}
+		}
+		// Kahn's algorithm: every node is reached from the roots if and only if the graph has no cycle
+		Map<Node, Integer> nbParents = new LinkedHashMap<Node, Integer>();
+		Deque<Node> ready = new ArrayDeque<Node>(roots);
+		int nbSorted = 0;
+		while(!ready.isEmpty()){
+			Node node = ready.poll();
+			nbSorted++;
+			for(Node child: node.children){
+				Integer remaining = nbParents.get(child);
+				remaining = (remaining == null ? child.parents.size() : remaining) - 1;
+				nbParents.put(child, remaining);
+				if(remaining == 0){
+					ready.add(child);
+				}
+			}
+		}
+		if(nbSorted != this.nodes.size()){
+			for(Node node: this.nodes.values()){
+				node.children.clear();
+			}
+			throw new IllegalArgumentException("The graph has a cycle");
+		}
+		this.id = id;
+		this.nbRemaining.set(this.nodes.size());
+		return roots;
+	}
+
+	/**
+	 * Cancels the graph, so that no more node is submitted.
+	 * @return true if the graph was not already cancelled.
+	 */
+	protected boolean cancel() {
+		boolean result = !this.cancelled;
+		this.cancelled = true;
+		return result;
+	}
+
+	/**
+	 * Counts a node finished or skipped, and notifies the completion listeners after the last one.
+	 */
+	protected void nodeDone() {
+		if(this.nbRemaining.decrementAndGet() == 0){
+			this.completion.countDown();
+			Runnable listener;
+			while((listener = this.completionListeners.poll()) != null){
+				listener.run();
+			}
+		}
+	}
+
+	/**
+	 * Indicates whether a name is a valid identifier.
+	 * @param name the name.
+	 * @return true if the name is a Java identifier.
+	 */
+	protected static boolean isIdentifier(String name) {
+		if(name == null || name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))){
+			return false;
+		}
+		for(int i = 1; i < name.length(); i++){
+			if(!Character.isJavaIdentifierPart(name.charAt(i))){
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * A node of the graph: a script run once all its parents are finished successfully.
+	 */
+	public static class Node {
+
+		/**
+		 * The name of the node.
+		 */
+		protected final String name;
+
+		/**
+		 * The content of the script.
+		 */
+		protected final String script;
+
+		/**
+		 * The variables given by the client, may be null.
+		 */
+		protected final Map<String, Object> bindings;
+
+		/**
+		 * The names of the parents.
+		 */
+		protected final List<String> parents;
+
+		/**
+		 * The graph of the node, linked when the graph is submitted.
+		 */
+		protected TaskGraph graph = null;
+
+		/**
+		 * The children, linked when the graph is submitted.
+		 */
+		protected final List<Node> children = new ArrayList<Node>();
+
+		/**
+		 * The number of parents not yet finished.
+		 */
+		protected final AtomicInteger nbPendingParents = new AtomicInteger();
+
+		/**
+		 * The results of the finished parents by name, dropped once the task of the node is submitted.
+		 */
+		protected final Map<String, Object> parentResults = Collections.synchronizedMap(new HashMap<String, Object>());
+
+		/**
+		 * The status of the node.
+		 */
+		protected final AtomicReference<GraphNodeStatus> status = new AtomicReference<GraphNodeStatus>(GraphNodeStatus.WAITING);
+
+		/**
+		 * The id of the task of the node, null if the task is not submitted.
+		 */
+		protected volatile Long taskId = null;
+
+		/**
+		 * The final snapshot of the task of the node, null if the task is not finished, 
+		 * or once the result of the node is handed to its children.
+		 */
+		protected volatile ScriptSnapshot snapshot = null;
+
+		/**
+		 * Creates a node.
+		 * @param name the name of the node.
+		 * @param script the content of the script.
+		 * @param bindings the variables given by the client, may be null.
+		 * @param parents the names of the parents.
+		 */
+		protected Node(String name, String script, Map<String, Object> bindings, String... parents) {
+			this.name = name;
+			this.script = script;
+			this.bindings = bindings;
+			this.parents = parents == null ? Collections.<String>emptyList() : Collections.unmodifiableList(new ArrayList<String>(Arrays.asList(parents)));
+		}
+
+		/**
+		 * Gets the name of the node.
+		 * @return the name of the node.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Gets the content of the script.
+		 * @return the content of the script.
+		 */
+		public String getScript() {
+			return script;
+		}
+
+		/**
+		 * Gets the names of the parents.
+		 * @return the names of the nodes the node depends on.
+		 */
+		public List<String> getParents() {
+			return parents;
+		}
+
+		/**
+		 * Gets the status of the node.
+		 * @return the status of the node.
+		 */
+		public GraphNodeStatus getStatus() {
+			return status.get();
+		}
+
+		/**
+		 * Gets the id of the task of the node.
+		 * @return the id of the task, null if the task is not submitted.
+		 */
+		public Long getTaskId() {
+			return taskId;
+		}
+
+		/**
+		 * Gets the final snapshot of the task of the node. 
+		 * Once the result of the node is handed to its children, the snapshot is only kept by the task of the node.
+		 * @return the snapshot, null if the task is not finished or if the result of the node is handed to its children.
+		 */
+		public ScriptSnapshot getSnapshot() {
+			return snapshot;
+		}
+
+		/**
+		 * Gets the variables of the script: the variables given by the client, then the results of the parents.
+		 * The results of the parents are then dropped by the node, as they are kept by the task of the node.
+		 * @return the values of the variables by name.
+		 */
+		protected Map<String, Object> takeBindings() {
+			Map<String, Object> result = new LinkedHashMap<String, Object>();
+			if(this.bindings != null){
+				result.putAll(this.bindings);
+			}
+			synchronized(this.parentResults){
+				result.putAll(this.parentResults);
+				this.parentResults.clear();
+			}
+			return result;
+		}
+
+		/**
+		 * Records the result of a parent finished successfully.
+		 * @param parent the name of the parent.
+		 * @param result the result of the parent, may be null.
+		 * @return true if the node has no more parent to wait for.
+		 */
+		protected boolean parentDone(String parent, Object result) {
+			this.parentResults.put(parent, result);
+			return this.nbPendingParents.decrementAndGet() == 0;
+		}
+
+		/**
+		 * Marks the waiting node as running, before its task is submitted.
+		 * @return true if the node was waiting, false if it was skipped.
+		 */
+		protected boolean start() {
+			return this.status.compareAndSet(GraphNodeStatus.WAITING, GraphNodeStatus.RUNNING);
+		}
+
+		/**
+		 * Records the submission of the task of the node.
+		 * @param taskId the id of the task.
+		 */
+		protected void started(Long taskId) {
+			this.taskId = taskId;
+		}
+
+		/**
+		 * Records the end of the task of the node.
+		 * @param snapshot the final snapshot of the task.
+		 */
+		protected void finished(ScriptSnapshot snapshot) {
+			this.snapshot = snapshot;
+			this.status.set(snapshot.getStatus() == TaskStatus.SUCCESSFULLY_DONE ? GraphNodeStatus.DONE : GraphNodeStatus.FAILED);
+		}
+
+		/**
+		 * Drops the snapshot of the node once its result is handed to all its children, 
+		 * so that the result is only kept by the task of the node and by the tasks of the children.
+		 */
+		protected void childrenReleased() {
+			if(!this.children.isEmpty() && this.taskId != null){
+				this.snapshot = null;
+			}
+		}
+
+		/**
+		 * Marks the waiting node as skipped.
+		 * @return true if the node was waiting.
+		 */
+		protected boolean skip() {
+			return this.status.compareAndSet(GraphNodeStatus.WAITING, GraphNodeStatus.SKIPPED);
+		}
+	}
+}
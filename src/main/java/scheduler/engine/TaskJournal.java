@@ -0,0 +1,954 @@
+package scheduler.engine;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only journal of the submissions, the results and the removals of the tasks,
+ * that allows the scheduler to rebuild its tasks after a restart.
+ * <p>
+ * The records are appended by a single writer thread, that writes all the pending records in one batch
+ * and forces them to the disk once per batch. When the journal grows beyond a threshold,
+ * the writer rewrites it with only the records of the tasks currently managed by the scheduler.
+ * </p>
+ * <p>
+ * Each record is framed by its length and its CRC32, so that a record partially written during a crash
+ * is detected and truncated when the journal is opened.
+ * </p>
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class TaskJournal {
+
+	/**
+	 * Logger for the journal.
+	 */
+	static final Logger LOG = LoggerFactory.getLogger(TaskJournal.class);
+
+	/**
+	 * The name of the journal file.
+	 */
+	public static final String JOURNAL_FILE = "journal.log";
+
+	/**
+	 * The name of the file written during a compaction.
+	 */
+	public static final String COMPACTION_FILE = "journal.compact";
+
+	/**
+	 * The default size of the journal that triggers a compaction, in bytes.
+	 */
+	public static final long DEFAULT_COMPACTION_THRESHOLD = 64L * 1024 * 1024;
+
+	/**
+	 * The number max of records written in one batch.
+	 */
+	public static final int MAX_BATCH = 1024;
+
+	/**
+	 * The size max of a record, used to detect corrupted lengths.
+	 */
+	protected static final int MAX_RECORD_SIZE = 256 * 1024 * 1024;
+
+	/**
+	 * The size of the header of a record: the length and the CRC of the payload.
+	 */
+	protected static final int HEADER_SIZE = 8;
+
+	/**
+	 * The time the writer waits for new records before checking if the journal is closed, in milliseconds.
+	 */
+	protected static final long POLL_TIMEOUT = 100;
+
+	/**
+	 * Type of the record of a submitted task.
+	 */
+	protected static final byte SUBMITTED = 1;
+
+	/**
+	 * Type of the record of a finished task.
+	 */
+	protected static final byte FINISHED = 2;
+
+	/**
+	 * Type of the record of a removed task.
+	 */
+	protected static final byte REMOVED = 3;
+
+
+	/**
+	 * The journal file.
+	 */
+	protected final Path journalFile;
+
+	/**
+	 * The file written during a compaction.
+	 */
+	protected final Path compactionFile;
+
+	/**
+	 * The codec used to encode the snapshots of the finished tasks.
+	 */
+	protected final SnapshotCodec codec;
+
+	/**
+	 * The tasks currently managed by the scheduler, written by the compaction.
+	 */
+	protected final Collection<Task> state;
+
+	/**
+	 * The channel to the journal file, used only by the writer once the journal is open.
+	 */
+	protected FileChannel channel = null;
+
+	/**
+	 * The records waiting to be written.
+	 */
+	protected final LinkedBlockingQueue<Record> queue = new LinkedBlockingQueue<Record>();
+
+	/**
+	 * The thread that writes the records.
+	 */
+	protected Thread writer = null;
+
+	/**
+	 * Indicates if the journal accepts new records.
+	 */
+	protected volatile boolean open = false;
+
+	/**
+	 * Indicates if a compaction is requested.
+	 */
+	protected volatile boolean compactionRequested = false;
+
+	/**
+	 * Indicates if the records are forced to the disk after each batch.
+	 */
+	protected boolean syncWrites = true;
+
+	/**
+	 * The size of the journal that triggers a compaction, in bytes.
+	 */
+	protected long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+	/**
+	 * The size of the journal after the last compaction, in bytes.
+	 */
+	protected long sizeAfterCompaction = 0;
+
+	/**
+	 * The number of records written.
+	 */
+	protected final AtomicLong nbRecords = new AtomicLong();
+
+	/**
+	 * The number of batches written.
+	 */
+	protected final AtomicLong nbBatches = new AtomicLong();
+
+	/**
+	 * The number of compactions.
+	 */
+	protected final AtomicLong nbCompactions = new AtomicLong();
+
+
+	/**
+	 * Creates a journal in a directory. The journal must be opened before appending records.
+	 * @param directory the directory of the journal, created if it does not exist.
+	 * @param codec the codec used to encode the snapshots of the finished tasks.
+	 * @param state the tasks currently managed by the scheduler, written by the compaction.
+	 * @throws IOException if the directory can not be created.
+	 */
+	public TaskJournal(File directory, SnapshotCodec codec, Collection<Task> state) throws IOException {
+		Files.createDirectories(directory.toPath());
+		this.journalFile = directory.toPath().resolve(JOURNAL_FILE);
+		this.compactionFile = directory.toPath().resolve(COMPACTION_FILE);
+		this.codec = codec;
+		this.state = state;
+	}
+
+
+	/**
+	 * Opens the journal: reads its records in order to rebuild the tasks, truncates a record partially written,
+	 * then starts the writer.
+	 * @return the tasks rebuilt from the journal.
+	 * @throws IOException if the journal can not be read.
+	 */
+	public Recovery open() throws IOException{
+		this.channel = FileChannel.open(this.journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		Recovery result = this.replay();
+		this.sizeAfterCompaction = this.channel.size();
+
+		this.open = true;
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, "task-journal");
+		this.writer.setDaemon(true);
+		this.writer.start();
+		return result;
+	}
+
+
+	/**
+	 * Closes the journal, once all the pending records are written.
+	 */
+	public void close(){
+		synchronized(this){
+			this.open = false;
+		}
+		if(this.writer != null){
+			try {
+				this.writer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		// the records the writer did not process are not written, but their callers must not wait for them forever
+		Record pending;
+		while((pending = this.queue.poll()) != null){
+			pending.complete(false);
+		}
+		try{
+			this.channel.force(true);
+			this.channel.close();
+		}
+		catch(IOException ex){
+			LOG.error("unable to close the journal " + this.journalFile, ex);
+		}
+	}
+
+
+	/**
+	 * Appends the record of a submitted task.
+	 * @param task the submitted task.
+	 * @return the appended record, that can be awaited until it is written.
+	 */
+	public Record appendSubmitted(AbstractScriptTask task){
+		return this.append(this.submittedRecord(task));
+	}
+
+	/**
+	 * Appends the record of a finished task.
+	 * @param task the finished task.
+	 * @return the appended record, that can be awaited until it is written.
+	 */
+	public Record appendFinished(CompletedTask task){
+		return this.append(this.finishedRecord(task));
+	}
+
+	/**
+	 * Appends the record of a removed task.
+	 * @param id the id of the removed task.
+	 * @return the appended record, that can be awaited until it is written.
+	 */
+	public Record appendRemoved(Long id){
+		return this.append(new Record(REMOVED, id, new byte[0]));
+	}
+
+	/**
+	 * Requests the writer to compact the journal as soon as possible.
+	 */
+	public void requestCompaction(){
+		this.compactionRequested = true;
+	}
+
+
+	/**
+	 * Gives a record to the writer. 
+	 * The record is queued only while the journal is open, so that the writer processes every queued record before it stops.
+	 * @param record the record to be written.
+	 * @return the record, completed at once as not written if the journal is closed.
+	 */
+	public Record append(Record record){
+		synchronized(this){
+			if(this.open){
+				this.queue.add(record);
+				return record;
+			}
+		}
+		LOG.warn("the journal is closed, the record of the task " + record.id + " is lost");
+		record.complete(false);
+		return record;
+	}
+
+
+	/**
+	 * Creates the record of a submitted task, to be appended with {@link #append(Record)}.
+	 * @param task the submitted task.
+	 * @return the record.
+	 * @throws IllegalStateException if the variables of the script can not be serialized.
+	 */
+	public Record submittedRecord(AbstractScriptTask task){
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream output = new DataOutputStream(bytes)){
+			output.writeLong(task.getSubmittedAt());
+			writeBytes(output, task.getScriptContent().getBytes(StandardCharsets.UTF_8));
+			output.writeUTF(task.getPriority().name());
+			output.writeBoolean(task.getTenant() != null);
+			if(task.getTenant() != null){
+				output.writeUTF(task.getTenant());
+			}
+			output.writeBoolean(task.getBindings() != null);
+			if(task.getBindings() != null){
+				writeBytes(output, serializeBindings(task.getBindings()));
+			}
+			output.writeLong(task.getTimeout());
+		}
+		catch(IOException ex){
+			throw new IllegalStateException(ex);
+		}
+		return new Record(SUBMITTED, task.getId(), bytes.toByteArray());
+	}
+
+
+	/**
+	 * Creates the record of a finished task.
+	 * If the snapshot can not be encoded, its result is replaced by its string representation.
+	 * @param task the finished task.
+	 * @return the record.
+	 */
+	protected Record finishedRecord(CompletedTask task){
+		ScriptSnapshot snapshot = task.getSnapshot();
+		byte[] encoded;
+		try{
+			encoded = this.codec.encode(snapshot);
+		}
+		catch(IOException ex){
+			LOG.warn("unable to encode the result of the task " + task.getId() + ", its string representation is journaled", ex);
+			try{
+				encoded = this.codec.encode(new ScriptSnapshot(snapshot.getStatus(), String.valueOf(snapshot.getResult())));
+			}
+			catch(IOException ex2){
+				encoded = new byte[0];
+			}
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream output = new DataOutputStream(bytes)){
+			output.writeLong(task.getSubmittedAt());
+			output.writeLong(task.getFinishedAt());
+			output.writeUTF(snapshot.getStatus().name());
+			output.writeUTF(task.getScriptDigest());
+			writeBytes(output, encoded);
+		}
+		catch(IOException ex){
+			throw new IllegalStateException(ex);
+		}
+		return new Record(FINISHED, task.getId(), bytes.toByteArray());
+	}
+
+
+	/**
+	 * Writes a length-prefixed array of bytes.
+	 * @param output the output.
+	 * @param value the bytes to be written.
+	 * @throws IOException if the bytes can not be written.
+	 */
+	protected static void writeBytes(DataOutputStream output, byte[] value) throws IOException{
+		output.writeInt(value.length);
+		output.write(value);
+	}
+
+	/**
+	 * Reads a length-prefixed array of bytes.
+	 * @param input the input.
+	 * @return the bytes.
+	 * @throws IOException if the bytes can not be read.
+	 */
+	protected static byte[] readBytes(DataInputStream input) throws IOException{
+		byte[] result = new byte[input.readInt()];
+		input.readFully(result);
+		return result;
+	}
+
+	/**
+	 * Serializes the variables of a script. The values must be serializable, as the values parsed from JSON.
+	 * @param bindings the variables by name.
+	 * @return the serialized variables.
+	 * @throws IOException if a value is not serializable.
+	 */
+	protected static byte[] serializeBindings(Map<String, Object> bindings) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(ObjectOutputStream output = new ObjectOutputStream(bytes)){
+			output.writeObject(new LinkedHashMap<String, Object>(bindings));
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Deserializes the variables of a script.
+	 * @param bytes the serialized variables.
+	 * @return the variables by name.
+	 * @throws IOException if the variables can not be read.
+	 */
+	@SuppressWarnings("unchecked")
+	protected static Map<String, Object> deserializeBindings(byte[] bytes) throws IOException{
+		try(ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes))){
+			return (Map<String, Object>) input.readObject();
+		}
+		catch(ClassNotFoundException ex){
+			throw new IOException("Unknown class in the variables of a script", ex);
+		}
+	}
+
+
+	/**
+	 * Reads all the records of the journal and rebuilds the tasks.
+	 * The journal is truncated after the last valid record.
+	 * @return the tasks rebuilt from the journal.
+	 * @throws IOException if the journal can not be read.
+	 */
+	protected Recovery replay() throws IOException{
+		Recovery result = new Recovery();
+		HashSet<Long> removed = new HashSet<Long>();
+		long validPosition = 0;
+
+		this.channel.position(0);
+		DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(this.channel)));
+		try{
+			while(true){
+				int length = input.readInt();
+				int crc = input.readInt();
+				if(length <= 0 || length > MAX_RECORD_SIZE){
+					break;
+				}
+				byte[] payload = new byte[length];
+				input.readFully(payload);
+				CRC32 check = new CRC32();
+				check.update(payload);
+				if((int) check.getValue() != crc){
+					break;
+				}
+				this.apply(payload, result, removed);
+				validPosition += HEADER_SIZE + length;
+			}
+		}
+		catch(EOFException ex){
+			// end of the journal
+		}
+
+		if(validPosition < this.channel.size()){
+			LOG.warn("truncates the journal " + this.journalFile + " after the last valid record at position " + validPosition);
+			this.channel.truncate(validPosition);
+		}
+		this.channel.position(validPosition);
+		return result;
+	}
+
+
+	/**
+	 * Applies a record to the tasks being rebuilt.
+	 * @param payload the payload of the record.
+	 * @param recovery the tasks being rebuilt.
+	 * @param removed the ids of the removed tasks.
+	 * @throws IOException if the record can not be read.
+	 */
+	protected void apply(byte[] payload, Recovery recovery, HashSet<Long> removed) throws IOException{
+		DataInputStream input = new DataInputStream(new java.io.ByteArrayInputStream(payload));
+		byte type = input.readByte();
+		Long id = input.readLong();
+		recovery.lastId = Math.max(recovery.lastId, id);
+
+		switch(type){
+		case SUBMITTED:
+			long submittedAt = input.readLong();
+			String script = new String(readBytes(input), StandardCharsets.UTF_8);
+			TaskPriority priority = input.available() > 0 ? TaskPriority.valueOf(input.readUTF()) : TaskPriority.NORMAL;
+			String tenant = input.available() > 0 && input.readBoolean() ? input.readUTF() : null;
+			Map<String, Object> bindings = input.available() > 0 && input.readBoolean() ? deserializeBindings(readBytes(input)) : null;
+			long timeout = input.available() > 0 ? input.readLong() : 0;
+			if(!removed.contains(id) && !recovery.finishedTasks.containsKey(id)){
+				recovery.pendingTasks.put(id, new Submission(script, priority, tenant, bindings, timeout));
+			}
+			break;
+		case FINISHED:
+			long finishedSubmittedAt = input.readLong();
+			long finishedAt = input.readLong();
+			TaskStatus status = TaskStatus.valueOf(input.readUTF());
+			String digest = input.readUTF();
+			byte[] encoded = readBytes(input);
+			ScriptSnapshot snapshot;
+			try{
+				snapshot = this.codec.decode(encoded);
+			}
+			catch(IOException ex){
+				LOG.warn("unable to decode the result of the task " + id + " from the journal", ex);
+				snapshot = new ScriptSnapshot(status, null);
+			}
+			if(!removed.contains(id)){
+				recovery.pendingTasks.remove(id);
+				recovery.finishedTasks.put(id, new CompletedTask(id, snapshot, digest, finishedSubmittedAt, finishedAt, ++recovery.lastRetentionKey));
+			}
+			break;
+		case REMOVED:
+			recovery.pendingTasks.remove(id);
+			recovery.finishedTasks.remove(id);
+			removed.add(id);
+			break;
+		default:
+			throw new IOException("unknown record type " + type);
+		}
+	}
+
+
+	/**
+	 * Writes the records given to the journal by batches, until the journal is closed.
+	 */
+	protected void writeLoop(){
+		ArrayList<Record> batch = new ArrayList<Record>();
+		while(this.open || !this.queue.isEmpty()){
+			Record first = null;
+			try {
+				first = this.queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+			}
+
+			if(first != null){
+				batch.add(first);
+				this.queue.drainTo(batch, MAX_BATCH - 1);
+				boolean written = this.write(batch);
+				for(Record current: batch){
+					current.complete(written);
+				}
+				batch.clear();
+			}
+
+			if(this.open && this.isCompactionNeeded()){
+				this.compact();
+			}
+		}
+	}
+
+
+	/**
+	 * Writes a batch of records, then forces them to the disk.
+	 * @param batch the records to be written.
+	 * @return true if the records are written.
+	 */
+	protected boolean write(List<Record> batch){
+		ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+		long remaining = 0;
+		for(int i = 0; i < buffers.length; i++){
+			buffers[i] = batch.get(i).frame.duplicate();
+			remaining += buffers[i].remaining();
+		}
+		try{
+			while(remaining > 0){
+				remaining -= this.channel.write(buffers);
+			}
+			if(this.syncWrites){
+				this.channel.force(false);
+			}
+			this.nbRecords.addAndGet(buffers.length);
+			this.nbBatches.incrementAndGet();
+			return true;
+		}
+		catch(IOException ex){
+			LOG.error("unable to write " + buffers.length + " records in the journal " + this.journalFile, ex);
+			return false;
+		}
+	}
+
+
+	/**
+	 * Indicates if the journal must be compacted, that is if a compaction is requested,
+	 * or if the journal is greater than the threshold and than twice its size after the last compaction.
+	 * @return true if the journal must be compacted.
+	 */
+	protected boolean isCompactionNeeded(){
+		if(this.compactionRequested){
+			return true;
+		}
+		try{
+			long size = this.channel.size();
+			return size > this.compactionThreshold && size > 2 * this.sizeAfterCompaction;
+		}
+		catch(IOException ex){
+			return false;
+		}
+	}
+
+
+	/**
+	 * Rewrites the journal with only the records of the tasks currently managed by the scheduler.
+	 * The new journal is written in a separate file, then replaces the journal.
+	 * Records appended during the compaction are written after it, and replaying them again is harmless.
+	 */
+	protected void compact(){
+		this.compactionRequested = false;
+		try(FileChannel output = FileChannel.open(this.compactionFile, StandardOpenOption.CREATE,
+													StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+			for(Task current: this.state){
+				Record record;
+				if(current instanceof CompletedTask){
+					record = this.finishedRecord((CompletedTask) current);
+				}
+				else if(current instanceof AbstractScriptTask){
+					record = this.submittedRecord((AbstractScriptTask) current);
+				}
+				else{
+					continue;
+				}
+				ByteBuffer frame = record.frame.duplicate();
+				while(frame.hasRemaining()){
+					output.write(frame);
+				}
+			}
+			output.force(true);
+		}
+		catch(IOException ex){
+			LOG.error("unable to compact the journal " + this.journalFile, ex);
+			return;
+		}
+
+		try{
+			this.channel.close();
+			Files.move(this.compactionFile, this.journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException ex){
+			LOG.error("unable to replace the journal " + this.journalFile + " by its compaction", ex);
+		}
+		finally{
+			try{
+				this.channel = FileChannel.open(this.journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				this.channel.position(this.channel.size());
+				this.sizeAfterCompaction = this.channel.size();
+			}
+			catch(IOException ex){
+				LOG.error("unable to reopen the journal " + this.journalFile, ex);
+				synchronized(this){
+					this.open = false;
+				}
+			}
+		}
+		this.nbCompactions.incrementAndGet();
+		LOG.info("compacted the journal " + this.journalFile + " to " + this.sizeAfterCompaction + " bytes");
+	}
+
+
+	/**
+	 * Indicates if the records are forced to the disk after each batch.
+	 * @return true if the records are forced to the disk.
+	 */
+	public boolean isSyncWrites() {
+		return syncWrites;
+	}
+
+	/**
+	 * Sets if the records are forced to the disk after each batch. Must be set before the journal is opened.
+	 * @param syncWrites true to force the records to the disk.
+	 */
+	public void setSyncWrites(boolean syncWrites) {
+		this.syncWrites = syncWrites;
+	}
+
+	/**
+	 * Gets the size of the journal that triggers a compaction.
+	 * @return the size in bytes.
+	 */
+	public long getCompactionThreshold() {
+		return compactionThreshold;
+	}
+
+	/**
+	 * Sets the size of the journal that triggers a compaction.
+	 * @param compactionThreshold the size in bytes.
+	 */
+	public void setCompactionThreshold(long compactionThreshold) {
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	/**
+	 * Gets the journal file.
+	 * @return the journal file.
+	 */
+	public File getJournalFile(){
+		return this.journalFile.toFile();
+	}
+
+	/**
+	 * Gets the number of records written.
+	 * @return the number of records.
+	 */
+	public long getNbRecords(){
+		return this.nbRecords.get();
+	}
+
+	/**
+	 * Gets the number of batches written.
+	 * @return the number of batches.
+	 */
+	public long getNbBatches(){
+		return this.nbBatches.get();
+	}
+
+	/**
+	 * Gets the number of compactions.
+	 * @return the number of compactions.
+	 */
+	public long getNbCompactions(){
+		return this.nbCompactions.get();
+	}
+
+
+	/**
+	 * A record given to the journal, that can be awaited until it is written.
+	 */
+	public static class Record {
+
+		/**
+		 * The id of the task.
+		 */
+		protected final Long id;
+
+		/**
+		 * The framed record: its length, its CRC and its payload.
+		 */
+		protected final ByteBuffer frame;
+
+		/**
+		 * Released when the record is written.
+		 */
+		protected final CountDownLatch done = new CountDownLatch(1);
+
+		/**
+		 * Indicates if the record is written.
+		 */
+		protected volatile boolean written = false;
+
+		/**
+		 * Creates a record.
+		 * @param type the type of the record.
+		 * @param id the id of the task.
+		 * @param content the content specific to the type of the record.
+		 */
+		protected Record(byte type, Long id, byte[] content){
+			this.id = id;
+			int length = 1 + 8 + content.length;
+			ByteBuffer payload = ByteBuffer.allocate(length);
+			payload.put(type);
+			payload.putLong(id);
+			payload.put(content);
+
+			CRC32 crc = new CRC32();
+			crc.update(payload.array());
+
+			this.frame = ByteBuffer.allocate(HEADER_SIZE + length);
+			this.frame.putInt(length);
+			this.frame.putInt((int) crc.getValue());
+			this.frame.put(payload.array());
+			this.frame.flip();
+		}
+
+		/**
+		 * Gets the id of the task of the record.
+		 * @return the id of the task.
+		 */
+		public Long getId(){
+			return this.id;
+		}
+
+		/**
+		 * Marks the record as processed by the writer.
+		 * @param written true if the record is written.
+		 */
+		protected void complete(boolean written){
+			this.written = written;
+			this.done.countDown();
+		}
+
+		/**
+		 * Waits until the record is processed by the writer.
+		 * @return true if the record is written.
+		 */
+		public boolean await(){
+			try {
+				this.done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			return this.written;
+		}
+	}
+
+
+	/**
+	 * The submission of a task that was not finished.
+	 */
+	public static class Submission {
+
+		/**
+		 * The content of the script.
+		 */
+		protected final String script;
+
+		/**
+		 * The priority of the task.
+		 */
+		protected final TaskPriority priority;
+
+		/**
+		 * The tenant of the task, null for the default tenant.
+		 */
+		protected final String tenant;
+
+		/**
+		 * The variables given to the script, null if the script has no variables.
+		 */
+		protected final Map<String, Object> bindings;
+
+		/**
+		 * The time in milliseconds the script may run, 0 for the default timeout.
+		 */
+		protected final long timeout;
+
+		/**
+		 * Creates a submission.
+		 * @param script the content of the script.
+		 * @param priority the priority of the task.
+		 * @param tenant the tenant of the task, null for the default tenant.
+		 * @param bindings the variables given to the script, null if the script has no variables.
+		 * @param timeout the time in milliseconds the script may run, 0 for the default timeout.
+		 */
+		protected Submission(String script, TaskPriority priority, String tenant, Map<String, Object> bindings, long timeout){
+			this.script = script;
+			this.priority = priority;
+			this.tenant = tenant;
+			this.bindings = bindings;
+			this.timeout = timeout;
+		}
+
+		/**
+		 * Gets the content of the script.
+		 * @return the content of the script.
+		 */
+		public String getScript() {
+			return script;
+		}
+
+		/**
+		 * Gets the priority of the task.
+		 * @return the priority of the task.
+		 */
+		public TaskPriority getPriority() {
+			return priority;
+		}
+
+		/**
+		 * Gets the tenant of the task.
+		 * @return the tenant of the task, null for the default tenant.
+		 */
+		public String getTenant() {
+			return tenant;
+		}
+
+		/**
+		 * Gets the variables given to the script.
+		 * @return the variables by name, null if the script has no variables.
+		 */
+		public Map<String, Object> getBindings() {
+			return bindings;
+		}
+
+		/**
+		 * Gets the time the script may run.
+		 * @return the time in milliseconds, 0 for the default timeout.
+		 */
+		public long getTimeout() {
+			return timeout;
+		}
+	}
+
+
+	/**
+	 * The tasks rebuilt from the journal.
+	 */
+	public static class Recovery {
+
+		/**
+		 * The submissions of the tasks that were not finished, by task id in submission order.
+		 */
+		protected final LinkedHashMap<Long, Submission> pendingTasks = new LinkedHashMap<Long, Submission>();
+
+		/**
+		 * The records of the finished tasks, by task id.
+		 */
+		protected final LinkedHashMap<Long, CompletedTask> finishedTasks = new LinkedHashMap<Long, CompletedTask>();
+
+		/**
+		 * The greatest task id found in the journal.
+		 */
+		protected long lastId = 0;
+
+		/**
+		 * The last retention key given to a finished task.
+		 */
+		protected long lastRetentionKey = 0;
+
+		/**
+		 * Gets the submissions of the tasks that were not finished.
+		 * @return the submissions by task id, in submission order.
+		 */
+		public LinkedHashMap<Long, Submission> getPendingTasks() {
+			return pendingTasks;
+		}
+
+		/**
+		 * Gets the records of the finished tasks.
+		 * @return the records of the finished tasks, by task id.
+		 */
+		public LinkedHashMap<Long, CompletedTask> getFinishedTasks() {
+			return finishedTasks;
+		}
+
+		/**
+		 * Gets the greatest task id found in the journal.
+		 * @return the greatest task id.
+		 */
+		public long getLastId() {
+			return lastId;
+		}
+
+		/**
+		 * Gets the last retention key given to a finished task.
+		 * @return the last retention key.
+		 */
+		public long getLastRetentionKey() {
+			return lastRetentionKey;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package scheduler.engine;
+
+/**
+ * A listener notified of the lifecycle of a script task.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public interface TaskListener {
+
+	/**
+	 * Called when a worker starts a task, by this worker.
+	 * @param task the started task.
+	 */
+	void taskStarted(AbstractScriptTask task);
+	
+	/**
+	 * Called when a task is finished, successfully, with an exception or because it was cancelled.
+	 * The call is made by the thread that finished the task, so it must return quickly.
+	 * @param task the finished task.
+	 */
+	void taskFinished(AbstractScriptTask task);
+}
@@ -0,0 +1,42 @@
+package scheduler.engine;
+
+/**
+ * Priority of a task, that orders the tasks waiting for a worker of the scheduler.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public enum TaskPriority {
+	/**
+	 * Background work, such as batches.
+	 */
+	LOW(0),
+	/**
+	 * The default priority.
+	 */
+	NORMAL(1),
+	/**
+	 * Interactive work, that should not wait behind the other tasks.
+	 */
+	HIGH(2);
+	
+	/**
+	 * The level of the priority, the higher the sooner.
+	 */
+	private final int level;
+	
+	/**
+	 * Creates a priority.
+	 * @param level the level of the priority.
+	 */
+	private TaskPriority(int level){
+		this.level = level;
+	}
+	
+	/**
+	 * Gets the level of the priority.
+	 * @return the level of the priority, the higher the sooner.
+	 */
+	public int getLevel() {
+		return level;
+	}
+}
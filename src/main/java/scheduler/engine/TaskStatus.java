@@ -21,5 +21,9 @@ public enum TaskStatus {
 	/**
 	 * The task is cancelled.
 	 */
-	CANCELLED
+	CANCELLED,
+	/**
+	 * The task is stopped because its deadline expired.
+	 */
+	TIMED_OUT
 }
\ No newline at end of file
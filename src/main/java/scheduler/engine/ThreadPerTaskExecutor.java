@@ -0,0 +1,144 @@
+package scheduler.engine;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An executor that runs each task on its own thread, so that the tasks waiting on I/O do not hold a worker of a fixed pool.
+ * <p>
+ * The threads are platform threads, at most a given number, and the tasks wait for a thread once they all are busy.
+ * Virtual threads would lift this bound, but the Groovy 2.4 runtime does not run on the Java runtimes that have them.
+ * </p>
+ * The CPU-bound work of the tasks is limited by a {@link CpuLimiter}, set for the thread of each task.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class ThreadPerTaskExecutor extends AbstractExecutorService {
+
+	/**
+	 * The default number max of threads.
+	 */
+	public static final int DEFAULT_MAX_PLATFORM_THREADS = 256;
+
+	/**
+	 * The executor that runs each task on its own thread.
+	 */
+	protected final ThreadPoolExecutor delegate;
+
+	/**
+	 * The limiter of the CPU-bound work of the tasks.
+	 */
+	protected final CpuLimiter limiter;
+
+
+	/**
+	 * Creates an executor, with at most {@link #DEFAULT_MAX_PLATFORM_THREADS} threads.
+	 * @param limiter the limiter of the CPU-bound work of the tasks.
+	 */
+	public ThreadPerTaskExecutor(CpuLimiter limiter) {
+		this(limiter, DEFAULT_MAX_PLATFORM_THREADS);
+	}
+
+	/**
+	 * Creates an executor.
+	 * @param limiter the limiter of the CPU-bound work of the tasks.
+	 * @param maxPlatformThreads the number max of threads.
+	 */
+	public ThreadPerTaskExecutor(CpuLimiter limiter, int maxPlatformThreads) {
+		this.limiter = limiter;
+		this.delegate = new ThreadPoolExecutor(maxPlatformThreads, maxPlatformThreads, 60, TimeUnit.SECONDS, 
+			new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				private final AtomicInteger nbThreads = new AtomicInteger();
+				@Override
+				public Thread newThread(Runnable r) {
+					return new Thread(r, "script-task-" + nbThreads.incrementAndGet());
+				}
+			});
+		this.delegate.allowCoreThreadTimeOut(true);
+	}
+
+
+	/**
+	 * Runs a command on its own thread, with the limiter of the CPU-bound work set for this thread.
+	 * @see java.util.concurrent.Executor#execute(Runnable)
+	 */
+	@Override
+	public void execute(final Runnable command) {
+		this.delegate.execute(new Runnable() {
+			@Override
+			public void run() {
+				CpuLimiter.runWith(limiter, command);
+			}
+		});
+	}
+
+	/**
+	 * @see ExecutorService#shutdown()
+	 */
+	@Override
+	public void shutdown() {
+		this.delegate.shutdown();
+	}
+
+	/**
+	 * @see ExecutorService#shutdownNow()
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		return this.delegate.shutdownNow();
+	}
+
+	/**
+	 * @see ExecutorService#isShutdown()
+	 */
+	@Override
+	public boolean isShutdown() {
+		return this.delegate.isShutdown();
+	}
+
+	/**
+	 * @see ExecutorService#isTerminated()
+	 */
+	@Override
+	public boolean isTerminated() {
+		return this.delegate.isTerminated();
+	}
+
+	/**
+	 * @see ExecutorService#awaitTermination(long, TimeUnit)
+	 */
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return this.delegate.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * Gets the number max of threads.
+	 * @return the number max of threads.
+	 */
+	public int getMaxThreads() {
+		return this.delegate.getMaximumPoolSize();
+	}
+
+	/**
+	 * Gets the number of threads running a task.
+	 * @return the number of busy threads.
+	 */
+	public int getActiveCount() {
+		return this.delegate.getActiveCount();
+	}
+
+	/**
+	 * Gets the limiter of the CPU-bound work of the tasks.
+	 * @return the limiter.
+	 */
+	public CpuLimiter getLimiter() {
+		return limiter;
+	}
+}
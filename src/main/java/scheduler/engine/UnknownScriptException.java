@@ -0,0 +1,20 @@
+package scheduler.engine;
+
+/**
+ * Occurs when trying to run a script with an unknown handle.
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+@SuppressWarnings("serial")
+public class UnknownScriptException extends Exception {
+
+
+	/**
+	 * @param handle the unknown handle
+	 */
+	public UnknownScriptException(String handle) {
+		super("Unknown script with handle " + handle);
+	}
+
+	
+}
@@ -1,13 +1,23 @@
 package scheduler.rest;
 
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
+import scheduler.engine.CompilationMode;
+import scheduler.engine.EngineGenerations;
+import scheduler.engine.ExecutionMode;
 import scheduler.engine.ScriptScheduler;
+import scheduler.engine.TaskEventBuffer;
 
 
 /**
  * Listener for starting and shutdown of the application.
+ * The scheduler is configured with the context parameters of the application, if they are defined.
  * @author Sandrine Ben Mabrouk.
  *
  */
@@ -20,12 +30,58 @@ public class AppContextListener implements ServletContextListener {
 	 */
 	@Override
 	public void contextInitialized(ServletContextEvent sce) {
+		ServletContext context = sce.getServletContext();
 		ScriptScheduler scheduler = ScriptScheduler.getInstance();
-		scheduler.setMaxNbThread(5);
+		scheduler.setMaxNbThread((int) getParameter(context, "scheduler.maxNbThread", 5));
+		String executionMode = context.getInitParameter("scheduler.executionMode");
+		if(executionMode != null && !executionMode.trim().isEmpty()){
+			scheduler.setExecutionMode(ExecutionMode.valueOf(executionMode.trim().toUpperCase()));
+		}
+		String compilationMode = context.getInitParameter("scheduler.compilationMode");
+		if(compilationMode != null && !compilationMode.trim().isEmpty()){
+			scheduler.setCompilationMode(CompilationMode.valueOf(compilationMode.trim().toUpperCase()));
+		}
+		scheduler.setMaxClassesPerGeneration((int) getParameter(context, "scheduler.generations.maxClasses", EngineGenerations.DEFAULT_MAX_CLASSES));
+		scheduler.setDefaultTimeout(getParameter(context, "scheduler.tasks.defaultTimeout", 0));
+		scheduler.setMaxScriptDuration(getParameter(context, "scheduler.scripts.maxDuration", 0));
+		scheduler.setMinPoolSize((int) getParameter(context, "scheduler.pool.minSize", 0));
+		scheduler.setMaxPoolSize((int) getParameter(context, "scheduler.pool.maxSize", 0));
+		scheduler.setPoolAdjustmentPeriod(getParameter(context, "scheduler.pool.adjustmentPeriod", scheduler.getPoolAdjustmentPeriod()));
+		scheduler.setCpuPermits((int) getParameter(context, "scheduler.cpuPermits", 0));
+		scheduler.setMaxPlatformThreads((int) getParameter(context, "scheduler.virtualThreads.maxPlatformThreads", scheduler.getMaxPlatformThreads()));
+		scheduler.setEventBufferCapacity((int) getParameter(context, "scheduler.events.capacity", TaskEventBuffer.DEFAULT_CAPACITY));
+		scheduler.setQueueAging(getParameter(context, "scheduler.queue.aging", scheduler.getQueueAging()));
+		scheduler.setDefaultTenantWeight((int) getParameter(context, "scheduler.tenants.defaultWeight", 1));
+		scheduler.setDefaultTenantCap((int) getParameter(context, "scheduler.tenants.defaultCap", 0));
+		for(Map.Entry<String, Integer> weight: getTenantParameter(context, "scheduler.tenants.weights").entrySet()){
+			scheduler.setTenantWeight(weight.getKey(), weight.getValue());
+		}
+		for(Map.Entry<String, Integer> cap: getTenantParameter(context, "scheduler.tenants.caps").entrySet()){
+			scheduler.setTenantCap(cap.getKey(), cap.getValue());
+		}
+		scheduler.setMaxFinishedTasks((int) getParameter(context, "scheduler.retention.maxTasks", 0));
+		scheduler.setMaxFinishedBytes(getParameter(context, "scheduler.retention.maxBytes", 0));
+		scheduler.setFinishedTaskTtl(getParameter(context, "scheduler.retention.ttl", 0));
+		String journalDirectory = context.getInitParameter("scheduler.journal.directory");
+		if(journalDirectory != null && !journalDirectory.trim().isEmpty()){
+			scheduler.setJournalDirectory(new File(journalDirectory.trim()));
+			scheduler.setJournalCompactionThreshold(getParameter(context, "scheduler.journal.compactionThreshold", 
+																	scheduler.getJournalCompactionThreshold()));
+			scheduler.setSnapshotCodec(new JsonSnapshotCodec());
+		}
+		String spillDirectory = context.getInitParameter("scheduler.results.spillDirectory");
+		if(spillDirectory != null && !spillDirectory.trim().isEmpty()){
+			scheduler.setResultSpillDirectory(new File(spillDirectory.trim()));
+			scheduler.setMaxHotResultBytes(getParameter(context, "scheduler.results.maxHotBytes", 0));
+			scheduler.setResultSpillThreshold(getParameter(context, "scheduler.results.spillThreshold", 0));
+			scheduler.setResultSegmentSize((int) getParameter(context, "scheduler.results.segmentSize", scheduler.getResultSegmentSize()));
+			scheduler.setSnapshotCodec(new JsonSnapshotCodec());
+		}
+		TaskResource.getSnapshotRenderer().setOffHeap(Boolean.parseBoolean(context.getInitParameter("scheduler.snapshots.offHeap")));
 		scheduler.start();
 	}
 
-	
+
 	/**
 	 * Callback for the application shutdown.
 	 * @param ServletContextEvent the dispatched event.
@@ -35,4 +91,41 @@ public class AppContextListener implements ServletContextListener {
 		ScriptScheduler.getInstance().shutdown();
 	}
 
+
+	/**
+	 * Gets a context parameter of the application that gives a number for each tenant, as a list of tenant=number separated by commas.
+	 * @param context the servlet context.
+	 * @param name the name of the parameter.
+	 * @return the numbers by tenant name, empty if the parameter is not defined.
+	 */
+	protected static Map<String, Integer> getTenantParameter(ServletContext context, String name){
+		Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+		String value = context.getInitParameter(name);
+		if(value != null){
+			for(String entry: value.split(",")){
+				int separator = entry.indexOf('=');
+				if(separator > 0){
+					result.put(entry.substring(0, separator).trim(), Integer.valueOf(entry.substring(separator + 1).trim()));
+				}
+			}
+		}
+		return result;
+	}
+	
+	
+	/**
+	 * Gets a numeric context parameter of the application.
+	 * @param context the servlet context.
+	 * @param name the name of the parameter.
+	 * @param defaultValue the value used when the parameter is not defined.
+	 * @return the value of the parameter.
+	 */
+	protected static long getParameter(ServletContext context, String name, long defaultValue){
+		String value = context.getInitParameter(name);
+		if(value == null || value.trim().isEmpty()){
+			return defaultValue;
+		}
+		return Long.parseLong(value.trim());
+	}
+
 }
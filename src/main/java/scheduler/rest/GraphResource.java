@@ -0,0 +1,233 @@
+package scheduler.rest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import scheduler.engine.GraphNodeStatus;
+import scheduler.engine.ScriptScheduler;
+import scheduler.engine.ScriptSnapshot;
+import scheduler.engine.TaskGraph;
+import scheduler.engine.UnknownTaskException;
+
+/**
+ * Graph resource that allows submitting a graph of scripts, where each node declares the nodes it depends on.
+ * Each node is run as soon as its parents are finished, with the results of its parents as variables named after them.
+ * @author Sandrine Ben Mabrouk.
+ */
+@Path("scheduler/graph")
+public class GraphResource {
+
+	/**
+	 * Logger for the graph resource.
+	 */
+	static final Logger LOG = LoggerFactory.getLogger(GraphResource.class);
+	
+	
+	/**
+	 * Submit a graph of scripts, given as a JSON object that maps the name of each node to its definition: 
+	 * the script content as "script", the names of its parents as "dependsOn" and its variables as "bindings", 
+	 * for example {"a": {"script": "return 1"}, "b": {"script": "return a + x", "dependsOn": ["a"], "bindings": {"x": 2}}}.
+	 * The priority, the tenant and the timeout of the tasks are given as for a submission of a script.
+	 * @param definitions the definitions of the nodes by name.
+	 * @param priorityParam the priority given as query parameter, may be null.
+	 * @param priorityHeader the priority given as header, may be null.
+	 * @param clientId the tenant given as query parameter, may be null.
+	 * @param tenantHeader the tenant given as header, may be null.
+	 * @param timeoutParam the timeout given as query parameter, may be null.
+	 * @param timeoutHeader the timeout given as header, may be null.
+	 * @return the id of the submitted graph.
+	 * @throws BadRequestException if a definition is invalid, if a node depends on an unknown node, if the graph has a cycle, 
+	 * or if the priority, the tenant or the timeout is invalid.
+	 * @see TaskResource#submit(String, String, String, String, String, String, String, javax.servlet.http.HttpServletResponse)
+	 */
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.TEXT_PLAIN)
+	public Response submit(Map<String, Map<String, Object>> definitions,
+						@QueryParam("priority") String priorityParam, 
+						@HeaderParam(TaskResource.PRIORITY_HEADER) String priorityHeader,
+						@QueryParam("clientId") String clientId,
+						@HeaderParam(TaskResource.TENANT_HEADER) String tenantHeader,
+						@QueryParam("timeout") String timeoutParam,
+						@HeaderParam(TaskResource.TIMEOUT_HEADER) String timeoutHeader) throws BadRequestException{
+		TaskGraph graph = new TaskGraph();
+		graph.setPriority(TaskResource.parsePriority(priorityParam != null ? priorityParam : priorityHeader));
+		graph.setTenant(TaskResource.parseTenant(clientId != null ? clientId : tenantHeader));
+		graph.setTimeout(TaskResource.parseTimeout(timeoutParam != null ? timeoutParam : timeoutHeader));
+		if(definitions == null){
+			throw new BadRequestException("The graph is required");
+		}
+		try{
+			for(Map.Entry<String, Map<String, Object>> definition: definitions.entrySet()){
+				addNode(graph, definition.getKey(), definition.getValue());
+			}
+			ScriptScheduler.getInstance().submitGraph(graph);
+		}
+		catch(IllegalArgumentException | ClassCastException ex){
+			throw new BadRequestException("Invalid graph: " + ex.getMessage(), ex);
+		}
+		return Response.status(Response.Status.CREATED).entity(graph.getId().toString()).type(MediaType.TEXT_PLAIN).build();
+	}
+	
+	/**
+	 * Get the status of a graph.
+	 * @param id the id of the graph.
+	 * @return whether the graph is done or cancelled, and the status, the parents and the task id of each node.
+	 * @throws NotFoundException if no graph has this id, or if the tasks of its nodes are evicted.
+	 */
+	@GET
+	@Path("{id}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Map<String, Object> getGraph(@PathParam("id") long id) throws NotFoundException{
+		return describe(findGraph(id), false);
+	}
+	
+	/**
+	 * Wait for the end of a graph, without polling its nodes.
+	 * The response is sent as soon as all the nodes are finished or skipped, or when the time to wait has elapsed.
+	 * @param id the id of the graph.
+	 * @param wait the time max to wait, in seconds or with a unit "ms", "s" or "m", may be null for the default time.
+	 * @param asyncResponse the suspended response, resumed with the status of the graph and the snapshot of each finished node.
+	 * @throws NotFoundException if no graph has this id, or if the tasks of its nodes are evicted.
+	 * @throws BadRequestException if the time to wait is not valid.
+	 */
+	@GET
+	@Path("{id}/result")
+	@Produces(MediaType.APPLICATION_JSON)
+	public void awaitGraph(@PathParam("id") long id, @QueryParam("wait") String wait, 
+							@Suspended final AsyncResponse asyncResponse) throws NotFoundException, BadRequestException{
+		long waitMillis = TaskResource.parseWait(wait);
+		final TaskGraph graph = findGraph(id);
+		final Runnable listener = new Runnable() {
+			@Override
+			public void run() {
+				asyncResponse.resume(Response.ok(describe(graph, true), MediaType.APPLICATION_JSON).build());
+			}
+		};
+		asyncResponse.setTimeout(waitMillis, TimeUnit.MILLISECONDS);
+		asyncResponse.setTimeoutHandler(new TimeoutHandler() {
+			@Override
+			public void handleTimeout(AsyncResponse timedOut) {
+				if(graph.removeCompletionListener(listener)){
+					timedOut.resume(Response.ok(describe(graph, true), MediaType.APPLICATION_JSON).build());
+				}
+			}
+		});
+		graph.addCompletionListener(listener);
+	}
+	
+	/**
+	 * Cancel a graph: the nodes waiting for their parents are skipped, and the tasks of the running nodes are cancelled.
+	 * @param id the id of the graph.
+	 * @throws NotFoundException if no graph has this id, or if the tasks of its nodes are evicted.
+	 */
+	@DELETE
+	@Path("{id}")
+	public void cancel(@PathParam("id") long id) throws NotFoundException{
+		findGraph(id);
+		ScriptScheduler.getInstance().cancelGraph(id);
+	}
+	
+	
+	/**
+	 * Gets a graph of the scheduler.
+	 * @param id the id of the graph.
+	 * @return the graph.
+	 * @throws NotFoundException if no graph has this id.
+	 */
+	protected static TaskGraph findGraph(long id) throws NotFoundException{
+		TaskGraph graph = ScriptScheduler.getInstance().getGraph(id);
+		if(graph == null){
+			throw new NotFoundException("Graph with id " + id + " not found");
+		}
+		return graph;
+	}
+	
+	/**
+	 * Adds a node to a graph from its JSON definition.
+	 * @param graph the graph.
+	 * @param name the name of the node.
+	 * @param definition the definition of the node.
+	 * @throws IllegalArgumentException if the definition is invalid.
+	 * @throws ClassCastException if a field of the definition has a wrong type.
+	 */
+	@SuppressWarnings("unchecked")
+	protected static void addNode(TaskGraph graph, String name, Map<String, Object> definition) throws IllegalArgumentException, ClassCastException{
+		if(definition == null || !(definition.get("script") instanceof String)){
+			throw new IllegalArgumentException("The node " + name + " has no script");
+		}
+		List<String> parents = (List<String>) definition.get("dependsOn");
+		graph.addNode(name, (String) definition.get("script"), (Map<String, Object>) definition.get("bindings"), 
+						parents == null ? new String[0] : parents.toArray(new String[parents.size()]));
+	}
+	
+	/**
+	 * Gets the final snapshot of a node, kept by the node or by its task.
+	 * @param node the node.
+	 * @return the snapshot, null if the node is not finished or if its task is evicted.
+	 */
+	protected static ScriptSnapshot snapshotOf(TaskGraph.Node node){
+		ScriptSnapshot result = node.getSnapshot();
+		if(result == null && node.getStatus() == GraphNodeStatus.DONE){
+			try{
+				result = ScriptScheduler.getInstance().getSnapshot(node.getTaskId());
+			}
+			catch(UnknownTaskException ex){
+				// the task is evicted
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Describes a graph.
+	 * @param graph the graph.
+	 * @param withSnapshots whether the snapshots of the finished nodes are described.
+	 * @return the properties of the graph by name.
+	 */
+	protected static Map<String, Object> describe(TaskGraph graph, boolean withSnapshots){
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("id", graph.getId());
+		result.put("done", graph.isDone());
+		result.put("cancelled", graph.isCancelled());
+		Map<String, Object> nodes = new LinkedHashMap<String, Object>();
+		for(TaskGraph.Node node: graph.getNodes()){
+			Map<String, Object> description = new LinkedHashMap<String, Object>();
+			description.put("status", node.getStatus().name());
+			description.put("dependsOn", new ArrayList<String>(node.getParents()));
+			description.put("taskId", node.getTaskId());
+			if(withSnapshots){
+				ScriptSnapshot snapshot = snapshotOf(node);
+				if(snapshot != null){
+					description.put("snapshot", snapshot);
+				}
+			}
+			nodes.put(node.getName(), description);
+		}
+		result.put("nodes", nodes);
+		return result;
+	}
+}
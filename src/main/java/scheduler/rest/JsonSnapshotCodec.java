@@ -0,0 +1,51 @@
+package scheduler.rest;
+
+import java.io.IOException;
+
+import scheduler.engine.ScriptSnapshot;
+import scheduler.engine.SnapshotCodec;
+import scheduler.engine.TaskStatus;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A snapshot codec that uses the JSON mapping of the rest api, so that the journaled results are published as before a restart.
+ * A result whose class can not be loaded any more is decoded as generic JSON values.
+ * @author Sandrine Ben Mabrouk.
+ *
+ */
+public class JsonSnapshotCodec implements SnapshotCodec {
+
+	/**
+	 * The mapper used to encode the snapshots.
+	 */
+	protected final ObjectMapper mapper = SchedulerObjectMapperProvider.getNewObjectMapper();
+
+
+	/**
+	 * @see SnapshotCodec#encode(ScriptSnapshot)
+	 */
+	@Override
+	public byte[] encode(ScriptSnapshot snapshot) throws IOException {
+		return this.mapper.writeValueAsBytes(snapshot);
+	}
+
+	/**
+	 * @see SnapshotCodec#decode(byte[])
+	 */
+	@Override
+	public ScriptSnapshot decode(byte[] bytes) throws IOException {
+		try{
+			return this.mapper.readValue(bytes, ScriptSnapshot.class);
+		}
+		catch(JsonProcessingException ex){
+			JsonNode node = this.mapper.readTree(bytes);
+			TaskStatus status = TaskStatus.valueOf(node.get("status").asText());
+			JsonNode result = node.get("result");
+			return new ScriptSnapshot(status, result == null ? null : this.mapper.treeToValue(result, Object.class));
+		}
+	}
+
+}
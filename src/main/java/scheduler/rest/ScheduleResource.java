@@ -0,0 +1,213 @@
+package scheduler.rest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.xml.bind.DatatypeConverter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import scheduler.engine.CronExpression;
+import scheduler.engine.ScriptSchedule;
+import scheduler.engine.ScriptScheduler;
+import scheduler.engine.TaskPriority;
+
+/**
+ * Schedule resource that allows running a script later, at a fixed rate or at the minutes matched by a cron expression.
+ * Each firing of a schedule submits a new task, with its own id.
+ * @author Sandrine Ben Mabrouk.
+ */
+@Path("scheduler/schedule")
+public class ScheduleResource {
+
+	/**
+	 * Logger for the schedule resource.
+	 */
+	static final Logger LOG = LoggerFactory.getLogger(ScheduleResource.class);
+	
+	
+	/**
+	 * Schedule a script. Exactly one of the time, the delay, the period and the cron expression must be given.
+	 * The priority, the tenant and the timeout of the tasks are given as for a submission of a script.
+	 * @param script the script content.
+	 * @param at the time of a single firing, in milliseconds since the epoch or as an ISO 8601 date time, may be null.
+	 * @param delay the delay of a single firing, in seconds or with a unit "ms", "s" or "m", may be null.
+	 * @param every the period of a fixed rate schedule, in seconds or with a unit "ms", "s" or "m", may be null.
+	 * @param start the time of the first firing of a fixed rate schedule, as the time of a single firing, may be null to start at once.
+	 * @param cron the cron expression of a cron schedule, may be null.
+	 * @param spread the bound of the random offset of the firings, that spreads the schedules of the same minute, may be null.
+	 * @param priorityParam the priority given as query parameter, may be null.
+	 * @param priorityHeader the priority given as header, may be null.
+	 * @param clientId the tenant given as query parameter, may be null.
+	 * @param tenantHeader the tenant given as header, may be null.
+	 * @param timeoutParam the timeout given as query parameter, may be null.
+	 * @param timeoutHeader the timeout given as header, may be null.
+	 * @return the id of the created schedule.
+	 * @throws BadRequestException if the schedule is missing or ambiguous, or if a parameter is invalid.
+	 * @see TaskResource#submit(String, String, String, String, String, String, String, javax.servlet.http.HttpServletResponse)
+	 */
+	@POST
+	@Consumes(MediaType.TEXT_PLAIN)
+	@Produces(MediaType.TEXT_PLAIN)
+	public Response schedule(String script,
+						@QueryParam("at") String at,
+						@QueryParam("delay") String delay,
+						@QueryParam("every") String every,
+						@QueryParam("start") String start,
+						@QueryParam("cron") String cron,
+						@QueryParam("spread") String spread,
+						@QueryParam("priority") String priorityParam, 
+						@HeaderParam(TaskResource.PRIORITY_HEADER) String priorityHeader,
+						@QueryParam("clientId") String clientId,
+						@HeaderParam(TaskResource.TENANT_HEADER) String tenantHeader,
+						@QueryParam("timeout") String timeoutParam,
+						@HeaderParam(TaskResource.TIMEOUT_HEADER) String timeoutHeader) throws BadRequestException{
+		int nbKinds = (at != null ? 1 : 0) + (delay != null ? 1 : 0) + (every != null ? 1 : 0) + (cron != null ? 1 : 0);
+		if(nbKinds != 1){
+			throw new BadRequestException("Exactly one of at, delay, every and cron is required");
+		}
+		ScriptSchedule schedule;
+		if(at != null){
+			schedule = ScriptSchedule.at(parseTime(at, "at"));
+		}
+		else if(delay != null){
+			schedule = ScriptSchedule.at(System.currentTimeMillis() + TaskResource.parseDuration(delay, "delay"));
+		}
+		else if(every != null){
+			long period = TaskResource.parseDuration(every, "every");
+			if(period <= 0){
+				throw new BadRequestException("The period must be positive");
+			}
+			schedule = ScriptSchedule.atFixedRate(start != null ? parseTime(start, "start") : System.currentTimeMillis(), period);
+		}
+		else{
+			try{
+				schedule = ScriptSchedule.cron(new CronExpression(cron));
+			}
+			catch(IllegalArgumentException ex){
+				throw new BadRequestException(ex.getMessage());
+			}
+		}
+		schedule.setPriority(TaskResource.parsePriority(priorityParam != null ? priorityParam : priorityHeader));
+		schedule.setTenant(TaskResource.parseTenant(clientId != null ? clientId : tenantHeader));
+		schedule.setTimeout(TaskResource.parseTimeout(timeoutParam != null ? timeoutParam : timeoutHeader));
+		if(spread != null){
+			schedule.setSpread(TaskResource.parseDuration(spread, "spread"));
+		}
+		ScriptScheduler.getInstance().schedule(script, schedule);
+		LOG.info("scheduled the script " + schedule.getScript().getDigest() + " with the schedule " + schedule.getId());
+		return Response.status(Response.Status.CREATED).entity(schedule.getId().toString()).type(MediaType.TEXT_PLAIN).build();
+	}
+	
+	/**
+	 * Get the schedules that are not ended.
+	 * @return the descriptions of the schedules.
+	 */
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<Map<String, Object>> getSchedules(){
+		List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+		for(ScriptSchedule schedule: ScriptScheduler.getInstance().getSchedules()){
+			result.add(describe(schedule));
+		}
+		return result;
+	}
+	
+	/**
+	 * Get a schedule that is not ended.
+	 * @param id the id of the schedule.
+	 * @return the description of the schedule: its kind, the script, the next firing time, the number of firings and the last task.
+	 * @throws NotFoundException if no schedule has this id or if it is ended.
+	 */
+	@GET
+	@Path("{id}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Map<String, Object> getSchedule(@PathParam("id") long id) throws NotFoundException{
+		ScriptSchedule schedule = ScriptScheduler.getInstance().getSchedule(id);
+		if(schedule == null){
+			throw new NotFoundException("Schedule with id " + id + " not found");
+		}
+		return describe(schedule);
+	}
+	
+	/**
+	 * Cancel a schedule. The tasks already submitted by the schedule are not affected.
+	 * @param id the id of the schedule.
+	 * @throws NotFoundException if no schedule has this id or if it is ended.
+	 */
+	@DELETE
+	@Path("{id}")
+	public void cancel(@PathParam("id") long id) throws NotFoundException{
+		if(!ScriptScheduler.getInstance().cancelSchedule(id)){
+			throw new NotFoundException("Schedule with id " + id + " not found");
+		}
+	}
+	
+	
+	/**
+	 * Describes a schedule.
+	 * @param schedule the schedule.
+	 * @return the properties of the schedule by name.
+	 */
+	protected static Map<String, Object> describe(ScriptSchedule schedule){
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("id", schedule.getId());
+		result.put("kind", schedule.getKind().name());
+		switch(schedule.getKind()){
+			case AT:
+				result.put("at", schedule.getStart());
+				break;
+			case FIXED_RATE:
+				result.put("start", schedule.getStart());
+				result.put("period", schedule.getPeriod());
+				break;
+			default:
+				result.put("cron", schedule.getCron().getExpression());
+		}
+		result.put("digest", schedule.getScript().getDigest());
+		result.put("priority", schedule.getPriority().name());
+		result.put("tenant", schedule.getTenant());
+		result.put("timeout", schedule.getTimeout());
+		result.put("offset", schedule.getOffset());
+		result.put("nextFiringAt", schedule.getNextFiringAt());
+		result.put("firings", schedule.getNbFirings());
+		result.put("lastTaskId", schedule.getLastTaskId());
+		return result;
+	}
+	
+	/**
+	 * Parses a time given in milliseconds since the epoch, or as an ISO 8601 date time.
+	 * @param value the time.
+	 * @param name the name of the time, for the error message.
+	 * @return the time in milliseconds since the epoch.
+	 * @throws BadRequestException if the time is not valid.
+	 */
+	protected static long parseTime(String value, String name) throws BadRequestException{
+		String time = value.trim();
+		try{
+			if(time.matches("\\d+")){
+				return Long.parseLong(time);
+			}
+			return DatatypeConverter.parseDateTime(time).getTimeInMillis();
+		}
+		catch(IllegalArgumentException ex){
+			throw new BadRequestException("Invalid " + name + " " + value);
+		}
+	}
+}
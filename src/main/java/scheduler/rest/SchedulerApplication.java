@@ -16,6 +16,10 @@ public class SchedulerApplication extends ResourceConfig {
 	public SchedulerApplication() {
 		super(
                 TaskResource.class,
+                SchedulerResource.class,
+                ScriptResource.class,
+                ScheduleResource.class,
+                GraphResource.class,
                 // register Jackson ObjectMapper resolver
                 SchedulerObjectMapperProvider.class,
                 JacksonFeature.class
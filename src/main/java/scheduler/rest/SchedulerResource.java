@@ -0,0 +1,84 @@
+package scheduler.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.GET;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+
+import scheduler.engine.PoolSizeController;
+import scheduler.engine.ScriptScheduler;
+
+/**
+ * Scheduler resource that allows monitoring and administrating the scheduler engine.
+ * @author Sandrine Ben Mabrouk.
+ */
+@Path("scheduler")
+public class SchedulerResource {
+
+	/**
+	 * Get the statistics of the scheduler engine.
+	 * @return the statistics, as a map of named counters.
+	 */
+	@GET
+	@Path("stats")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Map<String, Object> getStatistics(){
+		return ScriptScheduler.getInstance().getStatistics();
+	}
+	
+	/**
+	 * Get the bounds and the current size of the pool of workers.
+	 * @return the bounds and the size of the pool.
+	 */
+	@GET
+	@Path("pool")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Map<String, Object> getPool(){
+		ScriptScheduler scheduler = ScriptScheduler.getInstance();
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		PoolSizeController controller = scheduler.getPoolSizeController();
+		if(controller != null){
+			result.put("minSize", controller.getMinSize());
+			result.put("maxSize", controller.getMaxSize());
+		}
+		else{
+			result.put("minSize", scheduler.getMinPoolSize());
+			result.put("maxSize", scheduler.getMaxPoolSize());
+		}
+		Map<String, Object> statistics = scheduler.getStatistics();
+		if(statistics.containsKey("pool.size")){
+			result.put("size", statistics.get("pool.size"));
+			result.put("active", statistics.get("pool.active"));
+		}
+		return result;
+	}
+	
+	/**
+	 * Change the bounds of the size of the pool of workers at runtime.
+	 * @param minSize the number min of workers.
+	 * @param maxSize the number max of workers.
+	 * @return the new bounds and the size of the pool.
+	 * @throws BadRequestException if a bound is missing, or if the number min is lower than 1 or greater than the number max.
+	 */
+	@PUT
+	@Path("pool")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Map<String, Object> setPool(@QueryParam("minSize") Integer minSize, @QueryParam("maxSize") Integer maxSize) throws BadRequestException{
+		if(minSize == null || maxSize == null){
+			throw new BadRequestException("minSize and maxSize are required");
+		}
+		try{
+			ScriptScheduler.getInstance().setPoolSizeBounds(minSize, maxSize);
+		}
+		catch(IllegalArgumentException ex){
+			throw new BadRequestException(ex.getMessage());
+		}
+		return this.getPool();
+	}
+}
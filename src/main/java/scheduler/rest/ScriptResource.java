@@ -0,0 +1,140 @@
+package scheduler.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.script.ScriptException;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import scheduler.engine.AbstractScriptTask;
+import scheduler.engine.ScriptScheduler;
+import scheduler.engine.StoredScript;
+import scheduler.engine.TaskPriority;
+import scheduler.engine.UnknownScriptException;
+
+/**
+ * Script resource that allows registering a script once, then running it many times with different variables.
+ * A registered script is identified by a handle, the digest of its content.
+ * @author Sandrine Ben Mabrouk.
+ */
+@Path("scheduler/scripts")
+public class ScriptResource {
+
+	/**
+	 * Logger for the script resource.
+	 */
+	static final Logger LOG = LoggerFactory.getLogger(ScriptResource.class);
+	
+	
+	/**
+	 * Register a script, that is compiled at once.
+	 * @param script the script content.
+	 * @return the handle of the script.
+	 * @throws BadRequestException if the script can not be compiled.
+	 */
+	@POST
+	@Consumes(MediaType.TEXT_PLAIN)
+	@Produces(MediaType.TEXT_PLAIN)
+	public Response register(String script) throws BadRequestException{
+		try{
+			String handle = ScriptScheduler.getInstance().registerScript(script);
+			LOG.info("registered the script " + handle);
+			return Response.status(Response.Status.CREATED).entity(handle).type(MediaType.TEXT_PLAIN).build();
+		}
+		catch(ScriptException ex){
+			throw new BadRequestException("The script can not be compiled: " + ex.getMessage(), ex);
+		}
+	}
+	
+	/**
+	 * Run a registered script with the variables given as a JSON object.
+	 * The priority, the tenant and the timeout of the task are given as for a submission of a script.
+	 * @param handle the handle of the script.
+	 * @param bindings the values of the variables by name, may be null.
+	 * @param priorityParam the priority given as query parameter, may be null.
+	 * @param priorityHeader the priority given as header, may be null.
+	 * @param clientId the tenant given as query parameter, may be null.
+	 * @param tenantHeader the tenant given as header, may be null.
+	 * @param timeoutParam the timeout given as query parameter, may be null.
+	 * @param timeoutHeader the timeout given as header, may be null.
+	 * @return the id of the created task.
+	 * @throws NotFoundException if no script is registered with this handle.
+	 * @throws BadRequestException if the priority is unknown, the tenant or the timeout is invalid.
+	 * @see TaskResource#submit(String, String, String, String, String, String, String, javax.servlet.http.HttpServletResponse)
+	 */
+	@POST
+	@Path("{handle}/run")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.TEXT_PLAIN)
+	public Response run(@PathParam("handle") String handle, Map<String, Object> bindings,
+						@QueryParam("priority") String priorityParam, 
+						@HeaderParam(TaskResource.PRIORITY_HEADER) String priorityHeader,
+						@QueryParam("clientId") String clientId,
+						@HeaderParam(TaskResource.TENANT_HEADER) String tenantHeader,
+						@QueryParam("timeout") String timeoutParam,
+						@HeaderParam(TaskResource.TIMEOUT_HEADER) String timeoutHeader) throws NotFoundException, BadRequestException{
+		TaskPriority priority = TaskResource.parsePriority(priorityParam != null ? priorityParam : priorityHeader);
+		String tenant = TaskResource.parseTenant(clientId != null ? clientId : tenantHeader);
+		long timeout = TaskResource.parseTimeout(timeoutParam != null ? timeoutParam : timeoutHeader);
+		try{
+			AbstractScriptTask task = ScriptScheduler.getInstance().runScript(handle, bindings, priority, tenant, timeout);
+			return Response.status(Response.Status.CREATED).entity(task.getId().toString()).type(MediaType.TEXT_PLAIN).build();
+		}
+		catch(UnknownScriptException ex){
+			throw new NotFoundException(ex.getMessage());
+		}
+	}
+	
+	/**
+	 * Unregister a script. The running tasks of the script are not affected.
+	 * @param handle the handle of the script.
+	 * @throws NotFoundException if no script is registered with this handle.
+	 */
+	@DELETE
+	@Path("{handle}")
+	public void unregister(@PathParam("handle") String handle) throws NotFoundException{
+		if(!ScriptScheduler.getInstance().unregisterScript(handle)){
+			throw new NotFoundException("Script with handle " + handle + " not found");
+		}
+	}
+	
+	/**
+	 * Get the statistics of a script, identified by the digest of its content.
+	 * @param digest the digest of the script content.
+	 * @return whether the script is registered, the number of references to the script, 
+	 * and the number, the errors and the mean duration of its executions.
+	 * @throws NotFoundException if the script is not known by the store of the scripts.
+	 */
+	@GET
+	@Path("{digest}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Map<String, Object> getScript(@PathParam("digest") String digest) throws NotFoundException{
+		StoredScript script = AbstractScriptTask.getScriptStore().get(digest);
+		if(script == null){
+			throw new NotFoundException("Script with digest " + digest + " not found");
+		}
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("digest", script.getDigest());
+		result.put("registered", ScriptScheduler.getInstance().getRegisteredScript(digest) != null);
+		result.put("references", script.getReferences());
+		result.put("runs", script.getNbRuns());
+		result.put("errors", script.getNbErrors());
+		result.put("meanMillis", script.getMeanMillis());
+		return result;
+	}
+}
@@ -39,6 +39,10 @@ public class ScriptSnapshotDeserializer extends StdDeserializer<ScriptSnapshot>
 		snapshot.setStatus(TaskStatus.valueOf(statusString));
 		
 		fieldName = p.nextFieldName();
+		if("compilationFallback".equals(fieldName)){
+			snapshot.setCompilationFallback(p.nextTextValue());
+			fieldName = p.nextFieldName();
+		}
 		if(fieldName != null){
 			String className = p.nextTextValue();
 			fieldName = p.nextFieldName();
@@ -19,6 +19,9 @@ public class ScriptSnapshotSerializer extends StdSerializer<ScriptSnapshot>{
 	public void serialize(ScriptSnapshot value, JsonGenerator jgen, SerializerProvider provider) throws IOException, JsonGenerationException {
 		jgen.writeStartObject();      
         jgen.writeStringField("status", value.getStatus().name());
+        if(value.getCompilationFallback() != null){
+        	jgen.writeStringField("compilationFallback", value.getCompilationFallback());
+        }
         Object result = value.getResult();
         if(result != null){
         	Class clazz = value.getResult().getClass();
@@ -0,0 +1,124 @@
+package scheduler.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import scheduler.engine.CompletedTask;
+import scheduler.engine.ScriptScheduler;
+import scheduler.engine.ScriptSnapshot;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Renders the snapshots of the finished tasks to JSON once, and keeps the rendered bytes in the task record
+ * so that they can be written as is to the next responses.
+ * <p>
+ * Outside of the heap, each rendered snapshot gets a direct buffer of its exact size, 
+ * so that the direct memory kept by a task is the size counted by the scheduler, and is freed with the task.
+ * </p>
+ * @author Sandrine Ben Mabrouk.
+ *
+ */
+public class SnapshotRenderer {
+
+	/**
+	 * The writer used to render the snapshots, without indentation.
+	 */
+	protected final ObjectWriter writer;
+
+	/**
+	 * Indicates if the rendered snapshots are kept outside of the heap.
+	 */
+	protected volatile boolean offHeap = false;
+
+
+	/**
+	 * Creates a renderer that uses the object mapping of the rest api.
+	 */
+	public SnapshotRenderer() {
+		this.writer = SchedulerObjectMapperProvider.getNewObjectMapper().writer()
+						.without(SerializationFeature.INDENT_OUTPUT);
+	}
+
+
+	/**
+	 * Indicates if the rendered snapshots are kept outside of the heap.
+	 * @return true if the rendered snapshots are kept in direct buffers.
+	 */
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	/**
+	 * Sets if the rendered snapshots are kept outside of the heap. Only the snapshots rendered afterwards are concerned.
+	 * @param offHeap true to keep the rendered snapshots in direct buffers.
+	 */
+	public void setOffHeap(boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+
+
+	/**
+	 * Gets the rendered snapshot of a finished task, and renders it if it is the first time.
+	 * The rendered snapshot is kept by the scheduler, that counts its size with the size of the task.
+	 * The snapshot of a task spilled out of the heap is rendered each time, so that it does not come back in memory.
+	 * @param task the finished task.
+	 * @return the rendered snapshot.
+	 * @throws JsonProcessingException if the snapshot can not be rendered.
+	 */
+	public ByteBuffer getRendered(CompletedTask task) throws JsonProcessingException{
+		if(task.isSpilled()){
+			return ByteBuffer.wrap(this.writer.writeValueAsBytes(task.getSnapshot()));
+		}
+		ByteBuffer result = task.getRenderedSnapshot();
+		if(result == null){
+			result = ScriptScheduler.getInstance().keepRenderedSnapshot(task, this.render(task.getSnapshot()));
+		}
+		return result;
+	}
+
+
+	/**
+	 * Renders a snapshot to JSON.
+	 * @param snapshot the snapshot to be rendered.
+	 * @return the rendered snapshot, positioned at its first byte.
+	 * @throws JsonProcessingException if the snapshot can not be rendered.
+	 */
+	public ByteBuffer render(ScriptSnapshot snapshot) throws JsonProcessingException{
+		byte[] bytes = this.writer.writeValueAsBytes(snapshot);
+		if(!this.offHeap){
+			return ByteBuffer.wrap(bytes);
+		}
+		ByteBuffer result = ByteBuffer.allocateDirect(bytes.length);
+		result.put(bytes);
+		result.flip();
+		return result;
+	}
+
+
+	/**
+	 * Creates an output that writes rendered bytes to the response stream.
+	 * @param rendered the rendered bytes, the buffer position is not modified.
+	 * @return the output to be returned as response entity.
+	 */
+	public static StreamingOutput output(final ByteBuffer rendered){
+		return new StreamingOutput() {
+			@Override
+			public void write(OutputStream output) throws IOException, WebApplicationException {
+				ByteBuffer source = rendered.duplicate();
+				WritableByteChannel channel = Channels.newChannel(output);
+				while(source.hasRemaining()){
+					channel.write(source);
+				}
+			}
+		};
+	}
+}
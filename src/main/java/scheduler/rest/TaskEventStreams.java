@@ -0,0 +1,400 @@
+package scheduler.rest;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.core.MediaType;
+
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import scheduler.engine.ScriptScheduler;
+import scheduler.engine.TaskEvent;
+import scheduler.engine.TaskEventBuffer;
+
+/**
+ * Writes the streams of the events of the tasks to their subscribers with a small pool of threads.
+ * <p>
+ * A single dispatcher thread waits for the events published in the buffer of the scheduler,
+ * and schedules the writing of the subscribers once new events are published, or once a heartbeat is due.
+ * Each subscriber keeps its own position in the buffer and is written by one thread at a time, a batch of events at a time,
+ * so a slow subscriber does not hold back the scheduler nor the other subscribers:
+ * it only misses the events that were overwritten before it read them.
+ * </p>
+ * <p>
+ * A subscriber whose write blocks longer than the write timeout is dropped: its stream is closed, 
+ * and the pool gets one more thread until the blocked write returns, so that the slow subscribers 
+ * can not take all the threads from the other ones.
+ * </p>
+ * @author Sandrine Ben Mabrouk
+ *
+ */
+public class TaskEventStreams {
+
+	/**
+	 * The default number of threads that write the streams.
+	 */
+	public static final int DEFAULT_NB_WRITERS = 4;
+
+	/**
+	 * The marker of the start time of a write after which the subscriber was dropped.
+	 */
+	protected static final long DROPPED = -1;
+
+	/**
+	 * Logger for the streams of events.
+	 */
+	protected static final Logger LOG = LoggerFactory.getLogger(TaskEventStreams.class);
+
+
+	/**
+	 * The threads that write the streams.
+	 */
+	protected final ThreadPoolExecutor writers;
+
+	/**
+	 * The subscribers of the streams.
+	 */
+	protected final Set<Subscriber> subscribers = Collections.newSetFromMap(new ConcurrentHashMap<Subscriber, Boolean>());
+
+	/**
+	 * The time between two heartbeats on an idle stream, in milliseconds.
+	 */
+	protected final long heartbeat;
+
+	/**
+	 * The number max of events written at once to a subscriber.
+	 */
+	protected final int batchSize;
+
+	/**
+	 * The time max a write to a subscriber may block before the subscriber is dropped, in milliseconds.
+	 */
+	protected final long writeTimeout;
+
+	/**
+	 * The number of subscribers dropped because a write blocked too long.
+	 */
+	protected final AtomicLong nbDropped = new AtomicLong();
+
+	/**
+	 * The thread that schedules the writing of the subscribers, null while there is no subscriber.
+	 */
+	protected Thread dispatcher = null;
+
+
+	/**
+	 * Creates the streams of events.
+	 * @param nbWriters the number of threads that write the streams.
+	 * @param heartbeat the time between two heartbeats on an idle stream, in milliseconds.
+	 * @param batchSize the number max of events written at once to a subscriber.
+	 * @param writeTimeout the time max a write to a subscriber may block before the subscriber is dropped, in milliseconds.
+	 */
+	public TaskEventStreams(int nbWriters, long heartbeat, int batchSize, long writeTimeout) {
+		this.heartbeat = heartbeat;
+		this.batchSize = batchSize;
+		this.writeTimeout = writeTimeout;
+		this.writers = new ThreadPoolExecutor(nbWriters, nbWriters, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactory() {
+				private final AtomicInteger nbThreads = new AtomicInteger();
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread result = new Thread(r, "task-events-" + nbThreads.incrementAndGet());
+					result.setDaemon(true);
+					return result;
+				}
+			});
+		this.writers.allowCoreThreadTimeOut(true);
+	}
+
+
+	/**
+	 * Subscribes a stream to the events published after a given event.
+	 * The events already in the buffer are written at once, the next ones once they are published.
+	 * @param output the stream of events.
+	 * @param after the sequence number of the last event already sent.
+	 * @param taskIds the ids of the tasks whose events are written, all the tasks if empty.
+	 * @param tenant the tenant of the tasks whose events are written, all the tenants if null.
+	 */
+	public void subscribe(EventOutput output, long after, Set<Long> taskIds, String tenant){
+		Subscriber subscriber = new Subscriber(output, after, taskIds, tenant);
+		this.subscribers.add(subscriber);
+		this.startDispatcher();
+		this.schedule(subscriber);
+	}
+
+	/**
+	 * Gets the number of subscribers of the streams.
+	 * @return the number of subscribers.
+	 */
+	public int getNbSubscribers(){
+		return this.subscribers.size();
+	}
+
+	/**
+	 * Gets the number of subscribers dropped because a write blocked longer than the write timeout.
+	 * @return the number of dropped subscribers.
+	 */
+	public long getNbDropped(){
+		return this.nbDropped.get();
+	}
+
+	/**
+	 * Starts the dispatcher thread if it is not running.
+	 */
+	protected synchronized void startDispatcher(){
+		if(this.dispatcher == null){
+			this.dispatcher = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					dispatch();
+				}
+			}, "task-events-dispatcher");
+			this.dispatcher.setDaemon(true);
+			this.dispatcher.start();
+		}
+	}
+
+	/**
+	 * Waits for the events published in the buffer of the scheduler, and schedules the writing of the subscribers
+	 * once new events are published or once their heartbeat is due. 
+	 * Drops the subscribers whose write blocks longer than the write timeout. Stops once there is no more subscriber.
+	 */
+	protected void dispatch(){
+		long position = ScriptScheduler.getInstance().getEventBuffer().getLastSequence();
+		long interval = Math.min(this.heartbeat, this.writeTimeout);
+		while(true){
+			synchronized(this){
+				if(this.subscribers.isEmpty()){
+					this.dispatcher = null;
+					return;
+				}
+			}
+			try{
+				TaskEventBuffer buffer = ScriptScheduler.getInstance().getEventBuffer();
+				buffer.await(position, 1, interval, TimeUnit.MILLISECONDS);
+				long last = buffer.getLastSequence();
+				// the position also changes when the buffer was replaced
+				boolean published = last != position;
+				position = last;
+				long now = System.currentTimeMillis();
+				for(Subscriber subscriber: this.subscribers){
+					long writeStarted = subscriber.writeStarted.get();
+					if(writeStarted > 0 && now - writeStarted >= this.writeTimeout){
+						this.drop(subscriber, writeStarted);
+					}
+					else if(subscriber.output.isClosed()){
+						this.subscribers.remove(subscriber);
+					}
+					else if(published || now - subscriber.lastWrite >= this.heartbeat){
+						this.schedule(subscriber);
+					}
+				}
+			}
+			catch(InterruptedException ex){
+				LOG.debug("stop dispatching the events of the tasks", ex);
+				synchronized(this){
+					this.dispatcher = null;
+				}
+				return;
+			}
+			catch(RuntimeException ex){
+				LOG.warn("unable to dispatch the events of the tasks", ex);
+			}
+		}
+	}
+
+	/**
+	 * Drops a subscriber whose write blocks: closes its stream, and adds a thread to the pool until the write returns.
+	 * Closing the stream does not wait for the blocked write.
+	 * @param subscriber the subscriber.
+	 * @param writeStarted the start time of the blocked write.
+	 */
+	protected void drop(Subscriber subscriber, long writeStarted){
+		if(subscriber.writeStarted.compareAndSet(writeStarted, DROPPED)){
+			LOG.info("drops a subscriber of the events of the tasks blocked for " + (System.currentTimeMillis() - writeStarted) + " ms");
+			this.nbDropped.incrementAndGet();
+			this.resizeWriters(1);
+			subscriber.close();
+		}
+	}
+
+	/**
+	 * Changes the number of threads that write the streams.
+	 * @param delta the number of threads to be added, negative to remove threads.
+	 */
+	protected synchronized void resizeWriters(int delta){
+		int size = this.writers.getMaximumPoolSize() + delta;
+		if(delta > 0){
+			this.writers.setMaximumPoolSize(size);
+			this.writers.setCorePoolSize(size);
+		}
+		else{
+			this.writers.setCorePoolSize(size);
+			this.writers.setMaximumPoolSize(size);
+		}
+	}
+
+	/**
+	 * Schedules the writing of a subscriber, unless it is already scheduled.
+	 * @param subscriber the subscriber.
+	 */
+	protected void schedule(Subscriber subscriber){
+		if(subscriber.scheduled.compareAndSet(false, true)){
+			this.writers.execute(subscriber);
+		}
+	}
+
+
+	/**
+	 * A subscriber of the stream of events, with its own position in the buffer.
+	 */
+	protected class Subscriber implements Runnable {
+
+		/**
+		 * The stream of events.
+		 */
+		protected final EventOutput output;
+
+		/**
+		 * The ids of the tasks whose events are written, all the tasks if empty.
+		 */
+		protected final Set<Long> taskIds;
+
+		/**
+		 * The tenant of the tasks whose events are written, all the tenants if null.
+		 */
+		protected final String tenant;
+
+		/**
+		 * Indicates if the writing of the subscriber is scheduled or running.
+		 */
+		protected final AtomicBoolean scheduled = new AtomicBoolean();
+
+		/**
+		 * The sequence number of the last event read, only used by the writing thread.
+		 */
+		protected long position;
+
+		/**
+		 * The time of the last write to the stream, in milliseconds.
+		 */
+		protected volatile long lastWrite = System.currentTimeMillis();
+
+		/**
+		 * The start time of the running write in milliseconds, 0 if the subscriber is not written, 
+		 * or {@link TaskEventStreams#DROPPED} if the subscriber was dropped while written.
+		 */
+		protected final AtomicLong writeStarted = new AtomicLong();
+
+
+		/**
+		 * Creates a subscriber.
+		 * @param output the stream of events.
+		 * @param after the sequence number of the last event already sent.
+		 * @param taskIds the ids of the tasks whose events are written, all the tasks if empty.
+		 * @param tenant the tenant of the tasks whose events are written, all the tenants if null.
+		 */
+		protected Subscriber(EventOutput output, long after, Set<Long> taskIds, String tenant) {
+			this.output = output;
+			this.position = after;
+			this.taskIds = taskIds;
+			this.tenant = tenant;
+		}
+
+
+		/**
+		 * Writes a batch of the events published after the position of the subscriber, or a heartbeat if none is written,
+		 * then schedules the subscriber again if more events were published meanwhile.
+		 * Gives back the thread added to the pool if the subscriber was dropped while written.
+		 */
+		@Override
+		public void run() {
+			TaskEventBuffer buffer = ScriptScheduler.getInstance().getEventBuffer();
+			this.writeStarted.set(System.currentTimeMillis());
+			try{
+				this.write(buffer);
+			}
+			catch(IOException | RuntimeException ex){
+				LOG.debug("stop streaming the events of the tasks", ex);
+				this.close();
+			}
+			finally{
+				if(this.writeStarted.getAndSet(0) == DROPPED){
+					resizeWriters(-1);
+				}
+				this.scheduled.set(false);
+			}
+			// the events published while writing may have been missed by the dispatcher
+			if(!this.output.isClosed() && buffer.getLastSequence() > this.position){
+				schedule(this);
+			}
+		}
+
+		/**
+		 * Writes a batch of the events published after the position of the subscriber, or a heartbeat if none is written.
+		 * @param buffer the buffer of the events.
+		 * @throws IOException if the stream is closed.
+		 */
+		protected void write(TaskEventBuffer buffer) throws IOException{
+			if(this.output.isClosed()){
+				this.close();
+				return;
+			}
+			if(buffer.getLastSequence() < this.position){
+				// the buffer was replaced
+				this.position = 0;
+			}
+			boolean written = false;
+			List<TaskEvent> events = buffer.read(this.position, batchSize);
+			if(!events.isEmpty() && events.get(0).getSequence() > this.position + 1){
+				this.output.write(new OutboundEvent.Builder().name("overflow")
+						.data(String.class, String.valueOf(events.get(0).getSequence() - this.position - 1)).build());
+				written = true;
+			}
+			for(TaskEvent event: events){
+				this.position = event.getSequence();
+				if((this.taskIds.isEmpty() || this.taskIds.contains(event.getTaskId()))
+						&& (this.tenant == null || this.tenant.equals(event.getTenant()))){
+					this.output.write(new OutboundEvent.Builder().id(String.valueOf(this.position))
+						.name(event.getType().name().toLowerCase())
+						.mediaType(MediaType.APPLICATION_JSON_TYPE)
+						.data(TaskEvent.class, event).build());
+					written = true;
+				}
+			}
+			long now = System.currentTimeMillis();
+			if(!written && now - this.lastWrite >= heartbeat){
+				this.output.write(new OutboundEvent.Builder().comment("heartbeat").build());
+				written = true;
+			}
+			if(written){
+				this.lastWrite = now;
+			}
+		}
+
+		/**
+		 * Closes the stream, and unsubscribes it.
+		 */
+		protected void close(){
+			subscribers.remove(this);
+			try {
+				this.output.close();
+			} catch (IOException ex) {
+				LOG.debug("unable to close a stream of events", ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package scheduler.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import scheduler.engine.AbstractScriptTask;
+import scheduler.engine.CompletedTask;
+import scheduler.engine.Task;
+import scheduler.engine.TaskStatus;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * A page of a listing of tasks, written as a JSON array of objects while the tasks are iterated, 
+ * with only the requested fields of the tasks.
+ * @author Sandrine Ben Mabrouk.
+ *
+ */
+public class TaskListing implements StreamingOutput {
+
+	/**
+	 * The fields of a task that may be listed.
+	 */
+	public enum Field {
+		/**
+		 * The id of the task.
+		 */
+		ID("id"),
+		/**
+		 * The content of the script, only kept for the running tasks.
+		 */
+		SCRIPT_CONTENT("scriptContent"),
+		/**
+		 * The digest of the script content.
+		 */
+		SCRIPT_DIGEST("scriptDigest"),
+		/**
+		 * The status of the task.
+		 */
+		STATUS("status"),
+		/**
+		 * The time when the task was submitted, in milliseconds.
+		 */
+		SUBMITTED_AT("submittedAt"),
+		/**
+		 * The time when the task was finished, in milliseconds, null for the running tasks.
+		 */
+		FINISHED_AT("finishedAt"),
+		/**
+		 * The priority of the task, only kept for the running tasks.
+		 */
+		PRIORITY("priority"),
+		/**
+		 * The tenant of the task, only kept for the running tasks.
+		 */
+		TENANT("tenant");
+
+		/**
+		 * The name of the field in the listing.
+		 */
+		protected final String name;
+
+		/**
+		 * Creates a field.
+		 * @param name the name of the field in the listing.
+		 */
+		private Field(String name){
+			this.name = name;
+		}
+
+		/**
+		 * Gets the name of the field in the listing.
+		 * @return the name of the field.
+		 */
+		public String getName() {
+			return name;
+		}
+	}
+
+	/**
+	 * The factory of the generators, that write compact JSON and leave the output stream to the container.
+	 */
+	protected static final JsonFactory jsonFactory = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+	/**
+	 * The tasks to be listed, in id order.
+	 */
+	protected final Collection<? extends Task> tasks;
+
+	/**
+	 * The number max of tasks listed.
+	 */
+	protected final int limit;
+
+	/**
+	 * The listed fields.
+	 */
+	protected final List<Field> fields;
+
+
+	/**
+	 * Creates a page of a listing.
+	 * @param tasks the tasks to be listed, in id order, that may be a live view.
+	 * @param limit the number max of tasks listed.
+	 * @param fields the listed fields.
+	 */
+	public TaskListing(Collection<? extends Task> tasks, int limit, List<Field> fields) {
+		this.tasks = tasks;
+		this.limit = limit;
+		this.fields = fields;
+	}
+
+
+	/**
+	 * Parses the fields requested for a listing.
+	 * @param value the names of the fields, separated by commas.
+	 * @return the fields.
+	 * @throws IllegalArgumentException if no field is requested or if a field is unknown.
+	 */
+	public static List<Field> parseFields(String value) throws IllegalArgumentException{
+		if(value == null || value.trim().isEmpty()){
+			throw new IllegalArgumentException("No field requested");
+		}
+		List<Field> result = new ArrayList<Field>();
+		for(String name: value.split(",")){
+			Field field = null;
+			for(Field current: Field.values()){
+				if(current.name.equals(name.trim())){
+					field = current;
+				}
+			}
+			if(field == null){
+				throw new IllegalArgumentException("Unknown field " + name.trim());
+			}
+			if(!result.contains(field)){
+				result.add(field);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the listed tasks.
+	 * @see StreamingOutput#write(OutputStream)
+	 */
+	@Override
+	public void write(OutputStream output) throws IOException {
+		try(JsonGenerator generator = jsonFactory.createGenerator(output)){
+			generator.writeStartArray();
+			Iterator<? extends Task> iterator = this.tasks.iterator();
+			for(int count = 0; count < this.limit && iterator.hasNext(); count++){
+				this.writeTask(generator, iterator.next());
+			}
+			generator.writeEndArray();
+		}
+	}
+
+	/**
+	 * Writes the listed fields of a task.
+	 * @param generator the generator of the listing.
+	 * @param task the running task or the record of the finished task.
+	 * @throws IOException if the listing can not be written.
+	 */
+	protected void writeTask(JsonGenerator generator, Task task) throws IOException{
+		AbstractScriptTask running = task instanceof AbstractScriptTask ? (AbstractScriptTask) task : null;
+		CompletedTask completed = task instanceof CompletedTask ? (CompletedTask) task : null;
+		generator.writeStartObject();
+		for(Field field: this.fields){
+			generator.writeFieldName(field.name);
+			switch(field){
+			case ID:
+				generator.writeNumber(task.getId());
+				break;
+			case SCRIPT_CONTENT:
+				generator.writeString(task.getScriptContent());
+				break;
+			case SCRIPT_DIGEST:
+				generator.writeString(running != null ? running.getScriptDigest() : completed.getScriptDigest());
+				break;
+			case STATUS:
+				generator.writeString(running != null ? TaskStatus.RUNNING.name() : completed.getStatus().name());
+				break;
+			case SUBMITTED_AT:
+				generator.writeNumber(running != null ? running.getSubmittedAt() : completed.getSubmittedAt());
+				break;
+			case FINISHED_AT:
+				if(running != null){
+					generator.writeNull();
+				}
+				else{
+					generator.writeNumber(completed.getFinishedAt());
+				}
+				break;
+			case PRIORITY:
+				generator.writeString(running != null ? running.getPriority().name() : null);
+				break;
+			case TENANT:
+				generator.writeString(running != null ? running.getTenant() : null);
+				break;
+			}
+		}
+		generator.writeEndObject();
+	}
+}
@@ -1,30 +1,56 @@
 package scheduler.rest;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.container.TimeoutHandler;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.SseFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import scheduler.engine.AbstractScriptTask;
+import scheduler.engine.CompletedTask;
+import scheduler.engine.CompletionCallback;
 import scheduler.engine.ScriptScheduler;
-import scheduler.engine.ScriptSnapshot;
 import scheduler.engine.Task;
+import scheduler.engine.TaskPriority;
 import scheduler.engine.UnknownTaskException;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
 /**
  * Task resource that allows accessing to the scheduler and created tasks.
  * @author Sandrine Ben Mabrouk.
@@ -37,7 +63,81 @@ public class TaskResource {
 	 */
 	static final Logger LOG = LoggerFactory.getLogger(TaskResource.class);
 	
+	/**
+	 * The renderer of the snapshots of the finished tasks, shared by all the requests.
+	 */
+	protected static final SnapshotRenderer snapshotRenderer = new SnapshotRenderer();
+	
+	/**
+	 * The header that gives the priority of a submission.
+	 */
+	public static final String PRIORITY_HEADER = "X-Task-Priority";
+	
+	/**
+	 * The header that gives the tenant of a submission.
+	 */
+	public static final String TENANT_HEADER = "X-Tenant-Id";
+	
+	/**
+	 * The header that gives the timeout of a submission.
+	 */
+	public static final String TIMEOUT_HEADER = "X-Task-Timeout";
+	
+	/**
+	 * The media type of newline delimited JSON, where each line is a JSON value.
+	 */
+	public static final String NDJSON = "application/x-ndjson";
+	
+	/**
+	 * The time a request for a result waits for the end of the task by default, in milliseconds.
+	 */
+	public static final long DEFAULT_WAIT = 30000;
+	
+	/**
+	 * The time max a request for a result waits for the end of the task, in milliseconds.
+	 */
+	public static final long MAX_WAIT = 300000;
+	
+	/**
+	 * The syntax of a time to wait or of a timeout: an amount with an optional unit.
+	 */
+	protected static final Pattern WAIT_PATTERN = Pattern.compile("(\\d{1,9})(ms|s|m)?");
+	
+	/**
+	 * The time between two heartbeats on an idle stream of events, in milliseconds.
+	 */
+	protected static final long EVENTS_HEARTBEAT = 15000;
+	
+	/**
+	 * The number max of events read from the buffer at once for a stream of events.
+	 */
+	protected static final int EVENTS_BATCH = 256;
+	
+	/**
+	 * The time max a write to a stream of events may block before the stream is closed, in milliseconds.
+	 */
+	protected static final long EVENTS_WRITE_TIMEOUT = 10000;
+	
+	/**
+	 * The streams of events, written by a small pool of threads shared by the subscribers.
+	 */
+	protected static final TaskEventStreams eventStreams = new TaskEventStreams(TaskEventStreams.DEFAULT_NB_WRITERS, 
+																		EVENTS_HEARTBEAT, EVENTS_BATCH, EVENTS_WRITE_TIMEOUT);
+	
+	/**
+	 * The factory of the parsers of the batch submissions.
+	 */
+	protected static final JsonFactory jsonFactory = SchedulerObjectMapperProvider.getNewObjectMapper().getFactory();
+	
    
+    /**
+     * Get the renderer of the snapshots of the finished tasks.
+     * @return the renderer of the snapshots.
+     */
+    public static SnapshotRenderer getSnapshotRenderer(){
+    	return snapshotRenderer;
+    }
+    
     /**
      * Override the response status with the given code.
      * @param response the response to be returned to the client.
@@ -53,16 +153,39 @@ public class TaskResource {
     
     /**
      * Submit a new script.
+     * The priority of the task is given by the query parameter "priority", or else by the header "X-Task-Priority",
+     * and is normal by default.
+     * The tenant that submits the task is given by the query parameter "clientId", or else by the header "X-Tenant-Id",
+     * and is the default tenant otherwise.
+     * The time the script may run is given by the query parameter "timeout", or else by the header "X-Task-Timeout",
+     * and is the default timeout of the scheduler otherwise.
      * @param script the script content
+     * @param priorityParam the priority given as query parameter, may be null.
+     * @param priorityHeader the priority given as header, may be null.
+     * @param clientId the tenant given as query parameter, may be null.
+     * @param tenantHeader the tenant given as header, may be null.
+     * @param timeoutParam the timeout given as query parameter, may be null.
+     * @param timeoutHeader the timeout given as header, may be null.
      * @param response the current servlet reponse, injected by Jersey.
      * @return the id of the created task.
+     * @throws BadRequestException if the priority is unknown, the tenant or the timeout is invalid.
      */
     @POST
     @Consumes(MediaType.TEXT_PLAIN)
     @Produces(MediaType.TEXT_PLAIN)
-    public Long submit(String script, @Context final HttpServletResponse response){
+    public Long submit(String script, 
+    					@QueryParam("priority") String priorityParam, 
+    					@HeaderParam(PRIORITY_HEADER) String priorityHeader,
+    					@QueryParam("clientId") String clientId,
+    					@HeaderParam(TENANT_HEADER) String tenantHeader,
+    					@QueryParam("timeout") String timeoutParam,
+    					@HeaderParam(TIMEOUT_HEADER) String timeoutHeader,
+    					@Context final HttpServletResponse response) throws BadRequestException{
     	LOG.info("submit the script " + script);
-    	Task newTask = ScriptScheduler.getInstance().submitScript(script);
+    	TaskPriority priority = parsePriority(priorityParam != null ? priorityParam : priorityHeader);
+    	String tenant = parseTenant(clientId != null ? clientId : tenantHeader);
+    	long timeout = parseTimeout(timeoutParam != null ? timeoutParam : timeoutHeader);
+    	Task newTask = ScriptScheduler.getInstance().submitScript(script, priority, tenant, timeout);
     	
     	setResponseStatus(response, Response.Status.CREATED);
     	
@@ -71,46 +194,387 @@ public class TaskResource {
     
     
     /**
-     * Get the list of running tasks.
-     * @return the list of running tasks.
+     * Submit several scripts in one request.
+     * The body is either a JSON array of scripts, or a stream of scripts as newline delimited JSON strings.
+     * The body is read as a stream, and all the scripts are submitted at once once the body is read.
+     * The priority, the tenant and the timeout are given as for a single submission, and apply to all the scripts.
+     * @param body the body of the request.
+     * @param priorityParam the priority given as query parameter, may be null.
+     * @param priorityHeader the priority given as header, may be null.
+     * @param clientId the tenant given as query parameter, may be null.
+     * @param tenantHeader the tenant given as header, may be null.
+     * @param timeoutParam the timeout given as query parameter, may be null.
+     * @param timeoutHeader the timeout given as header, may be null.
+     * @return the ids of the created tasks, in the order of the scripts.
+     * @throws BadRequestException if the body is not a list of scripts, if the priority is unknown, the tenant or the timeout is invalid.
+     */
+    @POST
+    @Path("batch")
+    @Consumes({MediaType.APPLICATION_JSON, NDJSON})
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response submitBatch(InputStream body, 
+    					@QueryParam("priority") String priorityParam, 
+    					@HeaderParam(PRIORITY_HEADER) String priorityHeader,
+    					@QueryParam("clientId") String clientId,
+    					@HeaderParam(TENANT_HEADER) String tenantHeader,
+    					@QueryParam("timeout") String timeoutParam,
+    					@HeaderParam(TIMEOUT_HEADER) String timeoutHeader) throws BadRequestException{
+    	TaskPriority priority = parsePriority(priorityParam != null ? priorityParam : priorityHeader);
+    	String tenant = parseTenant(clientId != null ? clientId : tenantHeader);
+    	long timeout = parseTimeout(timeoutParam != null ? timeoutParam : timeoutHeader);
+    	List<String> scripts = readScripts(body);
+    	LOG.info("submit a batch of " + scripts.size() + " scripts");
+    	List<AbstractScriptTask> tasks = ScriptScheduler.getInstance().submitScripts(scripts, priority, tenant, timeout);
+    	
+    	List<Long> ids = new ArrayList<Long>(tasks.size());
+    	for(AbstractScriptTask task: tasks){
+    		ids.add(task.getId());
+    	}
+    	return Response.status(Response.Status.CREATED).entity(ids).type(MediaType.APPLICATION_JSON).build();
+    }
+    
+    
+    /**
+     * Reads the scripts of a batch submission, either a JSON array of strings or a sequence of JSON strings.
+     * @param body the body of the request.
+     * @return the scripts, in order.
+     * @throws BadRequestException if the body is not a list of scripts.
+     */
+    protected static List<String> readScripts(InputStream body) throws BadRequestException{
+    	List<String> result = new ArrayList<String>();
+    	try(JsonParser parser = jsonFactory.createParser(body)){
+    		JsonToken token = parser.nextToken();
+    		boolean array = token == JsonToken.START_ARRAY;
+    		if(array){
+    			token = parser.nextToken();
+    		}
+    		while(token != null && token != JsonToken.END_ARRAY){
+    			if(token != JsonToken.VALUE_STRING){
+    				throw new BadRequestException("A script must be a JSON string, found " + token);
+    			}
+    			result.add(parser.getText());
+    			token = parser.nextToken();
+    		}
+    		if(array != (token == JsonToken.END_ARRAY) || (array && parser.nextToken() != null)){
+    			throw new BadRequestException("Malformed list of scripts");
+    		}
+    	}
+    	catch(IOException ex){
+    		throw new BadRequestException("Malformed list of scripts: " + ex.getMessage());
+    	}
+    	return result;
+    }
+    
+    
+    /**
+     * Parses the priority of a submission.
+     * @param value the name of the priority, case insensitive, may be null.
+     * @return the priority, normal if the value is null or empty.
+     * @throws BadRequestException if the priority is unknown.
+     */
+    protected static TaskPriority parsePriority(String value) throws BadRequestException{
+    	if(value == null || value.trim().isEmpty()){
+    		return TaskPriority.NORMAL;
+    	}
+    	try{
+    		return TaskPriority.valueOf(value.trim().toUpperCase());
+    	}
+    	catch(IllegalArgumentException ex){
+    		throw new BadRequestException("Unknown priority " + value);
+    	}
+    }
+    
+    
+    /**
+     * Parses the tenant of a submission.
+     * @param value the name of the tenant, may be null.
+     * @return the name of the tenant, null for the default tenant.
+     * @throws BadRequestException if the name of the tenant has other characters than letters, digits, '.', '_' and '-'.
+     */
+    protected static String parseTenant(String value) throws BadRequestException{
+    	if(value == null || value.trim().isEmpty()){
+    		return null;
+    	}
+    	String result = value.trim();
+    	if(!result.matches("[A-Za-z0-9._-]{1,64}")){
+    		throw new BadRequestException("Invalid tenant " + value);
+    	}
+    	return result;
+    }
+    
+    
+    /**
+     * Get the list of running tasks, in id order. 
+     * The list is paginated with a cursor: the next page starts after the id of the last task of the current page.
+     * @param after the id after which the tasks are listed, may be null to start from the first task.
+     * @param limit the number max of tasks listed, may be null to list all the tasks.
+     * @param fields the listed fields separated by commas, may be null to list the tasks as they are serialized.
+     * @return the list of running tasks, written while the tasks are iterated.
+     * @throws BadRequestException if the limit is not positive or if a field is unknown.
+     * @see TaskListing.Field
      */
     @GET
     @Path("running")
     @Produces(MediaType.APPLICATION_JSON)
-    public List<Task> getRunning(){
-    	return ScriptScheduler.getInstance().getRunningTasks();
+    public Response getRunning(@QueryParam("after") Long after, 
+    						@QueryParam("limit") Integer limit, 
+    						@QueryParam("fields") String fields) throws BadRequestException{
+    	return listTasks(ScriptScheduler.getInstance().getRunningTasks(after == null ? 0 : after), limit, fields);
     }
     
     /**
-     * Get the list of finished tasks.
-     * @return the list of finished tasks.
+     * Get the list of finished tasks, in id order.
+     * The list is paginated with a cursor: the next page starts after the id of the last task of the current page.
+     * @param after the id after which the tasks are listed, may be null to start from the first task.
+     * @param limit the number max of tasks listed, may be null to list all the tasks.
+     * @param fields the listed fields separated by commas, may be null to list the tasks as they are serialized.
+     * @return the list of finished tasks, written while the tasks are iterated.
+     * @throws BadRequestException if the limit is not positive or if a field is unknown.
+     * @see TaskListing.Field
      */
     @GET
     @Path("finished")
     @Produces(MediaType.APPLICATION_JSON)
-    public List<Task> getFinished(){
-    	return ScriptScheduler.getInstance().getFinishedTasks();
+    public Response getFinished(@QueryParam("after") Long after, 
+    						@QueryParam("limit") Integer limit, 
+    						@QueryParam("fields") String fields) throws BadRequestException{
+    	return listTasks(ScriptScheduler.getInstance().getFinishedTasks(after == null ? 0 : after), limit, fields);
+    }
+    
+    /**
+     * Lists a page of tasks. Without requested fields, the tasks of the page are serialized whole, as the Task beans they are; 
+     * with requested fields, only these fields are written while the tasks are iterated.
+     * @param tasks the tasks to be listed, in id order.
+     * @param limit the number max of tasks listed, may be null to list all the tasks.
+     * @param fields the listed fields separated by commas, may be null to serialize the whole tasks.
+     * @return the response that writes the listing.
+     * @throws BadRequestException if the limit is not positive or if a field is unknown.
+     */
+    protected static Response listTasks(Collection<? extends Task> tasks, Integer limit, String fields) throws BadRequestException{
+    	if(limit != null && limit < 1){
+    		throw new BadRequestException("Invalid limit " + limit);
+    	}
+    	int max = limit == null ? Integer.MAX_VALUE : limit;
+    	if(fields == null || fields.trim().isEmpty()){
+    		List<Task> page = new ArrayList<Task>();
+    		for(Task current: tasks){
+    			if(page.size() >= max){
+    				break;
+    			}
+    			page.add(current);
+    		}
+    		return Response.ok(new GenericEntity<List<Task>>(page){}, MediaType.APPLICATION_JSON).build();
+    	}
+    	try{
+    		TaskListing listing = new TaskListing(tasks, max, TaskListing.parseFields(fields));
+    		return Response.ok(listing, MediaType.APPLICATION_JSON).build();
+    	}
+    	catch(IllegalArgumentException ex){
+    		throw new BadRequestException(ex.getMessage());
+    	}
     }
     
     
     /**
      * Get the status and result of a task specified by its id.
+     * The snapshot of a finished task is rendered to JSON on the first request, then the rendered bytes are reused.
      * @param id the task id.
      * @return the status and result of the task.
      * @throws NotFoundException if the task does not exist.
+     * @throws JsonProcessingException if the snapshot can not be rendered.
      */
     @GET 
     @Path("{taskId}/status")
     @Produces(MediaType.APPLICATION_JSON)
-    public ScriptSnapshot getResult(@PathParam("taskId") long id) throws NotFoundException{
+    public Response getResult(@PathParam("taskId") long id) throws NotFoundException, JsonProcessingException{
     	LOG.info("Get the result of task " + id);
     	
+    	Task task;
+    	try {
+			task = ScriptScheduler.getInstance().getTask(id);
+		} catch (UnknownTaskException e) {
+			throw new NotFoundException("Task with id " + id + " not found");
+		}
+    	
+    	if(task instanceof CompletedTask){
+    		ByteBuffer rendered = snapshotRenderer.getRendered((CompletedTask) task);
+    		return Response.ok(SnapshotRenderer.output(rendered), MediaType.APPLICATION_JSON).build();
+    	}
+    	return Response.ok(((AbstractScriptTask) task).getSnapshot(), MediaType.APPLICATION_JSON).build();
+    }
+    
+    
+    /**
+     * Stream the events of the lifecycle of the tasks as server-sent events: 
+     * "submitted", "started", "completed", "failed" and "cancelled", with the sequence number of the event as event id.
+     * The events may be restricted to some tasks, or to the tasks of a tenant.
+     * A client resumes the stream after a reconnection with the header "Last-Event-ID" or the query parameter "since", 
+     * and receives the events published after the given sequence number that are still kept by the scheduler. 
+     * An "overflow" event tells that some events were dropped before they could be sent.
+     * The subscribers are written by a small pool of threads, each from its own position in the events kept by the scheduler, 
+     * so a slow subscriber does not hold back the scheduler nor the other subscribers.
+     * @param ids the ids of the tasks, all the tasks if empty.
+     * @param clientId the tenant of the tasks, all the tenants if null.
+     * @param since the sequence number of the last event received, may be null.
+     * @param lastEventId the sequence number of the last event received, given by a reconnecting client, may be null.
+     * @return the stream of events.
+     * @throws BadRequestException if the tenant or the sequence number is not valid.
+     */
+    @GET
+    @Path("events")
+    @Produces(SseFeature.SERVER_SENT_EVENTS)
+    public EventOutput streamEvents(@QueryParam("id") List<Long> ids,
+    								@QueryParam("clientId") String clientId,
+    								@QueryParam("since") Long since,
+    								@HeaderParam(SseFeature.LAST_EVENT_ID_HEADER) String lastEventId) throws BadRequestException{
+    	String tenant = parseTenant(clientId);
+    	Set<Long> taskIds = new HashSet<Long>(ids);
+    	long position = ScriptScheduler.getInstance().getEventBuffer().getLastSequence();
+    	try{
+    		if(lastEventId != null && !lastEventId.trim().isEmpty()){
+    			position = Long.parseLong(lastEventId.trim());
+    		}
+    		else if(since != null){
+    			position = since;
+    		}
+    	}
+    	catch(NumberFormatException ex){
+    		throw new BadRequestException("Invalid event id " + lastEventId);
+    	}
+    	
+    	EventOutput output = new EventOutput();
+    	eventStreams.subscribe(output, position, taskIds, tenant);
+    	return output;
+    }
+    
+    
+    /**
+     * Get the status and result of a task specified by its id, once the task is finished.
+     * The request is suspended until the task is finished or the wait times out, without holding a container thread, 
+     * then the snapshot of the task is returned. The snapshot is the running one if the wait timed out.
+     * A time to wait of 0 returns the current snapshot of the task at once.
+     * @param id the task id.
+     * @param wait the time to wait, in seconds or with a unit "ms", "s" or "m", at most 5 minutes, 30 seconds by default.
+     * @param asyncResponse the suspended response, injected by Jersey.
+     * @throws NotFoundException if the task does not exist.
+     * @throws BadRequestException if the time to wait is not valid.
+     */
+    @GET 
+    @Path("{taskId}/result")
+    @Produces(MediaType.APPLICATION_JSON)
+    public void awaitResult(@PathParam("taskId") final long id, @QueryParam("wait") String wait, 
+    						@Suspended final AsyncResponse asyncResponse) throws NotFoundException, BadRequestException{
+    	long waitMillis = parseWait(wait);
+    	final ScriptScheduler scheduler = ScriptScheduler.getInstance();
+    	final CompletionCallback callback = new CompletionCallback() {
+			@Override
+			public void completed(CompletedTask task) {
+				try{
+					ByteBuffer rendered = snapshotRenderer.getRendered(task);
+					asyncResponse.resume(Response.ok(SnapshotRenderer.output(rendered), MediaType.APPLICATION_JSON).build());
+				}
+				catch(JsonProcessingException | RuntimeException ex){
+					asyncResponse.resume(ex);
+				}
+			}
+		};
+		if(waitMillis <= 0){
+			// a timeout of 0 would suspend the request forever
+			try{
+				asyncResponse.resume(Response.ok(scheduler.getSnapshot(id), MediaType.APPLICATION_JSON).build());
+			}
+			catch(UnknownTaskException ex){
+				throw new NotFoundException("Task with id " + id + " not found");
+			}
+			return;
+		}
+		asyncResponse.setTimeoutHandler(new TimeoutHandler() {
+			@Override
+			public void handleTimeout(AsyncResponse timedOut) {
+				if(scheduler.cancelAwait(id, callback)){
+					try{
+						timedOut.resume(Response.ok(scheduler.getSnapshot(id), MediaType.APPLICATION_JSON).build());
+					}
+					catch(UnknownTaskException ex){
+						timedOut.resume(new NotFoundException("Task with id " + id + " not found"));
+					}
+				}
+			}
+		});
     	try {
-			AbstractScriptTask task = ScriptScheduler.getInstance().getTask(id);
-			return task.getSnapshot();
+			scheduler.awaitCompletion(id, callback);
 		} catch (UnknownTaskException e) {
 			throw new NotFoundException("Task with id " + id + " not found");
 		}
+    	// the timeout is armed once the callback is registered, so that the timeout handler always finds it or finds it called
+    	try{
+    		asyncResponse.setTimeout(waitMillis, TimeUnit.MILLISECONDS);
+    	}
+    	catch(IllegalStateException ex){
+    		// the response was already resumed by the callback
+    	}
+    }
+    
+    
+    /**
+     * Parses the time a request waits for a result.
+     * @param value the time in seconds, or with a unit "ms", "s" or "m", may be null.
+     * @return the time in milliseconds, at most {@link #MAX_WAIT}, and {@link #DEFAULT_WAIT} if the value is null or empty.
+     * @throws BadRequestException if the time is not valid.
+     */
+    protected static long parseWait(String value) throws BadRequestException{
+    	if(value == null || value.trim().isEmpty()){
+    		return DEFAULT_WAIT;
+    	}
+    	return Math.min(parseDuration(value, "wait"), MAX_WAIT);
+    }
+    
+    
+    /**
+     * Parses the time a submitted script may run.
+     * @param value the time in seconds, or with a unit "ms", "s" or "m", may be null.
+     * @return the time in milliseconds, 0 for the default timeout of the scheduler if the value is null or empty.
+     * @throws BadRequestException if the time is not valid.
+     */
+    protected static long parseTimeout(String value) throws BadRequestException{
+    	if(value == null || value.trim().isEmpty()){
+    		return 0;
+    	}
+    	return parseDuration(value, "timeout");
+    }
+    
+    
+    /**
+     * Parses a time given in seconds, or with a unit "ms", "s" or "m".
+     * @param value the time.
+     * @param name the name of the time, for the error message.
+     * @return the time in milliseconds.
+     * @throws BadRequestException if the time is not valid.
+     */
+    protected static long parseDuration(String value, String name) throws BadRequestException{
+    	Matcher matcher = WAIT_PATTERN.matcher(value.trim());
+    	if(!matcher.matches()){
+    		throw new BadRequestException("Invalid " + name + " " + value);
+    	}
+    	long amount;
+    	try{
+    		amount = Long.parseLong(matcher.group(1));
+    	}
+    	catch(NumberFormatException ex){
+    		throw new BadRequestException("Invalid " + name + " " + value);
+    	}
+    	String unit = matcher.group(2);
+    	long result;
+    	if("ms".equals(unit)){
+    		result = amount;
+    	}
+    	else if("m".equals(unit)){
+    		result = TimeUnit.MINUTES.toMillis(amount);
+    	}
+    	else{
+    		result = TimeUnit.SECONDS.toMillis(amount);
+    	}
+    	return result;
     }
     
     
@@ -0,0 +1,71 @@
+package scheduler.engine;
+
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sandrine Ben Mabrouk.
+ *
+ */
+public class CompiledScriptCacheTest {
+
+	protected Compilable engine;
+
+	@Before
+	public void setUp() {
+		this.engine = (Compilable) new ScriptEngineManager().getEngineByName("groovy");
+	}
+
+
+	/**
+	 * Test that a compiled script is found by its digest, and that hits and misses are counted.
+	 * @throws ScriptException if the script can not be compiled.
+	 */
+	@Test
+	public void testHitAndMiss() throws ScriptException {
+		CompiledScriptCache cache = new CompiledScriptCache(10);
+		String digest = ScriptDigest.digest("return 1+2");
+
+		Assert.assertThat(cache.get(digest), nullValue());
+
+		CompiledScript compiled = engine.compile("return 1+2");
+		cache.put(digest, compiled);
+
+		Assert.assertThat(cache.get(ScriptDigest.digest("return 1+2")), sameInstance(compiled));
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+	}
+
+
+	/**
+	 * Test that the least recently used script is evicted when the cache is full.
+	 * @throws ScriptException if the script can not be compiled.
+	 */
+	@Test
+	public void testEvictLeastRecentlyUsed() throws ScriptException {
+		CompiledScriptCache cache = new CompiledScriptCache(2);
+		cache.put("a", engine.compile("return 'a'"));
+		cache.put("b", engine.compile("return 'b'"));
+		cache.get("a");
+		cache.put("c", engine.compile("return 'c'"));
+
+		Assert.assertEquals(2, cache.size());
+		Assert.assertEquals(1, cache.getEvictions());
+		Assert.assertThat(cache.get("b"), nullValue());
+		Assert.assertEquals("a", cache.get("a").eval());
+
+		cache.setMaxSize(1);
+		Assert.assertEquals(1, cache.size());
+		Assert.assertThat(cache.get("c"), nullValue());
+	}
+}
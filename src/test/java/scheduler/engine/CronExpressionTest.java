@@ -0,0 +1,67 @@
+package scheduler.engine;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sandrine Ben Mabrouk.
+ *
+ */
+public class CronExpressionTest {
+
+	protected static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+
+	/**
+	 * Parses a time in UTC.
+	 * @param time the time, formatted as yyyy-MM-dd HH:mm.
+	 * @return the time in milliseconds.
+	 * @throws ParseException if the time is not valid.
+	 */
+	protected static long time(String time) throws ParseException {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+		format.setTimeZone(UTC);
+		return format.parse(time).getTime();
+	}
+
+
+	/**
+	 * Test the next minute matched by expressions with values, ranges, steps and names.
+	 * @throws ParseException if a time is not valid.
+	 */
+	@Test
+	public void testNext() throws ParseException {
+		Assert.assertEquals(time("2026-03-10 12:01"), new CronExpression("* * * * *", UTC).next(time("2026-03-10 12:00") + 30000));
+		Assert.assertEquals(time("2026-03-10 12:15"), new CronExpression("*/15 * * * *", UTC).next(time("2026-03-10 12:00")));
+		Assert.assertEquals(time("2026-03-11 09:30"), new CronExpression("30 9-17 * * *", UTC).next(time("2026-03-10 17:30")));
+		Assert.assertEquals(time("2026-03-16 08:00"), new CronExpression("0 8 * * MON-FRI", UTC).next(time("2026-03-13 08:00")));
+		Assert.assertEquals(time("2026-03-15 00:00"), new CronExpression("0 0 * * 7", UTC).next(time("2026-03-13 08:00")));
+		Assert.assertEquals(time("2027-01-01 00:00"), new CronExpression("@yearly", UTC).next(time("2026-03-13 08:00")));
+		Assert.assertEquals(time("2028-02-29 00:00"), new CronExpression("0 0 29 feb *", UTC).next(time("2026-03-13 08:00")));
+		// the day of month or the day of week
+		Assert.assertEquals(time("2026-03-15 00:00"), new CronExpression("0 0 1 * SUN", UTC).next(time("2026-03-13 08:00")));
+		Assert.assertEquals(-1, new CronExpression("0 0 31 2 *", UTC).next(time("2026-03-13 08:00")));
+	}
+
+
+	/**
+	 * Test that invalid expressions are rejected.
+	 */
+	@Test
+	public void testInvalid() {
+		String[] expressions = {"* * * *", "60 * * * *", "* * 0 * *", "5-1 * * * *", "*/0 * * * *", "* * * FOO *", "@often"};
+		for(String expression: expressions){
+			try{
+				new CronExpression(expression, UTC);
+				Assert.fail("The expression " + expression + " is accepted");
+			}
+			catch(IllegalArgumentException ex){
+			}
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package scheduler.engine;
+
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.concurrent.CountDownLatch;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sandrine Ben Mabrouk.
+ *
+ */
+public class EngineGenerationsTest {
+
+	/**
+	 * Compiles a script with the current generation, adds it to the cache, then checks the size of the generation.
+	 * @param generations the generations.
+	 * @param cache the cache of compiled scripts.
+	 * @param script the content of the script.
+	 * @return the compiled script.
+	 * @throws ScriptException if the script can not be compiled.
+	 */
+	protected CompiledScript compile(EngineGenerations generations, CompiledScriptCache cache, String script) throws ScriptException {
+		EngineGeneration generation = generations.current();
+		CompiledScript result = generation.compile(script);
+		cache.put(ScriptDigest.digest(script), result);
+		generations.checkSize(generation);
+		return result;
+	}
+
+
+	/**
+	 * Test that a generation that defines too many classes is retired, closed and evicted from the cache,
+	 * and that its scripts can still be evaluated.
+	 * @throws ScriptException if a script can not be compiled.
+	 */
+	@Test
+	public void testRetire() throws ScriptException {
+		CompiledScriptCache cache = new CompiledScriptCache(10);
+		EngineGenerations generations = new EngineGenerations(CompilationMode.DYNAMIC, cache, 3);
+		EngineGeneration first = generations.current();
+
+		compile(generations, cache, "return 1");
+		Assert.assertEquals(1, first.getNbClasses());
+		Assert.assertThat(generations.current(), sameInstance(first));
+
+		CompiledScript closure = compile(generations, cache, "return { it * 2 }(1)");
+		Assert.assertThat(generations.current(), not(sameInstance(first)));
+		Assert.assertEquals(2, generations.current().getNumber());
+		Assert.assertTrue(first.isClosed());
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(2, cache.getEvictions());
+		Assert.assertEquals(1, generations.getNbClosed());
+		Assert.assertEquals(0, generations.getNbRetired());
+		Assert.assertEquals(0, generations.getNbClasses());
+
+		Assert.assertEquals(2, closure.eval());
+		Assert.assertThat(EngineGeneration.of(closure), sameInstance(first));
+	}
+
+
+	/**
+	 * Test that a retired generation is closed only once its running evaluations are finished.
+	 * @throws Exception if a script can not be compiled or if the evaluation fails.
+	 */
+	@Test
+	public void testCloseAfterRunning() throws Exception {
+		CompiledScriptCache cache = new CompiledScriptCache(10);
+		EngineGenerations generations = new EngineGenerations(CompilationMode.DYNAMIC, cache, 100);
+		EngineGeneration first = generations.current();
+		final CompiledScript script = compile(generations, cache, "started.countDown(); release.await(); return 1");
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Object[] result = new Object[1];
+		Thread thread = new Thread(){
+			@Override
+			public void run() {
+				Bindings bindings = new SimpleBindings();
+				bindings.put("started", started);
+				bindings.put("release", release);
+				try {
+					result[0] = script.eval(bindings);
+				} catch (ScriptException e) {
+					result[0] = e;
+				}
+			}
+		};
+		thread.start();
+		started.await();
+		Assert.assertEquals(1, first.getNbRunning());
+
+		generations.setMaxClasses(1);
+		generations.checkSize(first);
+		Assert.assertTrue(first.isRetired());
+		Assert.assertFalse(first.isClosed());
+		Assert.assertEquals(1, generations.getNbRetired());
+
+		release.countDown();
+		thread.join();
+		Assert.assertEquals(1, result[0]);
+		Assert.assertTrue(first.isClosed());
+		Assert.assertEquals(0, generations.getNbRetired());
+		Assert.assertEquals(1, generations.getNbClosed());
+	}
+}
@@ -0,0 +1,142 @@
+package scheduler.engine;
+
+import static org.hamcrest.Matchers.contains;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sandrine Ben Mabrouk.
+ *
+ */
+public class FairShareQueueTest {
+
+	protected PriorityExecutor executor = null;
+
+	protected final List<String> order = new CopyOnWriteArrayList<String>();
+
+	protected final CountDownLatch blocker = new CountDownLatch(1);
+
+	@After
+	public void tearDown() {
+		this.executor.shutdownNow();
+	}
+
+
+	/**
+	 * Queues a command of a tenant, that records its name when it is run, after the blocker is released if asked.
+	 * @param tenant the tenant of the command.
+	 * @param name the name recorded by the command.
+	 * @param blocking true to wait for the blocker.
+	 */
+	protected void queue(final String tenant, final String name, final boolean blocking){
+		this.executor.execute(new PrioritizedTask() {
+			@Override
+			public void run() {
+				if(blocking){
+					try {
+						blocker.await();
+					} catch (InterruptedException e) {
+					}
+				}
+				order.add(name);
+			}
+
+			@Override
+			public TaskPriority getPriority() {
+				return TaskPriority.NORMAL;
+			}
+
+			@Override
+			public String getTenant() {
+				return tenant;
+			}
+		});
+	}
+
+	/**
+	 * Releases the blocker and waits for the queued commands.
+	 * @throws InterruptedException if the test is interrupted.
+	 */
+	protected void drain() throws InterruptedException{
+		this.blocker.countDown();
+		this.executor.shutdown();
+		Assert.assertTrue(this.executor.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+
+	/**
+	 * Test that the tenants take turns, each one starting as many commands in a row as its weight.
+	 * @throws InterruptedException if the test is interrupted.
+	 */
+	@Test
+	public void testWeightedRoundRobin() throws InterruptedException {
+		this.executor = new PriorityExecutor(1, 60000, Executors.defaultThreadFactory());
+		this.executor.getFairShareQueue().setWeight("a", 2);
+		this.queue(null, "blocker", true);
+		for(int i = 1; i <= 4; i++){
+			this.queue("a", "a" + i, false);
+		}
+		this.queue("b", "b1", false);
+		this.queue("b", "b2", false);
+		Assert.assertEquals(4, this.executor.getFairShareQueue().getNbQueued("a"));
+		this.drain();
+
+		Assert.assertThat(this.order, contains("blocker", "a1", "a2", "b1", "a3", "a4", "b2"));
+		Assert.assertEquals(4, this.executor.getFairShareQueue().getNbStarted("a"));
+	}
+
+
+	/**
+	 * Test that a tenant does not run more commands than its cap, and lets the other tenants use the free workers.
+	 * @throws InterruptedException if the test is interrupted.
+	 */
+	@Test
+	public void testCap() throws InterruptedException {
+		this.executor = new PriorityExecutor(2, 60000, Executors.defaultThreadFactory());
+		this.executor.prestartAllCoreThreads();
+		this.executor.getFairShareQueue().setCap("a", 1);
+		this.queue("a", "a1", true);
+		this.queue("a", "a2", false);
+		this.queue("b", "b1", false);
+		for(int i = 0; i < 100 && this.order.isEmpty(); i++){
+			Thread.sleep(10);
+		}
+		Assert.assertThat(this.order, contains("b1"));
+		Assert.assertEquals(1, this.executor.getFairShareQueue().getNbRunning("a"));
+		Assert.assertEquals(1, this.executor.getFairShareQueue().getNbQueued("a"));
+		this.drain();
+
+		Assert.assertThat(this.order, contains("b1", "a1", "a2"));
+		Assert.assertEquals(0, this.executor.getFairShareQueue().getNbRunning("a"));
+	}
+
+
+	/**
+	 * Test that the idle tenants are forgotten, unless they have a specific weight or cap.
+	 * @throws InterruptedException if the test is interrupted.
+	 */
+	@Test
+	public void testEvictIdleTenants() throws InterruptedException {
+		this.executor = new PriorityExecutor(1, 60000, Executors.defaultThreadFactory());
+		this.executor.getFairShareQueue().setWeight("a", 2);
+		this.queue(null, "blocker", true);
+		this.queue("a", "a1", false);
+		for(int i = 0; i < 100; i++){
+			this.queue("client" + i, "client" + i, false);
+		}
+		Assert.assertEquals(101, this.executor.getFairShareQueue().getTenants().size());
+		this.drain();
+
+		Assert.assertEquals(102, this.order.size());
+		Assert.assertThat(this.executor.getFairShareQueue().getTenants(), contains("a"));
+	}
+}
@@ -1,11 +1,14 @@
 package scheduler.engine;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.samePropertyValuesAs;
 import static scheduler.rest.test.ScriptSnapshotMatcher.equivalentSnapshot;
 import groovy.lang.MissingMethodException;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -109,6 +112,103 @@ public class GroovyScriptTaskTest {
 	}
 	
 	
+	/**
+	 * Test that a script submitted twice is compiled once, and that each execution has its own bindings.
+	 * @throws ScriptException 
+	 */
+	@Test
+	public void testCallCompiledOnce() throws ScriptException {
+		String script = "counter = binding.hasVariable('counter') ? counter + 1 : 1\nreturn counter";
+		CompiledScriptCache cache = GroovyScriptTask.getCompiledScriptCache();
+		
+		Object result1 = new GroovyScriptTask(script, 1L).call();
+		long hits = cache.getHits();
+		Object result2 = new GroovyScriptTask(script, 2L).call();
+		
+		Assert.assertEquals(1, result1);
+		Assert.assertEquals(1, result2);
+		Assert.assertEquals(hits + 1, cache.getHits());
+	}
+	
+	
+	/**
+	 * Test that a method defined by the script of a task can not be called by the script of another task,
+	 * so that it can not read the variables of the first task.
+	 * @throws ScriptException 
+	 */
+	@Test
+	public void testCallMethodsNotShared() throws ScriptException {
+		GroovyScriptTask owner = new GroovyScriptTask("def leak(){ secret }\nreturn leak()", 1L);
+		owner.setBindings(Collections.<String, Object>singletonMap("secret", "tenant-A-secret"));
+		Assert.assertEquals("tenant-A-secret", owner.call());
+		
+		try{
+			new GroovyScriptTask("return leak()", 2L).call();
+			Assert.fail("should throw a MissingMethodException");
+		}
+		catch(ScriptException ex){
+			Assert.assertThat(ex.getCause().getCause(), instanceOf(MissingMethodException.class));
+		}
+	}
+	
+	
+	/**
+	 * Test that a script that runs longer than the max duration is stopped with a TimeoutException.
+	 */
+	@Test
+	public void testCallMaxDuration() {
+		GroovyScriptTask.setMaxScriptDuration(200);
+		try{
+			new GroovyScriptTask("while(true){}", 1L).call();
+			Assert.fail("the script should have been stopped");
+		}
+		catch(ScriptException ex){
+			Assert.assertThat(ex.getCause().getCause(), instanceOf(TimeoutException.class));
+		}
+		finally{
+			GroovyScriptTask.setMaxScriptDuration(0);
+		}
+	}
+	
+	/**
+	 * Test that a script compiled statically runs without fallback.
+	 * @throws ScriptException 
+	 */
+	@Test
+	public void testCallStatic() throws ScriptException {
+		GroovyScriptTask.setDefaultCompilationMode(CompilationMode.STATIC);
+		try{
+			GroovyScriptTask task = new GroovyScriptTask("int sum = 0\nfor(int i = 0; i < 100; i++){ sum += i }\nreturn sum", 1L);
+			Assert.assertEquals(CompilationMode.STATIC, task.getCompilationMode());
+			Assert.assertEquals(4950, task.call());
+			Assert.assertNull(task.getCompilationFallback());
+		}
+		finally{
+			GroovyScriptTask.setDefaultCompilationMode(CompilationMode.DYNAMIC);
+		}
+	}
+	
+	/**
+	 * Test that a script that can not be compiled statically is compiled dynamically, and that the task tells why.
+	 * @throws ScriptException 
+	 */
+	@Test
+	public void testCallStaticFallback() throws ScriptException {
+		GroovyScriptTask.setDefaultCompilationMode(CompilationMode.STATIC);
+		try{
+			long fallbacks = GroovyScriptTask.getNbFallbacks();
+			GroovyScriptTask task = new GroovyScriptTask("return undeclaredVariable + 1", 1L);
+			task.setBindings(Collections.<String, Object>singletonMap("undeclaredVariable", 1));
+			Assert.assertEquals(2, task.call());
+			Assert.assertThat(task.getCompilationFallback(), containsString("undeclaredVariable"));
+			Assert.assertEquals(fallbacks + 1, GroovyScriptTask.getNbFallbacks());
+		}
+		finally{
+			GroovyScriptTask.setDefaultCompilationMode(CompilationMode.DYNAMIC);
+		}
+	}
+	
+	
 	/**
 	 * Test groovy script launching and get the result with a snapshot.
 	 * @throws IOException if an error occurs during the script reading.
@@ -252,4 +352,22 @@ public class GroovyScriptTaskTest {
 		
 		task.join();
 	}
+	
+	
+	/**
+	 * Test that a task has a Future before it is started, and that a task cancelled before it is started is not run.
+	 */
+	@Test
+	public void testFutureCancelBeforeStart() {
+		GroovyScriptTask task = new GroovyScriptTask("throw new IllegalStateException('should not run')", 1L);
+		Assert.assertThat(task.getSnapshot(), samePropertyValuesAs(new ScriptSnapshot(TaskStatus.RUNNING, null)));
+		
+		task.getFuture().cancel(true);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		task.start(executor);
+		task.join();
+		
+		Assert.assertThat(task.getSnapshot(), samePropertyValuesAs(new ScriptSnapshot(TaskStatus.CANCELLED, null)));
+		Assert.assertEquals(0, task.getStoredScript().getNbRuns());
+	}
 }
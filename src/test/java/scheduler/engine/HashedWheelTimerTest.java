@@ -0,0 +1,108 @@
+package scheduler.engine;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sandrine Ben Mabrouk.
+ *
+ */
+public class HashedWheelTimerTest {
+
+	protected HashedWheelTimer timer;
+
+	@Before
+	public void setUp() {
+		this.timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 8);
+	}
+
+	@After
+	public void tearDown() {
+		this.timer.stop();
+	}
+
+
+	/**
+	 * Test that a timeout expires after its delay, even when its deadline is several turns of the wheel away.
+	 * @throws InterruptedException if the test is interrupted.
+	 */
+	@Test
+	public void testExpire() throws InterruptedException {
+		final CountDownLatch expired = new CountDownLatch(1);
+		long start = System.nanoTime();
+		HashedWheelTimer.Timeout timeout = this.timer.newTimeout(new Runnable() {
+			@Override
+			public void run() {
+				expired.countDown();
+			}
+		}, 250, TimeUnit.MILLISECONDS);
+
+		Assert.assertEquals(1, this.timer.getNbPending());
+		Assert.assertTrue(expired.await(5, TimeUnit.SECONDS));
+		Assert.assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), greaterThanOrEqualTo(250L));
+		Assert.assertTrue(timeout.isExpired());
+		Assert.assertFalse(timeout.cancel());
+		Assert.assertEquals(0, this.timer.getNbPending());
+		Assert.assertEquals(1, this.timer.getNbExpired());
+	}
+
+
+	/**
+	 * Test that many timeouts can be added and cancelled, and that only the timeouts not cancelled expire.
+	 * @throws InterruptedException if the test is interrupted.
+	 */
+	@Test
+	public void testCancelMany() throws InterruptedException {
+		final AtomicInteger nbExpired = new AtomicInteger();
+		final CountDownLatch kept = new CountDownLatch(10);
+		Runnable action = new Runnable() {
+			@Override
+			public void run() {
+				nbExpired.incrementAndGet();
+				kept.countDown();
+			}
+		};
+		// the timeouts to be cancelled expire in minutes, so that none of them can expire before it is cancelled
+		List<HashedWheelTimer.Timeout> timeouts = new ArrayList<HashedWheelTimer.Timeout>();
+		for(int i = 0; i < 199990; i++){
+			timeouts.add(this.timer.newTimeout(action, 5 * 60000 + i % 1000, TimeUnit.MILLISECONDS));
+		}
+		for(int i = 0; i < 10; i++){
+			this.timer.newTimeout(action, 1500, TimeUnit.MILLISECONDS);
+		}
+		Assert.assertEquals(200000, this.timer.getNbPending());
+		for(HashedWheelTimer.Timeout timeout: timeouts){
+			Assert.assertTrue(timeout.cancel());
+		}
+		Assert.assertEquals(10, this.timer.getNbPending());
+
+		Assert.assertTrue(kept.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(10, nbExpired.get());
+		Assert.assertEquals(0, this.timer.getNbPending());
+	}
+
+
+	/**
+	 * Test that no timeout can be added to a stopped timer.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testStopped() {
+		this.timer.stop();
+		this.timer.newTimeout(new Runnable() {
+			@Override
+			public void run() {
+			}
+		}, 10, TimeUnit.MILLISECONDS);
+	}
+}
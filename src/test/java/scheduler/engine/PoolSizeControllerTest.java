@@ -0,0 +1,117 @@
+package scheduler.engine;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sandrine Ben Mabrouk.
+ *
+ */
+public class PoolSizeControllerTest {
+
+	protected PriorityExecutor executor = null;
+
+	protected PoolSizeController controller = null;
+
+	protected volatile double measuredCpuLoad = 0;
+
+	protected final CountDownLatch blocker = new CountDownLatch(1);
+
+	@Before
+	public void setUp() {
+		this.executor = new PriorityExecutor(2, PriorityExecutor.DEFAULT_AGING, Executors.defaultThreadFactory());
+		this.controller = new PoolSizeController(this.executor, 1, 8) {
+			@Override
+			protected double measureCpuLoad() {
+				return measuredCpuLoad;
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		this.blocker.countDown();
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * Queues commands that wait for the blocker.
+	 * @param nbCommands the number of commands.
+	 */
+	protected void block(int nbCommands){
+		for(int i = 0; i < nbCommands; i++){
+			this.executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						blocker.await();
+					} catch (InterruptedException e) {
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Tests that the pool grows by one worker while tasks are waiting, up to its number max of workers.
+	 */
+	@Test
+	public void testAdditiveIncrease() {
+		this.block(20);
+		for(int size = 3; size <= 8; size++){
+			this.controller.run();
+			Assert.assertEquals(size, this.executor.getMaximumPoolSize());
+		}
+		this.controller.run();
+		Assert.assertEquals(8, this.executor.getMaximumPoolSize());
+		Assert.assertEquals(6, this.controller.getNbIncreases());
+	}
+
+	/**
+	 * Tests that the pool shrinks by a factor when the CPU is saturated, and by one worker when workers are idle.
+	 */
+	@Test
+	public void testDecrease() {
+		this.executor.resize(8);
+		this.measuredCpuLoad = 1.5;
+		this.controller.run();
+		Assert.assertEquals(6, this.executor.getMaximumPoolSize());
+		
+		this.measuredCpuLoad = 0;
+		this.controller.run();
+		Assert.assertEquals(5, this.executor.getMaximumPoolSize());
+		Assert.assertEquals(2, this.controller.getNbDecreases());
+	}
+
+	/**
+	 * Tests that new bounds are applied at once.
+	 */
+	@Test
+	public void testSetBounds() {
+		this.controller.setBounds(4, 6);
+		Assert.assertEquals(4, this.executor.getMaximumPoolSize());
+		Assert.assertEquals(4, this.executor.getPoolSize());
+		
+		try{
+			this.controller.setBounds(3, 2);
+			Assert.fail("invalid bounds accepted");
+		}
+		catch(IllegalArgumentException ex){
+		}
+	}
+
+	/**
+	 * Tests that the measured CPU utilization is the CPU usage given by the platform, between 0 and 1.
+	 */
+	@Test
+	public void testMeasureCpuLoad() {
+		double load = new PoolSizeController(this.executor, 1, 8).measureCpuLoad();
+		Assert.assertTrue(load >= 0 && load <= 1);
+	}
+}
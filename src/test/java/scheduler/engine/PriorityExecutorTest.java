@@ -0,0 +1,122 @@
+package scheduler.engine;
+
+import static org.hamcrest.Matchers.contains;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sandrine Ben Mabrouk.
+ *
+ */
+public class PriorityExecutorTest {
+
+	protected PriorityExecutor executor = null;
+
+	protected final List<TaskPriority> order = new CopyOnWriteArrayList<TaskPriority>();
+
+	protected final CountDownLatch blocker = new CountDownLatch(1);
+
+	@After
+	public void tearDown() {
+		this.executor.shutdownNow();
+	}
+
+
+	/**
+	 * Occupies the single worker of the executor until the blocker is released.
+	 */
+	protected void blockWorker(){
+		this.executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					blocker.await();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+	}
+
+	/**
+	 * Queues a command that records its priority when it is run.
+	 * @param priority the priority of the command.
+	 */
+	protected void queue(final TaskPriority priority){
+		this.executor.execute(new PrioritizedTask() {
+			@Override
+			public void run() {
+				order.add(priority);
+			}
+
+			@Override
+			public TaskPriority getPriority() {
+				return priority;
+			}
+
+			@Override
+			public String getTenant() {
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Releases the worker and waits for the queued commands.
+	 * @throws InterruptedException if the test is interrupted.
+	 */
+	protected void drain() throws InterruptedException{
+		this.blocker.countDown();
+		this.executor.shutdown();
+		Assert.assertTrue(this.executor.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+
+	/**
+	 * Test that the waiting commands are run by priority.
+	 * @throws InterruptedException if the test is interrupted.
+	 */
+	@Test
+	public void testRunByPriority() throws InterruptedException {
+		this.executor = new PriorityExecutor(1, 60000, Executors.defaultThreadFactory());
+		this.blockWorker();
+		this.queue(TaskPriority.LOW);
+		this.queue(TaskPriority.NORMAL);
+		this.queue(TaskPriority.HIGH);
+		this.queue(TaskPriority.NORMAL);
+		Assert.assertEquals(2, this.executor.getNbQueued(TaskPriority.NORMAL));
+		this.drain();
+
+		Assert.assertThat(this.order, contains(TaskPriority.HIGH, TaskPriority.NORMAL, TaskPriority.NORMAL, TaskPriority.LOW));
+		Assert.assertEquals(1, this.executor.getQueueWait(TaskPriority.HIGH).getCount());
+		Assert.assertTrue(this.executor.getQueueWait(TaskPriority.LOW).getMaxMillis() 
+							>= this.executor.getQueueWait(TaskPriority.HIGH).getMaxMillis());
+	}
+
+
+	/**
+	 * Test that a low priority command that waited long enough runs before a high priority command.
+	 * @throws InterruptedException if the test is interrupted.
+	 */
+	@Test
+	public void testAging() throws InterruptedException {
+		this.executor = new PriorityExecutor(1, 10, Executors.defaultThreadFactory());
+		this.blockWorker();
+		this.queue(TaskPriority.LOW);
+		Thread.sleep(100);
+		this.queue(TaskPriority.HIGH);
+		this.drain();
+
+		Assert.assertThat(this.order, contains(TaskPriority.LOW, TaskPriority.HIGH));
+		Assert.assertEquals(Collections.frequency(this.order, TaskPriority.LOW), this.executor.getQueueWait(TaskPriority.LOW).getCount());
+	}
+}
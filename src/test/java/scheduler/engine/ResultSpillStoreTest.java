@@ -0,0 +1,76 @@
+package scheduler.engine;
+
+import static org.hamcrest.Matchers.samePropertyValuesAs;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Sandrine Ben Mabrouk.
+ *
+ */
+public class ResultSpillStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	protected ResultSpillStore store;
+
+	@Before
+	public void setUp() throws IOException {
+		this.store = new ResultSpillStore(this.folder.getRoot(), 1024, new SerializingSnapshotCodec());
+	}
+
+	@After
+	public void tearDown() {
+		this.store.close();
+	}
+
+
+	/**
+	 * Test that a spilled snapshot is read back.
+	 * @throws IOException if the snapshot can not be spilled.
+	 */
+	@Test
+	public void testSpillAndLoad() throws IOException {
+		ScriptSnapshot snapshot = new ScriptSnapshot(TaskStatus.SUCCESSFULLY_DONE, Arrays.asList(1, 2, 3));
+		SpilledSnapshot spilled = this.store.spill(snapshot);
+
+		Assert.assertThat(spilled.load(), samePropertyValuesAs(snapshot));
+		Assert.assertEquals(1, this.store.getNbSpilled());
+		Assert.assertEquals(spilled.getLength(), this.store.getLiveBytes());
+	}
+
+
+	/**
+	 * Test that a full segment is deleted once all its snapshots are released.
+	 * @throws IOException if the snapshot can not be spilled.
+	 */
+	@Test
+	public void testReleaseSegment() throws IOException {
+		ScriptSnapshot snapshot = new ScriptSnapshot(TaskStatus.SUCCESSFULLY_DONE, new String(new char[400]).replace((char) 0, 'a'));
+		SpilledSnapshot first = this.store.spill(snapshot);
+		SpilledSnapshot second = this.store.spill(snapshot);
+		SpilledSnapshot third = this.store.spill(snapshot);
+
+		Assert.assertNotSame(first.getSegment(), third.getSegment());
+		Assert.assertEquals(2, this.store.getNbSegments());
+
+		first.release();
+		Assert.assertFalse(first.getSegment().isDeleted());
+		second.release();
+		second.release();
+		Assert.assertTrue(first.getSegment().isDeleted());
+		Assert.assertFalse(first.getSegment().getFile().exists());
+		Assert.assertEquals(1, this.store.getNbSegments());
+		Assert.assertThat(third.load(), samePropertyValuesAs(snapshot));
+	}
+}
@@ -2,17 +2,33 @@ package scheduler.engine;
 
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.emptyIterable;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.Matchers.samePropertyValuesAs;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import scheduler.rest.test.TestUtils;
 
@@ -25,6 +41,9 @@ public class ScriptSchedulerTest {
 	
 	protected ScriptScheduler scheduler = null;
 	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
 	@BeforeClass
 	public static void setUpClass() {
 	  	ScriptScheduler.getInstance().setMaxNbThread(5);
@@ -87,6 +106,26 @@ public class ScriptSchedulerTest {
 	}
 
 	
+	/**
+	 * Test that the tasks evaluate the same compiled script with empty bindings for each task.
+	 */
+	@Test
+	public void testBindingsNotShared() {
+		String script = "counter = binding.hasVariable('counter') ? counter + 1 : 1\n"
+						+ "return counter";
+		
+		ArrayList<AbstractScriptTask> tasks = new ArrayList<AbstractScriptTask>();
+		for(int i = 0; i < 20; i++){
+			tasks.add(scheduler.submitScript(script));
+		}
+		
+		for(AbstractScriptTask current: tasks){
+			current.join();
+			Assert.assertEquals(1, current.getSnapshot().getResult());
+		}
+	}
+	
+	
 	/**
 	 * Test getting the list of running tasks.
 	 * @throws IOException if an error occurs during the script reading.
@@ -148,6 +187,32 @@ public class ScriptSchedulerTest {
 	}
 	
 	
+	/**
+	 * Test counting the running and finished tasks, before and after removing them.
+	 * @throws IOException if an error occurs during the script reading.
+	 * @throws UnknownTaskException if a task to remove does not exists.
+	 */
+	@Test
+	public void testCountTasks() throws IOException, UnknownTaskException {
+		String script1 = TestUtils.readScriptFile("LongScript.groovy");
+		String script2 = TestUtils.readScriptFile("DummyScript.groovy");
+		
+		AbstractScriptTask task1 = scheduler.submitScript(script1);
+		AbstractScriptTask task2 = scheduler.submitScript(script2);
+		task2.join();
+		
+		Assert.assertEquals(1, scheduler.getNbRunningTasks());
+		Assert.assertEquals(1, scheduler.getNbFinishedTasks());
+		
+		scheduler.removeTask(task1.getId());
+		scheduler.removeTask(task2.getId());
+		
+		Assert.assertEquals(0, scheduler.getNbRunningTasks());
+		Assert.assertEquals(0, scheduler.getNbFinishedTasks());
+		Assert.assertThat(scheduler.getFinishedTasks(), emptyIterable());
+	}
+	
+	
 	/**
 	 * Test getting the list of finished tasks when the scheduler has no tasks. 
 	 * @throws IOException if an error occurs during the script reading.
@@ -160,6 +225,66 @@ public class ScriptSchedulerTest {
 	}
 
 	
+	/**
+	 * Test that the oldest finished tasks are evicted when there are too many finished tasks.
+	 * @throws UnknownTaskException if a kept task does not exists.
+	 */
+	@Test
+	public void testEvictMaxFinishedTasks() throws UnknownTaskException {
+		ScriptScheduler limited = new ScriptScheduler();
+		limited.setMaxNbThread(1);
+		limited.setMaxFinishedTasks(2);
+		limited.start();
+		try{
+			ArrayList<AbstractScriptTask> tasks = new ArrayList<AbstractScriptTask>();
+			for(int i = 0; i < 4; i++){
+				AbstractScriptTask current = limited.submitScript("return " + i);
+				current.join();
+				tasks.add(current);
+			}
+			limited.evictFinishedTasks();
+			
+			Assert.assertEquals(2, limited.getNbFinishedTasks());
+			Assert.assertEquals(2, limited.getNbEvictions());
+			Assert.assertThat(limited.getFinishedTasks(), containsInAnyOrder((Task) tasks.get(2), tasks.get(3)));
+			limited.getTask(tasks.get(3).getId());
+		}
+		finally{
+			limited.shutdown();
+		}
+	}
+	
+	
+	/**
+	 * Test that the finished tasks are evicted once their time-to-live is over.
+	 * @throws InterruptedException if the test is interrupted.
+	 */
+	@Test
+	public void testEvictExpiredTasks() throws InterruptedException {
+		ScriptScheduler limited = new ScriptScheduler();
+		limited.setMaxNbThread(1);
+		limited.setFinishedTaskTtl(50);
+		limited.setEvictionPeriod(10);
+		limited.start();
+		try{
+			AbstractScriptTask task = limited.submitScript("return 1");
+			task.join();
+			Thread.sleep(500);
+			
+			Assert.assertThat(limited.getFinishedTasks(), emptyIterable());
+			Assert.assertEquals(1, limited.getNbEvictions());
+			try{
+				limited.getTask(task.getId());
+				Assert.fail("task " + task.getId() + " should be evicted");
+			}
+			catch(UnknownTaskException ex){}
+		}
+		finally{
+			limited.shutdown();
+		}
+	}
+	
+	
 	/**
 	 * Test removing a finished task.
 	 * @throws IOException if an error occurs during the script reading.
@@ -232,9 +357,50 @@ public class ScriptSchedulerTest {
 	
 		AbstractScriptTask task = scheduler.submitScript(script);
 		
-		AbstractScriptTask result = scheduler.getTask(task.getId());
+		Task result = scheduler.getTask(task.getId());
 		
-		Assert.assertThat(result, sameInstance(task));
+		Assert.assertThat(result, equalTo((Task) task));
+	}
+	
+	
+	/**
+	 * Test that a finished task is replaced by its compact record.
+	 * @throws IOException if an error occurs during the script reading.
+	 * @throws UnknownTaskException if the task to be retrieved does not exists.
+	 */
+	@Test
+	public void testGetCompletedTask() throws IOException, UnknownTaskException {
+		String script = TestUtils.readScriptFile("DummyScript.groovy");
+		
+		AbstractScriptTask task = scheduler.submitScript(script);
+		task.join();
+		
+		Task result = scheduler.getTask(task.getId());
+		
+		Assert.assertThat(result, instanceOf(CompletedTask.class));
+		Assert.assertThat(result.getScriptContent(), nullValue());
+		Assert.assertEquals(ScriptDigest.digest(script), ((CompletedTask) result).getScriptDigest());
+		Assert.assertThat(scheduler.getSnapshot(task.getId()), sameInstance(scheduler.getSnapshot(task.getId())));
+		Assert.assertThat(scheduler.getSnapshot(task.getId()), samePropertyValuesAs(task.getSnapshot()));
+	}
+	
+	/**
+	 * Test that the rendered snapshot of a finished task is kept once, and counted with the size of the finished tasks.
+	 * @throws UnknownTaskException if the task to be retrieved does not exists.
+	 */
+	@Test
+	public void testKeepRenderedSnapshot() throws UnknownTaskException {
+		AbstractScriptTask task = scheduler.submitScript("return 1");
+		task.join();
+		CompletedTask completed = (CompletedTask) scheduler.getTask(task.getId());
+		long before = (Long) scheduler.getStatistics().get("tasks.finished.estimatedBytes");
+		
+		Assert.assertEquals(100, scheduler.keepRenderedSnapshot(completed, ByteBuffer.wrap(new byte[100])).remaining());
+		Assert.assertEquals(100, scheduler.keepRenderedSnapshot(completed, ByteBuffer.wrap(new byte[10])).remaining());
+		Assert.assertEquals(before + 100, scheduler.getStatistics().get("tasks.finished.estimatedBytes"));
+		
+		scheduler.removeTask(task.getId());
+		Assert.assertEquals(before + 100 - completed.getEstimatedSize(), scheduler.getStatistics().get("tasks.finished.estimatedBytes"));
 	}
 	
 	/**
@@ -255,4 +421,436 @@ public class ScriptSchedulerTest {
 		catch(UnknownTaskException ex){}
 	}
 
+	
+	/**
+	 * Test that the finished tasks are restored from the journal, and that the unfinished tasks are started again.
+	 * @throws UnknownTaskException if a task is not restored.
+	 */
+	@Test
+	public void testRecoverFromJournal() throws UnknownTaskException {
+		ScriptScheduler journaled = new ScriptScheduler();
+		journaled.setMaxNbThread(1);
+		journaled.setJournalDirectory(this.folder.getRoot());
+		journaled.start();
+		AbstractScriptTask done = journaled.submitScript("return 42");
+		done.join();
+		AbstractScriptTask removed = journaled.submitScript("return 43");
+		removed.join();
+		journaled.removeTask(removed.getId());
+		AbstractScriptTask pending = journaled.submitScript("Thread.sleep(1000); return 44");
+		journaled.shutdown();
+		
+		ScriptScheduler restarted = new ScriptScheduler();
+		restarted.setMaxNbThread(1);
+		restarted.setJournalDirectory(this.folder.getRoot());
+		restarted.start();
+		try{
+			Assert.assertThat(restarted.getSnapshot(done.getId()), 
+								samePropertyValuesAs(new ScriptSnapshot(TaskStatus.SUCCESSFULLY_DONE, 42)));
+			try{
+				restarted.getTask(removed.getId());
+				Assert.fail("task " + removed.getId() + " should not be restored");
+			}
+			catch(UnknownTaskException ex){}
+			
+			AbstractScriptTask restartedTask = (AbstractScriptTask) restarted.getTask(pending.getId());
+			restartedTask.join();
+			Assert.assertThat(restarted.getSnapshot(pending.getId()), 
+								samePropertyValuesAs(new ScriptSnapshot(TaskStatus.SUCCESSFULLY_DONE, 44)));
+			Assert.assertTrue(restarted.submitScript("return 45").getId() > pending.getId());
+		}
+		finally{
+			restarted.shutdown();
+		}
+	}
+
+	
+	/**
+	 * Test that the large and the oldest results are spilled out of the heap, and read back on demand.
+	 * @throws UnknownTaskException if a task is not found.
+	 */
+	@Test
+	public void testSpillResults() throws UnknownTaskException {
+		ScriptScheduler spilling = new ScriptScheduler();
+		spilling.setMaxNbThread(1);
+		spilling.setResultSpillDirectory(this.folder.getRoot());
+		spilling.setResultSpillThreshold(10000);
+		spilling.setMaxHotResultBytes(2000);
+		spilling.start();
+		try{
+			AbstractScriptTask large = spilling.submitScript("return (1..1000).collect { 'item' + it }");
+			large.join();
+			Assert.assertTrue(((CompletedTask) spilling.getTask(large.getId())).isSpilled());
+			
+			ArrayList<AbstractScriptTask> small = new ArrayList<AbstractScriptTask>();
+			for(int i = 0; i < 10; i++){
+				AbstractScriptTask current = spilling.submitScript("return 'result' + " + i + " * 100");
+				current.join();
+				small.add(current);
+			}
+			spilling.evictFinishedTasks();
+			
+			Assert.assertTrue(((CompletedTask) spilling.getTask(small.get(0).getId())).isSpilled());
+			Assert.assertFalse(((CompletedTask) spilling.getTask(small.get(9).getId())).isSpilled());
+			Assert.assertThat(spilling.getSnapshot(small.get(0).getId()), samePropertyValuesAs(small.get(0).getSnapshot()));
+			Assert.assertThat(spilling.getSnapshot(large.getId()), samePropertyValuesAs(large.getSnapshot()));
+			
+			long live = spilling.resultStore.getLiveBytes();
+			spilling.removeTask(large.getId());
+			Assert.assertTrue(spilling.resultStore.getLiveBytes() < live);
+			Assert.assertEquals(10, spilling.getNbFinishedTasks());
+		}
+		finally{
+			spilling.shutdown();
+		}
+	}
+
+	
+	/**
+	 * Test that a script executed in fork/join mode forks closures and child scripts, and joins them.
+	 */
+	@Test
+	public void testForkJoinMode() {
+		ScriptScheduler forkJoin = new ScriptScheduler();
+		forkJoin.setMaxNbThread(4);
+		forkJoin.setExecutionMode(ExecutionMode.FORK_JOIN);
+		forkJoin.start();
+		try{
+			String script = "def left = forkJoin.fork { (1..1000).sum() }\n"
+							+ "def right = forkJoin.fork('return (1001..2000).sum()')\n"
+							+ "def parts = forkJoin.invokeAll((0..<10).collect { i -> { -> i * 2 } })\n"
+							+ "return [left.join() + right.join(), parts.sum(), Thread.currentThread().name.startsWith('script-forkjoin-')]";
+			AbstractScriptTask task = forkJoin.submitScript(script);
+			task.join();
+			
+			Assert.assertThat(task.getSnapshot(), samePropertyValuesAs(
+					new ScriptSnapshot(TaskStatus.SUCCESSFULLY_DONE, Arrays.asList(2001000, 90, true))));
+			Assert.assertEquals(4, forkJoin.getStatistics().get("forkJoin.parallelism"));
+		}
+		finally{
+			forkJoin.shutdown();
+		}
+	}
+
+	/**
+	 * Test that the subtasks forked by a script in fork/join mode are cancelled when the script is cancelled while it forks,
+	 * and that the script can not fork anymore.
+	 * @throws InterruptedException if the test is interrupted.
+	 */
+	@Test
+	public void testForkJoinCancelParent() throws InterruptedException {
+		ScriptScheduler forkJoin = new ScriptScheduler();
+		forkJoin.setMaxNbThread(2);
+		forkJoin.setExecutionMode(ExecutionMode.FORK_JOIN);
+		forkJoin.start();
+		try{
+			String script = "return (0..<20).collect { forkJoin.fork { Thread.sleep(200); 1 } }.sum { it.join() }";
+			GroovyScriptTask task = (GroovyScriptTask) forkJoin.submitScript(script);
+			long end = System.currentTimeMillis() + 5000;
+			while((task.forkJoin == null || task.forkJoin.getNbForked() < 20) && System.currentTimeMillis() < end){
+				Thread.sleep(10);
+			}
+			ScriptForkJoin parent = task.forkJoin;
+			List<ScriptForkJoin.Subtask> subtasks = new ArrayList<ScriptForkJoin.Subtask>(parent.forked);
+			Assert.assertEquals(20, subtasks.size());
+
+			Assert.assertTrue(task.getFuture().cancel(true));
+			task.join();
+
+			Assert.assertEquals(TaskStatus.CANCELLED, task.getSnapshot().getStatus());
+			Assert.assertEquals(0, parent.getNbForked());
+			int nbCancelled = 0;
+			for(ScriptForkJoin.Subtask subtask: subtasks){
+				if(subtask.isCancelled()){
+					nbCancelled++;
+				}
+			}
+			Assert.assertThat(nbCancelled, greaterThanOrEqualTo(16));
+			try{
+				parent.fork("return 1");
+				Assert.fail("a cancelled task forked a subtask");
+			}
+			catch(CancellationException ex){
+				// expected
+			}
+		}
+		finally{
+			forkJoin.shutdown();
+		}
+	}
+
+	/**
+	 * Tests that the scripts waiting on I/O in virtual threads mode are not limited by the number max of threads
+	 * nor by the CPU permits, and that a script holds a permit only in its CPU-bound sections.
+	 */
+	@Test
+	public void testVirtualThreadsMode() {
+		ScriptScheduler virtual = new ScriptScheduler();
+		virtual.setMaxNbThread(1);
+		virtual.setCpuPermits(1);
+		virtual.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+		virtual.start();
+		try{
+			String script = "Thread.sleep(500)\n"
+							+ "return cpu.run { (1..100).sum() }";
+			List<AbstractScriptTask> tasks = new ArrayList<AbstractScriptTask>();
+			long start = System.currentTimeMillis();
+			for(int i = 0; i < 8; i++){
+				tasks.add(virtual.submitScript(script));
+			}
+			for(AbstractScriptTask task: tasks){
+				task.join();
+				Assert.assertThat(task.getSnapshot(), samePropertyValuesAs(new ScriptSnapshot(TaskStatus.SUCCESSFULLY_DONE, 5050)));
+			}
+			Assert.assertTrue(System.currentTimeMillis() - start < 8 * 500);
+			// a script holds the permit only in its CPU-bound sections
+			AbstractScriptTask holding = virtual.submitScript("return [cpu.availablePermits, cpu.run { cpu.availablePermits }]");
+			holding.join();
+			Assert.assertThat(holding.getSnapshot(), samePropertyValuesAs(new ScriptSnapshot(TaskStatus.SUCCESSFULLY_DONE, Arrays.asList(1, 0))));
+			Map<String, Object> statistics = virtual.getStatistics();
+			Assert.assertEquals(1, statistics.get("cpu.permits"));
+			Assert.assertEquals(1, statistics.get("cpu.available"));
+		}
+		finally{
+			virtual.shutdown();
+		}
+	}
+
+	/**
+	 * Tests that a completion callback is called once the task is finished, or at once if the task is already finished,
+	 * and is not called once it is cancelled.
+	 * @throws UnknownTaskException if the task is not found.
+	 * @throws InterruptedException if the test is interrupted.
+	 */
+	@Test
+	public void testAwaitCompletion() throws UnknownTaskException, InterruptedException {
+		final List<CompletedTask> completed = new CopyOnWriteArrayList<CompletedTask>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		CompletionCallback callback = new CompletionCallback() {
+			@Override
+			public void completed(CompletedTask task) {
+				completed.add(task);
+				latch.countDown();
+			}
+		};
+		AbstractScriptTask task = scheduler.submitScript("Thread.sleep(300); return 1");
+		scheduler.awaitCompletion(task.getId(), callback);
+		Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(1, completed.size());
+		Assert.assertEquals(1, completed.get(0).getSnapshot().getResult());
+		
+		scheduler.awaitCompletion(task.getId(), callback);
+		Assert.assertEquals(2, completed.size());
+		
+		AbstractScriptTask longTask = scheduler.submitScript("Thread.sleep(5000); return 2");
+		scheduler.awaitCompletion(longTask.getId(), callback);
+		Assert.assertTrue(scheduler.cancelAwait(longTask.getId(), callback));
+		longTask.getFuture().cancel(true);
+		longTask.join();
+		Assert.assertEquals(2, completed.size());
+	}
+	
+	
+	/**
+	 * Tests that the nodes of a graph run as soon as their parents are finished, in parallel for independent branches, 
+	 * with the results of their parents, and that the descendants of a failed node are skipped.
+	 * @throws Exception if the test is interrupted.
+	 */
+	@Test
+	public void testGraph() throws Exception {
+		TaskGraph graph = new TaskGraph();
+		graph.addNode("a", "return 2");
+		graph.addNode("b", "Thread.sleep(500); return a * 10", "a");
+		graph.addNode("c", "Thread.sleep(500); return a + offset", Collections.<String, Object>singletonMap("offset", 1), "a");
+		graph.addNode("d", "return b + c", "b", "c");
+		graph.addNode("e", "throw new IllegalStateException('failed')");
+		graph.addNode("f", "return e", "e");
+		graph.addNode("g", "return 'never'", "f", "a");
+		long start = System.currentTimeMillis();
+		scheduler.submitGraph(graph);
+		Assert.assertTrue(graph.join(10, TimeUnit.SECONDS));
+		// b and c run in parallel
+		Assert.assertThat(System.currentTimeMillis() - start, lessThanOrEqualTo(950L));
+		
+		Assert.assertEquals(GraphNodeStatus.DONE, graph.getNode("d").getStatus());
+		Assert.assertEquals(23, graph.getNode("d").getSnapshot().getResult());
+		Assert.assertEquals(TaskStatus.SUCCESSFULLY_DONE, scheduler.getSnapshot(graph.getNode("d").getTaskId()).getStatus());
+		// the results handed to the children are only kept by the tasks
+		Assert.assertNull(graph.getNode("a").getSnapshot());
+		Assert.assertEquals(2, scheduler.getSnapshot(graph.getNode("a").getTaskId()).getResult());
+		Assert.assertTrue(graph.getNode("d").parentResults.isEmpty());
+		Assert.assertEquals(GraphNodeStatus.FAILED, graph.getNode("e").getStatus());
+		Assert.assertEquals(GraphNodeStatus.SKIPPED, graph.getNode("f").getStatus());
+		Assert.assertEquals(GraphNodeStatus.SKIPPED, graph.getNode("g").getStatus());
+		Assert.assertNull(graph.getNode("g").getTaskId());
+		Assert.assertSame(graph, scheduler.getGraph(graph.getId()));
+		
+		TaskGraph cycle = new TaskGraph();
+		cycle.addNode("x", "return 1", "z");
+		cycle.addNode("y", "return 1", "x");
+		cycle.addNode("z", "return 1", "y");
+		try{
+			scheduler.submitGraph(cycle);
+			Assert.fail("A graph with a cycle is submitted");
+		}
+		catch(IllegalArgumentException ex){
+		}
+	}
+	
+	
+	/**
+	 * Tests that cancelling a graph cancels its running nodes and skips its waiting nodes.
+	 * @throws Exception if the test is interrupted.
+	 */
+	@Test
+	public void testCancelGraph() throws Exception {
+		TaskGraph graph = new TaskGraph();
+		graph.addNode("slow", "Thread.sleep(20000); return 1");
+		graph.addNode("next", "return slow", "slow");
+		scheduler.submitGraph(graph);
+		Assert.assertTrue(scheduler.cancelGraph(graph.getId()));
+		Assert.assertTrue(graph.join(10, TimeUnit.SECONDS));
+		Assert.assertTrue(graph.isCancelled());
+		Assert.assertEquals(GraphNodeStatus.FAILED, graph.getNode("slow").getStatus());
+		Assert.assertEquals(TaskStatus.CANCELLED, graph.getNode("slow").getSnapshot().getStatus());
+		Assert.assertEquals(GraphNodeStatus.SKIPPED, graph.getNode("next").getStatus());
+		Assert.assertFalse(scheduler.cancelGraph(graph.getId()));
+	}
+	
+	
+	/**
+	 * Tests that removing the running task of a node fails the node, skips its descendants and completes the graph.
+	 * @throws Exception if the test is interrupted.
+	 */
+	@Test
+	public void testRemoveGraphNode() throws Exception {
+		TaskGraph graph = new TaskGraph();
+		graph.addNode("a", "Thread.sleep(20000); return 1");
+		graph.addNode("b", "return a", "a");
+		scheduler.submitGraph(graph);
+		Long taskId = graph.getNode("a").getTaskId();
+		Assert.assertNotNull(taskId);
+		scheduler.removeTask(taskId);
+		Assert.assertTrue(graph.join(5, TimeUnit.SECONDS));
+		Assert.assertEquals(GraphNodeStatus.FAILED, graph.getNode("a").getStatus());
+		Assert.assertEquals(TaskStatus.CANCELLED, graph.getNode("a").getSnapshot().getStatus());
+		Assert.assertEquals(GraphNodeStatus.SKIPPED, graph.getNode("b").getStatus());
+		Assert.assertTrue(scheduler.waiters.isEmpty());
+	}
+	
+	
+	/**
+	 * Tests that the callbacks waiting for a running task are notified with its current snapshot when the scheduler is shut down.
+	 * @throws Exception if the test is interrupted.
+	 */
+	@Test
+	public void testShutdownNotifiesWaiters() throws Exception {
+		AbstractScriptTask task = scheduler.submitScript("Thread.sleep(20000); return 1");
+		final List<ScriptSnapshot> notified = new CopyOnWriteArrayList<ScriptSnapshot>();
+		scheduler.awaitCompletion(task.getId(), new CompletionCallback() {
+			@Override
+			public void completed(CompletedTask completed) {
+				notified.add(completed.getSnapshot());
+			}
+		});
+		scheduler.shutdown();
+		scheduler.start();
+		Assert.assertEquals(1, notified.size());
+		Assert.assertEquals(TaskStatus.RUNNING, notified.get(0).getStatus());
+	}
+	
+	
+	/**
+	 * Tests that a one-shot schedule submits one task then ends, and that a fixed rate schedule submits tasks until it is cancelled.
+	 * @throws Exception if the test is interrupted.
+	 */
+	@Test
+	public void testSchedule() throws Exception {
+		ScriptSchedule once = scheduler.schedule("return 42", ScriptSchedule.at(System.currentTimeMillis() + 200));
+		Assert.assertSame(once, scheduler.getSchedule(once.getId()));
+		long deadline = System.currentTimeMillis() + 5000;
+		while(!once.isEnded() && System.currentTimeMillis() < deadline){
+			Thread.sleep(20);
+		}
+		Assert.assertTrue(once.isEnded());
+		Assert.assertEquals(1, once.getNbFirings());
+		Assert.assertNull(scheduler.getSchedule(once.getId()));
+		deadline = System.currentTimeMillis() + 5000;
+		while(scheduler.getSnapshot(once.getLastTaskId()).getStatus() == TaskStatus.RUNNING && System.currentTimeMillis() < deadline){
+			Thread.sleep(20);
+		}
+		Assert.assertEquals(42, scheduler.getSnapshot(once.getLastTaskId()).getResult());
+		
+		ScriptSchedule periodic = ScriptSchedule.atFixedRate(System.currentTimeMillis(), 100);
+		periodic.setPriority(TaskPriority.HIGH);
+		periodic.setTenant("team-a");
+		scheduler.schedule("Thread.sleep(1000); return 1", periodic);
+		deadline = System.currentTimeMillis() + 5000;
+		while(periodic.getNbFirings() < 3 && System.currentTimeMillis() < deadline){
+			Thread.sleep(20);
+		}
+		Assert.assertTrue(scheduler.cancelSchedule(periodic.getId()));
+		Assert.assertFalse(scheduler.cancelSchedule(periodic.getId()));
+		long nbFirings = periodic.getNbFirings();
+		Assert.assertTrue(nbFirings >= 3);
+		AbstractScriptTask task = (AbstractScriptTask) scheduler.getTask(periodic.getLastTaskId());
+		Assert.assertEquals(TaskPriority.HIGH, task.getPriority());
+		Assert.assertEquals("team-a", task.getTenant());
+		Thread.sleep(300);
+		Assert.assertEquals(nbFirings, periodic.getNbFirings());
+		Assert.assertTrue(scheduler.getSchedules().isEmpty());
+	}
+	
+	
+	/**
+	 * Tests that a task that runs longer than its timeout, or than the default timeout, is stopped and ends as timed out.
+	 * @throws Exception if the test is interrupted.
+	 */
+	@Test
+	public void testTimeout() throws Exception {
+		AbstractScriptTask sleeping = scheduler.submitScript("Thread.sleep(20000); return 1", TaskPriority.NORMAL, null, 200);
+		AbstractScriptTask looping = scheduler.submitScript("while(true){}", TaskPriority.NORMAL, null, 200);
+		AbstractScriptTask quick = scheduler.submitScript("return 1", TaskPriority.NORMAL, null, 10000);
+		sleeping.join();
+		looping.join();
+		quick.join();
+		Assert.assertEquals(TaskStatus.TIMED_OUT, sleeping.getSnapshot().getStatus());
+		Assert.assertEquals(TaskStatus.TIMED_OUT, looping.getSnapshot().getStatus());
+		Assert.assertEquals(TaskStatus.SUCCESSFULLY_DONE, quick.getSnapshot().getStatus());
+		
+		scheduler.setDefaultTimeout(200);
+		try{
+			AbstractScriptTask task = scheduler.submitScript("Thread.sleep(20000); return 1");
+			task.join();
+			Assert.assertEquals(TaskStatus.TIMED_OUT, task.getSnapshot().getStatus());
+		}
+		finally{
+			scheduler.setDefaultTimeout(0);
+		}
+		Assert.assertEquals(0L, scheduler.getDeadlineTimer().getNbPending());
+	}
+	
+	
+	/**
+	 * Tests that removing running scripts that never check their interrupt flag stops them and frees their workers.
+	 * @throws Exception if the script can not be compiled or if a task is not found.
+	 */
+	@Test
+	public void testRemoveRunawayTasks() throws Exception {
+		String handle = scheduler.registerScript("started.countDown()\nwhile(true){}");
+		CountDownLatch started = new CountDownLatch(scheduler.getMaxNbThread());
+		List<AbstractScriptTask> tasks = new ArrayList<AbstractScriptTask>();
+		for(int i = 0; i < scheduler.getMaxNbThread(); i++){
+			tasks.add(scheduler.runScript(handle, Collections.<String, Object>singletonMap("started", started), TaskPriority.NORMAL, null));
+		}
+		Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+		for(AbstractScriptTask task: tasks){
+			scheduler.removeTask(task.getId());
+		}
+		
+		AbstractScriptTask next = scheduler.submitScript("return 1");
+		Assert.assertEquals(1, next.getFuture().get(10, TimeUnit.SECONDS));
+		scheduler.unregisterScript(handle);
+	}
+
 }
@@ -0,0 +1,64 @@
+package scheduler.engine;
+
+import static org.hamcrest.Matchers.sameInstance;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sandrine Ben Mabrouk.
+ *
+ */
+public class ScriptStoreTest {
+
+	/**
+	 * Tests that identical scripts are stored once, and are retired once released by all their tasks.
+	 */
+	@Test
+	public void testDeduplicate() {
+		ScriptStore store = new ScriptStore(10);
+		StoredScript first = store.acquire(new String("return 1"));
+		StoredScript second = store.acquire(new String("return 1"));
+		StoredScript other = store.acquire("return 2");
+		
+		Assert.assertThat(second, sameInstance(first));
+		Assert.assertEquals(ScriptDigest.digest("return 1"), first.getDigest());
+		Assert.assertEquals(2, first.getReferences());
+		Assert.assertEquals(2, store.getNbScripts());
+		Assert.assertEquals(1, store.getNbDeduplicated());
+		
+		store.release(first);
+		store.release(second);
+		store.release(other);
+		Assert.assertEquals(0, store.getNbScripts());
+		Assert.assertEquals(2, store.getNbRetired());
+		Assert.assertThat(store.get(first.getDigest()), sameInstance(first));
+	}
+
+	/**
+	 * Tests that a retired script is found back with its statistics, and that the retired scripts are bounded.
+	 */
+	@Test
+	public void testRetired() {
+		ScriptStore store = new ScriptStore(2);
+		StoredScript script = store.acquire("return 1");
+		script.recordRun(2000000, false);
+		script.recordRun(4000000, true);
+		store.release(script);
+		
+		StoredScript again = store.acquire("return 1");
+		Assert.assertThat(again, sameInstance(script));
+		Assert.assertEquals(1, again.getReferences());
+		Assert.assertEquals(2, again.getNbRuns());
+		Assert.assertEquals(1, again.getNbErrors());
+		Assert.assertEquals(3.0, again.getMeanMillis(), 0.001);
+		store.release(again);
+		
+		for(int i = 2; i <= 4; i++){
+			store.release(store.acquire("return " + i));
+		}
+		Assert.assertEquals(2, store.getNbRetired());
+		Assert.assertNull(store.get(script.getDigest()));
+	}
+}
@@ -0,0 +1,104 @@
+package scheduler.engine;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sandrine Ben Mabrouk.
+ *
+ */
+public class TaskEventBufferTest {
+
+	/**
+	 * Tests reading the events after a given sequence number.
+	 */
+	@Test
+	public void testRead() {
+		TaskEventBuffer buffer = new TaskEventBuffer(8);
+		for(long id = 1; id <= 5; id++){
+			buffer.publish(TaskEventType.SUBMITTED, id, null);
+		}
+		List<TaskEvent> events = buffer.read(2, 10);
+		Assert.assertEquals(3, events.size());
+		Assert.assertEquals(3, events.get(0).getSequence());
+		Assert.assertEquals(Long.valueOf(5), events.get(2).getTaskId());
+		Assert.assertEquals(2, buffer.read(0, 2).size());
+		Assert.assertTrue(buffer.read(5, 10).isEmpty());
+	}
+
+	/**
+	 * Tests that a slow reader misses the overwritten events, and reads from the oldest event still in the buffer.
+	 */
+	@Test
+	public void testOverwrite() {
+		TaskEventBuffer buffer = new TaskEventBuffer(5);
+		Assert.assertEquals(8, buffer.getCapacity());
+		for(long id = 1; id <= 20; id++){
+			buffer.publish(TaskEventType.STARTED, id, "team-a");
+		}
+		List<TaskEvent> events = buffer.read(3, 100);
+		Assert.assertEquals(8, events.size());
+		Assert.assertEquals(13, events.get(0).getSequence());
+		Assert.assertEquals(20, events.get(7).getSequence());
+	}
+
+	/**
+	 * Tests that a waiting reader is woken up by a new event.
+	 * @throws InterruptedException if the test is interrupted.
+	 */
+	@Test
+	public void testAwait() throws InterruptedException {
+		final TaskEventBuffer buffer = new TaskEventBuffer(8);
+		Assert.assertTrue(buffer.await(0, 10, 50, TimeUnit.MILLISECONDS).isEmpty());
+		
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+				}
+				buffer.publish(TaskEventType.COMPLETED, 1L, null);
+			}
+		}).start();
+		long start = System.currentTimeMillis();
+		List<TaskEvent> events = buffer.await(0, 10, 10, TimeUnit.SECONDS);
+		Assert.assertEquals(1, events.size());
+		Assert.assertEquals(TaskEventType.COMPLETED, events.get(0).getType());
+		Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+
+	/**
+	 * Tests that a waiting reader stops waiting once it is interrupted, and is no longer woken up by the new events.
+	 * @throws InterruptedException if the test is interrupted.
+	 */
+	@Test
+	public void testAwaitInterrupted() throws InterruptedException {
+		final TaskEventBuffer buffer = new TaskEventBuffer(8);
+		final Thread reader = Thread.currentThread();
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+				}
+				reader.interrupt();
+			}
+		}).start();
+		long start = System.currentTimeMillis();
+		try{
+			buffer.await(0, 10, 10, TimeUnit.SECONDS);
+			Assert.fail("the reader was not interrupted");
+		}
+		catch(InterruptedException ex){
+			// expected
+		}
+		Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+		Assert.assertTrue(buffer.waiters.isEmpty());
+	}
+}
@@ -0,0 +1,179 @@
+package scheduler.engine;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.hamcrest.Matchers.samePropertyValuesAs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Sandrine Ben Mabrouk.
+ *
+ */
+public class TaskJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	protected ArrayList<Task> state;
+
+	protected GroovyScriptTaskFactory factory;
+
+	@Before
+	public void setUp() {
+		this.state = new ArrayList<Task>();
+		this.factory = new GroovyScriptTaskFactory();
+	}
+
+
+	/**
+	 * Opens a journal in the temporary folder.
+	 * @param recoveries receives the tasks rebuilt from the journal.
+	 * @return the opened journal.
+	 * @throws IOException if the journal can not be opened.
+	 */
+	protected TaskJournal open(ArrayList<TaskJournal.Recovery> recoveries) throws IOException{
+		TaskJournal journal = new TaskJournal(this.folder.getRoot(), new SerializingSnapshotCodec(), this.state);
+		recoveries.add(journal.open());
+		return journal;
+	}
+
+
+	/**
+	 * Test that the submitted, finished and removed tasks are rebuilt from the journal, with the variables of the scripts.
+	 * @throws IOException if the journal can not be written.
+	 */
+	@Test
+	public void testReplay() throws IOException {
+		ArrayList<TaskJournal.Recovery> recoveries = new ArrayList<TaskJournal.Recovery>();
+		TaskJournal journal = this.open(recoveries);
+		journal.appendSubmitted(this.factory.create("return 1", 1L));
+		AbstractScriptTask second = this.factory.create("return 2", 2L);
+		second.setBindings(Collections.<String, Object>singletonMap("a", 2));
+		journal.appendSubmitted(second);
+		journal.appendSubmitted(this.factory.create("return 3", 3L));
+		ScriptSnapshot snapshot = new ScriptSnapshot(TaskStatus.SUCCESSFULLY_DONE, "result");
+		journal.appendFinished(new CompletedTask(1L, snapshot, ScriptDigest.digest("return 1"), 10, 20, 1));
+		Assert.assertTrue(journal.appendRemoved(3L).await());
+		journal.close();
+
+		TaskJournal reopened = this.open(recoveries);
+		TaskJournal.Recovery recovery = recoveries.get(1);
+		reopened.close();
+
+		Assert.assertEquals(3, recovery.getLastId());
+		Assert.assertThat(recovery.getPendingTasks().keySet(), contains(2L));
+		Assert.assertEquals("return 2", recovery.getPendingTasks().get(2L).getScript());
+		Assert.assertEquals(Collections.<String, Object>singletonMap("a", 2), recovery.getPendingTasks().get(2L).getBindings());
+		Assert.assertThat(recovery.getFinishedTasks().keySet(), contains(1L));
+		CompletedTask completed = recovery.getFinishedTasks().get(1L);
+		Assert.assertThat(completed.getSnapshot(), samePropertyValuesAs(snapshot));
+		Assert.assertEquals(ScriptDigest.digest("return 1"), completed.getScriptDigest());
+		Assert.assertEquals(20, completed.getFinishedAt());
+	}
+
+
+	/**
+	 * Test that a record partially written is truncated when the journal is opened.
+	 * @throws IOException if the journal can not be written.
+	 */
+	@Test
+	public void testTruncateTornRecord() throws IOException {
+		ArrayList<TaskJournal.Recovery> recoveries = new ArrayList<TaskJournal.Recovery>();
+		TaskJournal journal = this.open(recoveries);
+		Assert.assertTrue(journal.appendSubmitted(this.factory.create("return 1", 1L)).await());
+		journal.close();
+
+		File file = journal.getJournalFile();
+		long validSize = file.length();
+		try(FileOutputStream output = new FileOutputStream(file, true)){
+			output.write(new byte[]{0, 0, 0, 42, 1, 2, 3});
+		}
+
+		TaskJournal reopened = this.open(recoveries);
+		reopened.close();
+
+		Assert.assertThat(recoveries.get(1).getPendingTasks().keySet(), contains(1L));
+		Assert.assertEquals(validSize, file.length());
+	}
+
+
+	/**
+	 * Test that the compaction only keeps the records of the current tasks.
+	 * @throws IOException if the journal can not be written.
+	 * @throws InterruptedException if the test is interrupted.
+	 */
+	@Test
+	public void testCompaction() throws IOException, InterruptedException {
+		ArrayList<TaskJournal.Recovery> recoveries = new ArrayList<TaskJournal.Recovery>();
+		TaskJournal journal = this.open(recoveries);
+		for(long id = 1; id <= 100; id++){
+			journal.appendSubmitted(this.factory.create("return " + id, id));
+			journal.appendRemoved(id);
+		}
+		Assert.assertTrue(journal.appendSubmitted(this.factory.create("return 101", 101L)).await());
+		long size = journal.getJournalFile().length();
+
+		this.state.add(this.factory.create("return 101", 101L));
+		journal.requestCompaction();
+		for(int i = 0; i < 100 && journal.getNbCompactions() == 0; i++){
+			Thread.sleep(20);
+		}
+		journal.close();
+
+		Assert.assertEquals(1, journal.getNbCompactions());
+		Assert.assertTrue(journal.getJournalFile().length() < size);
+
+		this.state.clear();
+		TaskJournal reopened = this.open(recoveries);
+		reopened.close();
+		Assert.assertThat(recoveries.get(1).getPendingTasks().keySet(), contains(101L));
+		Assert.assertThat(recoveries.get(1).getFinishedTasks().values(), emptyIterable());
+	}
+
+
+	/**
+	 * Test that the records appended while the journal is closing or closed are completed as not written, 
+	 * so that their callers do not wait for them forever.
+	 * @throws Exception if the journal can not be written, or if the test is interrupted.
+	 */
+	@Test
+	public void testAppendWhileClosing() throws Exception {
+		final TaskJournal journal = this.open(new ArrayList<TaskJournal.Recovery>());
+		final ArrayList<TaskJournal.Record> records = new ArrayList<TaskJournal.Record>();
+		Thread appender = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for(long id = 1; id <= 2000; id++){
+					records.add(journal.appendRemoved(id));
+				}
+			}
+		});
+		appender.start();
+		journal.close();
+		appender.join();
+
+		Thread waiter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for(TaskJournal.Record record: records){
+					record.await();
+				}
+			}
+		});
+		waiter.start();
+		waiter.join(5000);
+		Assert.assertFalse("a record is never completed", waiter.isAlive());
+	}
+}
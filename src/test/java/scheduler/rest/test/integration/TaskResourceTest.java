@@ -1,8 +1,10 @@
 package scheduler.rest.test.integration;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.emptyIterable;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.samePropertyValuesAs;
 import static scheduler.rest.test.ScriptSnapshotMatcher.equivalentSnapshot;
 
@@ -11,8 +13,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Entity;
@@ -25,6 +31,9 @@ import org.glassfish.grizzly.http.server.HttpServer;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.grizzly2.servlet.GrizzlyWebContainerFactory;
 import org.glassfish.jersey.jackson.JacksonFeature;
+import org.glassfish.jersey.media.sse.EventInput;
+import org.glassfish.jersey.media.sse.InboundEvent;
+import org.glassfish.jersey.media.sse.SseFeature;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.test.DeploymentContext;
 import org.glassfish.jersey.test.JerseyTest;
@@ -38,15 +47,20 @@ import org.junit.Before;
 import org.junit.Test;
 
 import scheduler.engine.AbstractScriptTask;
+import scheduler.engine.CompletedTask;
+import scheduler.engine.ScriptSchedule;
 import scheduler.engine.ScriptScheduler;
 import scheduler.engine.ScriptSnapshot;
 import scheduler.engine.Task;
+import scheduler.engine.TaskPriority;
 import scheduler.engine.TaskStatus;
 import scheduler.engine.UnknownTaskException;
 import scheduler.rest.SchedulerObjectMapperProvider;
 import scheduler.rest.TaskResource;
 import scheduler.rest.test.TestUtils;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
 /**
  * Integration tests with the rest api.
  * @author Sandrine Ben Mabrouk.
@@ -76,6 +90,7 @@ public class TaskResourceTest extends JerseyTest {
 	@Override
 	protected void configureClient(ClientConfig config) {
 	    config.register(JacksonFeature.class);
+	    config.register(SseFeature.class);
 	}
 	
 	
@@ -168,6 +183,256 @@ public class TaskResourceTest extends JerseyTest {
     }
 	
 	
+	/**
+	 * Test submitting a script with a priority, given as query parameter or as header.
+	 * @throws UnknownTaskException if the task is not found.
+	 */
+	@Test
+	public void testPostWithPriority() throws UnknownTaskException {
+		Entity<String> scriptEntity = Entity.entity("Thread.sleep(500); return 1", MediaType.TEXT_PLAIN);
+		Response response = target("scheduler/task").queryParam("priority", "high").request(MediaType.TEXT_PLAIN).post(scriptEntity);
+		Assert.assertEquals(201, response.getStatus());
+		Long id = Long.valueOf(response.readEntity(String.class).trim());
+		Assert.assertEquals(TaskPriority.HIGH, ((AbstractScriptTask) scheduler.getTask(id)).getPriority());
+		
+		response = target("scheduler/task").request(MediaType.TEXT_PLAIN).header(TaskResource.PRIORITY_HEADER, "LOW").post(scriptEntity);
+		Assert.assertEquals(201, response.getStatus());
+		id = Long.valueOf(response.readEntity(String.class).trim());
+		Assert.assertEquals(TaskPriority.LOW, ((AbstractScriptTask) scheduler.getTask(id)).getPriority());
+		
+		response = target("scheduler/task").queryParam("priority", "urgent").request(MediaType.TEXT_PLAIN).post(scriptEntity);
+		Assert.assertEquals(400, response.getStatus());
+	}
+	
+	
+	/**
+	 * Test submitting a script on behalf of a tenant, given as query parameter or as header.
+	 * @throws UnknownTaskException if the task is not found.
+	 */
+	@Test
+	public void testPostWithTenant() throws UnknownTaskException {
+		Entity<String> scriptEntity = Entity.entity("Thread.sleep(500); return 1", MediaType.TEXT_PLAIN);
+		Response response = target("scheduler/task").queryParam("clientId", "team-a").request(MediaType.TEXT_PLAIN).post(scriptEntity);
+		Assert.assertEquals(201, response.getStatus());
+		Long id = Long.valueOf(response.readEntity(String.class).trim());
+		Assert.assertEquals("team-a", ((AbstractScriptTask) scheduler.getTask(id)).getTenant());
+		
+		response = target("scheduler/task").request(MediaType.TEXT_PLAIN).header(TaskResource.TENANT_HEADER, "team b").post(scriptEntity);
+		Assert.assertEquals(400, response.getStatus());
+	}
+	
+	
+	/**
+	 * Test submitting a script with a timeout, given as query parameter or as header.
+	 * @throws UnknownTaskException if the task is not found.
+	 */
+	@Test
+	public void testPostWithTimeout() throws UnknownTaskException {
+		Entity<String> scriptEntity = Entity.entity("Thread.sleep(20000); return 1", MediaType.TEXT_PLAIN);
+		Response response = target("scheduler/task").queryParam("timeout", "200ms").request(MediaType.TEXT_PLAIN).post(scriptEntity);
+		Assert.assertEquals(201, response.getStatus());
+		AbstractScriptTask task = (AbstractScriptTask) scheduler.getTask(Long.valueOf(response.readEntity(String.class).trim()));
+		Assert.assertEquals(200L, task.getTimeout());
+		task.join();
+		Assert.assertEquals(TaskStatus.TIMED_OUT, task.getSnapshot().getStatus());
+		
+		response = target("scheduler/task").request(MediaType.TEXT_PLAIN).header(TaskResource.TIMEOUT_HEADER, "1s").post(scriptEntity);
+		Assert.assertEquals(201, response.getStatus());
+		task = (AbstractScriptTask) scheduler.getTask(Long.valueOf(response.readEntity(String.class).trim()));
+		Assert.assertEquals(1000L, task.getTimeout());
+		
+		response = target("scheduler/task").queryParam("timeout", "later").request(MediaType.TEXT_PLAIN).post(scriptEntity);
+		Assert.assertEquals(400, response.getStatus());
+	}
+	
+	
+	/**
+	 * Test submitting a graph of scripts as JSON and waiting for its end, and rejecting invalid graphs.
+	 * @throws IOException if the response can not be read.
+	 * @throws UnknownTaskException if a task of the graph is not found.
+	 */
+	@Test
+	public void testGraph() throws IOException, UnknownTaskException {
+		String definitions = "{\"a\": {\"script\": \"return 20\"}, "
+							+ "\"b\": {\"script\": \"return a + x\", \"dependsOn\": [\"a\"], \"bindings\": {\"x\": 1}}, "
+							+ "\"c\": {\"script\": \"return a + b\", \"dependsOn\": [\"a\", \"b\"]}}";
+		Response response = target("scheduler/graph").request(MediaType.TEXT_PLAIN).post(Entity.entity(definitions, MediaType.APPLICATION_JSON));
+		Assert.assertEquals(201, response.getStatus());
+		Long id = Long.valueOf(response.readEntity(String.class).trim());
+		
+		response = target("scheduler/graph/" + id + "/result").queryParam("wait", "10s").request().get();
+		JsonNode graph = SchedulerObjectMapperProvider.getNewObjectMapper().readTree(response.readEntity(InputStream.class));
+		Assert.assertTrue(graph.get("done").asBoolean());
+		JsonNode node = graph.get("nodes").get("c");
+		Assert.assertEquals("DONE", node.get("status").asText());
+		Assert.assertEquals("[\"a\",\"b\"]", node.get("dependsOn").toString());
+		ScriptSnapshot snapshot = scheduler.getSnapshot(node.get("taskId").asLong());
+		Assert.assertEquals(41, snapshot.getResult());
+		Assert.assertEquals(200, target("scheduler/graph/" + id).request().get().getStatus());
+		
+		response = target("scheduler/graph").request(MediaType.TEXT_PLAIN)
+						.post(Entity.entity("{\"a\": {\"script\": \"return 1\", \"dependsOn\": [\"a\"]}}", MediaType.APPLICATION_JSON));
+		Assert.assertEquals(400, response.getStatus());
+		response = target("scheduler/graph").request(MediaType.TEXT_PLAIN)
+						.post(Entity.entity("{\"a\": {\"script\": \"return 1\", \"dependsOn\": [\"b\"]}}", MediaType.APPLICATION_JSON));
+		Assert.assertEquals(400, response.getStatus());
+		response = target("scheduler/graph").request(MediaType.TEXT_PLAIN)
+						.post(Entity.entity("{\"not a name\": {\"script\": \"return 1\"}}", MediaType.APPLICATION_JSON));
+		Assert.assertEquals(400, response.getStatus());
+		Assert.assertEquals(404, target("scheduler/graph/" + (id + 100)).request().get().getStatus());
+	}
+	
+	
+	/**
+	 * Test scheduling a script once after a delay and with a cron expression, listing the schedules and cancelling them.
+	 * @throws Exception if the test is interrupted.
+	 */
+	@Test
+	public void testSchedule() throws Exception {
+		Entity<String> scriptEntity = Entity.entity("return 7", MediaType.TEXT_PLAIN);
+		Response response = target("scheduler/schedule").queryParam("delay", "100ms").request(MediaType.TEXT_PLAIN).post(scriptEntity);
+		Assert.assertEquals(201, response.getStatus());
+		ScriptSchedule once = scheduler.getSchedule(Long.valueOf(response.readEntity(String.class).trim()));
+		
+		response = target("scheduler/schedule").queryParam("cron", "0 3 * * *").queryParam("spread", "30s")
+						.request(MediaType.TEXT_PLAIN).header(TaskResource.PRIORITY_HEADER, "LOW").post(scriptEntity);
+		Assert.assertEquals(201, response.getStatus());
+		Long cronId = Long.valueOf(response.readEntity(String.class).trim());
+		Map<String, Object> description = target("scheduler/schedule/" + cronId).request(MediaType.APPLICATION_JSON)
+						.get(new GenericType<Map<String, Object>>(){});
+		Assert.assertEquals("CRON", description.get("kind"));
+		Assert.assertEquals("0 3 * * *", description.get("cron"));
+		Assert.assertEquals("LOW", description.get("priority"));
+		
+		long deadline = System.currentTimeMillis() + 5000;
+		while(!once.isEnded() && System.currentTimeMillis() < deadline){
+			Thread.sleep(20);
+		}
+		Assert.assertEquals(1, once.getNbFirings());
+		List<Map<String, Object>> schedules = target("scheduler/schedule").request(MediaType.APPLICATION_JSON)
+						.get(new GenericType<List<Map<String, Object>>>(){});
+		Assert.assertEquals(1, schedules.size());
+		
+		Assert.assertEquals(204, target("scheduler/schedule/" + cronId).request().delete().getStatus());
+		Assert.assertEquals(404, target("scheduler/schedule/" + cronId).request().delete().getStatus());
+		Assert.assertEquals(404, target("scheduler/schedule/" + cronId).request().get().getStatus());
+		
+		response = target("scheduler/schedule").queryParam("cron", "61 * * * *").request(MediaType.TEXT_PLAIN).post(scriptEntity);
+		Assert.assertEquals(400, response.getStatus());
+		response = target("scheduler/schedule").queryParam("delay", "1s").queryParam("every", "1s").request(MediaType.TEXT_PLAIN).post(scriptEntity);
+		Assert.assertEquals(400, response.getStatus());
+		response = target("scheduler/schedule").request(MediaType.TEXT_PLAIN).post(scriptEntity);
+		Assert.assertEquals(400, response.getStatus());
+		response = target("scheduler/schedule").queryParam("at", "tomorrow").request(MediaType.TEXT_PLAIN).post(scriptEntity);
+		Assert.assertEquals(400, response.getStatus());
+	}
+	
+	
+	/**
+	 * Test submitting several scripts in one request, as a JSON array or as newline delimited JSON.
+	 * @throws UnknownTaskException if a task is not found.
+	 */
+	@Test
+	public void testPostBatch() throws UnknownTaskException {
+		Entity<String> jsonEntity = Entity.entity("[\"return 1\", \"return 2\", \"return 3\"]", MediaType.APPLICATION_JSON);
+		Response response = target("scheduler/task/batch").queryParam("clientId", "team-a").request(MediaType.APPLICATION_JSON).post(jsonEntity);
+		Assert.assertEquals(201, response.getStatus());
+		List<Long> ids = response.readEntity(new GenericType<List<Long>>(){});
+		Assert.assertThat(ids, hasSize(3));
+		for(int i = 0; i < ids.size(); i++){
+			Assert.assertEquals(ids.get(0) + i, (long) ids.get(i));
+			Task task = scheduler.getTask(ids.get(i));
+			if(task instanceof AbstractScriptTask){
+				Assert.assertEquals("team-a", ((AbstractScriptTask) task).getTenant());
+				((AbstractScriptTask) task).join();
+			}
+			Assert.assertEquals(i + 1, ((CompletedTask) scheduler.getTask(ids.get(i))).getSnapshot().getResult());
+		}
+		
+		Entity<String> ndjsonEntity = Entity.entity("\"return 'a'\"\n\"return 'b'\"\n", TaskResource.NDJSON);
+		response = target("scheduler/task/batch").request(MediaType.APPLICATION_JSON).post(ndjsonEntity);
+		Assert.assertEquals(201, response.getStatus());
+		Assert.assertThat(response.readEntity(new GenericType<List<Long>>(){}), hasSize(2));
+		
+		Entity<String> malformedEntity = Entity.entity("[\"return 1\", 2]", MediaType.APPLICATION_JSON);
+		response = target("scheduler/task/batch").request(MediaType.APPLICATION_JSON).post(malformedEntity);
+		Assert.assertEquals(400, response.getStatus());
+	}
+	
+	
+	/**
+	 * Test registering a script once, then running it with different variables.
+	 * @throws UnknownTaskException if a task is not found.
+	 */
+	@Test
+	public void testRegisterAndRun() throws UnknownTaskException {
+		Entity<String> scriptEntity = Entity.entity("return a * b", MediaType.TEXT_PLAIN);
+		Response response = target("scheduler/scripts").request(MediaType.TEXT_PLAIN).post(scriptEntity);
+		Assert.assertEquals(201, response.getStatus());
+		String handle = response.readEntity(String.class);
+		Assert.assertEquals(handle, target("scheduler/scripts").request(MediaType.TEXT_PLAIN).post(scriptEntity).readEntity(String.class));
+		
+		for(int i = 1; i <= 2; i++){
+			Entity<String> bindingsEntity = Entity.entity("{\"a\": " + i + ", \"b\": 10}", MediaType.APPLICATION_JSON);
+			response = target("scheduler/scripts").path(handle).path("run").request(MediaType.TEXT_PLAIN).post(bindingsEntity);
+			Assert.assertEquals(201, response.getStatus());
+			Long id = Long.valueOf(response.readEntity(String.class));
+			Task task = scheduler.getTask(id);
+			if(task instanceof AbstractScriptTask){
+				((AbstractScriptTask) task).join();
+			}
+			Assert.assertEquals(i * 10, ((CompletedTask) scheduler.getTask(id)).getSnapshot().getResult());
+		}
+		
+		Map<?, ?> stats = target("scheduler/scripts").path(handle).request(MediaType.APPLICATION_JSON).get(Map.class);
+		Assert.assertEquals(true, stats.get("registered"));
+		Assert.assertEquals(2, ((Number) stats.get("runs")).intValue());
+		
+		response = target("scheduler/scripts").request(MediaType.TEXT_PLAIN).post(Entity.entity("return (", MediaType.TEXT_PLAIN));
+		Assert.assertEquals(400, response.getStatus());
+		
+		Assert.assertEquals(204, target("scheduler/scripts").path(handle).request().delete().getStatus());
+		response = target("scheduler/scripts").path(handle).path("run").request(MediaType.TEXT_PLAIN)
+							.post(Entity.entity("{}", MediaType.APPLICATION_JSON));
+		Assert.assertEquals(404, response.getStatus());
+	}
+	
+	
+	/**
+	 * Test streaming the events of a task, resumed from a sequence number.
+	 * @throws IOException if an error occurs during the reading of the events.
+	 */
+	@Test
+	public void testStreamEvents() throws IOException {
+		long since = scheduler.getEventBuffer().getLastSequence();
+		scheduler.submitScript("return 0");
+		AbstractScriptTask task = scheduler.submitScript("return 1");
+		task.join();
+		
+		EventInput input = target("scheduler/task/events").queryParam("since", since).queryParam("id", task.getId())
+								.request(SseFeature.SERVER_SENT_EVENTS_TYPE).get(EventInput.class);
+		try{
+			List<String> names = new ArrayList<String>();
+			long lastId = since;
+			while(names.size() < 3){
+				InboundEvent event = input.read();
+				Assert.assertThat(event, notNullValue());
+				if(event.getName() != null){
+					names.add(event.getName());
+					Assert.assertTrue(Long.parseLong(event.getId()) > lastId);
+					lastId = Long.parseLong(event.getId());
+					JsonNode data = SchedulerObjectMapperProvider.getNewObjectMapper().readTree(event.readData(String.class));
+					Assert.assertEquals((long) task.getId(), data.get("taskId").asLong());
+				}
+			}
+			Assert.assertThat(names, contains("submitted", "started", "completed"));
+		}
+		finally{
+			input.close();
+		}
+	}
+	
+	
 	/**
 	 * Test getting the list of running tasks. 
 	 * @throws IOException if an error occurs during the script reading.
@@ -195,6 +460,52 @@ public class TaskResourceTest extends JerseyTest {
 	}
 	
 	
+	/**
+	 * Test getting the list of running tasks page by page, with some fields only.
+	 * @throws IOException if an error occurs during the script reading.
+	 */
+	@Test
+	public void testGetRunningPages() throws IOException{
+		String script = "Thread.sleep(20000); return 1";
+		List<AbstractScriptTask> tasks = scheduler.submitScripts(Collections.nCopies(3, script), TaskPriority.HIGH, null);
+		
+		GenericType<List<Map<String, Object>>> gType = new GenericType<List<Map<String, Object>>>(){};
+		List<Map<String, Object>> page = target("scheduler/task/running").queryParam("limit", 2)
+											.queryParam("fields", "id,status,priority").request().get(gType);
+		Assert.assertThat(page, hasSize(2));
+		Assert.assertEquals(tasks.get(0).getId().longValue(), ((Number) page.get(0).get("id")).longValue());
+		Assert.assertEquals(tasks.get(1).getId().longValue(), ((Number) page.get(1).get("id")).longValue());
+		Assert.assertEquals("RUNNING", page.get(0).get("status"));
+		Assert.assertEquals("HIGH", page.get(0).get("priority"));
+		Assert.assertThat(page.get(0).keySet(), contains("id", "status", "priority"));
+		
+		page = target("scheduler/task/running").queryParam("limit", 2).queryParam("after", page.get(1).get("id"))
+											.queryParam("fields", "id").request().get(gType);
+		Assert.assertThat(page, hasSize(1));
+		Assert.assertEquals(tasks.get(2).getId().longValue(), ((Number) page.get(0).get("id")).longValue());
+		
+		// without fields, the tasks of the page are serialized whole
+		List<Task> beans = target("scheduler/task/running").queryParam("limit", 1).request().get(new GenericType<List<Task>>(){});
+		Assert.assertThat(beans, hasSize(1));
+		Assert.assertEquals(tasks.get(0).getId(), beans.get(0).getId());
+		Assert.assertEquals(script, beans.get(0).getScriptContent());
+		
+		Response response = target("scheduler/task/running").queryParam("fields", "id,script").request().get();
+		Assert.assertEquals(400, response.getStatus());
+		response = target("scheduler/task/finished").queryParam("limit", 0).request().get();
+		Assert.assertEquals(400, response.getStatus());
+		
+		for(AbstractScriptTask task: tasks){
+			task.getFuture().cancel(true);
+			task.join();
+		}
+		page = target("scheduler/task/finished").queryParam("fields", "id,status,finishedAt").request().get(gType);
+		Assert.assertThat(page, hasSize(3));
+		Assert.assertEquals("CANCELLED", page.get(2).get("status"));
+		Assert.assertThat(page.get(2).get("finishedAt"), notNullValue());
+	}
+	
+	
 	/**
 	 * Test getting the list of running tasks when the scheduler has no tasks. 
 	 * @throws IOException if an error occurs during the script reading.
@@ -227,7 +538,7 @@ public class TaskResourceTest extends JerseyTest {
 		List<Task> finished = target("scheduler/task/finished").request().get(gType);
 		
 		Assert.assertThat(finished, hasSize(1));
-		Assert.assertTrue(finished.get(0).getScriptContent().equals(script2));
+		Assert.assertEquals(task3.getId(), finished.get(0).getId());
 		
 		((AbstractScriptTask) task1).getFuture().cancel(true);
 		((AbstractScriptTask) task2).getFuture().cancel(true);
@@ -330,6 +641,63 @@ public class TaskResourceTest extends JerseyTest {
 	}
 	
 	
+	/**
+	 * Test waiting for the result of a task, that returns once the task is finished, or the running snapshot once the wait times out.
+	 * @throws IOException if an error occurs during the script reading.
+	 */
+	@Test
+	public void testAwaitResult() throws IOException {
+		AbstractScriptTask task = scheduler.submitScript("Thread.sleep(300); return 42");
+		long start = System.currentTimeMillis();
+		Response response = target("scheduler/task/" + task.getId() + "/result").queryParam("wait", "10s").request().get();
+		ScriptSnapshot snapshot = SchedulerObjectMapperProvider.getNewObjectMapper()
+			.readValue(response.readEntity(InputStream.class), ScriptSnapshot.class);
+		Assert.assertThat(snapshot, samePropertyValuesAs(new ScriptSnapshot(TaskStatus.SUCCESSFULLY_DONE, 42)));
+		Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+		
+		AbstractScriptTask longTask = scheduler.submitScript("Thread.sleep(60000)");
+		snapshot = target("scheduler/task/" + longTask.getId() + "/result").queryParam("wait", "200ms").request().get(ScriptSnapshot.class);
+		Assert.assertThat(snapshot, samePropertyValuesAs(new ScriptSnapshot(TaskStatus.RUNNING, null)));
+		snapshot = target("scheduler/task/" + longTask.getId() + "/result").queryParam("wait", "0").request().get(ScriptSnapshot.class);
+		Assert.assertThat(snapshot, samePropertyValuesAs(new ScriptSnapshot(TaskStatus.RUNNING, null)));
+		longTask.getFuture().cancel(true);
+		
+		response = target("scheduler/task/" + (longTask.getId() + 100) + "/result").request().get();
+		Assert.assertEquals(404, response.getStatus());
+		response = target("scheduler/task/" + task.getId() + "/result").queryParam("wait", "soon").request().get();
+		Assert.assertEquals(400, response.getStatus());
+	}
+	
+	
+	/**
+	 * Test that a request waiting for the result of a task is resumed at once when the task is removed.
+	 * @throws Exception if the test is interrupted.
+	 */
+	@Test
+	public void testAwaitResultRemovedTask() throws Exception {
+		final AbstractScriptTask task = scheduler.submitScript("Thread.sleep(20000); return 1");
+		Thread remover = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					Thread.sleep(300);
+					scheduler.removeTask(task.getId());
+				}
+				catch(InterruptedException | UnknownTaskException ex){
+				}
+			}
+		});
+		remover.start();
+		long start = System.currentTimeMillis();
+		Response response = target("scheduler/task/" + task.getId() + "/result").queryParam("wait", "10s").request().get();
+		ScriptSnapshot snapshot = SchedulerObjectMapperProvider.getNewObjectMapper()
+			.readValue(response.readEntity(InputStream.class), ScriptSnapshot.class);
+		Assert.assertEquals(TaskStatus.CANCELLED, snapshot.getStatus());
+		Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+		remover.join();
+	}
+	
+	
 	/**
 	 * Test getting the result of a cancelled task.
 	 * @throws IOException if an error occurs during the script reading.
@@ -409,4 +777,30 @@ public class TaskResourceTest extends JerseyTest {
 		
 		((AbstractScriptTask) task).getFuture().cancel(true);
 	}
+	
+	
+	/**
+	 * Test that the snapshot of a finished task is rendered once, and the same bytes are returned to the next requests.
+	 * @throws IOException if an error occurs during the script reading.
+	 * @throws UnknownTaskException if the task does not exists.
+	 */
+	@Test
+	public void testGetResultRenderedOnce() throws IOException, UnknownTaskException {
+		String script = TestUtils.readScriptFile("BeanScript.groovy");
+		AbstractScriptTask task = scheduler.submitScript(script);
+		task.join();
+		
+		String first = target("scheduler/task/" + task.getId() + "/status").request().get(String.class);
+		CompletedTask completed = (CompletedTask) scheduler.getTask(task.getId());
+		ByteBuffer rendered = completed.getRenderedSnapshot();
+		String second = target("scheduler/task/" + task.getId() + "/status").request().get(String.class);
+		
+		Assert.assertThat(rendered, notNullValue());
+		Assert.assertEquals(first, second);
+		Assert.assertEquals(first, StandardCharsets.UTF_8.decode(rendered).toString());
+		
+		ScriptSnapshot snapshot = SchedulerObjectMapperProvider.getNewObjectMapper().readValue(second, ScriptSnapshot.class);
+		Assert.assertEquals(TaskStatus.SUCCESSFULLY_DONE, snapshot.getStatus());
+		Assert.assertEquals("Person", snapshot.getResult().getClass().getName());
+	}
 }